@@ -0,0 +1,153 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.routing.util.WeightingMap;
+import com.graphhopper.util.shapes.GHPoint;
+
+/**
+ * Request to calculate the area reachable from one point within a limit, split into buckets of
+ * equal size.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHIsochroneRequest
+{
+    private final GHPoint point;
+    private final WeightingMap hints = new WeightingMap();
+    private String vehicle = "";
+    private double limit = 600;
+    private int buckets = 1;
+    private double cellSize = 200;
+    private boolean reverseFlow = false;
+
+    public GHIsochroneRequest( double lat, double lon )
+    {
+        this(new GHPoint(lat, lon));
+    }
+
+    public GHIsochroneRequest( GHPoint point )
+    {
+        if (point == null)
+            throw new IllegalArgumentException("point cannot be null");
+
+        this.point = point;
+    }
+
+    public GHPoint getPoint()
+    {
+        return point;
+    }
+
+    /**
+     * The limit is in seconds for the default weighting fastest and in meter for shortest. Default
+     * is 600.
+     */
+    public GHIsochroneRequest setLimit( double limit )
+    {
+        this.limit = limit;
+        return this;
+    }
+
+    public double getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * Splits the limit into the specified number of rings. Default is 1.
+     */
+    public GHIsochroneRequest setBuckets( int buckets )
+    {
+        this.buckets = buckets;
+        return this;
+    }
+
+    public int getBuckets()
+    {
+        return buckets;
+    }
+
+    /**
+     * The edge length of the grid cells in meter. Default is 200.
+     */
+    public GHIsochroneRequest setCellSize( double cellSize )
+    {
+        this.cellSize = cellSize;
+        return this;
+    }
+
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * If true the area from where the point is reachable is calculated.
+     */
+    public GHIsochroneRequest setReverseFlow( boolean reverseFlow )
+    {
+        this.reverseFlow = reverseFlow;
+        return this;
+    }
+
+    public boolean isReverseFlow()
+    {
+        return reverseFlow;
+    }
+
+    /**
+     * By default it supports fastest and shortest. Or specify empty to use default.
+     */
+    public GHIsochroneRequest setWeighting( String w )
+    {
+        hints.setWeighting(w);
+        return this;
+    }
+
+    public String getWeighting()
+    {
+        return hints.getWeighting();
+    }
+
+    /**
+     * Specifiy car, bike or foot. Or specify empty to use default.
+     */
+    public GHIsochroneRequest setVehicle( String vehicle )
+    {
+        if (vehicle != null)
+            this.vehicle = vehicle;
+        return this;
+    }
+
+    public String getVehicle()
+    {
+        return vehicle;
+    }
+
+    public WeightingMap getHints()
+    {
+        return hints;
+    }
+
+    @Override
+    public String toString()
+    {
+        return point + ", limit:" + limit + ", buckets:" + buckets;
+    }
+}
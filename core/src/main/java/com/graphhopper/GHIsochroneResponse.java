@@ -0,0 +1,137 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.util.PointList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper for the result of a GHIsochroneRequest. For every bucket it contains the centers of the
+ * grid cells reached within this bucket and the convex hull of all cells up to this bucket.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHIsochroneResponse
+{
+    private String debugInfo = "";
+    private final List<Throwable> errors = new ArrayList<Throwable>(4);
+    private List<PointList> cells = new ArrayList<PointList>();
+    private List<PointList> polygons = new ArrayList<PointList>();
+    private double cellSizeLat;
+    private double cellSizeLon;
+
+    public String getDebugInfo()
+    {
+        check("getDebugInfo");
+        return debugInfo;
+    }
+
+    public GHIsochroneResponse setDebugInfo( String debugInfo )
+    {
+        if (debugInfo != null)
+            this.debugInfo = debugInfo;
+        return this;
+    }
+
+    private void check( String method )
+    {
+        if (hasErrors())
+        {
+            throw new RuntimeException("You cannot call " + method + " if response contains errors. Check this with hasErrors(). "
+                    + "Errors are: " + getErrors());
+        }
+    }
+
+    /**
+     * @return true if one or more error found
+     */
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    public GHIsochroneResponse addError( Throwable error )
+    {
+        errors.add(error);
+        return this;
+    }
+
+    public GHIsochroneResponse setCells( List<PointList> cells, double cellSizeLat, double cellSizeLon )
+    {
+        this.cells = cells;
+        this.cellSizeLat = cellSizeLat;
+        this.cellSizeLon = cellSizeLon;
+        return this;
+    }
+
+    /**
+     * @return the centers of the grid cells for every bucket. A cell belongs to the bucket of the
+     * fastest node inside of it.
+     */
+    public List<PointList> getCells()
+    {
+        check("getCells");
+        return cells;
+    }
+
+    /**
+     * @return the height of a grid cell in degrees
+     */
+    public double getCellSizeLat()
+    {
+        return cellSizeLat;
+    }
+
+    /**
+     * @return the width of a grid cell in degrees
+     */
+    public double getCellSizeLon()
+    {
+        return cellSizeLon;
+    }
+
+    public GHIsochroneResponse setPolygons( List<PointList> polygons )
+    {
+        this.polygons = polygons;
+        return this;
+    }
+
+    /**
+     * @return the closed convex hull of all cells up to and including the bucket
+     */
+    public List<PointList> getPolygons()
+    {
+        check("getPolygons");
+        return polygons;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (hasErrors())
+            return "errors:" + errors;
+
+        return "buckets:" + cells.size();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.routing.PathMatrix;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper for the distances and times of a GHMatrixRequest. The row is the index of the from point
+ * and the column the index of the to point.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHMatrixResponse
+{
+    private String debugInfo = "";
+    private final List<Throwable> errors = new ArrayList<Throwable>(4);
+    private PathMatrix matrix;
+
+    public String getDebugInfo()
+    {
+        check("getDebugInfo");
+        return debugInfo;
+    }
+
+    public GHMatrixResponse setDebugInfo( String debugInfo )
+    {
+        if (debugInfo != null)
+            this.debugInfo = debugInfo;
+        return this;
+    }
+
+    private void check( String method )
+    {
+        if (hasErrors())
+        {
+            throw new RuntimeException("You cannot call " + method + " if response contains errors. Check this with hasErrors(). "
+                    + "Errors are: " + getErrors());
+        }
+    }
+
+    /**
+     * @return true if one or more error found
+     */
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    public GHMatrixResponse addError( Throwable error )
+    {
+        errors.add(error);
+        return this;
+    }
+
+    public GHMatrixResponse setMatrix( PathMatrix matrix )
+    {
+        this.matrix = matrix;
+        return this;
+    }
+
+    public PathMatrix getMatrix()
+    {
+        check("getMatrix");
+        return matrix;
+    }
+
+    /**
+     * @return false if the to point is not reachable from the from point
+     */
+    public boolean isFound( int from, int to )
+    {
+        return getMatrix().isFound(from, to);
+    }
+
+    /**
+     * @return the distance in meter
+     */
+    public double getDistance( int from, int to )
+    {
+        return getMatrix().getDistance(from, to);
+    }
+
+    /**
+     * @return the time in milli seconds
+     */
+    public long getMillis( int from, int to )
+    {
+        return getMatrix().getMillis(from, to);
+    }
+
+    public double getWeight( int from, int to )
+    {
+        return getMatrix().getWeight(from, to);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (hasErrors())
+            return "errors:" + errors;
+
+        return String.valueOf(matrix);
+    }
+}
@@ -37,6 +37,7 @@ public class GHResponse
     private double routeWeight;
     private long time;
     private InstructionList instructions = null;
+    private final List<GHResponse> alternatives = new ArrayList<GHResponse>(2);
 
     public GHResponse()
     {
@@ -177,6 +178,26 @@ public class GHResponse
         return bounds;
     }
 
+    /**
+     * Adds an alternative to the route of this response, e.g. calculated via the algorithm
+     * alternative_route. The alternative has no errors and no alternatives on its own.
+     */
+    public GHResponse addAlternative( GHResponse alternative )
+    {
+        alternatives.add(alternative);
+        return this;
+    }
+
+    /**
+     * @return the alternatives to the route of this response, ordered by their quality. The best
+     * route is always this response itself.
+     */
+    public List<GHResponse> getAlternatives()
+    {
+        check("getAlternatives");
+        return alternatives;
+    }
+
     @Override
     public String toString()
     {
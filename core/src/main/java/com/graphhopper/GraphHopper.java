@@ -23,7 +23,10 @@ import com.graphhopper.reader.dem.CGIARProvider;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.routing.*;
+import com.graphhopper.routing.ch.CustomizableContractionHierarchies;
+import com.graphhopper.routing.ch.PHAST;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.*;
@@ -34,6 +37,10 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -55,6 +62,7 @@ public class GraphHopper implements GraphHopperAPI
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM_STORE;
     private boolean sortGraph = false;
+    private boolean hilbertRenumbering = false;
     boolean removeZipped = true;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
@@ -62,15 +70,23 @@ public class GraphHopper implements GraphHopperAPI
     private boolean allowWrites = true;
     boolean enableInstructions = true;
     private boolean fullyLoaded = false;
+    private boolean preload = false;
+    private boolean concurrentEdgeUpdates = false;
+    private boolean compressedGeometry = false;
+    private boolean sharedEdgeAttributes = false;
+    private Thread preloadThread;
     // for routing
     private double defaultWeightLimit = Double.MAX_VALUE;
     private boolean simplifyResponse = true;
     private TraversalMode traversalMode = TraversalMode.NODE_BASED;
     private RoutingAlgorithmFactory algoFactory;
+    private boolean speedOverlayEnabled = false;
+    private SpeedOverlay speedOverlay;
     // for index
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private int indexSortBufferSize = -1;
     // for prepare
     private int minNetworkSize = 200;
     private int minOneWayNetworkSize = 0;
@@ -78,14 +94,30 @@ public class GraphHopper implements GraphHopperAPI
     private boolean doPrepare = true;
     private boolean chEnabled = true;
     private String chWeighting = "fastest";
+    private boolean chCustomizable = false;
     private int periodicUpdates = -1;
     private int lazyUpdates = -1;
     private int neighborUpdates = -1;
     private double logMessages = -1;
+    private int prepareThreads = 1;
+    private boolean reuseAlgorithms = false;
+    private boolean reuseQueryGraph = false;
+    private final ReleasableThreadLocal<Map<Graph, QueryGraph>> reusableQueryGraphs = new ReleasableThreadLocal<Map<Graph, QueryGraph>>();
+    private final ReleasableThreadLocal<Isochrone> reusableIsochrones = new ReleasableThreadLocal<Isochrone>();
+    private RouteCache routeCache;
+    // for CH with more than one vehicle or weighting, key is vehicle_weighting
+    private final Map<String, LevelGraphLayer> chLayers = new LinkedHashMap<String, LevelGraphLayer>();
+    private final Map<String, PrepareContractionHierarchies> chPreparations = new LinkedHashMap<String, PrepareContractionHierarchies>();
+    // for landmarks, key is vehicle_weighting
+    private String lmWeighting = "";
+    private int landmarks = 8;
+    private int lmThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final Map<String, PrepareLandmarks> lmPreparations = new LinkedHashMap<String, PrepareLandmarks>();
     // for OSM import
     private String osmFile;
     private double osmReaderWayPointMaxDistance = 1;
     private int workerThreads = -1;
+    private int wayThreads = 1;
     private boolean calcPoints = true;
     // utils    
     private final TranslationMap trMap = new TranslationMap().doImport();
@@ -218,6 +250,16 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Limits the memory of the location index preparation, see LocationIndexTree.setSortBufferSize
+     */
+    public GraphHopper setIndexSortBufferSize( int entries )
+    {
+        ensureNotLoaded();
+        indexSortBufferSize = entries;
+        return this;
+    }
+
     public void setMinNetworkSize( int minNetworkSize, int minOneWayNetworkSize )
     {
         this.minNetworkSize = minNetworkSize;
@@ -261,6 +303,86 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Memory maps all files of an existing graph read-only. Nothing is copied into the heap and the
+     * operating system pages in the data on demand, so loading takes nearly no time. Implies
+     * setAllowWrites(false), i.e. the graph has to be prepared already.
+     */
+    public GraphHopper setMemoryMappedReadOnly()
+    {
+        ensureNotLoaded();
+        dataAccessType = DAType.MMAP_RO;
+        allowWrites = false;
+        return this;
+    }
+
+    /**
+     * If true and the graph is memory mapped then all files are paged in via a background thread
+     * after loading. Queries can be answered before this has finished.
+     */
+    public GraphHopper setPreload( boolean preload )
+    {
+        ensureNotLoaded();
+        this.preload = preload;
+        return this;
+    }
+
+    /**
+     * Allows changing flags and distances of edges while other threads route on the graph without
+     * the need of a synchronized DAType.
+     *
+     * @see GraphHopperStorage#setConcurrentEdgeUpdates(boolean)
+     */
+    public GraphHopper setConcurrentEdgeUpdates( boolean enable )
+    {
+        ensureNotLoaded();
+        concurrentEdgeUpdates = enable;
+        return this;
+    }
+
+    /**
+     * Stores the way geometry of a new import delta encoded which makes the graph and its memory
+     * mapped working set smaller.
+     */
+    public GraphHopper setCompressedGeometry( boolean compressedGeometry )
+    {
+        ensureNotLoaded();
+        this.compressedGeometry = compressedGeometry;
+        return this;
+    }
+
+    /**
+     * Stores flags, name and additional field of a new import only once per distinct combination
+     * which makes the edge entries smaller. Not recommended for CH as every shortcut has its own
+     * weight stored in the flags.
+     */
+    public GraphHopper setSharedEdgeAttributes( boolean sharedEdgeAttributes )
+    {
+        ensureNotLoaded();
+        this.sharedEdgeAttributes = sharedEdgeAttributes;
+        return this;
+    }
+
+    /**
+     * Enables a SpeedOverlay which allows changing the speeds of edges after the import, e.g. from
+     * live traffic data. Use it via the weighting "traffic". Only possible without CH as the
+     * shortcuts would be invalid after every update.
+     */
+    public GraphHopper setSpeedOverlayEnabled( boolean enable )
+    {
+        ensureNotLoaded();
+        speedOverlayEnabled = enable;
+        return this;
+    }
+
+    /**
+     * @return the SpeedOverlay or null if not enabled
+     */
+    public SpeedOverlay getSpeedOverlay()
+    {
+        return speedOverlay;
+    }
+
     /**
      * Not yet stable enough to offer it for everyone
      */
@@ -283,7 +405,8 @@ public class GraphHopper implements GraphHopperAPI
     /**
      * Enables the use of contraction hierarchies to reduce query times. Enabled by default.
      * <p/>
-     * @param weighting can be "fastest", "shortest" or your own weight-calculation type.
+     * @param weighting can be "fastest", "shortest" or your own weight-calculation type. Use a
+     * comma separated list like "fastest,shortest" to prepare one shortcut layer per weighting.
      * @see #setCHEnable(boolean)
      */
     public GraphHopper setCHWeighting( String weighting )
@@ -298,6 +421,61 @@ public class GraphHopper implements GraphHopperAPI
         return chWeighting;
     }
 
+    /**
+     * Prepares customizable contraction hierarchies. The preparation is independent of the
+     * weighting and customizeCH changes the weighting of a prepared graph within seconds to
+     * minutes. Queries are slower than with the normal preparation.
+     * <p>
+     * @see #customizeCH(String, String, Weighting)
+     */
+    public GraphHopper setCHCustomizable( boolean customizable )
+    {
+        ensureNotLoaded();
+        chCustomizable = customizable;
+        return this;
+    }
+
+    /**
+     * Prepares landmarks for every vehicle and the specified weightings, e.g. "fastest" or
+     * "fastest,shortest". The algorithms astar and astarbi then approximate the remaining weight
+     * via the landmarks, which is a lot faster than the beeline but still flexible: the weighting of
+     * a request can select the landmarks of another weighting via the hint lm.weighting as long as
+     * its weights are never smaller. Contraction hierarchies have to be disabled or prepared for
+     * several vehicles or weightings as the landmarks need the unchanged base graph.
+     */
+    public GraphHopper setLMWeighting( String weighting )
+    {
+        ensureNotLoaded();
+        lmWeighting = weighting;
+        return this;
+    }
+
+    public String getLMWeighting()
+    {
+        return lmWeighting;
+    }
+
+    /**
+     * Sets the number of landmarks, default is 8. Every landmark needs 8 bytes per node.
+     */
+    public GraphHopper setLandmarks( int landmarks )
+    {
+        ensureNotLoaded();
+        this.landmarks = landmarks;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads for the landmark searches at import, default is the number of
+     * processors.
+     */
+    public GraphHopper setLMThreads( int lmThreads )
+    {
+        ensureNotLoaded();
+        this.lmThreads = lmThreads;
+        return this;
+    }
+
     /**
      * Enables or disables contraction hierarchies. Enabled by default. Disabling CH is only
      * recommended for a small area or in combination with setDefaultWeightLimit
@@ -323,6 +501,47 @@ public class GraphHopper implements GraphHopperAPI
         this.defaultWeightLimit = defaultWeightLimit;
     }
 
+    /**
+     * Reuses the CH algorithm instances and the isochrone search per request thread instead of
+     * creating new ones for every request, which reduces the garbage created per request.
+     */
+    public GraphHopper setReuseAlgorithms( boolean reuseAlgorithms )
+    {
+        ensureNotLoaded();
+        this.reuseAlgorithms = reuseAlgorithms;
+        return this;
+    }
+
+    /**
+     * Keeps one QueryGraph per request thread and routing graph and only resets it for the next
+     * request, which avoids allocating the virtual nodes and edges for every request.
+     */
+    public GraphHopper setReuseQueryGraph( boolean reuseQueryGraph )
+    {
+        ensureNotLoaded();
+        this.reuseQueryGraph = reuseQueryGraph;
+        return this;
+    }
+
+    /**
+     * Caches the responses of route requests, null disables the cache. Cached responses are shared
+     * and must not be modified. The cache is cleared if the graph is closed or the weights of a
+     * customizable CH preparation change.
+     */
+    public GraphHopper setRouteCache( RouteCache routeCache )
+    {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    /**
+     * @return the cache for route responses or null if disabled
+     */
+    public RouteCache getRouteCache()
+    {
+        return routeCache;
+    }
+
     public boolean isCHEnabled()
     {
         return chEnabled;
@@ -458,6 +677,18 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Renumbers nodes along a Hilbert curve and orders the edges by their base node after the
+     * import and the CH preparation which improves memory locality while routing. Not possible
+     * with turn costs, multiple CH layers or customizable CH.
+     */
+    public GraphHopper setHilbertRenumbering( boolean hilbertRenumbering )
+    {
+        ensureNotLoaded();
+        this.hilbertRenumbering = hilbertRenumbering;
+        return this;
+    }
+
     /**
      * Specifies if it is allowed for GraphHopper to write. E.g. for read only filesystems it is not
      * possible to create a lock file and so we can avoid write locks.
@@ -505,8 +736,15 @@ public class GraphHopper implements GraphHopperAPI
 
         String graphDATypeStr = args.get("graph.dataaccess", "RAM_STORE");
         dataAccessType = DAType.fromString(graphDATypeStr);
+        if (!dataAccessType.isAllowWrites())
+            allowWrites = false;
+        preload = args.getBool("graph.dataaccess.preload", preload);
+        concurrentEdgeUpdates = args.getBool("graph.concurrentEdgeUpdates", concurrentEdgeUpdates);
+        compressedGeometry = args.getBool("graph.compressGeometry", compressedGeometry);
+        sharedEdgeAttributes = args.getBool("graph.sharedEdgeAttributes", sharedEdgeAttributes);
 
         sortGraph = args.getBool("graph.doSort", sortGraph);
+        hilbertRenumbering = args.getBool("graph.hilbertRenumbering", hilbertRenumbering);
         removeZipped = args.getBool("graph.removeZipped", removeZipped);
         int bytesForFlags = args.getInt("graph.bytesForFlags", 4);
         if (args.get("graph.locktype", "native").equals("simple"))
@@ -545,14 +783,30 @@ public class GraphHopper implements GraphHopperAPI
         // prepare CH
         doPrepare = args.getBool("prepare.doPrepare", doPrepare);
         String tmpCHWeighting = args.get("prepare.chWeighting", "fastest");
-        chEnabled = "fastest".equals(tmpCHWeighting) || "shortest".equals(tmpCHWeighting);
+        chEnabled = !Helper.isEmpty(tmpCHWeighting);
+        for (String tmpWeighting : tmpCHWeighting.split(","))
+        {
+            tmpWeighting = tmpWeighting.trim();
+            if (!"fastest".equals(tmpWeighting) && !"shortest".equals(tmpWeighting))
+                chEnabled = false;
+        }
         if (chEnabled)
             setCHWeighting(tmpCHWeighting);
 
+        // routing
+        speedOverlayEnabled = args.getBool("routing.speedOverlay", speedOverlayEnabled);
+
+        chCustomizable = args.getBool("prepare.chCustomizable", chCustomizable);
         periodicUpdates = args.getInt("prepare.updates.periodic", periodicUpdates);
         lazyUpdates = args.getInt("prepare.updates.lazy", lazyUpdates);
         neighborUpdates = args.getInt("prepare.updates.neighbor", neighborUpdates);
         logMessages = args.getDouble("prepare.logmessages", logMessages);
+        prepareThreads = args.getInt("prepare.threads", prepareThreads);
+
+        // prepare landmarks
+        lmWeighting = args.get("prepare.lm.weighting", lmWeighting);
+        landmarks = args.getInt("prepare.lm.landmarks", landmarks);
+        lmThreads = args.getInt("prepare.lm.threads", lmThreads);
 
         // osm import
         osmReaderWayPointMaxDistance = args.getDouble("osmreader.wayPointMaxDistance", osmReaderWayPointMaxDistance);
@@ -560,14 +814,21 @@ public class GraphHopper implements GraphHopperAPI
 
         setEncodingManager(new EncodingManager(flagEncoders, bytesForFlags));
         workerThreads = args.getInt("osmreader.workerThreads", workerThreads);
+        wayThreads = args.getInt("osmreader.wayThreads", wayThreads);
         enableInstructions = args.getBool("osmreader.instructions", enableInstructions);
 
         // index
         preciseIndexResolution = args.getInt("index.highResolution", preciseIndexResolution);
         maxRegionSearch = args.getInt("index.maxRegionSearch", maxRegionSearch);
+        indexSortBufferSize = args.getInt("index.sortBufferSize", indexSortBufferSize);
 
         // routing
         defaultWeightLimit = args.getDouble("routing.defaultWeightLimit", defaultWeightLimit);
+        reuseAlgorithms = args.getBool("routing.reuseAlgorithms", reuseAlgorithms);
+        reuseQueryGraph = args.getBool("routing.reuseQueryGraph", reuseQueryGraph);
+        long routeCacheMB = args.getLong("routing.cache.maxMB", 0);
+        if (routeCacheMB > 0)
+            routeCache = new RouteCache(routeCacheMB * Helper.MB, args.getLong("routing.cache.ttlSeconds", 600) * 1000);
         return this;
     }
 
@@ -585,6 +846,7 @@ public class GraphHopper implements GraphHopperAPI
      */
     public GraphHopper importOrLoad()
     {
+        checkRenumbering();
         if (!load(ghLocation))
         {
             printInfo();
@@ -665,6 +927,7 @@ public class GraphHopper implements GraphHopperAPI
         return reader.setOSMFile(osmTmpFile).
                 setElevationProvider(eleProvider).
                 setWorkerThreads(workerThreads).
+                setWayThreads(wayThreads).
                 setEncodingManager(encodingManager).
                 setWayPointMaxDistance(osmReaderWayPointMaxDistance);
     }
@@ -719,7 +982,9 @@ public class GraphHopper implements GraphHopperAPI
             dataAccessType = DAType.MMAP_RO;
 
         GHDirectory dir = new GHDirectory(ghLocation, dataAccessType);
-        if (chEnabled)
+        if (chEnabled && !isCHLayered() && encodingManager.needsTurnCostsSupport())
+            graph = new LevelGraphStorage(dir, encodingManager, hasElevation(), new TurnCostExtension());
+        else if (chEnabled && !isCHLayered())
             graph = new LevelGraphStorage(dir, encodingManager, hasElevation());
         else if (encodingManager.needsTurnCostsSupport())
             graph = new GraphHopperStorage(dir, encodingManager, hasElevation(), new TurnCostExtension());
@@ -727,6 +992,12 @@ public class GraphHopper implements GraphHopperAPI
             graph = new GraphHopperStorage(dir, encodingManager, hasElevation());
 
         graph.setSegmentSize(defaultSegmentSize);
+        if (concurrentEdgeUpdates)
+            ((GraphHopperStorage) graph).setConcurrentEdgeUpdates(true);
+        if (compressedGeometry)
+            ((GraphHopperStorage) graph).setCompressedGeometry(true);
+        if (sharedEdgeAttributes)
+            ((GraphHopperStorage) graph).setSharedEdgeAttributes(true);
 
         Lock lock = null;
         try
@@ -746,6 +1017,9 @@ public class GraphHopper implements GraphHopperAPI
 
             postProcessing();
             fullyLoaded = true;
+            if (preload && dataAccessType.isMMap())
+                startPreload(dir);
+
             return true;
         } finally
         {
@@ -754,6 +1028,47 @@ public class GraphHopper implements GraphHopperAPI
         }
     }
 
+    private void startPreload( final GHDirectory dir )
+    {
+        preloadThread = new Thread("preload " + ghLocation)
+        {
+            @Override
+            public void run()
+            {
+                StopWatch sw = new StopWatch().start();
+                dir.preload();
+                logger.info("preloaded " + ghLocation + " in " + sw.stop().getSeconds() + "s, " + Helper.getMemInfo());
+            }
+        };
+        preloadThread.setDaemon(true);
+        preloadThread.start();
+    }
+
+    /**
+     * Snaps all points at once if the location index supports it.
+     */
+    private List<QueryResult> findClosest( List<GHPoint> points, EdgeFilter edgeFilter )
+    {
+        if (locationIndex instanceof LocationIndexTree)
+        {
+            double[] lats = new double[points.size()];
+            double[] lons = new double[points.size()];
+            for (int i = 0; i < lats.length; i++)
+            {
+                lats[i] = points.get(i).lat;
+                lons[i] = points.get(i).lon;
+            }
+            return Arrays.asList(((LocationIndexTree) locationIndex).findClosest(lats, lons, edgeFilter, 1));
+        }
+
+        List<QueryResult> qResults = new ArrayList<QueryResult>(points.size());
+        for (GHPoint point : points)
+        {
+            qResults.add(locationIndex.findClosest(point.lat, point.lon, edgeFilter));
+        }
+        return qResults;
+    }
+
     public RoutingAlgorithmFactory getAlgorithmFactory()
     {
         if (algoFactory == null)
@@ -778,9 +1093,21 @@ public class GraphHopper implements GraphHopperAPI
         else
             algoFactory = new RoutingAlgorithmFactorySimple();
 
+        createLMPreparations();
         if (!isPrepared())
+        {
             prepare();
+            if (hilbertRenumbering)
+                renumber();
+        } else if (algoFactory instanceof PrepareContractionHierarchies)
+        {
+            // avoid that the first edge-based query has to do this
+            ((PrepareContractionHierarchies) algoFactory).initShortcutOrigEdges();
+        }
         initLocationIndex();
+
+        if (speedOverlayEnabled)
+            speedOverlay = new SpeedOverlay(graph).create();
     }
 
     private boolean isPrepared()
@@ -788,19 +1115,133 @@ public class GraphHopper implements GraphHopperAPI
         return "true".equals(graph.getProperties().get("prepare.done"));
     }
 
+    /**
+     * @return true if the shortcuts for the vehicles and weightings are stored in separate layers
+     * over one base graph
+     */
+    protected boolean isCHLayered()
+    {
+        return encodingManager.getVehicleCount() > 1 || getCHWeightings().size() > 1;
+    }
+
+    private List<String> getCHWeightings()
+    {
+        return splitWeightings(chWeighting);
+    }
+
+    private List<String> getLMWeightings()
+    {
+        return splitWeightings(lmWeighting);
+    }
+
+    private static List<String> splitWeightings( String weightings )
+    {
+        List<String> list = new ArrayList<String>();
+        for (String weighting : weightings.split(","))
+        {
+            weighting = weighting.trim().toLowerCase();
+            if (!weighting.isEmpty() && !list.contains(weighting))
+                list.add(weighting);
+        }
+        return list;
+    }
+
     protected RoutingAlgorithmFactory createPrepare()
     {
+        if (isCHLayered())
+            return createLayeredPrepare();
+
         FlagEncoder encoder = encodingManager.getSingle();
-        PrepareContractionHierarchies tmpPrepareCH = new PrepareContractionHierarchies((LevelGraph) graph, encoder,
-                createWeighting(new WeightingMap(chWeighting), encoder), traversalMode);
+        return createCHPreparation((LevelGraph) graph, encoder, getCHWeightings().get(0));
+    }
+
+    private PrepareContractionHierarchies createCHPreparation( LevelGraph levelGraph, FlagEncoder encoder, String weighting )
+    {
+        Weighting tmpWeighting = createWeighting(new WeightingMap(weighting), encoder);
+        // the shortcuts include the turn costs only for vehicles supporting them. The layers cannot
+        // store the loop shortcuts which are necessary for turn restrictions
+        TraversalMode tMode = traversalMode;
+        if (tMode.isEdgeBased() && !chCustomizable)
+        {
+            if (!isCHLayered() && encoder.supports(TurnWeighting.class))
+                tmpWeighting = createTurnWeighting(tmpWeighting, levelGraph, encoder);
+            else
+                tMode = TraversalMode.NODE_BASED;
+        }
+
+        PrepareContractionHierarchies tmpPrepareCH = chCustomizable
+                ? new CustomizableContractionHierarchies(levelGraph, encoder, tmpWeighting, tMode)
+                : new PrepareContractionHierarchies(levelGraph, encoder, tmpWeighting, tMode);
         tmpPrepareCH.setPeriodicUpdates(periodicUpdates).
                 setLazyUpdates(lazyUpdates).
                 setNeighborUpdates(neighborUpdates).
-                setLogMessages(logMessages);
+                setLogMessages(logMessages).
+                setThreads(prepareThreads).
+                setReuseAlgorithms(reuseAlgorithms);
 
         return tmpPrepareCH;
     }
 
+    /**
+     * Creates one shortcut layer and preparation for every combination of vehicle and weighting.
+     * The layers share the base graph.
+     * <p/>
+     * @return the preparation of the first vehicle and weighting
+     */
+    private RoutingAlgorithmFactory createLayeredPrepare()
+    {
+        chLayers.clear();
+        chPreparations.clear();
+        for (FlagEncoder encoder : encodingManager.fetchEdgeEncoders())
+        {
+            for (String weighting : getCHWeightings())
+            {
+                String name = encoder.toString() + "_" + weighting;
+                LevelGraphLayer layer = new LevelGraphLayer(graph, encoder, name);
+                if (!layer.loadExisting())
+                {
+                    if (isPrepared())
+                        throw new IllegalStateException("Cannot load shortcut layer " + name + " from " + ghLocation);
+
+                    layer.create(1000);
+                }
+
+                chLayers.put(name, layer);
+                chPreparations.put(name, createCHPreparation(layer, encoder, weighting));
+            }
+        }
+        return chPreparations.values().iterator().next();
+    }
+
+    /**
+     * Creates one landmark preparation for every combination of vehicle and weighting and loads
+     * the existing landmarks.
+     */
+    private void createLMPreparations()
+    {
+        lmPreparations.clear();
+        if (getLMWeightings().isEmpty())
+            return;
+
+        if (graph instanceof LevelGraph)
+            throw new IllegalStateException("Landmarks need the unchanged base graph, disable contraction hierarchies "
+                    + "or prepare them for several vehicles or weightings");
+
+        for (FlagEncoder encoder : encodingManager.fetchEdgeEncoders())
+        {
+            for (String weighting : getLMWeightings())
+            {
+                String name = encoder.toString() + "_" + weighting;
+                PrepareLandmarks lmPrepare = new PrepareLandmarks(graph, encoder,
+                        createWeighting(new WeightingMap(weighting), encoder), name, landmarks).setThreads(lmThreads);
+                if (!lmPrepare.loadExisting() && isPrepared())
+                    throw new IllegalStateException("Cannot load landmarks " + name + " from " + ghLocation);
+
+                lmPreparations.put(name, lmPrepare);
+            }
+        }
+    }
+
     /**
      * Based on the weightingParameters and the specified vehicle a Weighting instance can be
      * created. Note that all URL parameters are available in the weightingParameters as String if
@@ -826,6 +1267,12 @@ public class GraphHopper implements GraphHopperAPI
                 result = new PriorityWeighting(encoder);
             else
                 result = new FastestWeighting(encoder);
+        } else if ("traffic".equalsIgnoreCase(weighting))
+        {
+            if (speedOverlay == null)
+                throw new IllegalStateException("weighting traffic requires an enabled speed overlay");
+
+            result = new TrafficWeighting(encoder, speedOverlay);
         } else
         {
             throw new UnsupportedOperationException("weighting " + weighting + " not supported");
@@ -833,6 +1280,32 @@ public class GraphHopper implements GraphHopperAPI
         return result;
     }
 
+    /**
+     * Recalculates the shortcuts of a customizable CH preparation for the specified weighting, e.g.
+     * with current traffic speeds. Requests running in the meantime can mix old and new weights.
+     * The change is stored only if the graph is flushed afterwards.
+     * <p>
+     * @param chWeighting the name of the prepared weighting like "fastest", which is used to pick
+     * the shortcut layer if there are several
+     */
+    public void customizeCH( String vehicle, String chWeighting, Weighting weighting )
+    {
+        if (!fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before customizing");
+
+        RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory();
+        if (!chPreparations.isEmpty())
+            tmpAlgoFactory = chPreparations.get(getCHLayerName(encodingManager.getEncoder(vehicle), new WeightingMap(chWeighting)));
+
+        if (!(tmpAlgoFactory instanceof CustomizableContractionHierarchies))
+            throw new IllegalStateException("Customizable CH is not prepared for " + vehicle + " and " + chWeighting);
+
+        ensureWriteAccess();
+        ((CustomizableContractionHierarchies) tmpAlgoFactory).customize(weighting);
+        if (routeCache != null)
+            routeCache.clear();
+    }
+
     /**
      * Potentially wraps the specified weighting into a TurnWeighting instance.
      */
@@ -847,7 +1320,20 @@ public class GraphHopper implements GraphHopperAPI
     public GHResponse route( GHRequest request )
     {
         GHResponse response = new GHResponse();
-        List<Path> paths = getPaths(request, response);
+        List<QueryResult> qResults = lookup(request, response);
+        if (response.hasErrors())
+            return response;
+
+        String cacheKey = null;
+        if (routeCache != null)
+        {
+            cacheKey = routeCache.createKey(request, getVehicle(request), qResults);
+            GHResponse cached = cacheKey == null ? null : routeCache.get(cacheKey);
+            if (cached != null)
+                return cached;
+        }
+
+        List<Path> paths = getPaths(request, response, qResults);
         if (response.hasErrors())
             return response;
 
@@ -857,16 +1343,50 @@ public class GraphHopper implements GraphHopperAPI
         Locale locale = request.getLocale();
         DouglasPeucker peucker = new DouglasPeucker().setMaxDistance(wayPointMaxDistance);
 
-        new PathMerger().
+        PathMerger merger = new PathMerger().
                 setCalcPoints(tmpCalcPoints).
                 setDouglasPeucker(peucker).
                 setEnableInstructions(tmpEnableInstructions).
-                setSimplifyResponse(simplifyResponse && wayPointMaxDistance > 0).
-                doWork(response, paths, trMap.getWithFallBack(locale));
+                setSimplifyResponse(simplifyResponse && wayPointMaxDistance > 0);
+        Translation tr = trMap.getWithFallBack(locale);
+        int legs = request.getPoints().size() - 1;
+        merger.doWork(response, paths.subList(0, legs), tr);
+        // the alternatives of the algorithm alternative_route follow the single leg
+        for (Path path : paths.subList(legs, paths.size()))
+        {
+            GHResponse alternative = new GHResponse();
+            merger.doWork(alternative, Collections.singletonList(path), tr);
+            response.addAlternative(alternative);
+        }
+
+        if (cacheKey != null)
+            routeCache.put(cacheKey, response);
+
         return response;
     }
 
+    private String getVehicle( GHRequest request )
+    {
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty())
+            vehicle = encodingManager.getSingle().toString();
+        return vehicle;
+    }
+
     protected List<Path> getPaths( GHRequest request, GHResponse rsp )
+    {
+        List<QueryResult> qResults = lookup(request, rsp);
+        if (rsp.hasErrors())
+            return Collections.emptyList();
+
+        return getPaths(request, rsp, qResults);
+    }
+
+    /**
+     * Checks the request and finds the closest edges to its points. Problems are added as errors to
+     * the specified response.
+     */
+    protected List<QueryResult> lookup( GHRequest request, GHResponse rsp )
     {
         if (graph == null || !fullyLoaded)
             throw new IllegalStateException("Call load or importOrLoad before routing");
@@ -874,9 +1394,7 @@ public class GraphHopper implements GraphHopperAPI
         if (graph.isClosed())
             throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
 
-        String vehicle = request.getVehicle();
-        if (vehicle.isEmpty())
-            vehicle = encodingManager.getSingle().toString();
+        String vehicle = getVehicle(request);
 
         if (!encodingManager.supports(vehicle))
         {
@@ -885,11 +1403,10 @@ public class GraphHopper implements GraphHopperAPI
             return Collections.emptyList();
         }
 
-        TraversalMode tMode;
         String tModeStr = request.getHints().get("traversal_mode", traversalMode.toString());
         try
         {
-            tMode = TraversalMode.fromString(tModeStr);
+            TraversalMode.fromString(tModeStr);
         } catch (Exception ex)
         {
             rsp.addError(ex);
@@ -903,8 +1420,6 @@ public class GraphHopper implements GraphHopperAPI
             return Collections.emptyList();
         }
 
-        visitedSum.set(0);
-
         FlagEncoder encoder = encodingManager.getEncoder(vehicle);
         EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
 
@@ -923,33 +1438,106 @@ public class GraphHopper implements GraphHopperAPI
         if (rsp.hasErrors())
             return Collections.emptyList();
 
-        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
-        QueryGraph queryGraph = new QueryGraph(graph);
+        if (chEnabled && "traffic".equalsIgnoreCase(request.getHints().getWeighting()))
+        {
+            rsp.addError(new IllegalArgumentException("Weighting traffic is not possible if CH is enabled"));
+            return Collections.emptyList();
+        }
+
+        rsp.setDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        return qResults;
+    }
+
+    /**
+     * Calculates the paths between the specified points which were found via lookup. For the
+     * algorithm alternative_route the path of the single leg is followed by its alternatives.
+     */
+    protected List<Path> getPaths( GHRequest request, GHResponse rsp, List<QueryResult> qResults )
+    {
+        List<GHPoint> points = request.getPoints();
+        String vehicle = getVehicle(request);
+        FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+        TraversalMode tMode = TraversalMode.fromString(request.getHints().get("traversal_mode", traversalMode.toString()));
+        visitedSum.set(0);
+
+        String debug = rsp.getDebugInfo();
+        Graph routingGraph = graph;
+        RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory();
+        String algoStr = request.getAlgorithm().isEmpty() ? AlgorithmOptions.DIJKSTRA_BI : request.getAlgorithm();
+        boolean altRoute = AlgorithmOptions.ALT_ROUTE.equalsIgnoreCase(algoStr);
+        PrepareLandmarks lmPrepare = getLMPreparation(encoder, request.getHints());
+        if (altRoute)
+        {
+            // the plateaus need the complete shortest path trees of the base graph
+            if (graph instanceof LevelGraph)
+            {
+                rsp.addError(new UnsupportedOperationException("Alternative routes are not supported if contraction "
+                        + "hierarchies are enabled for only one vehicle and weighting"));
+                return Collections.emptyList();
+            }
+            if (points.size() != 2 || tMode.isEdgeBased())
+            {
+                rsp.addError(new IllegalArgumentException("Alternative routes need exactly 2 points and node based "
+                        + "traversal but were " + points.size() + " points and " + tMode));
+                return Collections.emptyList();
+            }
+            tmpAlgoFactory = new RoutingAlgorithmFactorySimple();
+        } else if (!chPreparations.isEmpty() && (lmPrepare == null
+                || chPreparations.containsKey(getCHLayerName(encoder, request.getHints()))))
+        {
+            String name = getCHLayerName(encoder, request.getHints());
+            tmpAlgoFactory = chPreparations.get(name);
+            if (tmpAlgoFactory == null)
+            {
+                rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " with weighting " + request.getHints().getWeighting()
+                        + " is not prepared. Prepared are: " + chPreparations.keySet()));
+                return Collections.emptyList();
+            }
+            routingGraph = chLayers.get(name);
+        } else if (lmPrepare != null)
+        {
+            tmpAlgoFactory = lmPrepare;
+            if (request.getAlgorithm().isEmpty())
+                algoStr = AlgorithmOptions.ASTAR_BI;
+        }
+
+        QueryGraph queryGraph = createQueryGraph(routingGraph, qResults.size());
         queryGraph.lookup(qResults);
 
         List<Path> paths = new ArrayList<Path>(points.size() - 1);
         QueryResult fromQResult = qResults.get(0);
         Weighting weighting = createWeighting(request.getHints(), encoder);
+        if (weighting instanceof TrafficWeighting)
+            ((TrafficWeighting) weighting).setQueryGraph(queryGraph);
         weighting = createTurnWeighting(weighting, queryGraph, encoder);
 
         double weightLimit = request.getHints().getDouble("defaultWeightLimit", defaultWeightLimit);
-        String algoStr = request.getAlgorithm().isEmpty() ? AlgorithmOptions.DIJKSTRA_BI : request.getAlgorithm();
         AlgorithmOptions algoOpts = AlgorithmOptions.start().algorithm(algoStr).traversalMode(tMode).flagEncoder(encoder).weighting(weighting).build();
+        algoOpts.getHints().merge(request.getHints());
 
         for (int placeIndex = 1; placeIndex < points.size(); placeIndex++)
         {
             QueryResult toQResult = qResults.get(placeIndex);
-            sw = new StopWatch().start();
-            RoutingAlgorithm algo = getAlgorithmFactory().createAlgo(queryGraph, algoOpts);
+            StopWatch sw = new StopWatch().start();
+            RoutingAlgorithm algo = tmpAlgoFactory.createAlgo(queryGraph, algoOpts);
             algo.setWeightLimit(weightLimit);
             debug += ", algoInit:" + sw.stop().getSeconds() + "s";
 
             sw = new StopWatch().start();
-            Path path = algo.calcPath(fromQResult.getClosestNode(), toQResult.getClosestNode());
+            Path path;
+            if (altRoute)
+            {
+                List<Path> altPaths = ((AlternativeRoute) algo).calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
+                path = altPaths.get(0);
+                paths.addAll(altPaths);
+            } else
+            {
+                path = algo.calcPath(fromQResult.getClosestNode(), toQResult.getClosestNode());
+                paths.add(path);
+            }
             if (path.getMillis() < 0)
                 throw new RuntimeException("Time was negative. Please report as bug and include:" + request);
 
-            paths.add(path);
             debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s, " + path.getDebugInfo();
 
             visitedSum.addAndGet(algo.getVisitedNodes());
@@ -959,13 +1547,263 @@ public class GraphHopper implements GraphHopperAPI
         if (rsp.hasErrors())
             return Collections.emptyList();
 
-        if (points.size() - 1 != paths.size())
+        if (points.size() - 1 != paths.size() && !altRoute)
             throw new RuntimeException("There should be exactly one more places than paths. places:" + points.size() + ", paths:" + paths.size());
 
         rsp.setDebugInfo(debug);
         return paths;
     }
 
+    /**
+     * @return a new QueryGraph or, if enabled via setReuseQueryGraph, the reset instance of the
+     * current thread. Paths calculated on a reused instance are only valid until the next request
+     * of the same thread.
+     */
+    protected QueryGraph createQueryGraph( Graph routingGraph, int points )
+    {
+        if (!reuseQueryGraph)
+            return new QueryGraph(routingGraph, points);
+
+        Map<Graph, QueryGraph> queryGraphs = reusableQueryGraphs.get();
+        if (queryGraphs == null)
+        {
+            queryGraphs = new IdentityHashMap<Graph, QueryGraph>(4);
+            reusableQueryGraphs.set(queryGraphs);
+        }
+
+        QueryGraph queryGraph = queryGraphs.get(routingGraph);
+        if (queryGraph == null)
+        {
+            queryGraph = new QueryGraph(routingGraph, points);
+            queryGraphs.put(routingGraph, queryGraph);
+            return queryGraph;
+        }
+        return queryGraph.reset();
+    }
+
+    /**
+     * @return the landmarks for the weighting of the request or for the weighting of the hint
+     * lm.weighting, null if not prepared
+     */
+    private PrepareLandmarks getLMPreparation( FlagEncoder encoder, WeightingMap hints )
+    {
+        if (lmPreparations.isEmpty())
+            return null;
+
+        String weightingStr = hints.get("lm.weighting", hints.getWeighting()).toLowerCase();
+        if (weightingStr.isEmpty())
+            weightingStr = "fastest";
+
+        return lmPreparations.get(encoder.toString() + "_" + weightingStr);
+    }
+
+    private String getCHLayerName( FlagEncoder encoder, WeightingMap hints )
+    {
+        String weightingStr = hints.getWeighting().toLowerCase();
+        if (weightingStr.isEmpty())
+            weightingStr = getCHWeightings().get(0);
+
+        return encoder.toString() + "_" + weightingStr;
+    }
+
+    /**
+     * Calculates the distances and times from every from point to every to point. With contraction
+     * hierarchies a bucket based algorithm is used which is a lot faster than one route request per
+     * entry.
+     */
+    public GHMatrixResponse calcMatrix( GHMatrixRequest request )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
+
+        if (graph.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
+
+        GHMatrixResponse rsp = new GHMatrixResponse();
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty())
+            vehicle = encodingManager.getSingle().toString();
+
+        if (!encodingManager.supports(vehicle))
+            return rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " unsupported. "
+                    + "Supported are: " + getEncodingManager()));
+
+        List<GHPoint> fromPoints = request.getFromPoints();
+        List<GHPoint> toPoints = request.getToPoints();
+        if (fromPoints.isEmpty() || toPoints.isEmpty())
+            return rsp.addError(new IllegalArgumentException("At least one from and one to point has to be specified"));
+
+        FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+        Graph routingGraph = graph;
+        RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory();
+        if (!chPreparations.isEmpty())
+        {
+            String name = getCHLayerName(encoder, request.getHints());
+            tmpAlgoFactory = chPreparations.get(name);
+            if (tmpAlgoFactory == null)
+                return rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " with weighting " + request.getHints().getWeighting()
+                        + " is not prepared. Prepared are: " + chPreparations.keySet()));
+
+            routingGraph = chLayers.get(name);
+        }
+
+        StopWatch sw = new StopWatch().start();
+        EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
+        List<GHPoint> allPoints = new ArrayList<GHPoint>(fromPoints);
+        allPoints.addAll(toPoints);
+        List<QueryResult> qResults = findClosest(allPoints, edgeFilter);
+        for (int i = 0; i < qResults.size(); i++)
+        {
+            int placeIndex = i < fromPoints.size() ? i : i - fromPoints.size();
+            if (!qResults.get(i).isValid())
+                rsp.addError(new IllegalArgumentException("Cannot find point " + placeIndex + ": " + allPoints.get(i)));
+        }
+
+        if (rsp.hasErrors())
+            return rsp;
+
+        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
+        QueryGraph queryGraph = createQueryGraph(routingGraph, qResults.size());
+        queryGraph.lookup(qResults);
+        int[] sources = new int[fromPoints.size()];
+        for (int i = 0; i < sources.length; i++)
+        {
+            sources[i] = qResults.get(i).getClosestNode();
+        }
+        int[] targets = new int[toPoints.size()];
+        for (int i = 0; i < targets.length; i++)
+        {
+            targets[i] = qResults.get(sources.length + i).getClosestNode();
+        }
+
+        sw = new StopWatch().start();
+        ManyToManyAlgorithm algo;
+        if (tmpAlgoFactory instanceof PrepareContractionHierarchies)
+        {
+            algo = ((PrepareContractionHierarchies) tmpAlgoFactory).createManyToMany(queryGraph);
+        } else
+        {
+            Weighting weighting = createWeighting(request.getHints(), encoder);
+            if (weighting instanceof TrafficWeighting)
+                ((TrafficWeighting) weighting).setQueryGraph(queryGraph);
+            double weightLimit = request.getHints().getDouble("defaultWeightLimit", defaultWeightLimit);
+            algo = new ManyToManyDijkstra(queryGraph, encoder, weighting, traversalMode).setWeightLimit(weightLimit);
+        }
+
+        rsp.setMatrix(algo.calcMatrix(sources, targets));
+        debug += ", " + algo.getName() + ":" + sw.stop().getSeconds() + "s, visited nodes:" + algo.getVisitedNodes();
+        return rsp.setDebugInfo(debug);
+    }
+
+    /**
+     * Calculates the area reachable from the point within the limit of the request on the base
+     * graph, i.e. without contraction hierarchies. The weighting fastest uses the travel time
+     * without the priority of the vehicle. If the shortcuts of a single vehicle and weighting are
+     * stored in the base graph PHAST is used instead, which supports only the prepared weighting.
+     */
+    public GHIsochroneResponse calcIsochrone( GHIsochroneRequest request )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
+
+        if (graph.isClosed())
+            throw new IllegalStateException("You need to create a new GraphHopper instance as it is already closed");
+
+        GHIsochroneResponse rsp = new GHIsochroneResponse();
+        String vehicle = request.getVehicle();
+        if (vehicle.isEmpty())
+            vehicle = encodingManager.getSingle().toString();
+
+        if (!encodingManager.supports(vehicle))
+            return rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " unsupported. "
+                    + "Supported are: " + getEncodingManager()));
+
+        // the base graph of a single vehicle and weighting lacks the edges to lower levels
+        boolean phast = graph instanceof LevelGraph;
+        String weightingStr = request.getWeighting();
+        if (phast && !weightingStr.isEmpty() && !getCHWeightings().get(0).equalsIgnoreCase(weightingStr))
+            return rsp.addError(new IllegalArgumentException("Weighting " + weightingStr + " is not prepared. "
+                    + "Prepared is: " + getCHWeightings().get(0)));
+
+        if (request.getLimit() <= 0 || request.getBuckets() < 1 || request.getCellSize() <= 0)
+            return rsp.addError(new IllegalArgumentException("Limit, buckets and cell size have to be positive: " + request));
+
+        FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+        StopWatch sw = new StopWatch().start();
+        QueryResult qr = locationIndex.findClosest(request.getPoint().lat, request.getPoint().lon, new DefaultEdgeFilter(encoder));
+        if (!qr.isValid())
+            return rsp.addError(new IllegalArgumentException("Cannot find point 0: " + request.getPoint()));
+
+        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
+        QueryGraph queryGraph = createQueryGraph(graph, 1);
+        queryGraph.lookup(Collections.singletonList(qr));
+        Weighting weighting;
+        if (phast)
+            weighting = createWeighting(new WeightingMap(getCHWeightings().get(0)), encoder);
+        else if ("fastest".equalsIgnoreCase(weightingStr) || weightingStr.isEmpty())
+            weighting = new FastestWeighting(encoder);
+        else
+            weighting = createWeighting(request.getHints(), encoder);
+        if (weighting instanceof TrafficWeighting)
+            ((TrafficWeighting) weighting).setQueryGraph(queryGraph);
+
+        sw = new StopWatch().start();
+        Isochrone isochrone = createIsochrone(queryGraph, encoder, weighting);
+        isochrone.setReverse(request.isReverseFlow()).
+                setWeightLimit(request.getLimit());
+        if (phast)
+        {
+            PHAST oneToAll = ((PrepareContractionHierarchies) getAlgorithmFactory()).createPHAST(queryGraph);
+            oneToAll.setReverse(request.isReverseFlow()).
+                    setWeightLimit(request.getLimit()).
+                    calcWeights(qr.getClosestNode());
+            isochrone.setWeights(oneToAll.getWeights());
+            debug += ", phast:" + sw.stop().getSeconds() + "s, visited nodes:" + oneToAll.getVisitedNodes();
+        } else
+        {
+            isochrone.search(qr.getClosestNode());
+            debug += ", isochrone:" + sw.stop().getSeconds() + "s, visited nodes:" + isochrone.getVisitedNodes();
+        }
+
+        sw = new StopWatch().start();
+        double cellSizeLat = request.getCellSize() / (DistanceCalcEarth.R * Math.PI / 180);
+        double cellSizeLon = cellSizeLat / Math.max(0.01, Math.cos(Math.toRadians(request.getPoint().lat)));
+        List<PointList> cells;
+        try
+        {
+            cells = isochrone.calcCells(request.getBuckets(), cellSizeLat, cellSizeLon);
+        } catch (IllegalArgumentException ex)
+        {
+            return rsp.addError(ex);
+        }
+        List<PointList> polygons = new ArrayList<PointList>(cells.size());
+        for (int i = 0; i < cells.size(); i++)
+        {
+            polygons.add(Isochrone.calcHull(cells.subList(0, i + 1), cellSizeLat, cellSizeLon));
+        }
+        debug += ", cells:" + sw.stop().getSeconds() + "s";
+        return rsp.setCells(cells, cellSizeLat, cellSizeLon).setPolygons(polygons).setDebugInfo(debug);
+    }
+
+    /**
+     * @return a new search or, if enabled via setReuseAlgorithms, the reset instance of the current
+     * thread
+     */
+    protected Isochrone createIsochrone( Graph queryGraph, FlagEncoder encoder, Weighting weighting )
+    {
+        if (!reuseAlgorithms)
+            return new Isochrone(queryGraph, encoder, weighting);
+
+        Isochrone isochrone = reusableIsochrones.get();
+        if (isochrone == null)
+        {
+            isochrone = new Isochrone(queryGraph, encoder, weighting);
+            reusableIsochrones.set(isochrone);
+            return isochrone;
+        }
+        return isochrone.reset(queryGraph, encoder, weighting);
+    }
+
     protected LocationIndex createLocationIndex( Directory dir )
     {
         LocationIndex tmpIndex;
@@ -978,6 +1816,7 @@ public class GraphHopper implements GraphHopperAPI
         }
         tmpIndex.setResolution(preciseIndexResolution);
         ((LocationIndexTree) tmpIndex).setMaxRegionSearch(maxRegionSearch);
+        ((LocationIndexTree) tmpIndex).setSortBufferSize(indexSortBufferSize);
 
         if (!tmpIndex.loadExisting())
         {
@@ -1022,21 +1861,100 @@ public class GraphHopper implements GraphHopperAPI
         }
     }
 
+    /**
+     * Fails before the import and preparation for settings which cannot be renumbered afterwards.
+     */
+    private void checkRenumbering()
+    {
+        if (!hilbertRenumbering)
+            return;
+
+        if (chEnabled && (chCustomizable || encodingManager != null && isCHLayered()) || !getLMWeightings().isEmpty())
+            throw new IllegalStateException("Renumbering is not possible with CH layers, customizable CH or landmarks "
+                    + "as they keep references to the old ids");
+
+        if (encodingManager != null && encodingManager.needsTurnCostsSupport())
+            throw new IllegalStateException("Renumbering is not possible with turn costs as they keep references to the old ids");
+    }
+
+    protected void renumber()
+    {
+        checkRenumbering();
+        ensureWriteAccess();
+        new HilbertCurveRenumbering((GraphHopperStorage) graph).renumber();
+    }
+
     protected void prepare()
     {
         boolean tmpPrepare = doPrepare && algoFactory instanceof PrepareContractionHierarchies;
         if (tmpPrepare)
         {
             ensureWriteAccess();
-            if (encodingManager.getVehicleCount() > 1)
-                throw new IllegalArgumentException("Contraction hierarchies preparation "
-                        + "requires (at the moment) only one vehicle. But was:" + encodingManager);
+            if (!chPreparations.isEmpty())
+            {
+                prepareLayers();
+            } else
+            {
+                if (encodingManager.getVehicleCount() > 1)
+                    throw new IllegalArgumentException("Contraction hierarchies preparation "
+                            + "requires (at the moment) only one vehicle. But was:" + encodingManager);
 
-            logger.info("calling prepare.doWork for " + encodingManager.toString() + " ... (" + Helper.getMemInfo() + ")");
-            ((PrepareContractionHierarchies) algoFactory).doWork();
+                logger.info("calling prepare.doWork for " + encodingManager.toString() + " ... (" + Helper.getMemInfo() + ")");
+                ((PrepareContractionHierarchies) algoFactory).doWork();
+            }
             graph.getProperties().put("prepare.date", formatDateTime(new Date()));
         }
         graph.getProperties().put("prepare.done", tmpPrepare);
+
+        for (Map.Entry<String, PrepareLandmarks> entry : lmPreparations.entrySet())
+        {
+            if (entry.getValue().isLoaded())
+                continue;
+
+            ensureWriteAccess();
+            logger.info("calling landmark preparation for " + entry.getKey() + " ... (" + Helper.getMemInfo() + ")");
+            entry.getValue().doWork();
+        }
+    }
+
+    /**
+     * Prepares all shortcut layers in parallel. The base graph is only read.
+     */
+    private void prepareLayers()
+    {
+        logger.info("calling prepare.doWork for " + chPreparations.keySet() + " ... (" + Helper.getMemInfo() + ")");
+        ExecutorService executor = Executors.newFixedThreadPool(chPreparations.size());
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>(chPreparations.size());
+            for (final Map.Entry<String, PrepareContractionHierarchies> entry : chPreparations.entrySet())
+            {
+                futures.add(executor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        entry.getValue().doWork();
+                        logger.info("finished preparation of " + entry.getKey() + ", " + chLayers.get(entry.getKey()));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Preparation of " + chPreparations.keySet() + " was interrupted", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new RuntimeException("Preparation of " + chPreparations.keySet() + " failed", ex.getCause());
+        } finally
+        {
+            executor.shutdown();
+        }
     }
 
     protected void cleanUp()
@@ -1058,6 +1976,14 @@ public class GraphHopper implements GraphHopperAPI
     {
         logger.info("flushing graph " + graph.toString() + ", details:" + graph.toDetailsString() + ", " + Helper.getMemInfo() + ")");
         graph.flush();
+        for (LevelGraphLayer layer : chLayers.values())
+        {
+            layer.flush();
+        }
+        for (PrepareLandmarks lmPrepare : lmPreparations.values())
+        {
+            lmPrepare.getLandmarkStorage().flush();
+        }
         fullyLoaded = true;
     }
 
@@ -1067,9 +1993,48 @@ public class GraphHopper implements GraphHopperAPI
      */
     public void close()
     {
+        if (routeCache != null)
+            routeCache.clear();
+
+        if (preloadThread != null)
+        {
+            // unmapping while the pages are still touched would crash the JVM
+            try
+            {
+                preloadThread.join();
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            preloadThread = null;
+        }
+
+        if (speedOverlay != null)
+            speedOverlay.close();
+
+        // pooled request threads would otherwise keep the reused algorithms and so this graph
+        reusableQueryGraphs.clear();
+        reusableIsochrones.clear();
+        if (algoFactory instanceof PrepareContractionHierarchies)
+            ((PrepareContractionHierarchies) algoFactory).releaseReusableAlgorithms();
+
+        for (PrepareContractionHierarchies prepare : chPreparations.values())
+        {
+            prepare.releaseReusableAlgorithms();
+        }
+
         if (graph != null)
             graph.close();
 
+        for (LevelGraphLayer layer : chLayers.values())
+        {
+            layer.close();
+        }
+        for (PrepareLandmarks lmPrepare : lmPreparations.values())
+        {
+            lmPrepare.getLandmarkStorage().close();
+        }
+
         if (locationIndex != null)
             locationIndex.close();
 
@@ -0,0 +1,255 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.PointList;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Caches route responses for repeated requests. The key is built from the snapped edges of the
+ * points instead of the coordinates, so that requests with nearby coordinates share the same entry.
+ * The start and end of the returned geometry is then the one of the first request. Requests with
+ * several points on the same edge are not cached as the result depends on the order on the edge.
+ * <p/>
+ * The memory is bounded via an estimation of the response size. Least recently used entries are
+ * evicted first and entries older than the time to live are removed on access. Call clear if the
+ * weights change, e.g. after a traffic update.
+ * <p/>
+ * @author Peter Karich
+ */
+public class RouteCache
+{
+    private final Set<String> ignoredHints = new HashSet<String>(Arrays.asList(
+            "callback", "type", "points_encoded", "millis", "timezone", "track", "debug"));
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(64, 0.75f, true);
+    private final long maxBytes;
+    private final long ttlMillis;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes the estimated memory the cached responses are allowed to use
+     * @param ttlMillis the time after which an entry is removed, use a negative value to keep the
+     * entries until they are evicted
+     */
+    public RouteCache( long maxBytes, long ttlMillis )
+    {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes has to be positive but was " + maxBytes);
+
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Hints like the JSONP callback only change the output format and are not used for the key.
+     */
+    public RouteCache setIgnoredHints( String... hints )
+    {
+        ignoredHints.clear();
+        ignoredHints.addAll(Arrays.asList(hints));
+        return this;
+    }
+
+    /**
+     * @param vehicle the vehicle used for routing, which can differ from the one of the request if
+     * it is empty
+     * @param qResults the snapped points of the request
+     * @return the key or null if the request cannot be cached
+     */
+    public String createKey( GHRequest request, String vehicle, List<QueryResult> qResults )
+    {
+        StringBuilder sb = new StringBuilder(64 + qResults.size() * 10);
+        sb.append(vehicle.toLowerCase()).append('|').
+                append(request.getAlgorithm().toLowerCase()).append('|').
+                append(request.getLocale()).append('|');
+        Map<String, String> hints = new TreeMap<String, String>(request.getHints().toMap());
+        for (Map.Entry<String, String> e : hints.entrySet())
+        {
+            if (!ignoredHints.contains(e.getKey()))
+                sb.append(e.getKey()).append('=').append(e.getValue()).append(',');
+        }
+
+        TIntHashSet edges = new TIntHashSet(qResults.size());
+        for (QueryResult res : qResults)
+        {
+            if (res.getSnappedPosition() == QueryResult.Position.TOWER)
+            {
+                sb.append("|n").append(res.getClosestNode());
+                continue;
+            }
+
+            int edge = res.getClosestEdge().getEdge();
+            if (!edges.add(edge))
+                return null;
+
+            sb.append("|e").append(edge);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the cached response or null if not found or expired
+     */
+    public synchronized GHResponse get( String key )
+    {
+        CacheEntry entry = entries.get(key);
+        if (entry != null && isExpired(entry))
+        {
+            remove(key);
+            evictions++;
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.response;
+    }
+
+    /**
+     * Stores the specified response, which must not be changed afterwards as it is shared between
+     * the requests. Responses with errors are ignored.
+     */
+    public synchronized void put( String key, GHResponse rsp )
+    {
+        if (rsp.hasErrors())
+            return;
+
+        long rspBytes = estimateBytes(rsp);
+        if (rspBytes > maxBytes)
+            return;
+
+        remove(key);
+        entries.put(key, new CacheEntry(rsp, rspBytes, now()));
+        bytes += rspBytes;
+
+        Iterator<Map.Entry<String, CacheEntry>> iter = entries.entrySet().iterator();
+        while (bytes > maxBytes && iter.hasNext())
+        {
+            bytes -= iter.next().getValue().bytes;
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    private void remove( String key )
+    {
+        CacheEntry old = entries.remove(key);
+        if (old != null)
+            bytes -= old.bytes;
+    }
+
+    private boolean isExpired( CacheEntry entry )
+    {
+        return ttlMillis >= 0 && now() - entry.created > ttlMillis;
+    }
+
+    /**
+     * Removes all entries, e.g. if the weights or the graph changed. The statistics are kept.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * A rough estimation of the memory used by the response. The points are stored in the point
+     * list and again in the instructions.
+     */
+    protected long estimateBytes( GHResponse rsp )
+    {
+        PointList points = rsp.getPoints();
+        return 500 + 2L * points.getSize() * (points.is3D() ? 24 : 16);
+    }
+
+    protected long now()
+    {
+        return System.currentTimeMillis();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries removed because of the memory limit or the time to live
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    public synchronized int getSize()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "entries:" + entries.size() + ", bytes:" + bytes + ", hits:" + hits + ", misses:" + misses
+                + ", evictions:" + evictions;
+    }
+
+    private static class CacheEntry
+    {
+        final GHResponse response;
+        final long bytes;
+        final long created;
+
+        public CacheEntry( GHResponse response, long bytes, long created )
+        {
+            this.response = response;
+            this.bytes = bytes;
+            this.created = created;
+        }
+    }
+}
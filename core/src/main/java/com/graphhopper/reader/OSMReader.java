@@ -49,6 +49,11 @@ import com.graphhopper.util.shapes.GHPoint;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class parses an OSM xml or pbf file and creates a graph from it. It does so in a two phase
@@ -87,6 +92,9 @@ public class OSMReader implements DataReader
     private final NodeAccess nodeAccess;
     private EncodingManager encodingManager = null;
     private int workerThreads = -1;
+    private int wayThreads = 1;
+    private int wayBatchSize = 10000;
+    private long preprocessWayCounter = 1;
     protected long zeroCounter = 0;
     // Using the correct Map<Long, Integer> is hard. We need a memory efficient and fast solution for big data sets!
     //
@@ -161,11 +169,13 @@ public class OSMReader implements DataReader
     void preProcess( File osmFile )
     {
         OSMInputFile in = null;
+        ParallelWayProcessor wayProcessor = null;
         try
         {
             in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
+            if (wayThreads > 1)
+                wayProcessor = new ParallelWayProcessor(true);
 
-            long tmpWayCounter = 1;
             long tmpRelationCounter = 1;
             OSMElement item;
             while ((item = in.getNext()) != null)
@@ -173,23 +183,17 @@ public class OSMReader implements DataReader
                 if (item.isType(OSMElement.WAY))
                 {
                     final OSMWay way = (OSMWay) item;
-                    boolean valid = filterWay(way);
-                    if (valid)
-                    {
-                        TLongList wayNodes = way.getNodes();
-                        int s = wayNodes.size();
-                        for (int index = 0; index < s; index++)
-                        {
-                            prepareHighwayNode(wayNodes.get(index));
-                        }
+                    if (wayProcessor != null)
+                        wayProcessor.add(way);
+                    else if (filterWay(way))
+                        prepareWay(way);
 
-                        if (++tmpWayCounter % 5000000 == 0)
-                        {
-                            logger.info(nf(tmpWayCounter) + " (preprocess), osmIdMap:" + nf(getNodeMap().getSize()) + " ("
-                                    + getNodeMap().getMemoryUsage() + "MB) " + Helper.getMemInfo());
-                        }
-                    }
+                    continue;
                 }
+
+                if (wayProcessor != null)
+                    wayProcessor.flush();
+
                 if (item.isType(OSMElement.RELATION))
                 {
                     final OSMRelation relation = (OSMRelation) item;
@@ -207,15 +211,40 @@ public class OSMReader implements DataReader
 
                 }
             }
+
+            if (wayProcessor != null)
+                wayProcessor.flush();
         } catch (Exception ex)
         {
             throw new RuntimeException("Problem while parsing file", ex);
         } finally
         {
+            if (wayProcessor != null)
+                wayProcessor.close();
+
             Helper.close(in);
         }
     }
 
+    /**
+     * Counts the occurrences of the nodes of the specified accepted way.
+     */
+    private void prepareWay( OSMWay way )
+    {
+        TLongList wayNodes = way.getNodes();
+        int s = wayNodes.size();
+        for (int index = 0; index < s; index++)
+        {
+            prepareHighwayNode(wayNodes.get(index));
+        }
+
+        if (++preprocessWayCounter % 5000000 == 0)
+        {
+            logger.info(nf(preprocessWayCounter) + " (preprocess), osmIdMap:" + nf(getNodeMap().getSize()) + " ("
+                    + getNodeMap().getMemoryUsage() + "MB) " + Helper.getMemInfo());
+        }
+    }
+
     private void prepareRestrictionRelation( OSMRelation relation )
     {
         OSMTurnRelation turnRelation = createTurnRelation(relation);
@@ -249,16 +278,24 @@ public class OSMReader implements DataReader
      * @return true the current xml entry is a way entry and has nodes
      */
     boolean filterWay( OSMWay item )
+    {
+        return acceptWay(item) > 0;
+    }
+
+    /**
+     * @return the flags of the encoders accepting the specified way or 0 if no encoder accepts it
+     */
+    private long acceptWay( OSMWay way )
     {
         // ignore broken geometry
-        if (item.getNodes().size() < 2)
-            return false;
+        if (way.getNodes().size() < 2)
+            return 0;
 
         // ignore multipolygon geometry
-        if (!item.hasTags())
-            return false;
+        if (!way.hasTags())
+            return 0;
 
-        return encodingManager.acceptWay(item) > 0;
+        return encodingManager.acceptWay(way);
     }
 
     /**
@@ -273,14 +310,21 @@ public class OSMReader implements DataReader
         long relationStart = -1;
         long counter = 1;
         OSMInputFile in = null;
+        ParallelWayProcessor wayProcessor = null;
         try
         {
             in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
             LongIntMap nodeFilter = getNodeMap();
+            if (wayThreads > 1)
+                wayProcessor = new ParallelWayProcessor(false);
 
             OSMElement item;
             while ((item = in.getNext()) != null)
             {
+                // the edges of all previous ways have to exist before nodes or relations are processed
+                if (wayProcessor != null && !item.isType(OSMElement.WAY))
+                    wayProcessor.flush();
+
                 switch (item.getType())
                 {
                     case OSMElement.NODE:
@@ -296,7 +340,10 @@ public class OSMReader implements DataReader
                             logger.info(nf(counter) + ", now parsing ways");
                             wayStart = counter;
                         }
-                        processWay((OSMWay) item);
+                        if (wayProcessor != null)
+                            wayProcessor.add((OSMWay) item);
+                        else
+                            processWay((OSMWay) item);
                         break;
                     case OSMElement.RELATION:
                         if (relationStart < 0)
@@ -313,12 +360,18 @@ public class OSMReader implements DataReader
                 }
             }
 
+            if (wayProcessor != null)
+                wayProcessor.flush();
+
             // logger.info("storage nodes:" + storage.nodes() + " vs. graph nodes:" + storage.getGraph().nodes());
         } catch (Exception ex)
         {
             throw new RuntimeException("Couldn't process file " + osmFile + ", error: " + ex.getMessage(), ex);
         } finally
         {
+            if (wayProcessor != null)
+                wayProcessor.close();
+
             Helper.close(in);
         }
 
@@ -332,21 +385,24 @@ public class OSMReader implements DataReader
      */
     void processWay( OSMWay way )
     {
-        if (way.getNodes().size() < 2)
-            return;
-
-        // ignore multipolygon geometry
-        if (!way.hasTags())
-            return;
-
-        long wayOsmId = way.getId();
-
-        long includeWay = encodingManager.acceptWay(way);
+        long includeWay = acceptWay(way);
         if (includeWay == 0)
             return;
 
         long relationFlags = getRelFlagsMap().get(way.getId());
+        setEstimatedTags(way);
+        long wayFlags = encodingManager.handleWayTags(way, includeWay, relationFlags);
+        if (wayFlags == 0)
+            return;
 
+        addWay(way, wayFlags);
+    }
+
+    /**
+     * Estimates the length and center of the way from its first and last node.
+     */
+    private void setEstimatedTags( OSMWay way )
+    {
         // TODO move this after we have created the edge and know the coordinates => encodingManager.applyWayTags
         // estimate length of the track e.g. for ferry speed calculation
         TLongList osmNodeIds = way.getNodes();
@@ -363,11 +419,15 @@ public class OSMReader implements DataReader
                 way.setTag("estimated_center", new GHPoint((firstLat + lastLat) / 2, (firstLon + lastLon) / 2));
             }
         }
+    }
 
-        long wayFlags = encodingManager.handleWayTags(way, includeWay, relationFlags);
-        if (wayFlags == 0)
-            return;
-
+    /**
+     * Creates the edges for the way with the already encoded flags.
+     */
+    private void addWay( OSMWay way, long wayFlags )
+    {
+        long wayOsmId = way.getId();
+        TLongList osmNodeIds = way.getNodes();
         List<EdgeIteratorState> createdEdges = new ArrayList<EdgeIteratorState>();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -435,6 +495,138 @@ public class OSMReader implements DataReader
         }
     }
 
+    /**
+     * Spreads the tag parsing and flag encoding of batches of ways over several threads. The node
+     * lookups and the creation of nodes and edges stay on the reading thread and happen in the
+     * original order of the ways, so the resulting graph is identical to the one of a single
+     * threaded import.
+     */
+    class ParallelWayProcessor
+    {
+        private final ExecutorService executorService = Executors.newFixedThreadPool(wayThreads);
+        private final List<OSMWay> ways = new ArrayList<OSMWay>(wayBatchSize);
+        private final boolean preprocess;
+
+        /**
+         * @param preprocess if true the ways are only filtered and their nodes counted
+         */
+        public ParallelWayProcessor( boolean preprocess )
+        {
+            this.preprocess = preprocess;
+        }
+
+        void add( OSMWay way )
+        {
+            ways.add(way);
+            if (ways.size() >= wayBatchSize)
+                flush();
+        }
+
+        void flush()
+        {
+            final int size = ways.size();
+            if (size == 0)
+                return;
+
+            final long[] includeWays = new long[size];
+            runParallel(new WayTask()
+            {
+                @Override
+                void process( int index )
+                {
+                    includeWays[index] = acceptWay(ways.get(index));
+                }
+            });
+
+            if (preprocess)
+            {
+                for (int i = 0; i < size; i++)
+                {
+                    if (includeWays[i] > 0)
+                        prepareWay(ways.get(i));
+                }
+                ways.clear();
+                return;
+            }
+
+            final long[] relationFlags = new long[size];
+            for (int i = 0; i < size; i++)
+            {
+                if (includeWays[i] != 0)
+                {
+                    OSMWay way = ways.get(i);
+                    relationFlags[i] = getRelFlagsMap().get(way.getId());
+                    setEstimatedTags(way);
+                }
+            }
+
+            final long[] wayFlags = new long[size];
+            runParallel(new WayTask()
+            {
+                @Override
+                void process( int index )
+                {
+                    if (includeWays[index] != 0)
+                        wayFlags[index] = encodingManager.handleWayTags(ways.get(index), includeWays[index], relationFlags[index]);
+                }
+            });
+
+            for (int i = 0; i < size; i++)
+            {
+                if (wayFlags[i] != 0)
+                    addWay(ways.get(i), wayFlags[i]);
+            }
+            ways.clear();
+        }
+
+        private void runParallel( final WayTask task )
+        {
+            final int size = ways.size();
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(wayThreads);
+            for (int t = 0; t < wayThreads && t < size; t++)
+            {
+                final int threadIndex = t;
+                tasks.add(new Callable<Object>()
+                {
+                    @Override
+                    public Object call()
+                    {
+                        for (int i = threadIndex; i < size; i += wayThreads)
+                        {
+                            task.process(i);
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            try
+            {
+                for (Future<Object> future : executorService.invokeAll(tasks))
+                {
+                    future.get();
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Processing of ways was interrupted", ex);
+            } catch (ExecutionException ex)
+            {
+                throw new RuntimeException("Processing of ways failed", ex.getCause());
+            }
+        }
+
+        void close()
+        {
+            executorService.shutdown();
+        }
+    }
+
+    private static abstract class WayTask
+    {
+        abstract void process( int index );
+    }
+
     public void processRelation( OSMRelation relation ) throws XMLStreamException
     {
         if (relation.hasTag("type", "restriction"))
@@ -977,6 +1169,28 @@ public class OSMReader implements DataReader
         return this;
     }
 
+    /**
+     * Specifies how many threads parse the tags and encode the flags of the ways. The edges are
+     * still created by the reading thread in the original order. Default is 1.
+     */
+    public OSMReader setWayThreads( int wayThreads )
+    {
+        if (wayThreads < 1)
+            throw new IllegalArgumentException("at least one thread is necessary for the ways");
+
+        this.wayThreads = wayThreads;
+        return this;
+    }
+
+    /**
+     * Specifies how many ways are collected before they are processed in parallel.
+     */
+    OSMReader setWayBatchSize( int wayBatchSize )
+    {
+        this.wayBatchSize = wayBatchSize;
+        return this;
+    }
+
     public OSMReader setElevationProvider( ElevationProvider eleProvider )
     {
         if (eleProvider == null)
@@ -69,11 +69,41 @@ public class AStarBidirection extends AbstractBidirAlgo
         super(graph, encoder, weighting, tMode);
         int nodes = Math.max(20, graph.getNodes());
         initCollections(nodes);
+        initDefaultApproximation();
+    }
+
+    private void initDefaultApproximation()
+    {
         BeelineWeightApproximator defaultApprox = new BeelineWeightApproximator(nodeAccess, weighting);
         defaultApprox.setDistanceCalc(new DistancePlaneProjection());
         setApproximation(defaultApprox);
     }
 
+    /**
+     * Clears the collections and sets the default approximation for the new graph. A custom
+     * approximation has to be set again after this call.
+     */
+    @Override
+    public void reset( Graph graph )
+    {
+        super.reset(graph);
+        if (bestWeightMapFrom.size() + bestWeightMapTo.size() > MAX_CLEAR_SIZE)
+        {
+            initCollections(Math.max(20, graph.getNodes()));
+        } else
+        {
+            prioQueueOpenSetFrom.clear();
+            bestWeightMapFrom.clear();
+            prioQueueOpenSetTo.clear();
+            bestWeightMapTo.clear();
+        }
+        bestWeightMapOther = null;
+        currFrom = null;
+        currTo = null;
+        bestPath = null;
+        initDefaultApproximation();
+    }
+
     protected void initCollections( int size )
     {
         prioQueueOpenSetFrom = new PriorityQueue<AStarEdge>(size / 10);
@@ -298,6 +328,16 @@ public class AStarBidirection extends AbstractBidirAlgo
         }
     }
 
+    TIntObjectMap<AStarEdge> getBestFromMap()
+    {
+        return bestWeightMapFrom;
+    }
+
+    TIntObjectMap<AStarEdge> getBestToMap()
+    {
+        return bestWeightMapTo;
+    }
+
     @Override
     public String getName()
     {
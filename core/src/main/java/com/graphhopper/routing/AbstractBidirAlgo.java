@@ -29,6 +29,12 @@ import com.graphhopper.storage.Graph;
  */
 public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm
 {
+    /**
+     * The collections of a reused instance never shrink, so clearing a hash map costs O(capacity)
+     * and the arrays keep the memory of the largest search. Collections which held more entries
+     * than this are allocated again in reset.
+     */
+    protected static final int MAX_CLEAR_SIZE = 10000;
     int visitedCountFrom;
     int visitedCountTo;
     protected boolean finishedFrom;
@@ -53,6 +59,21 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm
         super(graph, encoder, weighting, tMode);
     }
 
+    /**
+     * Makes this instance reusable for another calcPath call without allocating new collections,
+     * e.g. for every request of a thread. Only collections grown beyond MAX_CLEAR_SIZE are allocated
+     * again.
+     */
+    @Override
+    public void reset( Graph graph )
+    {
+        super.reset(graph);
+        visitedCountFrom = 0;
+        visitedCountTo = 0;
+        finishedFrom = false;
+        finishedTo = false;
+    }
+
     @Override
     public Path calcPath( int from, int to )
     {
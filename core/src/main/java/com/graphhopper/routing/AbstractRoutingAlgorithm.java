@@ -31,7 +31,7 @@ import com.graphhopper.util.EdgeIteratorState;
 public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm
 {
     private EdgeFilter additionalEdgeFilter;
-    protected final Graph graph;
+    protected Graph graph;
     protected NodeAccess nodeAccess;
     protected EdgeExplorer inEdgeExplorer;
     protected EdgeExplorer outEdgeExplorer;
@@ -52,12 +52,29 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm
         this.weighting = weighting;
         this.flagEncoder = encoder;
         this.traversalMode = traversalMode;
+        initGraph(graph);
+    }
+
+    private void initGraph( Graph graph )
+    {
         this.graph = graph;
         this.nodeAccess = graph.getNodeAccess();
         outEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(flagEncoder, false, true));
         inEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(flagEncoder, true, false));
     }
 
+    /**
+     * Prepares this instance for another calcPath call on the specified graph, e.g. a new QueryGraph
+     * of the same base graph. Subclasses supporting this clear their data structures instead of
+     * reallocating them. The weighting, the encoder and the edge filter are kept.
+     */
+    protected void reset( Graph graph )
+    {
+        initGraph(graph);
+        weightLimit = Double.MAX_VALUE;
+        alreadyRun = false;
+    }
+
     @Override
     public void setWeightLimit( double weight )
     {
@@ -55,6 +55,10 @@ public class AlgorithmOptions
      * Bidirectional A*
      */
     public static final String ASTAR_BI = "astarbi";
+    /**
+     * The best path and alternatives via the plateau method, see AlternativeRoute
+     */
+    public static final String ALT_ROUTE = "alternative_route";
     private String algorithm = DIJKSTRA_BI;
     private Weighting weighting;
     private TraversalMode traversalMode = TraversalMode.NODE_BASED;
@@ -0,0 +1,331 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.EdgeEntry;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.procedure.TIntObjectProcedure;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Calculates the best path and alternatives to it via the plateau method: one bidirectional search
+ * continues after the meeting point until the sum of both frontiers reaches maxWeightFactor times
+ * the best weight. A plateau is a chain of edges which is contained in the forward and in the
+ * backward shortest path tree. The forward path to a plateau, the plateau and the backward path
+ * from it form a route which is locally optimal along the plateau. Routes which are too long or
+ * share too much with an already accepted route are skipped.
+ * <p/>
+ * As both trees are reused the costs for all alternatives are about maxWeightFactor^2 times the
+ * costs of one query. Only node based traversal is supported.
+ * <p/>
+ * @author Peter Karich
+ */
+public class AlternativeRoute implements RoutingAlgorithm
+{
+    private final Graph graph;
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private final TraversalMode traversalMode;
+    private final String algorithm;
+    private double weightLimit = Double.MAX_VALUE;
+    private int maxPaths = 3;
+    private double maxWeightFactor = 1.4;
+    private double maxShareFactor = 0.6;
+    private double minPlateauFactor = 0.05;
+    private int visitedNodes;
+    private boolean alreadyRun;
+
+    /**
+     * @param algorithm the bidirectional search, AlgorithmOptions.DIJKSTRA_BI or ASTAR_BI
+     */
+    public AlternativeRoute( Graph graph, FlagEncoder encoder, Weighting weighting, TraversalMode traversalMode,
+            String algorithm )
+    {
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("Alternative routes do not support " + traversalMode);
+
+        if (!AlgorithmOptions.DIJKSTRA_BI.equals(algorithm) && !AlgorithmOptions.ASTAR_BI.equals(algorithm))
+            throw new IllegalArgumentException("Alternative routes need " + AlgorithmOptions.DIJKSTRA_BI
+                    + " or " + AlgorithmOptions.ASTAR_BI + " but was " + algorithm);
+
+        this.graph = graph;
+        this.encoder = encoder;
+        this.weighting = weighting;
+        this.traversalMode = traversalMode;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * The maximum number of returned paths including the best path. Default is 3.
+     */
+    public AlternativeRoute setMaxPaths( int maxPaths )
+    {
+        this.maxPaths = maxPaths;
+        return this;
+    }
+
+    /**
+     * An alternative can have at most this factor times the weight of the best path. This also
+     * limits the exploration of the search. Default is 1.4.
+     */
+    public AlternativeRoute setMaxWeightFactor( double maxWeightFactor )
+    {
+        if (maxWeightFactor < 1)
+            throw new IllegalArgumentException("The weight factor has to be at least 1 but was " + maxWeightFactor);
+
+        this.maxWeightFactor = maxWeightFactor;
+        return this;
+    }
+
+    /**
+     * An alternative can share at most this fraction of its distance with every accepted path.
+     * Default is 0.6.
+     */
+    public AlternativeRoute setMaxShareFactor( double maxShareFactor )
+    {
+        this.maxShareFactor = maxShareFactor;
+        return this;
+    }
+
+    /**
+     * The plateau of an alternative must have at least this factor times the weight of the best
+     * path. Default is 0.05.
+     */
+    public AlternativeRoute setMinPlateauFactor( double minPlateauFactor )
+    {
+        this.minPlateauFactor = minPlateauFactor;
+        return this;
+    }
+
+    @Override
+    public void setWeightLimit( double weightLimit )
+    {
+        this.weightLimit = weightLimit;
+    }
+
+    /**
+     * @return the best path
+     */
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        return calcPaths(from, to).get(0);
+    }
+
+    /**
+     * @return the best path followed by up to maxPaths - 1 alternatives, ordered by their plateau.
+     * If no path was found the list contains only the not found path.
+     */
+    public List<Path> calcPaths( int from, int to )
+    {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+
+        alreadyRun = true;
+        final TIntObjectMap<? extends EdgeEntry> fromMap;
+        final TIntObjectMap<? extends EdgeEntry> toMap;
+        Path best;
+        if (AlgorithmOptions.ASTAR_BI.equals(algorithm))
+        {
+            AStarBidirection astarBi = new AStarBidirection(graph, encoder, weighting, traversalMode)
+            {
+                @Override
+                protected boolean finished()
+                {
+                    if (finishedFrom || finishedTo)
+                        return true;
+
+                    return currFrom.weight + currTo.weight >= maxWeightFactor * bestPath.getWeight();
+                }
+            };
+            astarBi.setWeightLimit(weightLimit);
+            best = astarBi.calcPath(from, to);
+            fromMap = astarBi.getBestFromMap();
+            toMap = astarBi.getBestToMap();
+            visitedNodes = astarBi.getVisitedNodes();
+        } else
+        {
+            DijkstraBidirectionRef dijkstraBi = new DijkstraBidirectionRef(graph, encoder, weighting, traversalMode)
+            {
+                @Override
+                public boolean finished()
+                {
+                    if (finishedFrom || finishedTo)
+                        return true;
+
+                    return currFrom.weight + currTo.weight >= maxWeightFactor * bestPath.getWeight();
+                }
+            };
+            dijkstraBi.setWeightLimit(weightLimit);
+            best = dijkstraBi.calcPath(from, to);
+            fromMap = dijkstraBi.getBestFromMap();
+            toMap = dijkstraBi.getBestToMap();
+            visitedNodes = dijkstraBi.getVisitedNodes();
+        }
+
+        List<Path> paths = new ArrayList<Path>(maxPaths);
+        paths.add(best);
+        if (!best.isFound() || maxPaths < 2)
+            return paths;
+
+        final double bestWeight = best.getWeight();
+        final List<Plateau> plateaus = new ArrayList<Plateau>();
+        fromMap.forEachEntry(new TIntObjectProcedure<EdgeEntry>()
+        {
+            @Override
+            public boolean execute( int node, EdgeEntry fromEntry )
+            {
+                EdgeEntry toEntry = toMap.get(node);
+                if (toEntry == null)
+                    return true;
+
+                double weight = getWeight(fromEntry) + getWeight(toEntry);
+                if (weight > maxWeightFactor * bestWeight)
+                    return true;
+
+                // only the start of a plateau, i.e. the tree edge to the parent is not in the other tree
+                if (fromEntry.parent != null)
+                {
+                    EdgeEntry toParent = toMap.get(fromEntry.parent.adjNode);
+                    if (toParent != null && toParent.edge == fromEntry.edge)
+                        return true;
+                }
+
+                EdgeEntry end = fromEntry;
+                EdgeEntry toEnd = toEntry;
+                while (toEnd.parent != null)
+                {
+                    EdgeEntry next = fromMap.get(toEnd.parent.adjNode);
+                    if (next == null || next.edge != toEnd.edge)
+                        break;
+
+                    end = next;
+                    toEnd = toEnd.parent;
+                }
+
+                double plateauWeight = getWeight(end) - getWeight(fromEntry);
+                if (plateauWeight >= minPlateauFactor * bestWeight)
+                    plateaus.add(new Plateau(fromEntry, toEntry, weight, plateauWeight));
+                return true;
+            }
+        });
+
+        // prefer routes with a large part on the plateau, the rest is only a detour to reach it
+        Collections.sort(plateaus, new Comparator<Plateau>()
+        {
+            @Override
+            public int compare( Plateau o1, Plateau o2 )
+            {
+                return Double.compare(o1.weight - o1.plateauWeight, o2.weight - o2.plateauWeight);
+            }
+        });
+
+        List<TIntHashSet> acceptedEdges = new ArrayList<TIntHashSet>(maxPaths);
+        acceptedEdges.add(getEdgeIds(best.calcEdges()));
+        for (Plateau plateau : plateaus)
+        {
+            if (paths.size() >= maxPaths)
+                break;
+
+            Path path = new PathBidirRef(graph, encoder).
+                    setEdgeEntryTo(plateau.toEntry).
+                    setEdgeEntry(plateau.fromEntry).
+                    setWeight(plateau.weight).
+                    extract();
+            List<EdgeIteratorState> edges = path.calcEdges();
+            if (isSharingTooMuch(edges, path.getDistance(), acceptedEdges))
+                continue;
+
+            paths.add(path);
+            acceptedEdges.add(getEdgeIds(edges));
+        }
+        return paths;
+    }
+
+    private boolean isSharingTooMuch( List<EdgeIteratorState> edges, double distance, List<TIntHashSet> acceptedEdges )
+    {
+        for (TIntHashSet accepted : acceptedEdges)
+        {
+            double shared = 0;
+            for (EdgeIteratorState edge : edges)
+            {
+                if (accepted.contains(edge.getEdge()))
+                    shared += edge.getDistance();
+            }
+            if (shared > maxShareFactor * distance)
+                return true;
+        }
+        return false;
+    }
+
+    private static TIntHashSet getEdgeIds( List<EdgeIteratorState> edges )
+    {
+        TIntHashSet set = new TIntHashSet(edges.size());
+        for (EdgeIteratorState edge : edges)
+        {
+            set.add(edge.getEdge());
+        }
+        return set;
+    }
+
+    private static double getWeight( EdgeEntry entry )
+    {
+        // for A* the weight includes the approximation to the goal
+        if (entry instanceof AStar.AStarEdge)
+            return ((AStar.AStarEdge) entry).weightOfVisitedPath;
+
+        return entry.weight;
+    }
+
+    @Override
+    public String getName()
+    {
+        return AlgorithmOptions.ALT_ROUTE;
+    }
+
+    @Override
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    private static class Plateau
+    {
+        final EdgeEntry fromEntry;
+        final EdgeEntry toEntry;
+        final double weight;
+        final double plateauWeight;
+
+        public Plateau( EdgeEntry fromEntry, EdgeEntry toEntry, double weight, double plateauWeight )
+        {
+            this.fromEntry = fromEntry;
+            this.toEntry = toEntry;
+            this.weight = weight;
+            this.plateauWeight = plateauWeight;
+        }
+    }
+}
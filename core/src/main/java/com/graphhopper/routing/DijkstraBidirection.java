@@ -0,0 +1,286 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.ShortestPathTree;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Calculates the best path in a bidirectional way like DijkstraBidirectionRef, but stores the
+ * shortest-path-trees in flat arrays (ShortestPathTree) and uses a primitive heap. This avoids one
+ * object per visited node, and reset takes constant time if the last search was not larger than
+ * MAX_CLEAR_SIZE. A heap entry is not updated in place: a better weight inserts it again and the
+ * outdated entry is skipped when polled.
+ * <p/>
+ * This is the 'dijkstrabi' algorithm, also for node based CH. DijkstraBidirectionRef remains for
+ * the users of its EdgeEntry maps, i.e. alternative routes and the edge based CH query.
+ * <p/>
+ * @see DijkstraBidirectionRef
+ * @author Peter Karich
+ */
+public class DijkstraBidirection extends AbstractBidirAlgo
+{
+    private ShortestPathTree treeFrom;
+    private ShortestPathTree treeTo;
+    private IntDoubleBinHeap openSetFrom;
+    private IntDoubleBinHeap openSetTo;
+    private int currFrom = ShortestPathTree.NO_PARENT;
+    private int currTo = ShortestPathTree.NO_PARENT;
+    private int bestFrom = ShortestPathTree.NO_PARENT;
+    private int bestTo = ShortestPathTree.NO_PARENT;
+    private double bestWeight = Double.MAX_VALUE;
+    protected PathBidirRef bestPath;
+
+    public DijkstraBidirection( Graph graph, FlagEncoder encoder, Weighting weighting, TraversalMode tMode )
+    {
+        super(graph, encoder, weighting, tMode);
+        initCollections(1000);
+    }
+
+    protected void initCollections( int size )
+    {
+        treeFrom = new ShortestPathTree(size);
+        treeTo = new ShortestPathTree(size);
+        openSetFrom = new IntDoubleBinHeap(size);
+        openSetTo = new IntDoubleBinHeap(size);
+    }
+
+    @Override
+    public void reset( Graph graph )
+    {
+        super.reset(graph);
+        if (treeFrom.size() + treeTo.size() > MAX_CLEAR_SIZE)
+        {
+            initCollections(1000);
+        } else
+        {
+            treeFrom.clear();
+            treeTo.clear();
+            openSetFrom.clear();
+            openSetTo.clear();
+        }
+        currFrom = ShortestPathTree.NO_PARENT;
+        currTo = ShortestPathTree.NO_PARENT;
+        bestFrom = ShortestPathTree.NO_PARENT;
+        bestTo = ShortestPathTree.NO_PARENT;
+        bestWeight = Double.MAX_VALUE;
+        bestPath = null;
+    }
+
+    @Override
+    void initFrom( int from, double dist )
+    {
+        currFrom = treeFrom.add(traversalMode.isEdgeBased() ? -1 : from, EdgeIterator.NO_EDGE, from, dist, ShortestPathTree.NO_PARENT);
+        openSetFrom.insert_(dist, currFrom);
+    }
+
+    @Override
+    void initTo( int to, double dist )
+    {
+        currTo = treeTo.add(traversalMode.isEdgeBased() ? -1 : to, EdgeIterator.NO_EDGE, to, dist, ShortestPathTree.NO_PARENT);
+        openSetTo.insert_(dist, currTo);
+        if (currFrom != ShortestPathTree.NO_PARENT && treeFrom.getAdjNode(currFrom) == to)
+        {
+            // special case of identical start and end
+            bestFrom = currFrom;
+            bestTo = currTo;
+            bestWeight = treeFrom.getWeight(currFrom) + dist;
+            if (traversalMode.isEdgeBased())
+            {
+                finishedFrom = true;
+                finishedTo = true;
+            }
+        }
+    }
+
+    @Override
+    protected Path createAndInitPath()
+    {
+        bestPath = new PathBidirRef(graph, flagEncoder);
+        return bestPath;
+    }
+
+    @Override
+    protected Path extractPath()
+    {
+        if (isWeightLimitReached() || bestFrom == ShortestPathTree.NO_PARENT)
+            return bestPath;
+
+        bestPath.setEdgeEntry(treeFrom.createEdgeEntry(bestFrom));
+        bestPath.setEdgeEntryTo(treeTo.createEdgeEntry(bestTo));
+        bestPath.setWeight(bestWeight);
+        return bestPath.extract();
+    }
+
+    @Override
+    void checkState( int fromBase, int fromAdj, int toBase, int toAdj )
+    {
+        if (treeFrom.isEmpty() || treeTo.isEmpty())
+            throw new IllegalStateException("Either 'from'-edge or 'to'-edge is inaccessible. From:" + treeFrom + ", to:" + treeTo);
+    }
+
+    @Override
+    boolean fillEdgesFrom()
+    {
+        int visitId = pollValid(openSetFrom, treeFrom);
+        if (visitId == ShortestPathTree.NO_PARENT)
+            return false;
+
+        currFrom = visitId;
+        fillEdges(currFrom, treeFrom, openSetFrom, treeTo, outEdgeExplorer, false);
+        visitedCountFrom++;
+        return true;
+    }
+
+    @Override
+    boolean fillEdgesTo()
+    {
+        int visitId = pollValid(openSetTo, treeTo);
+        if (visitId == ShortestPathTree.NO_PARENT)
+            return false;
+
+        currTo = visitId;
+        fillEdges(currTo, treeTo, openSetTo, treeFrom, inEdgeExplorer, true);
+        visitedCountTo++;
+        return true;
+    }
+
+    /**
+     * Skips the outdated heap entries, i.e. the ones where a better weight was found after their
+     * insertion.
+     */
+    private int pollValid( IntDoubleBinHeap heap, ShortestPathTree tree )
+    {
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int visitId = heap.poll_element();
+            if (key <= (float) tree.getWeight(visitId))
+                return visitId;
+        }
+        return ShortestPathTree.NO_PARENT;
+    }
+
+    @Override
+    protected boolean finished()
+    {
+        if (finishedFrom || finishedTo)
+            return true;
+
+        return treeFrom.getWeight(currFrom) + treeTo.getWeight(currTo) >= bestWeight;
+    }
+
+    protected double getCurrFromWeight()
+    {
+        return treeFrom.getWeight(currFrom);
+    }
+
+    protected double getCurrToWeight()
+    {
+        return treeTo.getWeight(currTo);
+    }
+
+    protected double getBestWeight()
+    {
+        return bestWeight;
+    }
+
+    @Override
+    protected boolean isWeightLimitReached()
+    {
+        return treeFrom.getWeight(currFrom) + treeTo.getWeight(currTo) >= weightLimit;
+    }
+
+    private void fillEdges( int currVisit, ShortestPathTree tree, IntDoubleBinHeap heap,
+            ShortestPathTree otherTree, EdgeExplorer explorer, boolean reverse )
+    {
+        int currEdge = tree.getEdge(currVisit);
+        double currWeight = tree.getWeight(currVisit);
+        EdgeIterator iter = explorer.setBaseNode(tree.getAdjNode(currVisit));
+        while (iter.next())
+        {
+            if (!accept(iter, currEdge))
+                continue;
+
+            int traversalId = traversalMode.createTraversalId(iter, reverse);
+            double tmpWeight = weighting.calcWeight(iter, reverse, currEdge) + currWeight;
+            if (Double.isInfinite(tmpWeight))
+                continue;
+
+            int visitId = tree.getVisitId(traversalId);
+            if (visitId < 0)
+            {
+                visitId = tree.add(traversalId, iter.getEdge(), iter.getAdjNode(), tmpWeight, currVisit);
+            } else if (tree.getWeight(visitId) > tmpWeight)
+            {
+                tree.set(visitId, iter.getEdge(), tmpWeight, currVisit);
+            } else
+                continue;
+
+            heap.insert_(tmpWeight, visitId);
+            updateBestPath(iter, visitId, traversalId, tree, otherTree, reverse);
+        }
+    }
+
+    private void updateBestPath( EdgeIteratorState edgeState, int visitId, int traversalId,
+            ShortestPathTree tree, ShortestPathTree otherTree, boolean reverse )
+    {
+        int otherId = otherTree.getVisitId(traversalId);
+        if (otherId < 0)
+            return;
+
+        double newWeight = tree.getWeight(visitId) + otherTree.getWeight(otherId);
+        if (traversalMode.isEdgeBased())
+        {
+            if (otherTree.getEdge(otherId) != tree.getEdge(visitId))
+                throw new IllegalStateException("cannot happen for edge based execution of " + getName());
+
+            if (otherTree.getAdjNode(otherId) != tree.getAdjNode(visitId))
+            {
+                // prevents the path to contain the edge at the meeting point twice and subtract the weight (excluding turn weight => no previous edge)
+                visitId = tree.getParent(visitId);
+                newWeight -= weighting.calcWeight(edgeState, reverse, EdgeIterator.NO_EDGE);
+            } else
+            {
+                // we detected a u-turn at meeting point, skip if not supported
+                if (!traversalMode.hasUTurnSupport())
+                    return;
+            }
+        }
+
+        if (newWeight < bestWeight)
+        {
+            bestWeight = newWeight;
+            bestFrom = reverse ? otherId : visitId;
+            bestTo = reverse ? visitId : otherId;
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return AlgorithmOptions.DIJKSTRA_BI;
+    }
+}
@@ -67,6 +67,20 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
         bestWeightMapTo = new TIntObjectHashMap<EdgeEntry>(nodes / 10);
     }
 
+    @Override
+    public void reset( Graph graph )
+    {
+        super.reset(graph);
+        openSetFrom.clear();
+        bestWeightMapFrom.clear();
+        openSetTo.clear();
+        bestWeightMapTo.clear();
+        bestWeightMapOther = null;
+        currFrom = null;
+        currTo = null;
+        bestPath = null;
+    }
+
     @Override
     public void initFrom( int from, double dist )
     {
@@ -0,0 +1,367 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.*;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Calculates everything reachable from one node within a weight limit, e.g. seconds for the
+ * fastest weighting. This is a one-to-all Dijkstra which does not put anything beyond the limit
+ * into the heap. The node indexed arrays are only cleared for the reached nodes, so reuse one
+ * instance via reset for many searches of the same thread. The search is node based and needs all
+ * edges, i.e. not a graph where contraction hierarchies removed edges to lower levels. Use the
+ * weights of PHAST for such a graph.
+ * <p/>
+ * @author Peter Karich
+ */
+public class Isochrone
+{
+    private static final int MAX_GRID_CELLS = 16 * 1000 * 1000;
+    private Graph graph;
+    private Weighting weighting;
+    private EdgeExplorer outExplorer;
+    private EdgeExplorer inExplorer;
+    private double[] weights = new double[0];
+    private final TIntArrayList reachedNodes = new TIntArrayList();
+    private final IntDoubleBinHeap heap = new IntDoubleBinHeap(1000);
+    private double weightLimit = Double.MAX_VALUE;
+    private boolean reverse;
+    private int visitedNodes;
+
+    public Isochrone( Graph graph, FlagEncoder encoder, Weighting weighting )
+    {
+        reset(graph, encoder, weighting);
+    }
+
+    /**
+     * Prepares this instance for a different graph, e.g. the next QueryGraph, keeping the allocated
+     * arrays.
+     */
+    public Isochrone reset( Graph graph, FlagEncoder encoder, Weighting weighting )
+    {
+        clear();
+        this.graph = graph;
+        this.weighting = weighting;
+        outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+        inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, true, false));
+
+        int nodes = graph.getNodes();
+        if (weights.length < nodes)
+        {
+            int old = weights.length;
+            weights = Arrays.copyOf(weights, Math.max(nodes, old + old / 2));
+            Arrays.fill(weights, old, weights.length, Double.MAX_VALUE);
+        }
+        return this;
+    }
+
+    /**
+     * Nothing with a weight above this limit is explored. Default is no limit.
+     */
+    public Isochrone setWeightLimit( double weightLimit )
+    {
+        this.weightLimit = weightLimit;
+        return this;
+    }
+
+    public double getWeightLimit()
+    {
+        return weightLimit;
+    }
+
+    /**
+     * Calculates from where the start is reachable instead of what is reachable from the start.
+     */
+    public Isochrone setReverse( boolean reverse )
+    {
+        this.reverse = reverse;
+        return this;
+    }
+
+    public Isochrone search( int from )
+    {
+        clear();
+        weights[from] = 0;
+        reachedNodes.add(from);
+        heap.insert_(0, from);
+        EdgeExplorer explorer = reverse ? inExplorer : outExplorer;
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int currNode = heap.poll_element();
+            double currWeight = weights[currNode];
+            // skip the outdated entries left by the lazy re-insertion
+            if (key > (float) currWeight)
+                continue;
+
+            visitedNodes++;
+            EdgeIterator iter = explorer.setBaseNode(currNode);
+            while (iter.next())
+            {
+                double tmpWeight = weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE) + currWeight;
+                if (tmpWeight > weightLimit)
+                    continue;
+
+                int adjNode = iter.getAdjNode();
+                double w = weights[adjNode];
+                if (tmpWeight < w)
+                {
+                    if (w == Double.MAX_VALUE)
+                        reachedNodes.add(adjNode);
+
+                    weights[adjNode] = tmpWeight;
+                    heap.insert_(tmpWeight, adjNode);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Uses the weights of a one-to-all search done elsewhere instead of calling search, e.g. of
+     * PHAST on a graph prepared with contraction hierarchies. Weights above the limit are ignored.
+     * <p/>
+     * @param allWeights the node indexed weights where Double.MAX_VALUE means not reachable
+     */
+    public Isochrone setWeights( double[] allWeights )
+    {
+        clear();
+        int nodes = Math.min(allWeights.length, graph.getNodes());
+        for (int node = 0; node < nodes; node++)
+        {
+            double weight = allWeights[node];
+            if (weight == Double.MAX_VALUE || weight > weightLimit)
+                continue;
+
+            weights[node] = weight;
+            reachedNodes.add(node);
+        }
+        return this;
+    }
+
+    private void clear()
+    {
+        int size = reachedNodes.size();
+        for (int i = 0; i < size; i++)
+        {
+            weights[reachedNodes.get(i)] = Double.MAX_VALUE;
+        }
+        reachedNodes.resetQuick();
+        heap.clear();
+        visitedNodes = 0;
+    }
+
+    /**
+     * @return the weight to reach the specified node or Double.MAX_VALUE if not reachable
+     */
+    public double getWeight( int node )
+    {
+        return weights[node];
+    }
+
+    /**
+     * @return the nodes reached in the last search in no particular order
+     */
+    public TIntArrayList getReachedNodes()
+    {
+        return reachedNodes;
+    }
+
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    /**
+     * Buckets the reached nodes into rings of equal weight and the rings into grid cells. A cell
+     * belongs to the ring of the fastest node inside of it. The grid is global, i.e. the cell with
+     * index x and y has the center (x + 0.5) * cellSizeLon and (y + 0.5) * cellSizeLat. The
+     * bounding box of the reached cells must not contain more than 16 million cells.
+     * <p/>
+     * @return the centers of the cells for every ring
+     */
+    public List<PointList> calcCells( int buckets, double cellSizeLat, double cellSizeLon )
+    {
+        if (buckets < 1)
+            throw new IllegalArgumentException("At least one bucket is necessary but was " + buckets);
+        if (weightLimit == Double.MAX_VALUE)
+            throw new IllegalStateException("Specify a weight limit to create buckets");
+
+        NodeAccess na = graph.getNodeAccess();
+        int size = reachedNodes.size();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++)
+        {
+            int node = reachedNodes.get(i);
+            int x = (int) Math.floor(na.getLongitude(node) / cellSizeLon);
+            int y = (int) Math.floor(na.getLatitude(node) / cellSizeLat);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        List<PointList> cells = new ArrayList<PointList>(buckets);
+        for (int i = 0; i < buckets; i++)
+        {
+            cells.add(new PointList(10, false));
+        }
+        if (size == 0)
+            return cells;
+
+        // a dense grid over the bounding box is a lot faster than hashing the cells
+        int width = maxX - minX + 1;
+        long gridSize = (long) width * (maxY - minY + 1);
+        if (gridSize > MAX_GRID_CELLS)
+            throw new IllegalArgumentException("Too many grid cells " + gridSize + ", increase the cell size");
+
+        int[] grid = new int[(int) gridSize];
+        Arrays.fill(grid, -1);
+        for (int i = 0; i < size; i++)
+        {
+            int node = reachedNodes.get(i);
+            int bucket = Math.min(buckets - 1, (int) (weights[node] * buckets / weightLimit));
+            int x = (int) Math.floor(na.getLongitude(node) / cellSizeLon);
+            int y = (int) Math.floor(na.getLatitude(node) / cellSizeLat);
+            int index = (y - minY) * width + x - minX;
+            int old = grid[index];
+            if (old < 0 || bucket < old)
+                grid[index] = bucket;
+        }
+
+        for (int index = 0; index < grid.length; index++)
+        {
+            int bucket = grid[index];
+            if (bucket < 0)
+                continue;
+
+            int x = minX + index % width;
+            int y = minY + index / width;
+            cells.get(bucket).add((y + 0.5) * cellSizeLat, (x + 0.5) * cellSizeLon);
+        }
+        return cells;
+    }
+
+    /**
+     * Calculates the convex hull of the specified cells, e.g. of several rings from calcCells.
+     * <p/>
+     * @return the closed polygon in counter clockwise order or an empty list if no cells exist
+     */
+    public static PointList calcHull( List<PointList> cells, double cellSizeLat, double cellSizeLon )
+    {
+        int count = 0;
+        for (PointList pl : cells)
+        {
+            count += pl.getSize();
+        }
+
+        // the corners of the cells
+        double[][] points = new double[count * 4][];
+        int index = 0;
+        double halfLat = cellSizeLat / 2, halfLon = cellSizeLon / 2;
+        for (PointList pl : cells)
+        {
+            for (int i = 0; i < pl.getSize(); i++)
+            {
+                double lat = pl.getLatitude(i), lon = pl.getLongitude(i);
+                points[index++] = new double[]
+                {
+                    lon - halfLon, lat - halfLat
+                };
+                points[index++] = new double[]
+                {
+                    lon + halfLon, lat - halfLat
+                };
+                points[index++] = new double[]
+                {
+                    lon + halfLon, lat + halfLat
+                };
+                points[index++] = new double[]
+                {
+                    lon - halfLon, lat + halfLat
+                };
+            }
+        }
+        return calcHull(points);
+    }
+
+    /**
+     * Andrew's monotone chain algorithm on points of the form {lon, lat}.
+     */
+    static PointList calcHull( double[][] points )
+    {
+        int n = points.length;
+        PointList hull = new PointList(10, false);
+        if (n == 0)
+            return hull;
+
+        Arrays.sort(points, new Comparator<double[]>()
+        {
+            @Override
+            public int compare( double[] o1, double[] o2 )
+            {
+                int res = Double.compare(o1[0], o2[0]);
+                return res != 0 ? res : Double.compare(o1[1], o2[1]);
+            }
+        });
+
+        double[][] chain = new double[2 * n][];
+        int k = 0;
+        // lower hull
+        for (int i = 0; i < n; i++)
+        {
+            while (k >= 2 && cross(chain[k - 2], chain[k - 1], points[i]) <= 0)
+            {
+                k--;
+            }
+            chain[k++] = points[i];
+        }
+        // upper hull
+        for (int i = n - 2, t = k + 1; i >= 0; i--)
+        {
+            while (k >= t && cross(chain[k - 2], chain[k - 1], points[i]) <= 0)
+            {
+                k--;
+            }
+            chain[k++] = points[i];
+        }
+
+        // the last point equals the first which closes the polygon
+        for (int i = 0; i < k; i++)
+        {
+            hull.add(chain[i][1], chain[i][0]);
+        }
+        return hull;
+    }
+
+    private static double cross( double[] o, double[] a, double[] b )
+    {
+        return (a[0] - o[0]) * (b[1] - o[1]) - (a[1] - o[1]) * (b[0] - o[0]);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.util.NotThreadSafe;
+
+/**
+ * Calculates the shortest paths from every source node to every target node.
+ * <p/>
+ * @author Peter Karich
+ */
+@NotThreadSafe
+public interface ManyToManyAlgorithm
+{
+    /**
+     * @return the matrix where the row is the index of the source and the column the index of the
+     * target node
+     */
+    PathMatrix calcMatrix( int[] sources, int[] targets );
+
+    /**
+     * @return the number of nodes visited by all searches
+     */
+    int getVisitedNodes();
+
+    String getName();
+}
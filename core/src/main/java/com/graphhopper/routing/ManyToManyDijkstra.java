@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+
+/**
+ * Calculates the matrix with one DijkstraOneToMany search per source, which is reused for all
+ * targets. Use this if contraction hierarchies are not available.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ManyToManyDijkstra implements ManyToManyAlgorithm
+{
+    private final DijkstraOneToMany algo;
+    private int visitedNodes;
+
+    public ManyToManyDijkstra( Graph graph, FlagEncoder encoder, Weighting weighting, TraversalMode tMode )
+    {
+        algo = new DijkstraOneToMany(graph, encoder, weighting, tMode);
+    }
+
+    public ManyToManyDijkstra setWeightLimit( double weightLimit )
+    {
+        algo.setWeightLimit(weightLimit);
+        return this;
+    }
+
+    @Override
+    public PathMatrix calcMatrix( int[] sources, int[] targets )
+    {
+        PathMatrix matrix = new PathMatrix(sources.length, targets.length);
+        for (int i = 0; i < sources.length; i++)
+        {
+            algo.clear();
+            for (int j = 0; j < targets.length; j++)
+            {
+                if (sources[i] == targets[j])
+                {
+                    matrix.set(i, j, 0, 0, 0);
+                    continue;
+                }
+
+                Path path = algo.calcPath(sources[i], targets[j]);
+                visitedNodes += algo.getVisitedNodes();
+                if (!path.isFound() && algo.getWeight(targets[j]) < Double.MAX_VALUE)
+                {
+                    // the cached search can miss a reached target if it has the same weight as
+                    // the last explored node, so start a new search
+                    algo.clear();
+                    path = algo.calcPath(sources[i], targets[j]);
+                    visitedNodes += algo.getVisitedNodes();
+                }
+                matrix.set(i, j, path);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "dijkstraOneToMany";
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.Arrays;
+
+/**
+ * Stores weight, distance and time for every combination of source and target. The values are
+ * kept in flat arrays to avoid creating a Path object per entry.
+ * <p/>
+ * @author Peter Karich
+ */
+public class PathMatrix
+{
+    private final int rows;
+    private final int columns;
+    private final double[] weights;
+    private final double[] distances;
+    private final long[] millis;
+
+    public PathMatrix( int rows, int columns )
+    {
+        if (rows < 0 || columns < 0)
+            throw new IllegalArgumentException("Matrix size cannot be negative " + rows + "x" + columns);
+
+        this.rows = rows;
+        this.columns = columns;
+        int size = rows * columns;
+        weights = new double[size];
+        Arrays.fill(weights, Double.MAX_VALUE);
+        distances = new double[size];
+        millis = new long[size];
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    public PathMatrix set( int row, int column, double weight, double distance, long time )
+    {
+        int index = getIndex(row, column);
+        weights[index] = weight;
+        distances[index] = distance;
+        millis[index] = time;
+        return this;
+    }
+
+    /**
+     * Copies weight, distance and time from the specified path if it was found.
+     */
+    public PathMatrix set( int row, int column, Path path )
+    {
+        if (path.isFound())
+            set(row, column, path.getWeight(), path.getDistance(), path.getMillis());
+
+        return this;
+    }
+
+    /**
+     * @return true if a path from the source row to the target column exists
+     */
+    public boolean isFound( int row, int column )
+    {
+        return weights[getIndex(row, column)] < Double.MAX_VALUE;
+    }
+
+    public double getWeight( int row, int column )
+    {
+        return weights[getIndex(row, column)];
+    }
+
+    /**
+     * @return the distance in meter
+     */
+    public double getDistance( int row, int column )
+    {
+        return distances[getIndex(row, column)];
+    }
+
+    public long getMillis( int row, int column )
+    {
+        return millis[getIndex(row, column)];
+    }
+
+    private int getIndex( int row, int column )
+    {
+        if (row < 0 || row >= rows || column < 0 || column >= columns)
+            throw new IllegalArgumentException("Entry " + row + "," + column + " out of bounds " + rows + "x" + columns);
+
+        return row * columns + column;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "matrix " + rows + "x" + columns;
+    }
+}
@@ -44,7 +44,8 @@ import java.util.List;
 /**
  * A class which is used to query the underlying graph with real GPS points. It does so by
  * introducing virtual nodes and edges. It is lightweight in order to be created every time a new
- * query comes in, which makes the behaviour thread safe.
+ * query comes in, which makes the behaviour thread safe. Alternatively one instance per thread can
+ * be reused for several queries via reset.
  * <p/>
  * @author Peter Karich
  */
@@ -54,22 +55,39 @@ public class QueryGraph implements Graph
     private final NodeAccess mainNodeAccess;
     private final int mainNodes;
     private final int mainEdges;
-    private List<QueryResult> queryResults;
+    private final List<QueryResult> queryResults;
     /**
      * Virtual edges are created between existing graph and new virtual tower nodes. For every
      * virtual node there are 4 edges: base-snap, snap-base, snap-adj, adj-snap.
      */
-    private List<EdgeIteratorState> virtualEdges;
+    private final List<EdgeIteratorState> virtualEdges;
     private final static int VE_BASE = 0, VE_BASE_REV = 1, VE_ADJ = 2, VE_ADJ_REV = 3;
 
     /**
      * Store lat,lon of virtual tower nodes.
      */
-    private PointList virtualNodes;
+    private final PointList virtualNodes;
     private final DistanceCalc distCalc = Helper.DIST_PLANE;
     private final GraphExtension wrappedExtension;
+    private boolean initialized;
+    // the following objects are only used while lookup and kept to be reused after reset
+    private final TIntObjectMap<List<QueryResult>> edge2res;
+    private final List<List<QueryResult>> resultListPool = new ArrayList<List<QueryResult>>();
+    private int usedResultLists;
+    private final List<VirtualEdgeIState> virtualEdgePool;
+    private int usedVirtualEdges;
+    private final WayIndexComparator wayIndexComparator = new WayIndexComparator();
 
     public QueryGraph( Graph graph )
+    {
+        this(graph, 2);
+    }
+
+    /**
+     * @param expectedPoints the number of query points the internal arrays are allocated for. They
+     * grow if necessary and are kept over reset calls.
+     */
+    public QueryGraph( Graph graph, int expectedPoints )
     {
         mainGraph = graph;
         mainNodeAccess = graph.getNodeAccess();
@@ -80,6 +98,35 @@ public class QueryGraph implements Graph
             wrappedExtension = new QueryGraphTurnExt(this);
         else
             wrappedExtension = mainGraph.getExtension();
+
+        queryResults = new ArrayList<QueryResult>(expectedPoints);
+        virtualNodes = new PointList(expectedPoints, mainNodeAccess.is3D());
+        virtualEdges = new ArrayList<EdgeIteratorState>(expectedPoints * 4);
+        virtualEdgePool = new ArrayList<VirtualEdgeIState>(expectedPoints * 4);
+        edge2res = new TIntObjectHashMap<List<QueryResult>>(expectedPoints);
+    }
+
+    /**
+     * Removes all virtual nodes and edges so that lookup can be called again, e.g. for the next
+     * request of the same thread. The arrays and virtual edge instances are kept and reused, so
+     * edges or explorers fetched from this graph before are invalid afterwards.
+     */
+    public QueryGraph reset()
+    {
+        initialized = false;
+        queryResults.clear();
+        virtualEdges.clear();
+        virtualNodes.clear();
+        usedVirtualEdges = 0;
+        return this;
+    }
+
+    /**
+     * @return the graph this QueryGraph adds the virtual nodes and edges to
+     */
+    public Graph getMainGraph()
+    {
+        return mainGraph;
     }
 
     /**
@@ -101,13 +148,10 @@ public class QueryGraph implements Graph
     public void lookup( List<QueryResult> resList )
     {
         if (isInitialized())
-            throw new IllegalStateException("Call lookup only once. Otherwise you'll have problems for queries sharing the same edge.");
-
-        virtualEdges = new ArrayList<EdgeIteratorState>(resList.size() * 2);
-        virtualNodes = new PointList(resList.size(), mainNodeAccess.is3D());
-        queryResults = new ArrayList<QueryResult>(resList.size());
+            throw new IllegalStateException("Call lookup only once or call reset before. Otherwise you'll have problems for queries sharing the same edge.");
 
-        TIntObjectMap<List<QueryResult>> edge2res = new TIntObjectHashMap<List<QueryResult>>(resList.size());
+        initialized = true;
+        releaseResultLists();
 
         // Phase 1
         // calculate snapped point and swap direction of closest edge if necessary
@@ -156,7 +200,7 @@ public class QueryGraph implements Graph
             List<QueryResult> list = edge2res.get(edgeId);
             if (list == null)
             {
-                list = new ArrayList<QueryResult>(5);
+                list = nextResultList();
                 edge2res.put(edgeId, list);
             }
             list.add(res);
@@ -165,97 +209,133 @@ public class QueryGraph implements Graph
         // Phase 2 - now it is clear which points cut one edge
         // 1. create point lists
         // 2. create virtual edges between virtual nodes and its neighbor (virtual or normal nodes)
-        edge2res.forEachValue(new TObjectProcedure<List<QueryResult>>()
+        edge2res.forEachValue(createVirtualEdgesProc);
+        releaseResultLists();
+    }
+
+    private void releaseResultLists()
+    {
+        edge2res.clear();
+        for (int i = 0; i < usedResultLists; i++)
         {
-            @Override
-            public boolean execute( List<QueryResult> results )
+            resultListPool.get(i).clear();
+        }
+        usedResultLists = 0;
+    }
+
+    private List<QueryResult> nextResultList()
+    {
+        if (usedResultLists == resultListPool.size())
+            resultListPool.add(new ArrayList<QueryResult>(5));
+
+        return resultListPool.get(usedResultLists++);
+    }
+
+    private final TObjectProcedure<List<QueryResult>> createVirtualEdgesProc = new TObjectProcedure<List<QueryResult>>()
+    {
+        @Override
+        public boolean execute( List<QueryResult> results )
+        {
+            // we can expect at least one entry in the results
+            EdgeIteratorState closestEdge = results.get(0).getClosestEdge();
+            final PointList fullPL = closestEdge.fetchWayGeometry(3);
+            int baseNode = closestEdge.getBaseNode();
+            // sort results on the same edge by the wayIndex and if equal by distance to pillar node
+            if (results.size() > 1)
+                Collections.sort(results, wayIndexComparator.setPointList(fullPL));
+
+            GHPoint3D prevPoint = fullPL.toGHPoint(0);
+            int adjNode = closestEdge.getAdjNode();
+            long reverseFlags = closestEdge.detach(true).getFlags();
+            int prevWayIndex = 1;
+            int prevNodeId = baseNode;
+            int virtNodeId = virtualNodes.getSize() + mainNodes;
+            boolean addedEdges = false;
+
+            // Create base and adjacent PointLists for all none-equal virtual nodes.
+            // We do so via inserting them at the correct position of fullPL and cutting the                
+            // fullPL into the right pieces.
+            for (int counter = 0; counter < results.size(); counter++)
             {
-                // we can expect at least one entry in the results
-                EdgeIteratorState closestEdge = results.get(0).getClosestEdge();
-                final PointList fullPL = closestEdge.fetchWayGeometry(3);
-                int baseNode = closestEdge.getBaseNode();
-                // sort results on the same edge by the wayIndex and if equal by distance to pillar node
-                Collections.sort(results, new Comparator<QueryResult>()
-                {
-                    @Override
-                    public int compare( QueryResult o1, QueryResult o2 )
-                    {
-                        int diff = o1.getWayIndex() - o2.getWayIndex();
-                        if (diff == 0)
-                        {
-                            // sort by distance from snappedPoint to fullPL.get(wayIndex) if wayIndex is identical
-                            GHPoint p1 = o1.getSnappedPoint();
-                            GHPoint p2 = o2.getSnappedPoint();
-                            if (p1.equals(p2))
-                                return 0;
-
-                            double fromLat = fullPL.getLatitude(o1.getWayIndex());
-                            double fromLon = fullPL.getLongitude(o1.getWayIndex());
-                            if (distCalc.calcNormalizedDist(fromLat, fromLon, p1.lat, p1.lon)
-                                    > distCalc.calcNormalizedDist(fromLat, fromLon, p2.lat, p2.lon))
-                                return 1;
-                            return -1;
-                        }
-                        return diff;
-                    }
-                });
-
-                GHPoint3D prevPoint = fullPL.toGHPoint(0);
-                int adjNode = closestEdge.getAdjNode();
-                long reverseFlags = closestEdge.detach(true).getFlags();
-                int prevWayIndex = 1;
-                int prevNodeId = baseNode;
-                int virtNodeId = virtualNodes.getSize() + mainNodes;
-                boolean addedEdges = false;
-
-                // Create base and adjacent PointLists for all none-equal virtual nodes.
-                // We do so via inserting them at the correct position of fullPL and cutting the                
-                // fullPL into the right pieces.
-                for (int counter = 0; counter < results.size(); counter++)
+                QueryResult res = results.get(counter);
+                if (res.getClosestEdge().getBaseNode() != baseNode)
+                    throw new IllegalStateException("Base nodes have to be identical but were not: " + closestEdge + " vs " + res.getClosestEdge());
+
+                GHPoint3D currSnapped = res.getSnappedPoint();
+
+                // no new virtual nodes if exactly the same snapped point
+                if (prevPoint.equals(currSnapped))
                 {
-                    QueryResult res = results.get(counter);
-                    if (res.getClosestEdge().getBaseNode() != baseNode)
-                        throw new IllegalStateException("Base nodes have to be identical but were not: " + closestEdge + " vs " + res.getClosestEdge());
-
-                    GHPoint3D currSnapped = res.getSnappedPoint();
-
-                    // no new virtual nodes if exactly the same snapped point
-                    if (prevPoint.equals(currSnapped))
-                    {
-                        res.setClosestNode(prevNodeId);
-                        continue;
-                    }
-
-                    queryResults.add(res);
-                    createEdges(prevPoint, prevWayIndex,
-                            res.getSnappedPoint(), res.getWayIndex(),
-                            fullPL, closestEdge, prevNodeId, virtNodeId, reverseFlags);
-
-                    virtualNodes.add(currSnapped.lat, currSnapped.lon, currSnapped.ele);
-
-                    // add edges again to set adjacent edges for newVirtNodeId
-                    if (addedEdges)
-                    {
-                        virtualEdges.add(virtualEdges.get(virtualEdges.size() - 2));
-                        virtualEdges.add(virtualEdges.get(virtualEdges.size() - 2));
-                    }
-
-                    addedEdges = true;
-                    res.setClosestNode(virtNodeId);
-                    prevNodeId = virtNodeId;
-                    prevWayIndex = res.getWayIndex() + 1;
-                    prevPoint = currSnapped;
-                    virtNodeId++;
+                    res.setClosestNode(prevNodeId);
+                    continue;
                 }
 
-                // two edges between last result and adjacent node are still missing if not all points skipped
+                queryResults.add(res);
+                createEdges(prevPoint, prevWayIndex,
+                        res.getSnappedPoint(), res.getWayIndex(),
+                        fullPL, closestEdge, prevNodeId, virtNodeId, reverseFlags);
+
+                virtualNodes.add(currSnapped.lat, currSnapped.lon, currSnapped.ele);
+
+                // add edges again to set adjacent edges for newVirtNodeId
                 if (addedEdges)
-                    createEdges(prevPoint, prevWayIndex, fullPL.toGHPoint(fullPL.getSize() - 1), fullPL.getSize() - 2,
-                            fullPL, closestEdge, virtNodeId - 1, adjNode, reverseFlags);
+                {
+                    virtualEdges.add(virtualEdges.get(virtualEdges.size() - 2));
+                    virtualEdges.add(virtualEdges.get(virtualEdges.size() - 2));
+                }
 
-                return true;
+                addedEdges = true;
+                res.setClosestNode(virtNodeId);
+                prevNodeId = virtNodeId;
+                prevWayIndex = res.getWayIndex() + 1;
+                prevPoint = currSnapped;
+                virtNodeId++;
             }
-        });
+
+            // two edges between last result and adjacent node are still missing if not all points skipped
+            if (addedEdges)
+                createEdges(prevPoint, prevWayIndex, fullPL.toGHPoint(fullPL.getSize() - 1), fullPL.getSize() - 2,
+                        fullPL, closestEdge, virtNodeId - 1, adjNode, reverseFlags);
+
+            return true;
+        }
+    };
+
+    /**
+     * Sorts results on the same edge by the wayIndex and if equal by the distance from the snapped
+     * point to the point at the wayIndex.
+     */
+    private class WayIndexComparator implements Comparator<QueryResult>
+    {
+        private PointList fullPL;
+
+        WayIndexComparator setPointList( PointList fullPL )
+        {
+            this.fullPL = fullPL;
+            return this;
+        }
+
+        @Override
+        public int compare( QueryResult o1, QueryResult o2 )
+        {
+            int diff = o1.getWayIndex() - o2.getWayIndex();
+            if (diff == 0)
+            {
+                // sort by distance from snappedPoint to fullPL.get(wayIndex) if wayIndex is identical
+                GHPoint p1 = o1.getSnappedPoint();
+                GHPoint p2 = o2.getSnappedPoint();
+                if (p1.equals(p2))
+                    return 0;
+
+                double fromLat = fullPL.getLatitude(o1.getWayIndex());
+                double fromLon = fullPL.getLongitude(o1.getWayIndex());
+                if (distCalc.calcNormalizedDist(fromLat, fromLon, p1.lat, p1.lon)
+                        > distCalc.calcNormalizedDist(fromLat, fromLon, p2.lat, p2.lon))
+                    return 1;
+                return -1;
+            }
+            return diff;
+        }
     }
 
     class QueryGraphTurnExt extends TurnCostExtension
@@ -297,8 +377,15 @@ public class QueryGraph implements Graph
             int prevNodeId, int nodeId, long reverseFlags )
     {
         int max = wayIndex + 1;
+        int virtEdgeId = mainEdges + virtualEdges.size();
+        String name = closestEdge.getName();
+
+        // edges between base and snapped point
+        VirtualEdgeIState baseEdge = nextVirtualEdge(virtEdgeId, prevNodeId, nodeId, closestEdge.getFlags(), name);
+        VirtualEdgeIState baseReverseEdge = nextVirtualEdge(virtEdgeId, nodeId, prevNodeId, reverseFlags, name);
+
         // basePoints must have at least the size of 2 to make sure fetchWayGeometry(3) returns at least 2
-        PointList basePoints = new PointList(max - prevWayIndex + 1, mainNodeAccess.is3D());
+        PointList basePoints = baseEdge.getPointList();
         basePoints.add(prevSnapped.lat, prevSnapped.lon, prevSnapped.ele);
         for (int i = prevWayIndex; i < max; i++)
         {
@@ -306,20 +393,32 @@ public class QueryGraph implements Graph
         }
         basePoints.add(currSnapped.lat, currSnapped.lon, currSnapped.ele);
 
-        PointList baseReversePoints = basePoints.clone(true);
-        double baseDistance = basePoints.calcDistance(distCalc);
-        int virtEdgeId = mainEdges + virtualEdges.size();
+        PointList baseReversePoints = baseReverseEdge.getPointList();
+        for (int i = basePoints.getSize() - 1; i >= 0; i--)
+        {
+            baseReversePoints.add(basePoints, i);
+        }
 
-        // edges between base and snapped point
-        VirtualEdgeIState baseEdge = new VirtualEdgeIState(virtEdgeId, prevNodeId, nodeId,
-                baseDistance, closestEdge.getFlags(), closestEdge.getName(), basePoints);
-        VirtualEdgeIState baseReverseEdge = new VirtualEdgeIState(virtEdgeId, nodeId, prevNodeId,
-                baseDistance, reverseFlags, closestEdge.getName(), baseReversePoints);
+        double baseDistance = basePoints.calcDistance(distCalc);
+        baseEdge.setDistance(baseDistance);
+        baseReverseEdge.setDistance(baseDistance);
 
         virtualEdges.add(baseEdge);
         virtualEdges.add(baseReverseEdge);
     }
 
+    /**
+     * @return a virtual edge from the pool with an empty point list
+     */
+    private VirtualEdgeIState nextVirtualEdge( int edgeId, int baseNode, int adjNode, long flags, String name )
+    {
+        if (usedVirtualEdges == virtualEdgePool.size())
+            virtualEdgePool.add(new VirtualEdgeIState(edgeId, baseNode, adjNode, 0, flags, name,
+                    new PointList(5, mainNodeAccess.is3D())));
+
+        return virtualEdgePool.get(usedVirtualEdges++).init(edgeId, baseNode, adjNode, flags, name);
+    }
+
     @Override
     public int getNodes()
     {
@@ -342,6 +441,21 @@ public class QueryGraph implements Graph
         return edgeId >= mainEdges;
     }
 
+    /**
+     * @return the edge of the main graph from which the specified virtual edge was created. It has
+     * the same direction as the virtual edge. Returns the specified edge if it is not virtual.
+     */
+    public EdgeIteratorState getOriginalEdge( EdgeIteratorState edge )
+    {
+        if (!isVirtualEdge(edge.getEdge()))
+            return edge;
+
+        EdgeIteratorState closestEdge = queryResults.get((edge.getEdge() - mainEdges) / 4).getClosestEdge();
+        // the first of the two virtual edges with this id points from the base to the adjacent node of closestEdge
+        boolean sameDirection = virtualEdges.get(edge.getEdge() - mainEdges).getBaseNode() == edge.getBaseNode();
+        return sameDirection ? closestEdge : closestEdge.detach(true);
+    }
+
     private final NodeAccess nodeAccess = new NodeAccess()
     {
         @Override
@@ -574,7 +688,7 @@ public class QueryGraph implements Graph
 
     private boolean isInitialized()
     {
-        return queryResults != null;
+        return initialized;
     }
 
     @Override
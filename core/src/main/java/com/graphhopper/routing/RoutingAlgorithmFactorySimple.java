@@ -22,6 +22,7 @@ import com.graphhopper.routing.util.WeightApproximator;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
 
 /**
  * A simple factory creating normal algorithms (RoutingAlgorithm) without preparation.
@@ -37,7 +38,7 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory
         String algoStr = opts.getAlgorithm();
         if (AlgorithmOptions.DIJKSTRA_BI.equalsIgnoreCase(algoStr))
         {
-            return new DijkstraBidirectionRef(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
+            return new DijkstraBidirection(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
         } else if (AlgorithmOptions.DIJKSTRA.equalsIgnoreCase(algoStr))
         {
             return new Dijkstra(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
@@ -55,6 +56,16 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory
             AStar aStar = new AStar(g, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
             aStar.setApproximation(getApproximation(AlgorithmOptions.ASTAR, opts, g.getNodeAccess()));
             return aStar;
+        } else if (AlgorithmOptions.ALT_ROUTE.equalsIgnoreCase(algoStr))
+        {
+            PMap hints = opts.getHints();
+            AlternativeRoute altRoute = new AlternativeRoute(g, opts.getFlagEncoder(), opts.getWeighting(),
+                    opts.getTraversalMode(), hints.get(AlgorithmOptions.ALT_ROUTE + ".algorithm", AlgorithmOptions.DIJKSTRA_BI));
+            altRoute.setMaxPaths(hints.getInt(AlgorithmOptions.ALT_ROUTE + ".max_paths", 3)).
+                    setMaxWeightFactor(hints.getDouble(AlgorithmOptions.ALT_ROUTE + ".max_weight_factor", 1.4)).
+                    setMaxShareFactor(hints.getDouble(AlgorithmOptions.ALT_ROUTE + ".max_share_factor", 0.6)).
+                    setMinPlateauFactor(hints.getDouble(AlgorithmOptions.ALT_ROUTE + ".min_plateau_factor", 0.05));
+            return altRoute;
         } else
         {
             throw new IllegalArgumentException("Algorithm " + algoStr + " not found in " + getClass().getName());
@@ -24,12 +24,12 @@ import com.graphhopper.util.PointList;
  */
 class VirtualEdgeIState implements EdgeIteratorState, EdgeSkipIterState {
     private final PointList pointList;
-    private final int edgeId;
+    private int edgeId;
     private double distance;
     private long flags;
     private String name;
-    private final int baseNode;
-    private final int adjNode;
+    private int baseNode;
+    private int adjNode;
 
     public VirtualEdgeIState( int edgeId, int baseNode, int adjNode, double distance, long flags, String name, PointList pointList )
     {
@@ -42,6 +42,26 @@ class VirtualEdgeIState implements EdgeIteratorState, EdgeSkipIterState {
         this.pointList = pointList;
     }
 
+    /**
+     * Reinitializes this edge with an empty point list so that the instance can be reused.
+     */
+    VirtualEdgeIState init( int edgeId, int baseNode, int adjNode, long flags, String name )
+    {
+        this.edgeId = edgeId;
+        this.baseNode = baseNode;
+        this.adjNode = adjNode;
+        this.distance = 0;
+        this.flags = flags;
+        this.name = name;
+        this.pointList.clear();
+        return this;
+    }
+
+    PointList getPointList()
+    {
+        return pointList;
+    }
+
     @Override
     public int getEdge()
     {
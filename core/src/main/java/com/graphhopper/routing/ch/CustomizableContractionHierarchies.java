@@ -0,0 +1,812 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.util.AllEdgesSkipIterator;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.LevelGraphStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.*;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Contraction hierarchies which can be customized for a new weighting without a new preparation
+ * (CCH). The node order is calculated from the coordinates only via nested dissection and the
+ * shortcuts are added without witness searches, so the same hierarchy is valid for every weighting.
+ * Then customize calculates the weights of all shortcuts bottom-up from their lower triangles which
+ * takes only a fraction of the preparation time and runs in parallel.
+ * <p/>
+ * Every pair of nodes connected in the hierarchy gets two one-directional shortcuts. If the original
+ * edge is better or if the direction is not passable the shortcut is disabled via its access flags.
+ * The hierarchy is stored in the LevelGraph, so a loaded graph can be customized again.
+ * <p/>
+ * The queries are identical to PrepareContractionHierarchies. Routes calculated while customizing
+ * can mix old and new weights.
+ * <p/>
+ * @author Peter Karich
+ */
+public class CustomizableContractionHierarchies extends PrepareContractionHierarchies
+{
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    // the parts of the nested dissection smaller than this are not split further
+    private static final int LEAF_SIZE = 16;
+    // levels of the customization with less nodes are calculated by the calling thread
+    private static final int MIN_PARALLEL_NODES = 256;
+    private final LevelGraph graph;
+    private final FlagEncoder encoder;
+    private final SwappableWeighting currentWeighting;
+    private boolean built = false;
+    // the hierarchy, nodes are referenced via their rank which is the level minus one
+    private int[] rankToNode;
+    // arcs from lower to higher rank, sorted by source and then by target rank
+    private int[] upFirst;
+    private int[] upTarget;
+    // the same arcs sorted by target and then by source rank, to find the lower triangles
+    private int[] downFirst;
+    private int[] downSource;
+    private int[] downArc;
+    // the original edges of an arc are a linked list from origHead over origNext
+    private int[] origHead;
+    private int[] origNext;
+    private int[] scUp;
+    private int[] scDown;
+    // the ranks sorted by the level of the customization, nodes of one level are independent
+    private int[] levelFirst;
+    private int[] levelRanks;
+    // only used to build the order
+    private int[] marks;
+    private int markCounter;
+    private int nextRank;
+
+    public CustomizableContractionHierarchies( LevelGraph g, FlagEncoder encoder, Weighting weighting,
+            TraversalMode traversalMode )
+    {
+        this(g, encoder, new SwappableWeighting(weighting), traversalMode);
+    }
+
+    private CustomizableContractionHierarchies( LevelGraph g, FlagEncoder encoder, SwappableWeighting weighting,
+            TraversalMode traversalMode )
+    {
+        super(g, encoder, weighting, traversalMode);
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("Customizable contraction hierarchies do not support " + traversalMode);
+
+        this.graph = g;
+        this.encoder = encoder;
+        this.currentWeighting = weighting;
+    }
+
+    /**
+     * Calculates the node order and the shortcuts and customizes them for the weighting of the
+     * constructor.
+     */
+    @Override
+    public void doWork()
+    {
+        if (built)
+            throw new IllegalStateException("Call doWork only once!");
+
+        built = true;
+        StopWatch sw = new StopWatch().start();
+        int nodes = graph.getNodes();
+        int[] adjFirst = new int[nodes + 1];
+        int[] adjNodes = createAdjacency(adjFirst);
+
+        rankToNode = new int[nodes];
+        marks = new int[nodes];
+        nextRank = nodes;
+        int[] part = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            part[node] = node;
+        }
+        dissect(part, 0, nodes, adjFirst, adjNodes, new long[nodes]);
+        marks = null;
+
+        int[] ranks = new int[nodes];
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            ranks[rankToNode[rank]] = rank;
+            graph.setLevel(rankToNode[rank], rank + 1);
+        }
+
+        // the shortcuts of a contracted node connect all its higher neighbors. It is sufficient to
+        // add them to the lowest higher neighbor which passes them on when it is contracted
+        TIntArrayList[] upper = new TIntArrayList[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            for (int i = adjFirst[node]; i < adjFirst[node + 1]; i++)
+            {
+                addUpper(upper, ranks[node], ranks[adjNodes[i]]);
+            }
+        }
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            if (upper[rank] == null)
+                continue;
+
+            sortUnique(upper[rank]);
+            for (int i = 1; i < upper[rank].size(); i++)
+            {
+                addUpper(upper, upper[rank].get(0), upper[rank].get(i));
+            }
+        }
+        initArcs(upper);
+
+        scUp = new int[upTarget.length];
+        scDown = new int[upTarget.length];
+        int shortcuts = 0;
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++)
+            {
+                scUp[arc] = scDown[arc] = EdgeIterator.NO_EDGE;
+                if (!hasLowerTriangle(rank, upTarget[arc]))
+                    continue;
+
+                // both are created in a row, the first is the upward one
+                scUp[arc] = graph.shortcut(rankToNode[rank], rankToNode[upTarget[arc]]).getEdge();
+                scDown[arc] = graph.shortcut(rankToNode[rank], rankToNode[upTarget[arc]]).getEdge();
+                shortcuts += 2;
+            }
+        }
+        initOriginalEdges();
+
+        if (graph instanceof LevelGraphStorage)
+            disconnectHigher2Lower((LevelGraphStorage) graph);
+
+        logger.info("built hierarchy, took:" + (int) sw.stop().getSeconds()
+                + ", arcs: " + upTarget.length + ", shortcuts: " + shortcuts + ", " + Helper.getMemInfo());
+        customize(currentWeighting.get());
+    }
+
+    /**
+     * Calculates the weights of all shortcuts for the specified weighting and uses it for the
+     * routing afterwards. If the graph was loaded the hierarchy is read from it first.
+     */
+    public synchronized CustomizableContractionHierarchies customize( final Weighting weighting )
+    {
+        if (upTarget == null)
+            readHierarchy();
+
+        StopWatch sw = new StopWatch().start();
+        final Metric metric = new Metric(upTarget.length);
+        int threads = Math.max(1, getThreads());
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try
+        {
+            for (int level = 0; level + 1 < levelFirst.length; level++)
+            {
+                int from = levelFirst[level];
+                int to = levelFirst[level + 1];
+                if (executor == null || to - from < MIN_PARALLEL_NODES)
+                {
+                    customizeRanks(metric, weighting, from, to);
+                    continue;
+                }
+
+                List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(threads);
+                int chunk = (to - from + threads - 1) / threads;
+                for (int start = from; start < to; start += chunk)
+                {
+                    final int chunkFrom = start;
+                    final int chunkTo = Math.min(to, start + chunk);
+                    tasks.add(new Callable<Object>()
+                    {
+                        @Override
+                        public Object call()
+                        {
+                            customizeRanks(metric, weighting, chunkFrom, chunkTo);
+                            return null;
+                        }
+                    });
+                }
+                for (Future<Object> future : executor.invokeAll(tasks))
+                {
+                    future.get();
+                }
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Customization was interrupted", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new RuntimeException("Customization failed", ex.getCause());
+        } finally
+        {
+            if (executor != null)
+                executor.shutdown();
+        }
+
+        for (int rank = 0; rank < rankToNode.length; rank++)
+        {
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++)
+            {
+                if (scUp[arc] == EdgeIterator.NO_EDGE)
+                    continue;
+
+                int adjNode = rankToNode[upTarget[arc]];
+                writeShortcut(scUp[arc], adjNode, true, metric.upEdge[arc] == scUp[arc], metric.upWeight[arc],
+                        metric.upDist[arc], metric.upSkip1[arc], metric.upSkip2[arc]);
+                writeShortcut(scDown[arc], adjNode, false, metric.downEdge[arc] == scDown[arc], metric.downWeight[arc],
+                        metric.downDist[arc], metric.downSkip1[arc], metric.downSkip2[arc]);
+            }
+        }
+        currentWeighting.set(weighting);
+        clearDownwardEdges();
+        logger.info("customized " + weighting + ", took:" + sw.stop().getSeconds() + "s, levels: "
+                + (levelFirst.length - 1) + ", threads: " + threads);
+        return this;
+    }
+
+    /**
+     * @return the weighting of the last customization
+     */
+    public Weighting getWeighting()
+    {
+        return currentWeighting.get();
+    }
+
+    private int[] createAdjacency( int[] adjFirst )
+    {
+        AllEdgesSkipIterator iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            if (iter.isShortcut())
+                throw new IllegalStateException("Graph contains already shortcuts");
+
+            if (iter.getBaseNode() == iter.getAdjNode())
+                continue;
+
+            adjFirst[iter.getBaseNode() + 1]++;
+            adjFirst[iter.getAdjNode() + 1]++;
+        }
+        for (int node = 0; node + 1 < adjFirst.length; node++)
+        {
+            adjFirst[node + 1] += adjFirst[node];
+        }
+
+        int[] adjNodes = new int[adjFirst[adjFirst.length - 1]];
+        int[] next = Arrays.copyOf(adjFirst, adjFirst.length - 1);
+        iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            if (iter.getBaseNode() == iter.getAdjNode())
+                continue;
+
+            adjNodes[next[iter.getBaseNode()]++] = iter.getAdjNode();
+            adjNodes[next[iter.getAdjNode()]++] = iter.getBaseNode();
+        }
+        return adjNodes;
+    }
+
+    /**
+     * Splits the nodes part[from, to) at the median of their wider extent and removes a separator
+     * covering all edges between both halves. The separator gets the highest free ranks, then both
+     * halves are dissected recursively.
+     */
+    private void dissect( int[] part, int from, int to, int[] adjFirst, int[] adjNodes, long[] keys )
+    {
+        if (to - from <= LEAF_SIZE)
+        {
+            for (int i = to - 1; i >= from; i--)
+            {
+                rankToNode[--nextRank] = part[i];
+            }
+            return;
+        }
+
+        NodeAccess na = graph.getNodeAccess();
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = from; i < to; i++)
+        {
+            double lat = na.getLatitude(part[i]);
+            double lon = na.getLongitude(part[i]);
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+        }
+        boolean splitLat = maxLat - minLat >= (maxLon - minLon) * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        for (int i = from; i < to; i++)
+        {
+            double coord = splitLat ? na.getLatitude(part[i]) : na.getLongitude(part[i]);
+            // positive fixed point coordinate in the upper and the node in the lower bits
+            keys[i] = ((long) ((coord + 400) * 1e6) << 32) | part[i];
+        }
+        Arrays.sort(keys, from, to);
+        int mid = (from + to) / 2;
+        int left = ++markCounter;
+        int right = ++markCounter;
+        for (int i = from; i < to; i++)
+        {
+            part[i] = (int) keys[i];
+            marks[part[i]] = i < mid ? left : right;
+        }
+
+        // use the smaller boundary as separator
+        int leftBoundary = countBoundary(part, from, mid, right, adjFirst, adjNodes);
+        int rightBoundary = countBoundary(part, mid, to, left, adjFirst, adjNodes);
+        int separator = ++markCounter;
+        if (leftBoundary <= rightBoundary)
+            markBoundary(part, from, mid, right, separator, adjFirst, adjNodes);
+        else
+            markBoundary(part, mid, to, left, separator, adjFirst, adjNodes);
+
+        int[] copy = Arrays.copyOfRange(part, from, to);
+        int leftEnd = from;
+        for (int node : copy)
+        {
+            if (marks[node] == left)
+                part[leftEnd++] = node;
+        }
+        int rightEnd = leftEnd;
+        for (int node : copy)
+        {
+            if (marks[node] == right)
+                part[rightEnd++] = node;
+        }
+        int sepEnd = rightEnd;
+        for (int node : copy)
+        {
+            if (marks[node] == separator)
+                part[sepEnd++] = node;
+        }
+        for (int i = sepEnd - 1; i >= rightEnd; i--)
+        {
+            rankToNode[--nextRank] = part[i];
+        }
+
+        dissect(part, leftEnd, rightEnd, adjFirst, adjNodes, keys);
+        dissect(part, from, leftEnd, adjFirst, adjNodes, keys);
+    }
+
+    private int countBoundary( int[] part, int from, int to, int otherMark, int[] adjFirst, int[] adjNodes )
+    {
+        int count = 0;
+        for (int i = from; i < to; i++)
+        {
+            if (isBoundary(part[i], otherMark, adjFirst, adjNodes))
+                count++;
+        }
+        return count;
+    }
+
+    private void markBoundary( int[] part, int from, int to, int otherMark, int separator, int[] adjFirst, int[] adjNodes )
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (isBoundary(part[i], otherMark, adjFirst, adjNodes))
+                marks[part[i]] = separator;
+        }
+    }
+
+    private boolean isBoundary( int node, int otherMark, int[] adjFirst, int[] adjNodes )
+    {
+        for (int i = adjFirst[node]; i < adjFirst[node + 1]; i++)
+        {
+            if (marks[adjNodes[i]] == otherMark)
+                return true;
+        }
+        return false;
+    }
+
+    private static void addUpper( TIntArrayList[] upper, int rankA, int rankB )
+    {
+        if (rankA == rankB)
+            return;
+
+        int low = Math.min(rankA, rankB);
+        if (upper[low] == null)
+            upper[low] = new TIntArrayList(4);
+
+        upper[low].add(Math.max(rankA, rankB));
+    }
+
+    private static void sortUnique( TIntArrayList list )
+    {
+        list.sort();
+        int size = 0;
+        for (int i = 0; i < list.size(); i++)
+        {
+            if (size == 0 || list.get(size - 1) != list.get(i))
+                list.set(size++, list.get(i));
+        }
+        list.remove(size, list.size() - size);
+    }
+
+    /**
+     * Creates the upward and downward arcs and the levels of the customization from the sorted
+     * higher neighbors of every rank.
+     */
+    private void initArcs( TIntArrayList[] upper )
+    {
+        int nodes = rankToNode.length;
+        upFirst = new int[nodes + 1];
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            upFirst[rank + 1] = upFirst[rank] + (upper[rank] == null ? 0 : upper[rank].size());
+        }
+        int arcs = upFirst[nodes];
+        upTarget = new int[arcs];
+        downFirst = new int[nodes + 1];
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            if (upper[rank] == null)
+                continue;
+
+            upper[rank].toArray(upTarget, 0, upFirst[rank], upper[rank].size());
+            upper[rank] = null;
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++)
+            {
+                downFirst[upTarget[arc] + 1]++;
+            }
+        }
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            downFirst[rank + 1] += downFirst[rank];
+        }
+
+        downSource = new int[arcs];
+        downArc = new int[arcs];
+        int[] next = Arrays.copyOf(downFirst, nodes);
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            for (int arc = upFirst[rank]; arc < upFirst[rank + 1]; arc++)
+            {
+                int pos = next[upTarget[arc]]++;
+                downSource[pos] = rank;
+                downArc[pos] = arc;
+            }
+        }
+
+        // an arc depends only on arcs of lower ranks with a smaller level
+        int[] levels = new int[nodes];
+        int maxLevel = 0;
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            for (int i = downFirst[rank]; i < downFirst[rank + 1]; i++)
+            {
+                levels[rank] = Math.max(levels[rank], levels[downSource[i]] + 1);
+            }
+            maxLevel = Math.max(maxLevel, levels[rank]);
+        }
+        levelFirst = new int[maxLevel + 2];
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            levelFirst[levels[rank] + 1]++;
+        }
+        for (int level = 0; level <= maxLevel; level++)
+        {
+            levelFirst[level + 1] += levelFirst[level];
+        }
+        levelRanks = new int[nodes];
+        next = Arrays.copyOf(levelFirst, maxLevel + 1);
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            levelRanks[next[levels[rank]]++] = rank;
+        }
+    }
+
+    private void initOriginalEdges()
+    {
+        AllEdgesSkipIterator iter = graph.getAllEdges();
+        origHead = new int[upTarget.length];
+        Arrays.fill(origHead, EdgeIterator.NO_EDGE);
+        origNext = new int[iter.getCount()];
+        while (iter.next())
+        {
+            if (iter.isShortcut() || iter.getBaseNode() == iter.getAdjNode())
+                continue;
+
+            int arc = findArc(graph.getLevel(iter.getBaseNode()) - 1, graph.getLevel(iter.getAdjNode()) - 1);
+            origNext[iter.getEdge()] = origHead[arc];
+            origHead[arc] = iter.getEdge();
+        }
+    }
+
+    /**
+     * Reads the hierarchy from the levels, original edges and shortcuts of a graph prepared
+     * before.
+     */
+    private void readHierarchy()
+    {
+        int nodes = graph.getNodes();
+        rankToNode = new int[nodes];
+        Arrays.fill(rankToNode, -1);
+        for (int node = 0; node < nodes; node++)
+        {
+            int rank = graph.getLevel(node) - 1;
+            if (rank < 0 || rank >= nodes || rankToNode[rank] >= 0)
+                throw new IllegalStateException("Graph is not prepared for customizable contraction hierarchies, level of "
+                        + node + " is " + (rank + 1));
+
+            rankToNode[rank] = node;
+        }
+
+        TIntArrayList[] upper = new TIntArrayList[nodes];
+        AllEdgesSkipIterator iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            addUpper(upper, graph.getLevel(iter.getBaseNode()) - 1, graph.getLevel(iter.getAdjNode()) - 1);
+        }
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            if (upper[rank] != null)
+                sortUnique(upper[rank]);
+        }
+        initArcs(upper);
+
+        scUp = new int[upTarget.length];
+        scDown = new int[upTarget.length];
+        Arrays.fill(scUp, EdgeIterator.NO_EDGE);
+        Arrays.fill(scDown, EdgeIterator.NO_EDGE);
+        iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            if (!iter.isShortcut())
+                continue;
+
+            int arc = findArc(graph.getLevel(iter.getBaseNode()) - 1, graph.getLevel(iter.getAdjNode()) - 1);
+            if (scUp[arc] == EdgeIterator.NO_EDGE)
+                scUp[arc] = iter.getEdge();
+            else
+                scDown[arc] = iter.getEdge();
+        }
+        initOriginalEdges();
+    }
+
+    private int findArc( int rankA, int rankB )
+    {
+        int low = Math.min(rankA, rankB);
+        int arc = Arrays.binarySearch(upTarget, upFirst[low], upFirst[low + 1], Math.max(rankA, rankB));
+        if (arc < 0)
+            throw new IllegalStateException("No arc between ranks " + rankA + " and " + rankB);
+        return arc;
+    }
+
+    private boolean hasLowerTriangle( int rankU, int rankW )
+    {
+        int i = downFirst[rankU], j = downFirst[rankW];
+        while (i < downFirst[rankU + 1] && j < downFirst[rankW + 1])
+        {
+            if (downSource[i] == downSource[j])
+                return true;
+            if (downSource[i] < downSource[j])
+                i++;
+            else
+                j++;
+        }
+        return false;
+    }
+
+    /**
+     * Edges from a higher to a lower node are never used in the query, without them no level
+     * filter is necessary.
+     */
+    private void disconnectHigher2Lower( LevelGraphStorage lg )
+    {
+        EdgeSkipExplorer explorer = lg.createEdgeExplorer();
+        EdgeSkipExplorer tmpExplorer = lg.createEdgeExplorer();
+        for (int node = 0; node < lg.getNodes(); node++)
+        {
+            int level = lg.getLevel(node);
+            EdgeSkipIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+            {
+                if (lg.getLevel(iter.getAdjNode()) > level)
+                    lg.disconnect(tmpExplorer, iter);
+            }
+        }
+    }
+
+    /**
+     * Calculates the arcs of the ranks levelRanks[from, to) from their original edges and lower
+     * triangles.
+     */
+    void customizeRanks( Metric metric, Weighting weighting, int from, int to )
+    {
+        for (int i = from; i < to; i++)
+        {
+            int rankU = levelRanks[i];
+            int nodeU = rankToNode[rankU];
+            for (int arc = upFirst[rankU]; arc < upFirst[rankU + 1]; arc++)
+            {
+                int rankW = upTarget[arc];
+                metric.init(arc);
+                for (int edge = origHead[arc]; edge != EdgeIterator.NO_EDGE; edge = origNext[edge])
+                {
+                    // points from u to w
+                    EdgeIteratorState state = graph.getEdgeProps(edge, rankToNode[rankW]);
+                    long flags = state.getFlags();
+                    if (encoder.isBool(flags, FlagEncoder.K_FORWARD))
+                        metric.updateUp(arc, weighting.calcWeight(state, false, EdgeIterator.NO_EDGE),
+                                state.getDistance(), edge, EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE);
+                    if (encoder.isBool(flags, FlagEncoder.K_BACKWARD))
+                        metric.updateDown(arc, weighting.calcWeight(state, true, EdgeIterator.NO_EDGE),
+                                state.getDistance(), edge, EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE);
+                }
+
+                if (scUp[arc] == EdgeIterator.NO_EDGE)
+                    continue;
+
+                // the lower triangles u-v-w are already final as v is of a smaller level than u
+                int j = downFirst[rankU], k = downFirst[rankW];
+                while (j < downFirst[rankU + 1] && k < downFirst[rankW + 1])
+                {
+                    if (downSource[j] < downSource[k])
+                    {
+                        j++;
+                    } else if (downSource[j] > downSource[k])
+                    {
+                        k++;
+                    } else
+                    {
+                        int vu = downArc[j], vw = downArc[k];
+                        metric.updateUp(arc, metric.downWeight[vu] + metric.upWeight[vw],
+                                metric.downDist[vu] + metric.upDist[vw], scUp[arc], metric.downEdge[vu], metric.upEdge[vw]);
+                        metric.updateDown(arc, metric.downWeight[vw] + metric.upWeight[vu],
+                                metric.downDist[vw] + metric.upDist[vu], scDown[arc], metric.downEdge[vw], metric.upEdge[vu]);
+                        j++;
+                        k++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeShortcut( int scEdge, int adjNode, boolean up, boolean enabled, double weight, double dist,
+            int skip1, int skip2 )
+    {
+        // points from the lower to the higher node
+        EdgeSkipIterState state = graph.getEdgeProps(scEdge, adjNode);
+        // note: flags overwrite weight => call first
+        if (enabled)
+        {
+            state.setFlags(encoder.setAccess(0, up, !up));
+            state.setWeight(weight);
+            state.setDistance(dist);
+            state.setSkippedEdges(skip1, skip2);
+        } else
+        {
+            state.setFlags(encoder.setAccess(0, false, false));
+            state.setWeight(Double.POSITIVE_INFINITY);
+            state.setDistance(0);
+            state.setSkippedEdges(EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CCH|" + currentWeighting.get();
+    }
+
+    /**
+     * The best weight, distance and edge for both directions of every arc. 'up' is the direction
+     * from the lower to the higher node.
+     */
+    static class Metric
+    {
+        final double[] upWeight, downWeight;
+        final double[] upDist, downDist;
+        final int[] upEdge, downEdge;
+        final int[] upSkip1, upSkip2, downSkip1, downSkip2;
+
+        Metric( int arcs )
+        {
+            upWeight = new double[arcs];
+            downWeight = new double[arcs];
+            upDist = new double[arcs];
+            downDist = new double[arcs];
+            upEdge = new int[arcs];
+            downEdge = new int[arcs];
+            upSkip1 = new int[arcs];
+            upSkip2 = new int[arcs];
+            downSkip1 = new int[arcs];
+            downSkip2 = new int[arcs];
+        }
+
+        void init( int arc )
+        {
+            upWeight[arc] = downWeight[arc] = Double.POSITIVE_INFINITY;
+            upEdge[arc] = downEdge[arc] = EdgeIterator.NO_EDGE;
+        }
+
+        void updateUp( int arc, double weight, double dist, int edge, int skip1, int skip2 )
+        {
+            if (weight >= upWeight[arc])
+                return;
+
+            upWeight[arc] = weight;
+            upDist[arc] = dist;
+            upEdge[arc] = edge;
+            upSkip1[arc] = skip1;
+            upSkip2[arc] = skip2;
+        }
+
+        void updateDown( int arc, double weight, double dist, int edge, int skip1, int skip2 )
+        {
+            if (weight >= downWeight[arc])
+                return;
+
+            downWeight[arc] = weight;
+            downDist[arc] = dist;
+            downEdge[arc] = edge;
+            downSkip1[arc] = skip1;
+            downSkip2[arc] = skip2;
+        }
+    }
+
+    /**
+     * Makes the weighting of the original edges exchangeable for the algorithms created by the
+     * super class, also for the reused ones.
+     */
+    static class SwappableWeighting implements Weighting
+    {
+        private volatile Weighting weighting;
+
+        SwappableWeighting( Weighting weighting )
+        {
+            this.weighting = weighting;
+        }
+
+        Weighting get()
+        {
+            return weighting;
+        }
+
+        void set( Weighting weighting )
+        {
+            this.weighting = weighting;
+        }
+
+        @Override
+        public double getMinWeight( double distance )
+        {
+            return weighting.getMinWeight(distance);
+        }
+
+        @Override
+        public double calcWeight( EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId )
+        {
+            return weighting.calcWeight(edgeState, reverse, prevOrNextEdgeId);
+        }
+
+        @Override
+        public String toString()
+        {
+            return weighting.toString();
+        }
+    }
+}
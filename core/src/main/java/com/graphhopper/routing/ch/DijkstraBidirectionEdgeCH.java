@@ -0,0 +1,179 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.EdgeEntry;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bidirectional Dijkstra for the edge-based contraction hierarchies. Both searches go only
+ * upwards in the hierarchy and therefor cannot meet on the same edge like the edge-based Dijkstra
+ * without CH. Instead every time an edge was relaxed all entries of the other search at the same
+ * node are combined with it, including the turn costs between their original edges. The entries
+ * are stored per node as the edges from higher to lower nodes are removed.
+ * <p/>
+ * @see PrepareContractionHierarchies
+ * @author Peter Karich
+ */
+public class DijkstraBidirectionEdgeCH extends DijkstraBidirectionRef
+{
+    private final PreparationTurnWeighting turnWeighting;
+    private final TIntObjectMap<List<EdgeEntry>> nodeEntriesFrom = new TIntObjectHashMap<List<EdgeEntry>>();
+    private final TIntObjectMap<List<EdgeEntry>> nodeEntriesTo = new TIntObjectHashMap<List<EdgeEntry>>();
+    private EdgeEntry startFrom;
+    private EdgeEntry startTo;
+    private boolean reverse;
+
+    public DijkstraBidirectionEdgeCH( Graph graph, FlagEncoder encoder, PreparationTurnWeighting weighting,
+            TraversalMode tMode )
+    {
+        super(graph, encoder, weighting, tMode);
+        if (!tMode.isEdgeBased())
+            throw new IllegalArgumentException("Traversal mode has to be edge-based but was " + tMode);
+
+        turnWeighting = weighting;
+    }
+
+    @Override
+    public void reset( Graph graph )
+    {
+        super.reset(graph);
+        nodeEntriesFrom.clear();
+        nodeEntriesTo.clear();
+        startFrom = null;
+        startTo = null;
+    }
+
+    @Override
+    public void initFrom( int from, double dist )
+    {
+        super.initFrom(from, dist);
+        startFrom = currFrom;
+        if (startTo != null && startTo.adjNode == from)
+            bestPath.setWeight(startFrom.weight + startTo.weight);
+    }
+
+    @Override
+    public void initTo( int to, double dist )
+    {
+        super.initTo(to, dist);
+        startTo = currTo;
+        if (startFrom != null && startFrom.adjNode == to)
+            bestPath.setWeight(startFrom.weight + startTo.weight);
+    }
+
+    @Override
+    public boolean fillEdgesFrom()
+    {
+        reverse = false;
+        return super.fillEdgesFrom();
+    }
+
+    @Override
+    public boolean fillEdgesTo()
+    {
+        reverse = true;
+        return super.fillEdgesTo();
+    }
+
+    @Override
+    public boolean finished()
+    {
+        // we need to finish BOTH searches for CH!
+        if (finishedFrom && finishedTo)
+            return true;
+
+        if (currFrom.weight + currTo.weight > weightLimit)
+            return true;
+
+        return currFrom.weight >= bestPath.getWeight() && currTo.weight >= bestPath.getWeight();
+    }
+
+    @Override
+    protected Path createAndInitPath()
+    {
+        bestPath = new Path4CH(graph, flagEncoder);
+        return bestPath;
+    }
+
+    @Override
+    protected void updateBestPath( EdgeIteratorState edgeState, EdgeEntry entryCurrent, int traversalId )
+    {
+        int node = entryCurrent.adjNode;
+        EdgeEntry otherStart = reverse ? startFrom : startTo;
+        if (otherStart.adjNode == node)
+            updateBestPath(entryCurrent, otherStart, entryCurrent.weight + otherStart.weight);
+
+        // an updated entry is already stored
+        TIntObjectMap<List<EdgeEntry>> nodeEntries = reverse ? nodeEntriesTo : nodeEntriesFrom;
+        List<EdgeEntry> entries = nodeEntries.get(node);
+        if (entries == null)
+        {
+            entries = new ArrayList<EdgeEntry>(4);
+            nodeEntries.put(node, entries);
+        }
+        if (!entries.contains(entryCurrent))
+            entries.add(entryCurrent);
+
+        List<EdgeEntry> otherEntries = (reverse ? nodeEntriesFrom : nodeEntriesTo).get(node);
+        if (otherEntries == null)
+            return;
+
+        int origEdge = turnWeighting.getOrigEdge(entryCurrent.edge, node, !reverse);
+        for (EdgeEntry entryOther : otherEntries)
+        {
+            int otherOrigEdge = turnWeighting.getOrigEdge(entryOther.edge, node, reverse);
+            double turnWeight = reverse
+                    ? turnWeighting.calcTurnWeight(otherOrigEdge, node, origEdge)
+                    : turnWeighting.calcTurnWeight(origEdge, node, otherOrigEdge);
+            updateBestPath(entryCurrent, entryOther, entryCurrent.weight + turnWeight + entryOther.weight);
+        }
+    }
+
+    private void updateBestPath( EdgeEntry entryCurrent, EdgeEntry entryOther, double newWeight )
+    {
+        if (newWeight < bestPath.getWeight())
+        {
+            bestPath.setSwitchToFrom(reverse);
+            bestPath.setEdgeEntry(entryCurrent);
+            bestPath.setWeight(newWeight);
+            bestPath.setEdgeEntryTo(entryOther);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return "dijkstrabiCH";
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName() + "|" + turnWeighting;
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.ShortestPathTree;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.Arrays;
+
+/**
+ * Finds the shortcuts of a node for the edge-based contraction. With turn costs the best path
+ * between two neighbors u and w depends on the original edge x over which u is reached and on the
+ * original edge t over which w is left. So for every x the 'bridge' paths u->v->w are compared
+ * against the best witness path which avoids v, for every pair of u and w and for every t. A
+ * shortcut is only necessary if a bridge is strictly better for at least one x and t, and it
+ * stores the first and last original edge to calculate the turn costs at u and w.
+ * <p/>
+ * Paths which start or end at u or w have no turn costs there, this is the x or t of
+ * EdgeIterator.NO_EDGE. If u and w are identical the shortcut is a loop, which is necessary to
+ * turn around where turns are restricted. A bridge can include one loop at v after the incoming
+ * edge, for which a second shortcut from u to v is created.
+ * <p/>
+ * One instance must be used by one thread only.
+ * <p/>
+ * @author Peter Karich
+ */
+class EdgeBasedWitnessSearch
+{
+    private final PrepareContractionHierarchies prepareCH;
+    private final LevelGraph graph;
+    private final PreparationTurnWeighting weighting;
+    private final EdgeExplorer inExplorer;
+    private final EdgeExplorer outExplorer;
+    private final EdgeExplorer searchExplorer;
+    private final OriginalEdges origInEdges;
+    private final OriginalEdges origOutEdges;
+    // the witness search is keyed by the directed edge and reuses the arrays for every search
+    private final IntDoubleBinHeap heap = new IntDoubleBinHeap(100);
+    private final ShortestPathTree tree = new ShortestPathTree(100);
+    // the incoming edges u->v of the current node v
+    private final TIntArrayList inEdges = new TIntArrayList();
+    private final TIntArrayList inNodes = new TIntArrayList();
+    private final TDoubleArrayList inWeights = new TDoubleArrayList();
+    private final TDoubleArrayList inDists = new TDoubleArrayList();
+    // the outgoing edges v->w of the current node v
+    private final TIntArrayList outEdges = new TIntArrayList();
+    private final TIntArrayList outNodes = new TIntArrayList();
+    private final TDoubleArrayList outWeights = new TDoubleArrayList();
+    private final TDoubleArrayList outDists = new TDoubleArrayList();
+    // the loops v->v of the current node v
+    private final TIntArrayList loopEdges = new TIntArrayList();
+    private final TDoubleArrayList loopWeights = new TDoubleArrayList();
+    private final TDoubleArrayList loopDists = new TDoubleArrayList();
+    // the distinct nodes w and the original edges t leaving them, the targets of one node w are
+    // stored from targetStart.get(w) to targetStart.get(w + 1)
+    private final TIntArrayList targetNodes = new TIntArrayList();
+    private final TIntIntMap targetNodeIndex = new TIntIntHashMap(16, 0.5f, -1, -1);
+    private final TIntArrayList targetStart = new TIntArrayList();
+    private final TIntArrayList targets = new TIntArrayList();
+    private final TIntSet tmpNodes = new TIntHashSet();
+    private final TIntArrayList sources = new TIntArrayList();
+    // the best bridge and witness per target
+    private double[] bridgeWeights = new double[16];
+    private int[] bridgeIns = new int[16];
+    private int[] bridgeLoops = new int[16];
+    private int[] bridgeOuts = new int[16];
+    private double[] witnessWeights = new double[16];
+    private boolean[] foundShortcuts = new boolean[16];
+    long searchCount;
+
+    public EdgeBasedWitnessSearch( PrepareContractionHierarchies prepareCH, LevelGraph graph, FlagEncoder encoder,
+            PreparationTurnWeighting weighting, OriginalEdges origInEdges, OriginalEdges origOutEdges )
+    {
+        this.prepareCH = prepareCH;
+        this.graph = graph;
+        this.weighting = weighting;
+        this.origInEdges = origInEdges;
+        this.origOutEdges = origOutEdges;
+        inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, true, false));
+        outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+        searchExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+    }
+
+    /**
+     * Finds the shortcuts for the specified node, does not change the underlying graph.
+     * <p/>
+     * @return the number of incoming edges
+     */
+    long findShortcuts( PrepareContractionHierarchies.ShortcutHandler sch, int maxVisitedNodes )
+    {
+        int v = sch.getNode();
+        initNeighbors(v);
+        if (inEdges.isEmpty() || outEdges.isEmpty())
+            return inEdges.size();
+
+        int outSize = outEdges.size();
+        int loopSize = loopEdges.size() + 1;
+        int size = inEdges.size() * loopSize * outSize;
+        if (foundShortcuts.length < size)
+            foundShortcuts = new boolean[size];
+        else
+            Arrays.fill(foundShortcuts, false);
+
+        tmpNodes.clear();
+        for (int i = 0; i < inNodes.size(); i++)
+        {
+            int u = inNodes.get(i);
+            if (!tmpNodes.add(u))
+                continue;
+
+            initSources(u);
+            for (int s = 0; s < sources.size(); s++)
+            {
+                int x = sources.get(s);
+                double maxBridgeWeight = calcBridges(v, u, x);
+                if (maxBridgeWeight < 0)
+                    continue;
+
+                searchCount++;
+                findWitnesses(v, u, x, maxBridgeWeight, maxVisitedNodes);
+                for (int index = 0; index < targets.size(); index++)
+                {
+                    int in = bridgeIns[index];
+                    if (in < 0 || bridgeWeights[index] >= witnessWeights[index])
+                        continue;
+
+                    int loop = bridgeLoops[index];
+                    int out = bridgeOuts[index];
+                    int foundIndex = (in * loopSize + loop + 1) * outSize + out;
+                    if (foundShortcuts[foundIndex])
+                        continue;
+
+                    foundShortcuts[foundIndex] = true;
+                    addShortcut(sch, v, u, in, loop, out);
+                }
+            }
+        }
+        return inEdges.size();
+    }
+
+    private void addShortcut( PrepareContractionHierarchies.ShortcutHandler sch, int v, int u, int in, int loop, int out )
+    {
+        int inEdge = inEdges.get(in);
+        int outEdge = outEdges.get(out);
+        int w = outNodes.get(out);
+        int origFirst = weighting.getOrigEdge(inEdge, u, false);
+        int origLast = weighting.getOrigEdge(outEdge, w, true);
+        int origOut = weighting.getOrigEdge(outEdge, v, false);
+        if (loop < 0)
+        {
+            double weight = inWeights.get(in) + outWeights.get(out)
+                    + weighting.calcTurnWeight(weighting.getOrigEdge(inEdge, v, true), v, origOut);
+            sch.foundShortcut(u, w, weight, inDists.get(in) + outDists.get(out), inEdge, outEdge,
+                    prepareCH.getOrigEdgeCount(inEdge) + prepareCH.getOrigEdgeCount(outEdge),
+                    origFirst, origLast);
+            return;
+        }
+
+        int loopEdge = loopEdges.get(loop);
+        int innerOrigLast = weighting.getOrigEdge(loopEdge, v, true);
+        double innerWeight = inWeights.get(in) + loopWeights.get(loop)
+                + weighting.calcTurnWeight(weighting.getOrigEdge(inEdge, v, true), v, weighting.getOrigEdge(loopEdge, v, false));
+        double innerDist = inDists.get(in) + loopDists.get(loop);
+        double weight = innerWeight + outWeights.get(out) + weighting.calcTurnWeight(innerOrigLast, v, origOut);
+        sch.foundLoopShortcut(u, w, weight, innerDist + outDists.get(out), inEdge, loopEdge, innerWeight, innerDist,
+                outEdge, origFirst, innerOrigLast, origLast);
+    }
+
+    private void initNeighbors( int v )
+    {
+        inEdges.reset();
+        inNodes.reset();
+        inWeights.reset();
+        inDists.reset();
+        loopEdges.reset();
+        loopWeights.reset();
+        loopDists.reset();
+        EdgeIterator iter = inExplorer.setBaseNode(v);
+        while (iter.next())
+        {
+            int u = iter.getAdjNode();
+            if (u == v)
+            {
+                double weight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+                if (!Double.isInfinite(weight))
+                {
+                    loopEdges.add(iter.getEdge());
+                    loopWeights.add(weight);
+                    loopDists.add(iter.getDistance());
+                }
+                continue;
+            }
+
+            if (graph.getLevel(u) != 0)
+                continue;
+
+            double weight = weighting.calcWeight(iter, true, EdgeIterator.NO_EDGE);
+            if (Double.isInfinite(weight))
+                continue;
+
+            inEdges.add(iter.getEdge());
+            inNodes.add(u);
+            inWeights.add(weight);
+            inDists.add(iter.getDistance());
+        }
+
+        outEdges.reset();
+        outNodes.reset();
+        outWeights.reset();
+        outDists.reset();
+        targetNodes.reset();
+        targetNodeIndex.clear();
+        iter = outExplorer.setBaseNode(v);
+        while (iter.next())
+        {
+            int w = iter.getAdjNode();
+            if (w == v || graph.getLevel(w) != 0)
+                continue;
+
+            double weight = weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+            if (Double.isInfinite(weight))
+                continue;
+
+            outEdges.add(iter.getEdge());
+            outNodes.add(w);
+            outWeights.add(weight);
+            outDists.add(iter.getDistance());
+            if (!targetNodeIndex.containsKey(w))
+            {
+                targetNodeIndex.put(w, targetNodes.size());
+                targetNodes.add(w);
+            }
+        }
+
+        targetStart.reset();
+        targets.reset();
+        for (int i = 0; i < targetNodes.size(); i++)
+        {
+            int w = targetNodes.get(i);
+            targetStart.add(targets.size());
+            targets.add(EdgeIterator.NO_EDGE);
+            for (int j = origOutEdges.getStart(w); j < origOutEdges.getStart(w + 1); j++)
+            {
+                targets.add(origOutEdges.getEdge(j));
+            }
+        }
+        targetStart.add(targets.size());
+
+        int size = targets.size();
+        if (bridgeWeights.length < size)
+        {
+            bridgeWeights = new double[size];
+            bridgeIns = new int[size];
+            bridgeLoops = new int[size];
+            bridgeOuts = new int[size];
+            witnessWeights = new double[size];
+        }
+    }
+
+    /**
+     * Collects the original edges over which the specified node can be reached.
+     */
+    private void initSources( int u )
+    {
+        sources.reset();
+        sources.add(EdgeIterator.NO_EDGE);
+        for (int i = origInEdges.getStart(u); i < origInEdges.getStart(u + 1); i++)
+        {
+            sources.add(origInEdges.getEdge(i));
+        }
+    }
+
+    /**
+     * Calculates the best bridge u->v->w for every target if u is reached over x.
+     * <p/>
+     * @return the maximum weight of all bridges or -1 if there is no bridge
+     */
+    private double calcBridges( int v, int u, int x )
+    {
+        int size = targets.size();
+        for (int index = 0; index < size; index++)
+        {
+            bridgeWeights[index] = Double.POSITIVE_INFINITY;
+            bridgeIns[index] = -1;
+        }
+
+        for (int in = 0; in < inEdges.size(); in++)
+        {
+            if (inNodes.get(in) != u)
+                continue;
+
+            int inEdge = inEdges.get(in);
+            double inWeight = weighting.calcTurnWeight(x, u, weighting.getOrigEdge(inEdge, u, false)) + inWeights.get(in);
+            if (Double.isInfinite(inWeight))
+                continue;
+
+            int inOrigEdge = weighting.getOrigEdge(inEdge, v, true);
+            calcBridges(v, in, -1, inWeight, inOrigEdge);
+            for (int loop = 0; loop < loopEdges.size(); loop++)
+            {
+                int loopEdge = loopEdges.get(loop);
+                double loopWeight = inWeight + loopWeights.get(loop)
+                        + weighting.calcTurnWeight(inOrigEdge, v, weighting.getOrigEdge(loopEdge, v, false));
+                if (!Double.isInfinite(loopWeight))
+                    calcBridges(v, in, loop, loopWeight, weighting.getOrigEdge(loopEdge, v, true));
+            }
+        }
+
+        double max = -1;
+        for (int index = 0; index < size; index++)
+        {
+            if (bridgeIns[index] >= 0)
+                max = Math.max(max, bridgeWeights[index]);
+        }
+        return max;
+    }
+
+    /**
+     * Updates the bridges for all outgoing edges if v is reached with the specified weight over the
+     * specified original edge.
+     */
+    private void calcBridges( int v, int in, int loop, double inWeight, int inOrigEdge )
+    {
+        for (int out = 0; out < outEdges.size(); out++)
+        {
+            int outEdge = outEdges.get(out);
+            double weight = inWeight + weighting.calcTurnWeight(inOrigEdge, v, weighting.getOrigEdge(outEdge, v, false))
+                    + outWeights.get(out);
+            if (Double.isInfinite(weight))
+                continue;
+
+            int w = outNodes.get(out);
+            int outOrigEdge = weighting.getOrigEdge(outEdge, w, true);
+            int wIndex = targetNodeIndex.get(w);
+            for (int index = targetStart.get(wIndex); index < targetStart.get(wIndex + 1); index++)
+            {
+                double tmpWeight = weight + weighting.calcTurnWeight(outOrigEdge, w, targets.get(index));
+                if (tmpWeight < bridgeWeights[index])
+                {
+                    bridgeWeights[index] = tmpWeight;
+                    bridgeIns[index] = in;
+                    bridgeLoops[index] = loop;
+                    bridgeOuts[index] = out;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the best witness path for every target, i.e. a path from u over x which avoids v.
+     * The search stops if every bridge has a witness, at the weight of the remaining bridges or if
+     * too many nodes were visited, in which case the witness weights are too high and more
+     * shortcuts are introduced but none is missed.
+     */
+    private void findWitnesses( int v, int u, int x, double maxWeight, int maxVisitedNodes )
+    {
+        for (int index = 0; index < targets.size(); index++)
+        {
+            witnessWeights[index] = Double.POSITIVE_INFINITY;
+        }
+
+        // a loop at u is only necessary if it is better than the direct turn
+        int uIndex = targetNodeIndex.get(u);
+        if (uIndex >= 0)
+        {
+            for (int index = targetStart.get(uIndex); index < targetStart.get(uIndex + 1); index++)
+            {
+                witnessWeights[index] = weighting.calcTurnWeight(x, u, targets.get(index));
+            }
+        }
+
+        int open = 0;
+        for (int index = 0; index < targets.size(); index++)
+        {
+            if (bridgeIns[index] >= 0 && witnessWeights[index] > bridgeWeights[index])
+                open++;
+        }
+        if (open == 0)
+            return;
+
+        heap.clear();
+        tree.clear();
+        // the start has no traversal id, its edge x is only necessary for the turn costs
+        int start = tree.add(-1, x, u, 0, ShortestPathTree.NO_PARENT);
+        heap.insert_(0, start);
+        int visitedNodes = 0;
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int curr = heap.poll_element();
+            double currWeight = tree.getWeight(curr);
+            // outdated entries stay in the heap instead of removing them, which is slow
+            if (key > (float) currWeight)
+                continue;
+
+            if (currWeight > maxWeight || ++visitedNodes > maxVisitedNodes)
+                break;
+
+            int node = tree.getAdjNode(curr);
+            int currEdge = tree.getEdge(curr);
+            int wIndex = curr == start ? -1 : targetNodeIndex.get(node);
+            if (wIndex >= 0)
+            {
+                boolean found = false;
+                int origEdge = weighting.getOrigEdge(currEdge, node, true);
+                for (int index = targetStart.get(wIndex); index < targetStart.get(wIndex + 1); index++)
+                {
+                    double tmpWeight = currWeight + weighting.calcTurnWeight(origEdge, node, targets.get(index));
+                    if (tmpWeight >= witnessWeights[index])
+                        continue;
+
+                    if (bridgeIns[index] >= 0 && witnessWeights[index] > bridgeWeights[index]
+                            && tmpWeight <= bridgeWeights[index])
+                    {
+                        open--;
+                        found = true;
+                    }
+                    witnessWeights[index] = tmpWeight;
+                }
+
+                if (open == 0)
+                    break;
+
+                if (found)
+                    maxWeight = calcMaxOpenBridgeWeight();
+            }
+
+            EdgeIterator iter = searchExplorer.setBaseNode(node);
+            while (iter.next())
+            {
+                int adj = iter.getAdjNode();
+                if (adj == v || graph.getLevel(adj) != 0)
+                    continue;
+
+                double tmpWeight = currWeight + weighting.calcWeight(iter, false, currEdge);
+                if (tmpWeight > maxWeight)
+                    continue;
+
+                int traversalId = GHUtility.createEdgeKey(adj, node, iter.getEdge(), false);
+                int visitId = tree.getVisitId(traversalId);
+                if (visitId < 0)
+                    visitId = tree.add(traversalId, iter.getEdge(), adj, tmpWeight, curr);
+                else if (tree.getWeight(visitId) > tmpWeight)
+                    tree.set(visitId, iter.getEdge(), tmpWeight, curr);
+                else
+                    continue;
+
+                heap.insert_(tmpWeight, visitId);
+            }
+        }
+    }
+
+    private double calcMaxOpenBridgeWeight()
+    {
+        double max = -1;
+        for (int index = 0; index < targets.size(); index++)
+        {
+            if (bridgeIns[index] >= 0 && witnessWeights[index] > bridgeWeights[index])
+                max = Math.max(max, bridgeWeights[index]);
+        }
+        return max;
+    }
+
+    /**
+     * The original edges of every node in one direction. They are collected before the contraction
+     * as the edges from higher to lower nodes are removed, but they are still the first and last
+     * original edges of the shortcuts.
+     */
+    static class OriginalEdges
+    {
+        private final int[] start;
+        private final int[] edges;
+
+        public OriginalEdges( Graph graph, EdgeFilter filter )
+        {
+            int nodes = graph.getNodes();
+            start = new int[nodes + 1];
+            TIntArrayList tmpEdges = new TIntArrayList();
+            EdgeExplorer explorer = graph.createEdgeExplorer(filter);
+            for (int node = 0; node < nodes; node++)
+            {
+                start[node] = tmpEdges.size();
+                EdgeIterator iter = explorer.setBaseNode(node);
+                while (iter.next())
+                {
+                    tmpEdges.add(iter.getEdge());
+                }
+            }
+            start[nodes] = tmpEdges.size();
+            edges = tmpEdges.toArray();
+        }
+
+        int getStart( int node )
+        {
+            return start[node];
+        }
+
+        int getEdge( int index )
+        {
+            return edges[index];
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.ManyToManyAlgorithm;
+import com.graphhopper.routing.PathMatrix;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.EdgeEntry;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.ShortestPathTree;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import java.util.Arrays;
+
+/**
+ * Calculates a many-to-many matrix on a graph prepared with contraction hierarchies via the bucket
+ * approach: one backward upward search per target stores its settled nodes in buckets, then one
+ * forward upward search per source scans the buckets of its settled nodes. As the upward searches
+ * are small this is much faster than one point to point query per entry.
+ * <p/>
+ * The best paths are unpacked afterwards to get the exact distance and time.
+ * <p/>
+ * All searches share one array based tree and heap. The settled entries of the backward searches
+ * are copied into flat arrays and linked per node, which forms the buckets.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ManyToManyCH implements ManyToManyAlgorithm
+{
+    private static final int NO_ENTRY = -1;
+    private final Graph graph;
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private final EdgeExplorer outExplorer;
+    private final EdgeExplorer inExplorer;
+    private EdgeFilter levelFilter;
+    private int visitedNodes;
+    // the state of the current upward search, reused for every search
+    private final ShortestPathTree tree = new ShortestPathTree(100);
+    private final IntDoubleBinHeap heap = new IntDoubleBinHeap(100);
+    private final TIntArrayList settled = new TIntArrayList();
+    // the position in settled per visit id or NO_ENTRY if not yet settled
+    private int[] settledIndex = new int[100];
+    // the settled entries of all backward searches
+    private final TIntArrayList bwTargets = new TIntArrayList();
+    private final TIntArrayList bwNodes = new TIntArrayList();
+    private final TIntArrayList bwEdges = new TIntArrayList();
+    private final TIntArrayList bwParents = new TIntArrayList();
+    private final TDoubleArrayList bwWeights = new TDoubleArrayList();
+    // the buckets: the last backward entry per node and the previous entry of the same node
+    private final TIntIntMap bucketHeads = new TIntIntHashMap(100, 0.5f, NO_ENTRY, NO_ENTRY);
+    private final TIntArrayList bwNext = new TIntArrayList();
+
+    /**
+     * @param weighting the weighting of the preparation which handles shortcuts
+     */
+    public ManyToManyCH( Graph graph, FlagEncoder encoder, Weighting weighting )
+    {
+        this.graph = graph;
+        this.encoder = encoder;
+        this.weighting = weighting;
+        outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+        inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, true, false));
+    }
+
+    /**
+     * Necessary if the edges from higher to lower level nodes were not removed from the graph.
+     */
+    public ManyToManyCH setLevelFilter( EdgeFilter levelFilter )
+    {
+        this.levelFilter = levelFilter;
+        return this;
+    }
+
+    @Override
+    public PathMatrix calcMatrix( int[] sources, int[] targets )
+    {
+        PathMatrix matrix = new PathMatrix(sources.length, targets.length);
+        initBuckets(targets);
+        int[] bestFrom = new int[targets.length];
+        int[] bestTo = new int[targets.length];
+        double[] bestWeights = new double[targets.length];
+        for (int i = 0; i < sources.length; i++)
+        {
+            Arrays.fill(bestWeights, Double.MAX_VALUE);
+            Arrays.fill(bestFrom, NO_ENTRY);
+            searchUpwards(sources[i], outExplorer, false);
+            for (int s = 0; s < settled.size(); s++)
+            {
+                int fromId = settled.get(s);
+                double fromWeight = tree.getWeight(fromId);
+                for (int entry = bucketHeads.get(tree.getAdjNode(fromId)); entry != NO_ENTRY; entry = bwNext.get(entry))
+                {
+                    int j = bwTargets.get(entry);
+                    double weight = fromWeight + bwWeights.get(entry);
+                    if (weight < bestWeights[j])
+                    {
+                        bestWeights[j] = weight;
+                        bestFrom[j] = fromId;
+                        bestTo[j] = entry;
+                    }
+                }
+            }
+
+            for (int j = 0; j < targets.length; j++)
+            {
+                if (bestFrom[j] == NO_ENTRY)
+                    continue;
+
+                Path4CH path = new Path4CH(graph, encoder);
+                path.setEdgeEntry(tree.createEdgeEntry(bestFrom[j]));
+                path.setEdgeEntryTo(createBackwardEntry(bestTo[j]));
+                path.setWeight(bestWeights[j]);
+                matrix.set(i, j, path.extract());
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Runs the backward search of every target and links its settled entries into the bucket of
+     * their node.
+     */
+    private void initBuckets( int[] targets )
+    {
+        bwTargets.reset();
+        bwNodes.reset();
+        bwEdges.reset();
+        bwParents.reset();
+        bwWeights.reset();
+        bwNext.reset();
+        bucketHeads.clear();
+        for (int j = 0; j < targets.length; j++)
+        {
+            searchUpwards(targets[j], inExplorer, true);
+            int offset = bwNodes.size();
+            for (int s = 0; s < settled.size(); s++)
+            {
+                int visitId = settled.get(s);
+                int node = tree.getAdjNode(visitId);
+                int parent = tree.getParent(visitId);
+                bwTargets.add(j);
+                bwNodes.add(node);
+                bwEdges.add(tree.getEdge(visitId));
+                // the parent of a settled entry was settled before
+                bwParents.add(parent == ShortestPathTree.NO_PARENT ? NO_ENTRY : offset + settledIndex[parent]);
+                bwWeights.add(tree.getWeight(visitId));
+                bwNext.add(bucketHeads.get(node));
+                bucketHeads.put(node, offset + s);
+            }
+        }
+    }
+
+    private EdgeEntry createBackwardEntry( int entry )
+    {
+        EdgeEntry first = new EdgeEntry(bwEdges.get(entry), bwNodes.get(entry), bwWeights.get(entry));
+        EdgeEntry curr = first;
+        for (int parent = bwParents.get(entry); parent != NO_ENTRY; parent = bwParents.get(parent))
+        {
+            curr.parent = new EdgeEntry(bwEdges.get(parent), bwNodes.get(parent), bwWeights.get(parent));
+            curr = curr.parent;
+        }
+        return first;
+    }
+
+    /**
+     * Runs a Dijkstra without a stop criterion. With contraction hierarchies only edges to nodes
+     * with a higher level are followed, so the search space is small. Afterwards settled contains
+     * the visit ids of the tree in the order they were settled.
+     */
+    void searchUpwards( int startNode, EdgeExplorer explorer, boolean reverse )
+    {
+        tree.clear();
+        heap.clear();
+        settled.reset();
+        heap.insert_(0, addVisit(startNode, EdgeIterator.NO_EDGE, 0, ShortestPathTree.NO_PARENT));
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int curr = heap.poll_element();
+            double currWeight = tree.getWeight(curr);
+            // a better weight inserts the entry again instead of the slow removal of the old one
+            if (settledIndex[curr] != NO_ENTRY || key > (float) currWeight)
+                continue;
+
+            settledIndex[curr] = settled.size();
+            settled.add(curr);
+            visitedNodes++;
+            int currEdge = tree.getEdge(curr);
+            EdgeIterator iter = explorer.setBaseNode(tree.getAdjNode(curr));
+            while (iter.next())
+            {
+                if (levelFilter != null && !levelFilter.accept(iter))
+                    continue;
+
+                double tmpWeight = weighting.calcWeight(iter, reverse, currEdge) + currWeight;
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+
+                int adjNode = iter.getAdjNode();
+                int visitId = tree.getVisitId(adjNode);
+                if (visitId < 0)
+                {
+                    visitId = addVisit(adjNode, iter.getEdge(), tmpWeight, curr);
+                } else if (settledIndex[visitId] == NO_ENTRY && tree.getWeight(visitId) > tmpWeight)
+                {
+                    tree.set(visitId, iter.getEdge(), tmpWeight, curr);
+                } else
+                    continue;
+
+                heap.insert_(tmpWeight, visitId);
+            }
+        }
+    }
+
+    private int addVisit( int node, int edge, double weight, int parent )
+    {
+        int visitId = tree.add(node, edge, node, weight, parent);
+        if (visitId >= settledIndex.length)
+            settledIndex = Arrays.copyOf(settledIndex, visitId + visitId / 2 + 1);
+
+        settledIndex[visitId] = NO_ENTRY;
+        return visitId;
+    }
+
+    @Override
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "manyToManyCH";
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.Arrays;
+
+/**
+ * Calculates the weights from one node to all nodes of a graph prepared with contraction
+ * hierarchies. See "PHAST: Hardware-Accelerated Shortest Path Trees" by Delling et al.: a small
+ * upward search from the start is followed by one linear sweep over all nodes from the highest to
+ * the lowest level, where every node takes the minimum over its edges to higher level nodes. The
+ * edges of the sweep are precomputed once per preparation as compact arrays in level order, so no
+ * heap, edge iterator or flag decoding is involved.
+ * <p/>
+ * Only the weights are calculated, the paths are not unpacked. Reuse one instance via reset for
+ * many searches of the same thread.
+ * <p/>
+ * @author Peter Karich
+ */
+public class PHAST
+{
+    private final PrepareContractionHierarchies prepare;
+    private final LevelGraph levelGraph;
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private final int[] levelSortedNodes;
+    private final int[] ranks;
+    private EdgeExplorer outExplorer;
+    private EdgeExplorer inExplorer;
+    private double[] weights = new double[0];
+    private final double[] rankWeights;
+    private final TIntArrayList reachedNodes = new TIntArrayList();
+    private final IntDoubleBinHeap heap = new IntDoubleBinHeap(1000);
+    private double weightLimit = Double.MAX_VALUE;
+    private boolean reverse;
+    private int visitedNodes;
+
+    /**
+     * Use PrepareContractionHierarchies.createPHAST to get an instance.
+     * <p/>
+     * @param weighting the weighting of the preparation which handles shortcuts
+     */
+    PHAST( PrepareContractionHierarchies prepare, LevelGraph levelGraph, FlagEncoder encoder, Weighting weighting )
+    {
+        this.prepare = prepare;
+        this.levelGraph = levelGraph;
+        this.encoder = encoder;
+        this.weighting = weighting;
+        levelSortedNodes = prepare.getLevelSortedNodes();
+        ranks = createRanks(levelSortedNodes);
+        rankWeights = new double[levelSortedNodes.length];
+        reset(levelGraph);
+    }
+
+    static int[] createRanks( int[] levelSortedNodes )
+    {
+        int[] ranks = new int[levelSortedNodes.length];
+        for (int i = 0; i < levelSortedNodes.length; i++)
+        {
+            ranks[levelSortedNodes[i]] = i;
+        }
+        return ranks;
+    }
+
+    /**
+     * Prepares this instance for the next QueryGraph wrapping the prepared graph.
+     */
+    public PHAST reset( Graph graph )
+    {
+        outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+        inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, true, false));
+        if (weights.length < graph.getNodes())
+            weights = new double[graph.getNodes()];
+
+        return this;
+    }
+
+    /**
+     * Weights above this limit are not calculated and considered as not reachable. Default is no
+     * limit.
+     */
+    public PHAST setWeightLimit( double weightLimit )
+    {
+        this.weightLimit = weightLimit;
+        return this;
+    }
+
+    /**
+     * Calculates the weights from all nodes to the start instead of from the start to all nodes.
+     */
+    public PHAST setReverse( boolean reverse )
+    {
+        this.reverse = reverse;
+        return this;
+    }
+
+    /**
+     * @param from the start node which can be a virtual node of the QueryGraph passed to reset
+     */
+    public PHAST calcWeights( int from )
+    {
+        Arrays.fill(weights, Double.MAX_VALUE);
+        visitedNodes = 0;
+        searchUpwards(from);
+        sweepDownwards(prepare.getDownwardEdges(reverse));
+        return this;
+    }
+
+    private void searchUpwards( int from )
+    {
+        heap.clear();
+        reachedNodes.resetQuick();
+        weights[from] = 0;
+        reachedNodes.add(from);
+        heap.insert_(0, from);
+        EdgeExplorer explorer = reverse ? inExplorer : outExplorer;
+        int nodes = ranks.length;
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int currNode = heap.poll_element();
+            double currWeight = weights[currNode];
+            // skip the outdated entries left by the lazy re-insertion
+            if (key > (float) currWeight)
+                continue;
+
+            visitedNodes++;
+            EdgeIterator iter = explorer.setBaseNode(currNode);
+            while (iter.next())
+            {
+                int adjNode = iter.getAdjNode();
+                // virtual nodes of a QueryGraph are always accepted
+                if (currNode < nodes && adjNode < nodes && levelGraph.getLevel(adjNode) < levelGraph.getLevel(currNode))
+                    continue;
+
+                double tmpWeight = weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE) + currWeight;
+                double w = weights[adjNode];
+                if (tmpWeight > weightLimit || tmpWeight >= w)
+                    continue;
+
+                if (w == Double.MAX_VALUE)
+                    reachedNodes.add(adjNode);
+
+                weights[adjNode] = tmpWeight;
+                heap.insert_(tmpWeight, adjNode);
+            }
+        }
+    }
+
+    private void sweepDownwards( DownwardEdges edges )
+    {
+        int nodes = ranks.length;
+        Arrays.fill(rankWeights, Double.MAX_VALUE);
+        for (int i = 0; i < reachedNodes.size(); i++)
+        {
+            int node = reachedNodes.get(i);
+            if (node < nodes)
+                rankWeights[ranks[node]] = weights[node];
+        }
+
+        int[] first = edges.first;
+        int[] adjRanks = edges.adjRanks;
+        double[] edgeWeights = edges.weights;
+        for (int rank = nodes - 1; rank >= 0; rank--)
+        {
+            double best = rankWeights[rank];
+            for (int i = first[rank], end = first[rank + 1]; i < end; i++)
+            {
+                double adjWeight = rankWeights[adjRanks[i]];
+                if (adjWeight == Double.MAX_VALUE)
+                    continue;
+
+                double tmpWeight = adjWeight + edgeWeights[i];
+                if (tmpWeight < best)
+                    best = tmpWeight;
+            }
+
+            if (best <= weightLimit)
+                rankWeights[rank] = best;
+        }
+
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            weights[levelSortedNodes[rank]] = rankWeights[rank];
+        }
+        visitedNodes += nodes;
+    }
+
+    /**
+     * @return the weight of the specified node or Double.MAX_VALUE if not reachable
+     */
+    public double getWeight( int node )
+    {
+        return weights[node];
+    }
+
+    /**
+     * @return the weights of all nodes including the virtual nodes of the QueryGraph. The array can
+     * be longer than the number of nodes and is overwritten by the next search.
+     */
+    public double[] getWeights()
+    {
+        return weights;
+    }
+
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    /**
+     * Collects for every node the edges from higher level nodes in the direction of the sweep.
+     * <p/>
+     * @param reverse true for the weights to the start, i.e. the edges towards higher level nodes
+     */
+    static DownwardEdges createDownwardEdges( LevelGraph levelGraph, FlagEncoder encoder, Weighting weighting,
+            int[] levelSortedNodes, boolean reverse )
+    {
+        int nodes = levelSortedNodes.length;
+        int[] ranks = createRanks(levelSortedNodes);
+        // the edges to a higher level node are still stored at the lower level node
+        EdgeExplorer explorer = levelGraph.createEdgeExplorer(new DefaultEdgeFilter(encoder, !reverse, reverse));
+        boolean reverseEdge = !reverse;
+        int[] first = new int[nodes + 1];
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            EdgeIterator iter = explorer.setBaseNode(levelSortedNodes[rank]);
+            while (iter.next())
+            {
+                if (ranks[iter.getAdjNode()] > rank)
+                    first[rank + 1]++;
+            }
+        }
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            first[rank + 1] += first[rank];
+        }
+
+        int[] adjRanks = new int[first[nodes]];
+        double[] weights = new double[first[nodes]];
+        int index = 0;
+        for (int rank = 0; rank < nodes; rank++)
+        {
+            EdgeIterator iter = explorer.setBaseNode(levelSortedNodes[rank]);
+            while (iter.next())
+            {
+                int adjRank = ranks[iter.getAdjNode()];
+                if (adjRank <= rank)
+                    continue;
+
+                adjRanks[index] = adjRank;
+                weights[index] = weighting.calcWeight(iter, reverseEdge, EdgeIterator.NO_EDGE);
+                index++;
+            }
+        }
+        return new DownwardEdges(first, adjRanks, weights);
+    }
+
+    /**
+     * The edges of the sweep for all nodes. The edges of the node with rank r, i.e. the r-th node in
+     * level order, are stored from first[r] to first[r + 1].
+     */
+    static class DownwardEdges
+    {
+        final int[] first;
+        final int[] adjRanks;
+        final double[] weights;
+
+        DownwardEdges( int[] first, int[] adjRanks, double[] weights )
+        {
+            this.first = first;
+            this.adjRanks = adjRanks;
+            this.weights = weights;
+        }
+    }
+}
@@ -65,37 +65,19 @@ public class Path4CH extends PathBidirRef
             to = tmp;
         }
 
-        // getEdgeProps could possibly return an empty edge if the shortcut is available for both directions
+        // getEdgeProps could possibly return an empty edge if the shortcut is available for both directions.
+        // The first skipped edge of a loop starts at 'from', but both of its skipped edges are there
+        boolean empty = graph.getEdgeProps(skippedEdge1, from) == null;
+        int firstEdge = empty ? skippedEdge2 : skippedEdge1;
+        int secondEdge = empty ? skippedEdge1 : skippedEdge2;
         if (reverseOrder)
         {
-            EdgeSkipIterState edgeState = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge1, to);
-            boolean empty = edgeState == null;
-            if (empty)
-                edgeState = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge2, to);
-
-            expandEdge(edgeState, false);
-
-            if (empty)
-                edgeState = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge1, from);
-            else
-                edgeState = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge2, from);
-
-            expandEdge(edgeState, true);
+            expandEdge((EdgeSkipIterState) graph.getEdgeProps(secondEdge, to), false);
+            expandEdge((EdgeSkipIterState) graph.getEdgeProps(firstEdge, from), true);
         } else
         {
-            EdgeSkipIterState iter = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge1, from);
-            boolean empty = iter == null;
-            if (empty)
-                iter = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge2, from);
-
-            expandEdge(iter, true);
-
-            if (empty)
-                iter = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge1, to);
-            else
-                iter = (EdgeSkipIterState) graph.getEdgeProps(skippedEdge2, to);
-
-            expandEdge(iter, false);
+            expandEdge((EdgeSkipIterState) graph.getEdgeProps(firstEdge, from), true);
+            expandEdge((EdgeSkipIterState) graph.getEdgeProps(secondEdge, to), false);
         }
     }
 }
@@ -0,0 +1,107 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.TurnWeighting;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Used in the edge-based CH preparation and queries. The turn costs between two edges of the
+ * hierarchy are calculated from the original edges at the common node, as a shortcut includes only
+ * the turn costs of its inner nodes.
+ * <p>
+ * @author Peter Karich
+ */
+public class PreparationTurnWeighting implements Weighting
+{
+    private final PrepareContractionHierarchies prepareCH;
+    private final PreparationWeighting prepareWeighting;
+    private final TurnWeighting turnWeighting;
+    private final boolean uTurnSupport;
+
+    public PreparationTurnWeighting( PrepareContractionHierarchies prepareCH, PreparationWeighting prepareWeighting,
+            TurnWeighting turnWeighting, TraversalMode traversalMode )
+    {
+        this.prepareCH = prepareCH;
+        this.prepareWeighting = prepareWeighting;
+        this.turnWeighting = turnWeighting;
+        this.uTurnSupport = traversalMode.hasUTurnSupport();
+    }
+
+    @Override
+    public double getMinWeight( double distance )
+    {
+        return prepareWeighting.getMinWeight(distance);
+    }
+
+    /**
+     * @param prevOrNextEdgeId an edge of the hierarchy or an original edge
+     */
+    @Override
+    public double calcWeight( EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId )
+    {
+        double weight = prepareWeighting.calcWeight(edgeState, reverse, EdgeIterator.NO_EDGE);
+        if (prevOrNextEdgeId == EdgeIterator.NO_EDGE || Double.isInfinite(weight))
+            return weight;
+
+        int node = edgeState.getBaseNode();
+        int origEdge = getOrigEdge(edgeState.getEdge(), node, reverse);
+        int otherOrigEdge = getOrigEdge(prevOrNextEdgeId, node, !reverse);
+        if (reverse)
+            return weight + calcTurnWeight(origEdge, node, otherOrigEdge);
+
+        return weight + calcTurnWeight(otherOrigEdge, node, origEdge);
+    }
+
+    /**
+     * @return the weight of the turn between the specified original edges. There are no turn costs
+     * at the start or end of a route, i.e. if one of the edges is EdgeIterator.NO_EDGE.
+     */
+    public double calcTurnWeight( int origEdgeFrom, int nodeVia, int origEdgeTo )
+    {
+        if (origEdgeFrom == EdgeIterator.NO_EDGE || origEdgeTo == EdgeIterator.NO_EDGE)
+            return 0;
+
+        double turnWeight = turnWeighting.calcTurnWeight(origEdgeFrom, nodeVia, origEdgeTo);
+        if (origEdgeFrom != origEdgeTo)
+            return turnWeight;
+
+        if (!uTurnSupport)
+            return Double.POSITIVE_INFINITY;
+
+        return turnWeight == 0 ? turnWeighting.getDefaultUTurnCost() : turnWeight;
+    }
+
+    /**
+     * @param incoming true if the edge ends at the specified node
+     * @return the original edge at the specified node of an edge of the hierarchy
+     */
+    public int getOrigEdge( int edge, int node, boolean incoming )
+    {
+        return prepareCH.getOrigEdge(edge, node, incoming);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PREPARE+" + turnWeighting.toString();
+    }
+}
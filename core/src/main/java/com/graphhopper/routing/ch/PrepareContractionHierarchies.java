@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHTBitSet;
 import com.graphhopper.coll.GHTreeMapComposed;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.util.AbstractAlgoPreparation;
@@ -33,7 +35,13 @@ import com.graphhopper.storage.LevelGraph;
 import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
+import gnu.trove.list.array.TIntArrayList;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,15 +55,20 @@ import org.slf4j.LoggerFactory;
  * The only difference is that we use two skipped edges instead of one skipped node for faster
  * unpacking.
  * <p/>
+ * If more than one thread is configured the nodes are contracted in batches of independent nodes,
+ * i.e. nodes which are not within the 2-hop neighbourhood of each other. The witness searches of
+ * one batch run in parallel, inserting the shortcuts is still done by the calling thread.
+ * <p/>
  * @author Peter Karich
  */
 public class PrepareContractionHierarchies extends AbstractAlgoPreparation implements RoutingAlgorithmFactory
 {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final PreparationWeighting prepareWeighting;
+    // only for the edge-based traversal
+    private final PreparationTurnWeighting prepareTurnWeighting;
     private final FlagEncoder prepareFlagEncoder;
     private final TraversalMode traversalMode;
-    private EdgeSkipExplorer vehicleInExplorer;
     private EdgeSkipExplorer vehicleOutExplorer;
     private EdgeSkipExplorer vehicleAllExplorer;
     private EdgeSkipExplorer vehicleAllTmpExplorer;
@@ -65,39 +78,74 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     private GHTreeMapComposed sortedNodes;
     private int oldPriorities[];
     private final DataAccess originalEdges;
-    private final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
-    private IgnoreNodeFilter ignoreNodeFilter;
-    private DijkstraOneToMany prepareAlgo;
+    // for every shortcut its nodes and the original edges at both of its ends
+    private DataAccess shortcutOrigEdges;
+    // the original edges of every node for the edge-based witness search
+    private EdgeBasedWitnessSearch.OriginalEdges origInEdges;
+    private EdgeBasedWitnessSearch.OriginalEdges origOutEdges;
+    private int firstShortcut;
+    private int shortcutEnd;
+    private volatile boolean shortcutOrigEdgesInitialized = false;
+    private WitnessSearch prepareSearch;
     private boolean removesHigher2LowerEdges = true;
     private long counter;
     private int newShortcuts;
-    private long dijkstraCount;
     private double meanDegree;
     private final Random rand = new Random(123);
-    private StopWatch dijkstraSW = new StopWatch();
     private final StopWatch allSW = new StopWatch();
+    private int threads = 1;
+    private int batchSizePerThread = 32;
     private int periodicUpdatesPercentage = 20;
     private int lastNodesLazyUpdatePercentage = 10;
     private int neighborUpdatePercentage = 20;
     private int initialCollectionSize = 5000;
     private double nodesContractedPercentage = 100;
     private double logMessagesPercentage = 20;
+    private boolean reuseAlgorithms = false;
+    private final ReleasableThreadLocal<Map<String, AbstractBidirAlgo>> reusableAlgos = new ReleasableThreadLocal<Map<String, AbstractBidirAlgo>>();
+    private final ReleasableThreadLocal<PHAST> reusablePHAST = new ReleasableThreadLocal<PHAST>();
+    private int[] levelSortedNodes;
+    private final PHAST.DownwardEdges[] downwardEdges = new PHAST.DownwardEdges[2];
 
     public PrepareContractionHierarchies( LevelGraph g, FlagEncoder encoder, Weighting weighting, TraversalMode traversalMode )
     {
         this.prepareGraph = g;
         this.traversalMode = traversalMode;
         this.prepareFlagEncoder = encoder;
-        long scFwdDir = encoder.setAccess(0, true, false);
+        if (g instanceof LevelGraphStorage)
+        {
+            long scFwdDir = encoder.setAccess(0, true, false);
 
-        // shortcuts store weight in flags where we assume bit 1 and 2 are used for access restriction
-        if ((scFwdDir & PrepareEncoder.getScFwdDir()) == 0)
-            throw new IllegalArgumentException("Currently only one vehicle is supported if you enable CH. "
-                    + "It seems that you have imported more than one.");
+            // shortcuts store weight in flags where we assume bit 1 and 2 are used for access restriction
+            if ((scFwdDir & PrepareEncoder.getScFwdDir()) == 0)
+                throw new IllegalArgumentException("Currently only one vehicle is supported if you enable CH. "
+                        + "It seems that you have imported more than one.");
+        } else
+        {
+            // the base graph of a layer is shared and cannot be modified
+            removesHigher2LowerEdges = false;
+        }
 
         prepareWeighting = new PreparationWeighting(weighting);
         originalEdges = new GHDirectory("", DAType.RAM_INT).find("originalEdges");
         originalEdges.create(1000);
+        if (traversalMode.isEdgeBased())
+        {
+            if (!(weighting instanceof TurnWeighting))
+                throw new IllegalArgumentException("The edge-based traversal " + traversalMode
+                        + " needs a TurnWeighting but was " + weighting);
+
+            if (!removesHigher2LowerEdges)
+                throw new IllegalArgumentException("The edge-based traversal " + traversalMode
+                        + " is not supported for a layer, as it cannot store loops");
+
+            prepareTurnWeighting = new PreparationTurnWeighting(this, prepareWeighting, (TurnWeighting) weighting, traversalMode);
+            shortcutOrigEdges = new GHDirectory("", DAType.RAM_INT).find("shortcutOrigEdges");
+            shortcutOrigEdges.create(1000);
+        } else
+        {
+            prepareTurnWeighting = null;
+        }
     }
 
     /**
@@ -149,6 +197,38 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return this;
     }
 
+    /**
+     * Specifies how many threads should be used for the witness searches. With more than one thread
+     * independent nodes are contracted in batches, which produces a valid hierarchy but not
+     * necessarily the identical shortcuts of the sequential contraction. Default is 1.
+     */
+    public PrepareContractionHierarchies setThreads( int threads )
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be at least 1 but was " + threads);
+
+        this.threads = threads;
+        return this;
+    }
+
+    int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * If enabled createAlgo returns the same instance per thread and algorithm name and only resets
+     * it to the specified graph. This avoids allocating the priority queues and maps for every
+     * request, but an algorithm is then only usable until the next createAlgo call of the same
+     * thread. Default is false. Ignored for the edge-based traversal as its algorithm depends on
+     * the turn costs of the query graph.
+     */
+    public PrepareContractionHierarchies setReuseAlgorithms( boolean reuseAlgorithms )
+    {
+        this.reuseAlgorithms = reuseAlgorithms;
+        return this;
+    }
+
     /**
      * Specifies how often a log message should be printed. Specify something around 20 (20% of the
      * start nodes).
@@ -210,10 +290,19 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (!prepareEdges())
             return;
 
+        if (traversalMode.isEdgeBased())
+        {
+            // shortcuts are always created after the original edges
+            firstShortcut = shortcutEnd = prepareGraph.getAllEdges().getCount();
+            shortcutOrigEdgesInitialized = true;
+        }
+
         if (!prepareNodes())
             return;
 
         contractNodes();
+        origInEdges = null;
+        origOutEdges = null;
     }
 
     boolean prepareEdges()
@@ -258,12 +347,15 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (logMessagesPercentage == 0)
             logSize = Integer.MAX_VALUE;
 
+        long nextLog = 0;
+
         // preparation takes longer but queries are slightly faster with preparation
         // => enable it but call not so often
         boolean periodicUpdate = true;
         StopWatch periodSW = new StopWatch();
         int updateCounter = 0;
         long periodicUpdatesCount = Math.round(Math.max(10, sortedNodes.getSize() / 100d * periodicUpdatesPercentage));
+        long nextPeriodicUpdate = periodicUpdatesCount;
         if (periodicUpdatesPercentage == 0)
             periodicUpdate = false;
 
@@ -285,101 +377,133 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             neighborUpdate = false;
 
         StopWatch neighborSW = new StopWatch();
-        LevelGraphStorage lg = ((LevelGraphStorage) prepareGraph);
-        while (!sortedNodes.isEmpty())
+        StopWatch parallelSW = new StopWatch();
+        TIntArrayList contractedNodes = new TIntArrayList();
+        ParallelContraction parallel = threads > 1 ? new ParallelContraction() : null;
+        LevelGraph lg = prepareGraph;
+        try
         {
-            // periodically update priorities of ALL nodes            
-            if (periodicUpdate && counter > 0 && counter % periodicUpdatesCount == 0)
+            while (!sortedNodes.isEmpty())
             {
-                periodSW.start();
-                sortedNodes.clear();
-                int len = lg.getNodes();
-                for (int node = 0; node < len; node++)
+                // periodically update priorities of ALL nodes            
+                if (periodicUpdate && counter > 0 && counter >= nextPeriodicUpdate)
                 {
-                    if (lg.getLevel(node) != 0)
-                        continue;
+                    nextPeriodicUpdate += periodicUpdatesCount;
+                    periodSW.start();
+                    sortedNodes.clear();
+                    int len = lg.getNodes();
+                    for (int node = 0; node < len; node++)
+                    {
+                        if (lg.getLevel(node) != 0)
+                            continue;
 
-                    int priority = oldPriorities[node] = calculatePriority(node);
-                    sortedNodes.insert(node, priority);
+                        int priority = oldPriorities[node] = calculatePriority(node);
+                        sortedNodes.insert(node, priority);
+                    }
+                    periodSW.stop();
+                    updateCounter++;
+                    if (sortedNodes.isEmpty())
+                        throw new IllegalStateException("Cannot prepare as no unprepared nodes where found. Called preparation twice?");
                 }
-                periodSW.stop();
-                updateCounter++;
-                if (sortedNodes.isEmpty())
-                    throw new IllegalStateException("Cannot prepare as no unprepared nodes where found. Called preparation twice?");
-            }
 
-            if (counter % logSize == 0)
-            {
-                logger.info(Helper.nf(counter) + ", updates:" + updateCounter
-                        + ", nodes: " + Helper.nf(sortedNodes.getSize())
-                        + ", shortcuts:" + Helper.nf(newShortcuts)
-                        + ", dijkstras:" + Helper.nf(dijkstraCount)
-                        + ", t(dijk):" + (int) dijkstraSW.getSeconds()
-                        + ", t(period):" + (int) periodSW.getSeconds()
-                        + ", t(lazy):" + (int) lazySW.getSeconds()
-                        + ", t(neighbor):" + (int) neighborSW.getSeconds()
-                        + ", meanDegree:" + (long) meanDegree
-                        + ", algo:" + prepareAlgo.getMemoryUsageAsString()
-                        + ", " + Helper.getMemInfo());
-                dijkstraSW = new StopWatch();
-                periodSW = new StopWatch();
-                lazySW = new StopWatch();
-                neighborSW = new StopWatch();
-            }
+                if (counter >= nextLog)
+                {
+                    nextLog += logSize;
+                    logger.info(Helper.nf(counter) + ", updates:" + updateCounter
+                            + ", nodes: " + Helper.nf(sortedNodes.getSize())
+                            + ", shortcuts:" + Helper.nf(newShortcuts)
+                            + ", dijkstras:" + Helper.nf(prepareSearch.dijkstraCount)
+                            + ", t(dijk):" + (int) prepareSearch.dijkstraSW.getSeconds()
+                            + ", t(period):" + (int) periodSW.getSeconds()
+                            + ", t(lazy):" + (int) lazySW.getSeconds()
+                            + ", t(neighbor):" + (int) neighborSW.getSeconds()
+                            + ", t(parallel):" + (int) parallelSW.getSeconds()
+                            + ", meanDegree:" + (long) meanDegree
+                            + ", algo:" + prepareSearch.algo.getMemoryUsageAsString()
+                            + ", " + Helper.getMemInfo());
+                    prepareSearch.dijkstraSW = new StopWatch();
+                    periodSW = new StopWatch();
+                    lazySW = new StopWatch();
+                    neighborSW = new StopWatch();
+                    parallelSW = new StopWatch();
+                }
 
-            counter++;
-            int polledNode = sortedNodes.pollKey();
-            if (sortedNodes.getSize() < lastNodesLazyUpdates)
-            {
-                lazySW.start();
-                int priority = oldPriorities[polledNode] = calculatePriority(polledNode);
-                if (!sortedNodes.isEmpty() && priority > sortedNodes.peekValue())
+                counter++;
+                int polledNode = sortedNodes.pollKey();
+                if (sortedNodes.getSize() < lastNodesLazyUpdates)
                 {
-                    // current node got more important => insert as new value and contract it later
-                    sortedNodes.insert(polledNode, priority);
+                    lazySW.start();
+                    int priority = oldPriorities[polledNode] = calculatePriority(polledNode);
+                    if (!sortedNodes.isEmpty() && priority > sortedNodes.peekValue())
+                    {
+                        // current node got more important => insert as new value and contract it later
+                        sortedNodes.insert(polledNode, priority);
+                        lazySW.stop();
+                        continue;
+                    }
                     lazySW.stop();
-                    continue;
                 }
-                lazySW.stop();
-            }
-
-            // contract!            
-            newShortcuts += addShortcuts(polledNode);
-            lg.setLevel(polledNode, level);
-            level++;
 
-            if (sortedNodes.getSize() < nodesToAvoidContract)
-            {
-                while (!sortedNodes.isEmpty())
+                // contract!
+                contractedNodes.reset();
+                contractedNodes.add(polledNode);
+                // the lazy updates at the end need the sequential order
+                if (parallel != null && sortedNodes.getSize() > Math.max(lastNodesLazyUpdates, nodesToAvoidContract))
+                {
+                    parallelSW.start();
+                    parallel.pollIndependentNodes(contractedNodes, Math.max(lastNodesLazyUpdates, nodesToAvoidContract));
+                    counter += contractedNodes.size() - 1;
+                    newShortcuts += parallel.contract(contractedNodes, level);
+                    level += contractedNodes.size();
+                    parallelSW.stop();
+                } else
                 {
-                    polledNode = sortedNodes.pollKey();
+                    newShortcuts += addShortcuts(polledNode);
                     lg.setLevel(polledNode, level);
+                    level++;
                 }
-                break;
-            }
 
-            EdgeSkipIterator iter = vehicleAllExplorer.setBaseNode(polledNode);
-            while (iter.next())
-            {
-                int nn = iter.getAdjNode();
-                if (lg.getLevel(nn) != 0)
-                    // already contracted no update necessary
-                    continue;
-
-                if (neighborUpdate && rand.nextInt(100) < neighborUpdatePercentage)
+                if (sortedNodes.getSize() < nodesToAvoidContract)
                 {
-                    neighborSW.start();
-                    int oldPrio = oldPriorities[nn];
-                    int priority = oldPriorities[nn] = calculatePriority(nn);
-                    if (priority != oldPrio)
-                        sortedNodes.update(nn, oldPrio, priority);
-
-                    neighborSW.stop();
+                    while (!sortedNodes.isEmpty())
+                    {
+                        polledNode = sortedNodes.pollKey();
+                        lg.setLevel(polledNode, level);
+                    }
+                    break;
                 }
 
-                if (removesHigher2LowerEdges)
-                    lg.disconnect(vehicleAllTmpExplorer, iter);
+                for (int i = 0; i < contractedNodes.size(); i++)
+                {
+                    EdgeSkipIterator iter = vehicleAllExplorer.setBaseNode(contractedNodes.get(i));
+                    while (iter.next())
+                    {
+                        int nn = iter.getAdjNode();
+                        if (lg.getLevel(nn) != 0)
+                            // already contracted no update necessary
+                            continue;
+
+                        if (neighborUpdate && rand.nextInt(100) < neighborUpdatePercentage)
+                        {
+                            neighborSW.start();
+                            int oldPrio = oldPriorities[nn];
+                            int priority = oldPriorities[nn] = calculatePriority(nn);
+                            if (priority != oldPrio)
+                                sortedNodes.update(nn, oldPrio, priority);
+
+                            neighborSW.stop();
+                        }
+
+                        if (removesHigher2LowerEdges)
+                            ((LevelGraphStorage) lg).disconnect(vehicleAllTmpExplorer, iter);
+                    }
+                }
             }
+        } finally
+        {
+            // otherwise the pool threads would stay alive if the contraction fails
+            if (parallel != null)
+                parallel.close();
         }
 
         // Preparation works only once so we can release temporary data.
@@ -390,22 +514,34 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 + ", " + prepareWeighting
                 + ", " + prepareFlagEncoder
                 + ", removeHigher2LowerEdges:" + removesHigher2LowerEdges
-                + ", dijkstras:" + dijkstraCount
-                + ", t(dijk):" + (int) dijkstraSW.getSeconds()
+                + ", dijkstras:" + prepareSearch.dijkstraCount
+                + ", t(dijk):" + (int) prepareSearch.dijkstraSW.getSeconds()
                 + ", t(period):" + (int) periodSW.getSeconds()
                 + ", t(lazy):" + (int) lazySW.getSeconds()
                 + ", t(neighbor):" + (int) neighborSW.getSeconds()
+                + ", t(parallel):" + (int) parallelSW.getSeconds()
                 + ", meanDegree:" + (long) meanDegree
                 + ", initSize:" + initSize
                 + ", periodic:" + periodicUpdatesPercentage
                 + ", lazy:" + lastNodesLazyUpdatePercentage
                 + ", neighbor:" + neighborUpdatePercentage
+                + ", threads:" + threads
                 + ", " + Helper.getMemInfo());
     }
 
+    /**
+     * Releases the algorithms reused by the request threads. Otherwise pooled threads would keep
+     * them and so this graph reachable, e.g. after the graph was swapped.
+     */
+    public void releaseReusableAlgorithms()
+    {
+        reusableAlgos.clear();
+        reusablePHAST.clear();
+    }
+
     public void close()
     {
-        prepareAlgo.close();
+        prepareSearch.close();
         originalEdges.close();
         sortedNodes = null;
         oldPriorities = null;
@@ -415,10 +551,24 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
     interface ShortcutHandler
     {
+        /**
+         * @param origFirst the original edge at u_fromNode, only for the edge-based traversal
+         * @param origLast the original edge at w_toNode, only for the edge-based traversal
+         */
         void foundShortcut( int u_fromNode, int w_toNode,
                 double existingDirectWeight, double distance,
-                EdgeIterator outgoingEdges,
-                int skippedEdge1, int incomingEdgeOrigCount );
+                int skippedEdge1, int skippedEdge2, int origEdgeCount,
+                int origFirst, int origLast );
+
+        /**
+         * Like foundShortcut, but the path goes over a loop at the contracted node after the
+         * incoming edge. This needs a second shortcut from u_fromNode to the contracted node over
+         * the incoming edge and the loop, which is skipped instead of the incoming edge. Only for
+         * the edge-based traversal.
+         */
+        void foundLoopShortcut( int u_fromNode, int w_toNode, double weight, double distance,
+                int incomingEdge, int loopEdge, double innerWeight, double innerDistance,
+                int skippedEdge2, int origFirst, int innerOrigLast, int origLast );
 
         int getNode();
     }
@@ -446,16 +596,27 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         @Override
         public void foundShortcut( int u_fromNode, int w_toNode,
                 double existingDirectWeight, double distance,
-                EdgeIterator outgoingEdges,
-                int skippedEdge1, int incomingEdgeOrigCount )
+                int skippedEdge1, int skippedEdge2, int origEdgeCount,
+                int origFirst, int origLast )
         {
             shortcuts++;
-            originalEdgesCount += incomingEdgeOrigCount + getOrigEdgeCount(outgoingEdges.getEdge());
+            originalEdgesCount += origEdgeCount;
+        }
+
+        @Override
+        public void foundLoopShortcut( int u_fromNode, int w_toNode, double weight, double distance,
+                int incomingEdge, int loopEdge, double innerWeight, double innerDistance,
+                int skippedEdge2, int origFirst, int innerOrigLast, int origLast )
+        {
+            shortcuts += 2;
+            originalEdgesCount += 2 * (getOrigEdgeCount(incomingEdge) + getOrigEdgeCount(loopEdge))
+                    + getOrigEdgeCount(skippedEdge2);
         }
     }
 
     class AddShortcutHandler implements ShortcutHandler
     {
+        final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
         int node;
 
         public AddShortcutHandler()
@@ -478,8 +639,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         @Override
         public void foundShortcut( int u_fromNode, int w_toNode,
                 double existingDirectWeight, double existingDistSum,
-                EdgeIterator outgoingEdges,
-                int skippedEdge1, int incomingEdgeOrigCount )
+                int skippedEdge1, int skippedEdge2, int origEdgeCount,
+                int origFirst, int origLast )
         {
             // FOUND shortcut 
             // but be sure that it is the only shortcut in the collection 
@@ -488,16 +649,32 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             // know yet the levels so we need to determine the correct direction or if both directions
             // minor improvement: if (shortcuts.containsKey(sc) 
             // then two shortcuts with the same nodes (u<->n.adjNode) exists => check current shortcut against both
+            // for the edge-based traversal shortcuts with different original edges are never identical
             Shortcut sc = new Shortcut(u_fromNode, w_toNode, existingDirectWeight, existingDistSum);
+            sc.origFirst = origFirst;
+            sc.origLast = origLast;
             if (shortcuts.containsKey(sc))
                 return;
 
+            if (u_fromNode == w_toNode)
+            {
+                // a loop is traversed in one direction only, but has to be found by both searches
+                sc.flags = PrepareEncoder.getScDirMask();
+                shortcuts.put(sc, sc);
+                sc.skippedEdge1 = skippedEdge1;
+                sc.skippedEdge2 = skippedEdge2;
+                sc.originalEdges = origEdgeCount;
+                return;
+            }
+
             Shortcut tmpSc = new Shortcut(w_toNode, u_fromNode, existingDirectWeight, existingDistSum);
+            tmpSc.origFirst = origLast;
+            tmpSc.origLast = origFirst;
             Shortcut tmpRetSc = shortcuts.get(tmpSc);
             if (tmpRetSc != null)
             {
                 // overwrite flags only if skipped edges are identical
-                if (tmpRetSc.skippedEdge2 == skippedEdge1 && tmpRetSc.skippedEdge1 == outgoingEdges.getEdge())
+                if (tmpRetSc.skippedEdge2 == skippedEdge1 && tmpRetSc.skippedEdge1 == skippedEdge2)
                 {
                     tmpRetSc.flags = PrepareEncoder.getScDirMask();
                     return;
@@ -506,15 +683,48 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
             shortcuts.put(sc, sc);
             sc.skippedEdge1 = skippedEdge1;
-            sc.skippedEdge2 = outgoingEdges.getEdge();
-            sc.originalEdges = incomingEdgeOrigCount + getOrigEdgeCount(outgoingEdges.getEdge());
+            sc.skippedEdge2 = skippedEdge2;
+            sc.originalEdges = origEdgeCount;
+        }
+
+        @Override
+        public void foundLoopShortcut( int u_fromNode, int w_toNode, double weight, double distance,
+                int incomingEdge, int loopEdge, double innerWeight, double innerDistance,
+                int skippedEdge2, int origFirst, int innerOrigLast, int origLast )
+        {
+            Shortcut inner = new Shortcut(u_fromNode, node, innerWeight, innerDistance);
+            inner.origFirst = origFirst;
+            inner.origLast = innerOrigLast;
+            Shortcut tmpInner = shortcuts.get(inner);
+            if (tmpInner == null)
+            {
+                shortcuts.put(inner, inner);
+                inner.skippedEdge1 = incomingEdge;
+                inner.skippedEdge2 = loopEdge;
+                inner.originalEdges = getOrigEdgeCount(incomingEdge) + getOrigEdgeCount(loopEdge);
+                tmpInner = inner;
+            }
+
+            Shortcut sc = new Shortcut(u_fromNode, w_toNode, weight, distance);
+            sc.origFirst = origFirst;
+            sc.origLast = origLast;
+            if (shortcuts.containsKey(sc))
+                return;
+
+            if (u_fromNode == w_toNode)
+                sc.flags = PrepareEncoder.getScDirMask();
+
+            shortcuts.put(sc, sc);
+            sc.skippedShortcut1 = tmpInner;
+            sc.skippedEdge2 = skippedEdge2;
+            sc.originalEdges = tmpInner.originalEdges + getOrigEdgeCount(skippedEdge2);
         }
     }
 
     Set<Shortcut> testFindShortcuts( int node )
     {
-        findShortcuts(addScHandler.setNode(node));
-        return shortcuts.keySet();
+        prepareSearch.findShortcuts(addScHandler.setNode(node), meanDegree);
+        return addScHandler.shortcuts.keySet();
     }
 
     /**
@@ -526,7 +736,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     int calculatePriority( int v )
     {
         // set of shortcuts that would be added if adjNode v would be contracted next.
-        findShortcuts(calcScHandler.setNode(v));
+        prepareSearch.findShortcuts(calcScHandler.setNode(v), meanDegree);
 
 //        System.out.println(v + "\t " + tmpShortcuts);
         // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
@@ -568,133 +778,121 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     }
 
     /**
-     * Finds shortcuts, does not change the underlying graph.
+     * Introduces the necessary shortcuts for adjNode v in the graph.
      */
-    void findShortcuts( ShortcutHandler sch )
+    int addShortcuts( int v )
     {
-        long tmpDegreeCounter = 0;
-        EdgeIterator incomingEdges = vehicleInExplorer.setBaseNode(sch.getNode());
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next())
-        {
-            int u_fromNode = incomingEdges.getAdjNode();
-            // accept only uncontracted nodes
-            if (prepareGraph.getLevel(u_fromNode) != 0)
-                continue;
-
-            double v_u_dist = incomingEdges.getDistance();
-            double v_u_weight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
-            int skippedEdge1 = incomingEdges.getEdge();
-            int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
-            // collect outgoing nodes (goal-nodes) only once
-            EdgeIterator outgoingEdges = vehicleOutExplorer.setBaseNode(sch.getNode());
-            // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
-            prepareAlgo.clear();
-            tmpDegreeCounter++;
-            while (outgoingEdges.next())
-            {
-                int w_toNode = outgoingEdges.getAdjNode();
-                // add only uncontracted nodes
-                if (prepareGraph.getLevel(w_toNode) != 0 || u_fromNode == w_toNode)
-                    continue;
-
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = v_u_weight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
-                if (Double.isNaN(existingDirectWeight))
-                    throw new IllegalStateException("Weighting should never return NaN values"
-                            + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
-                            + ", dist:" + outgoingEdges.getDistance() + ", speed:" + prepareFlagEncoder.getSpeed(outgoingEdges.getFlags()));
-
-                if (existingDirectWeight >= Double.MAX_VALUE)
-                    continue;
-                double existingDistSum = v_u_dist + outgoingEdges.getDistance();
-                prepareAlgo.setWeightLimit(existingDirectWeight);
-                prepareAlgo.setLimitVisitedNodes((int) meanDegree * 100)
-                        .setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                int endNode = prepareAlgo.findEndNode(u_fromNode, w_toNode);
-                dijkstraSW.stop();
+        long degree = prepareSearch.findShortcuts(addScHandler.setNode(v), meanDegree);
+        updateMeanDegree(degree);
+        return insertShortcuts(addScHandler.shortcuts.keySet());
+    }
 
-                // compare end node as the limit could force dijkstra to finish earlier
-                if (endNode == w_toNode && prepareAlgo.getWeight(endNode) <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut                
-                    continue;
+    private void updateMeanDegree( long degree )
+    {
+        // sliding mean value when using "*2" => slower changes
+        meanDegree = (meanDegree * 2 + degree) / 3;
+        // meanDegree = (meanDegree + degree) / 2;
+    }
 
-                sch.foundShortcut(u_fromNode, w_toNode,
-                        existingDirectWeight, existingDistSum,
-                        outgoingEdges,
-                        skippedEdge1, incomingEdgeOrigCount);
-            }
-        }
-        if (sch instanceof AddShortcutHandler)
+    /**
+     * Adds the specified shortcuts to the graph or updates existing ones.
+     * <p/>
+     * @return the number of newly created shortcuts
+     */
+    int insertShortcuts( Collection<Shortcut> shortcuts )
+    {
+        int tmpNewShortcuts = 0;
+        for (Shortcut sc : shortcuts)
         {
-            // sliding mean value when using "*2" => slower changes
-            meanDegree = (meanDegree * 2 + tmpDegreeCounter) / 3;
-            // meanDegree = (meanDegree + tmpDegreeCounter) / 2;
+            if (sc.edge == EdgeIterator.NO_EDGE)
+                tmpNewShortcuts += insertShortcut(sc);
         }
+        return tmpNewShortcuts;
     }
 
     /**
-     * Introduces the necessary shortcuts for adjNode v in the graph.
+     * Adds the specified shortcut or updates an existing one and sets the edge of the shortcut.
+     * <p/>
+     * @return the number of newly created shortcuts, including a skipped shortcut
      */
-    int addShortcuts( int v )
+    private int insertShortcut( Shortcut sc )
     {
-        shortcuts.clear();
-        findShortcuts(addScHandler.setNode(v));
         int tmpNewShortcuts = 0;
-        NEXT_SC:
-        for (Shortcut sc : shortcuts.keySet())
+        if (sc.skippedShortcut1 != null)
         {
-            boolean updatedInGraph = false;
-            // check if we need to update some existing shortcut in the graph
-            EdgeSkipIterator iter = vehicleOutExplorer.setBaseNode(sc.from);
-            while (iter.next())
-            {
-                if (iter.isShortcut() && iter.getAdjNode() == sc.to
-                        && PrepareEncoder.canBeOverwritten(iter.getFlags(), sc.flags))
-                {
-                    if (sc.weight >= prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE))
-                        continue NEXT_SC;
+            if (sc.skippedShortcut1.edge == EdgeIterator.NO_EDGE)
+                tmpNewShortcuts += insertShortcut(sc.skippedShortcut1);
 
-                    if (iter.getEdge() == sc.skippedEdge1 || iter.getEdge() == sc.skippedEdge2)
-                    {
-                        throw new IllegalStateException("Shortcut cannot update itself! " + iter.getEdge()
-                                + ", skipEdge1:" + sc.skippedEdge1 + ", skipEdge2:" + sc.skippedEdge2
-                                + ", edge " + iter + ":" + getCoords(iter, prepareGraph)
-                                + ", sc:" + sc
-                                + ", skippedEdge1: " + getCoords(prepareGraph.getEdgeProps(sc.skippedEdge1, sc.from), prepareGraph)
-                                + ", skippedEdge2: " + getCoords(prepareGraph.getEdgeProps(sc.skippedEdge2, sc.to), prepareGraph)
-                                + ", neighbors:" + GHUtility.getNeighbors(iter));
-                    }
+            sc.skippedEdge1 = sc.skippedShortcut1.edge;
+        }
 
-                    // note: flags overwrite weight => call first
-                    iter.setFlags(sc.flags);
-                    iter.setWeight(sc.weight);
-                    iter.setDistance(sc.dist);
-                    iter.setSkippedEdges(sc.skippedEdge1, sc.skippedEdge2);
-                    setOrigEdgeCount(iter.getEdge(), sc.originalEdges);
-                    updatedInGraph = true;
-                    break;
+        // check if we need to update some existing shortcut in the graph
+        EdgeSkipIterator iter = vehicleOutExplorer.setBaseNode(sc.from);
+        while (iter.next())
+        {
+            if (iter.isShortcut() && iter.getAdjNode() == sc.to
+                    && PrepareEncoder.canBeOverwritten(toScFlags(iter.getFlags()), sc.flags)
+                    && (!traversalMode.isEdgeBased() || getOrigEdge(iter.getEdge(), sc.from, false) == sc.origFirst
+                    && getOrigEdge(iter.getEdge(), sc.to, true) == sc.origLast))
+            {
+                sc.edge = iter.getEdge();
+                if (sc.weight >= prepareWeighting.calcWeight(iter, false, EdgeIterator.NO_EDGE))
+                    return tmpNewShortcuts;
+
+                if (iter.getEdge() == sc.skippedEdge1 || iter.getEdge() == sc.skippedEdge2)
+                {
+                    throw new IllegalStateException("Shortcut cannot update itself! " + iter.getEdge()
+                            + ", skipEdge1:" + sc.skippedEdge1 + ", skipEdge2:" + sc.skippedEdge2
+                            + ", edge " + iter + ":" + getCoords(iter, prepareGraph)
+                            + ", sc:" + sc
+                            + ", skippedEdge1: " + getCoords(prepareGraph.getEdgeProps(sc.skippedEdge1, sc.from), prepareGraph)
+                            + ", skippedEdge2: " + getCoords(prepareGraph.getEdgeProps(sc.skippedEdge2, sc.to), prepareGraph)
+                            + ", neighbors:" + GHUtility.getNeighbors(iter));
                 }
-            }
 
-            if (!updatedInGraph)
-            {
-                EdgeSkipIterState edgeState = prepareGraph.shortcut(sc.from, sc.to);
                 // note: flags overwrite weight => call first
-                edgeState.setFlags(sc.flags);
-                edgeState.setWeight(sc.weight);
-                edgeState.setDistance(sc.dist);
-                edgeState.setSkippedEdges(sc.skippedEdge1, sc.skippedEdge2);
-                setOrigEdgeCount(edgeState.getEdge(), sc.originalEdges);
-                tmpNewShortcuts++;
+                iter.setFlags(toEdgeFlags(sc.flags));
+                iter.setWeight(sc.weight);
+                iter.setDistance(sc.dist);
+                iter.setSkippedEdges(sc.skippedEdge1, sc.skippedEdge2);
+                setOrigEdgeCount(iter.getEdge(), sc.originalEdges);
+                return tmpNewShortcuts;
             }
         }
-        return tmpNewShortcuts;
+
+        EdgeSkipIterState edgeState = prepareGraph.shortcut(sc.from, sc.to);
+        // note: flags overwrite weight => call first
+        edgeState.setFlags(toEdgeFlags(sc.flags));
+        edgeState.setWeight(sc.weight);
+        edgeState.setDistance(sc.dist);
+        edgeState.setSkippedEdges(sc.skippedEdge1, sc.skippedEdge2);
+        setOrigEdgeCount(edgeState.getEdge(), sc.originalEdges);
+        if (traversalMode.isEdgeBased())
+            setShortcutOrigEdges(edgeState.getEdge(), sc.from, sc.to, sc.origFirst, sc.origLast);
+
+        sc.edge = edgeState.getEdge();
+        return tmpNewShortcuts + 1;
+    }
+
+    /**
+     * Converts the direction of a shortcut into the access flags of the prepared encoder. For the
+     * first encoder this is identical to the direction bits of the shortcut.
+     */
+    private long toEdgeFlags( long scFlags )
+    {
+        // a shortcut is always forward and optionally backward
+        boolean bothDir = (scFlags & PrepareEncoder.getScDirMask()) == PrepareEncoder.getScDirMask();
+        return prepareFlagEncoder.setAccess(0, true, bothDir);
+    }
+
+    private long toScFlags( long edgeFlags )
+    {
+        long scFlags = 0;
+        if (prepareFlagEncoder.isBool(edgeFlags, FlagEncoder.K_FORWARD))
+            scFlags |= PrepareEncoder.getScFwdDir();
+        if (prepareFlagEncoder.isBool(edgeFlags, FlagEncoder.K_BACKWARD))
+            scFlags |= PrepareEncoder.getScDirMask() ^ PrepareEncoder.getScFwdDir();
+        return scFlags;
     }
 
     String getCoords( EdgeIteratorState e, Graph g )
@@ -708,19 +906,22 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
 
     PrepareContractionHierarchies initFromGraph()
     {
-        vehicleInExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
         vehicleOutExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
         vehicleAllExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
         vehicleAllTmpExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
         calcPrioAllExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, true));
-        ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph);
         // Use an alternative to PriorityQueue as it has some advantages: 
         //   1. Gets automatically smaller if less entries are stored => less total RAM used (as Graph is increasing until the end)
         //   2. is slightly faster
         //   but we need additional priorities array to keep old value which is necessary for update method
         sortedNodes = new GHTreeMapComposed();
         oldPriorities = new int[prepareGraph.getNodes()];
-        prepareAlgo = new DijkstraOneToMany(prepareGraph, prepareFlagEncoder, prepareWeighting, traversalMode);
+        if (traversalMode.isEdgeBased())
+        {
+            origInEdges = new EdgeBasedWitnessSearch.OriginalEdges(prepareGraph, new DefaultEdgeFilter(prepareFlagEncoder, true, false));
+            origOutEdges = new EdgeBasedWitnessSearch.OriginalEdges(prepareGraph, new DefaultEdgeFilter(prepareFlagEncoder, false, true));
+        }
+        prepareSearch = new WitnessSearch();
         return this;
     }
 
@@ -729,6 +930,278 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return newShortcuts;
     }
 
+    /**
+     * Holds everything necessary to find the shortcuts of a node. One instance must be used by one
+     * thread only.
+     */
+    class WitnessSearch
+    {
+        private final EdgeSkipExplorer inExplorer;
+        private final EdgeSkipExplorer outExplorer;
+        private final IgnoreNodeFilter ignoreNodeFilter;
+        private final DijkstraOneToMany algo;
+        private final EdgeBasedWitnessSearch edgeBasedSearch;
+        private StopWatch dijkstraSW = new StopWatch();
+        private long dijkstraCount;
+
+        public WitnessSearch()
+        {
+            inExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, true, false));
+            outExplorer = prepareGraph.createEdgeExplorer(new DefaultEdgeFilter(prepareFlagEncoder, false, true));
+            ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph);
+            algo = new DijkstraOneToMany(prepareGraph, prepareFlagEncoder, prepareWeighting, traversalMode);
+            edgeBasedSearch = traversalMode.isEdgeBased()
+                    ? new EdgeBasedWitnessSearch(PrepareContractionHierarchies.this, prepareGraph, prepareFlagEncoder,
+                            prepareTurnWeighting, origInEdges, origOutEdges)
+                    : null;
+        }
+
+        /**
+         * Finds shortcuts, does not change the underlying graph.
+         * <p/>
+         * @return the number of incoming edges for which a search was done
+         */
+        long findShortcuts( ShortcutHandler sch, double meanDegree )
+        {
+            if (edgeBasedSearch != null)
+            {
+                dijkstraSW.start();
+                long searches = edgeBasedSearch.searchCount;
+                long degree = edgeBasedSearch.findShortcuts(sch, (int) meanDegree * 100);
+                dijkstraCount += edgeBasedSearch.searchCount - searches;
+                dijkstraSW.stop();
+                return degree;
+            }
+
+            long tmpDegreeCounter = 0;
+            EdgeIterator incomingEdges = inExplorer.setBaseNode(sch.getNode());
+            // collect outgoing nodes (goal-nodes) only once
+            while (incomingEdges.next())
+            {
+                int u_fromNode = incomingEdges.getAdjNode();
+                // accept only uncontracted nodes
+                if (prepareGraph.getLevel(u_fromNode) != 0)
+                    continue;
+
+                double v_u_dist = incomingEdges.getDistance();
+                double v_u_weight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
+                int skippedEdge1 = incomingEdges.getEdge();
+                int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
+                // collect outgoing nodes (goal-nodes) only once
+                EdgeIterator outgoingEdges = outExplorer.setBaseNode(sch.getNode());
+                // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
+                algo.clear();
+                tmpDegreeCounter++;
+                while (outgoingEdges.next())
+                {
+                    int w_toNode = outgoingEdges.getAdjNode();
+                    // add only uncontracted nodes
+                    if (prepareGraph.getLevel(w_toNode) != 0 || u_fromNode == w_toNode)
+                        continue;
+
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = v_u_weight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
+                    if (Double.isNaN(existingDirectWeight))
+                        throw new IllegalStateException("Weighting should never return NaN values"
+                                + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
+                                + ", dist:" + outgoingEdges.getDistance() + ", speed:" + prepareFlagEncoder.getSpeed(outgoingEdges.getFlags()));
+
+                    if (existingDirectWeight >= Double.MAX_VALUE)
+                        continue;
+                    double existingDistSum = v_u_dist + outgoingEdges.getDistance();
+                    algo.setWeightLimit(existingDirectWeight);
+                    algo.setLimitVisitedNodes((int) meanDegree * 100)
+                            .setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    int endNode = algo.findEndNode(u_fromNode, w_toNode);
+                    dijkstraSW.stop();
+
+                    // compare end node as the limit could force dijkstra to finish earlier
+                    if (endNode == w_toNode && algo.getWeight(endNode) <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut                
+                        continue;
+
+                    int skippedEdge2 = outgoingEdges.getEdge();
+                    sch.foundShortcut(u_fromNode, w_toNode,
+                            existingDirectWeight, existingDistSum,
+                            skippedEdge1, skippedEdge2, incomingEdgeOrigCount + getOrigEdgeCount(skippedEdge2),
+                            EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE);
+                }
+            }
+            return tmpDegreeCounter;
+        }
+
+        void close()
+        {
+            algo.close();
+        }
+    }
+
+    /**
+     * Contracts batches of independent nodes where the witness searches are spread over several
+     * threads. The nodes of one batch get their level before the searches start so that no search
+     * uses another node of the same batch as witness. Every shortcut found is therefor still
+     * necessary or at least correct after the whole batch is contracted, only a few more shortcuts
+     * could be introduced compared to the sequential order as the searches cannot use the
+     * shortcuts of the other nodes in the batch.
+     */
+    class ParallelContraction
+    {
+        private final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        private final WitnessSearch[] searches = new WitnessSearch[threads];
+        private final AddShortcutHandler[] handlers = new AddShortcutHandler[threads];
+        private final EdgeSkipExplorer neighborExplorer = prepareGraph.createEdgeExplorer(
+                new DefaultEdgeFilter(prepareFlagEncoder, true, true));
+        private final GHBitSet neighborhood = new GHTBitSet();
+        private final TIntArrayList rejectedNodes = new TIntArrayList();
+
+        public ParallelContraction()
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                searches[i] = new WitnessSearch();
+                handlers[i] = new AddShortcutHandler();
+            }
+        }
+
+        /**
+         * Adds further nodes with the lowest priorities to the specified batch if they are not in
+         * the 2-hop neighbourhood of a node already in the batch. Skipped nodes are reinserted.
+         */
+        void pollIndependentNodes( TIntArrayList batch, long minRemainingNodes )
+        {
+            int maxBatchSize = threads * batchSizePerThread;
+            neighborhood.clear();
+            rejectedNodes.reset();
+            for (int i = 0; i < batch.size(); i++)
+            {
+                markNeighborhood(batch.get(i));
+            }
+
+            while (batch.size() < maxBatchSize && rejectedNodes.size() < maxBatchSize
+                    && sortedNodes.getSize() > minRemainingNodes)
+            {
+                int node = sortedNodes.pollKey();
+                if (isIndependent(node))
+                {
+                    batch.add(node);
+                    markNeighborhood(node);
+                } else
+                {
+                    rejectedNodes.add(node);
+                }
+            }
+
+            for (int i = 0; i < rejectedNodes.size(); i++)
+            {
+                int node = rejectedNodes.get(i);
+                sortedNodes.insert(node, oldPriorities[node]);
+            }
+        }
+
+        // two nodes are within each others 2-hop neighbourhood if their 1-hop neighbourhoods intersect
+        private void markNeighborhood( int node )
+        {
+            neighborhood.add(node);
+            EdgeIterator iter = neighborExplorer.setBaseNode(node);
+            while (iter.next())
+            {
+                neighborhood.add(iter.getAdjNode());
+            }
+        }
+
+        private boolean isIndependent( int node )
+        {
+            if (neighborhood.contains(node))
+                return false;
+
+            EdgeIterator iter = neighborExplorer.setBaseNode(node);
+            while (iter.next())
+            {
+                if (neighborhood.contains(iter.getAdjNode()))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Contracts all nodes of the batch, starting with the specified level.
+         * <p/>
+         * @return the number of newly created shortcuts
+         */
+        int contract( final TIntArrayList batch, int level )
+        {
+            for (int i = 0; i < batch.size(); i++)
+            {
+                prepareGraph.setLevel(batch.get(i), level + i);
+            }
+
+            final int size = batch.size();
+            final double tmpMeanDegree = meanDegree;
+            @SuppressWarnings("unchecked")
+            final List<Shortcut>[] shortcutsPerNode = new List[size];
+            final long[] degrees = new long[size];
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(threads);
+            for (int t = 0; t < threads && t < size; t++)
+            {
+                final int threadIndex = t;
+                tasks.add(new Callable<Object>()
+                {
+                    @Override
+                    public Object call()
+                    {
+                        WitnessSearch search = searches[threadIndex];
+                        AddShortcutHandler handler = handlers[threadIndex];
+                        for (int i = threadIndex; i < size; i += threads)
+                        {
+                            degrees[i] = search.findShortcuts(handler.setNode(batch.get(i)), tmpMeanDegree);
+                            shortcutsPerNode[i] = new ArrayList<Shortcut>(handler.shortcuts.keySet());
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            try
+            {
+                for (Future<Object> future : executorService.invokeAll(tasks))
+                {
+                    future.get();
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Parallel contraction was interrupted", ex);
+            } catch (ExecutionException ex)
+            {
+                throw new RuntimeException("Parallel contraction failed", ex.getCause());
+            }
+
+            // keep the order of the batch to make the result deterministic
+            int tmpNewShortcuts = 0;
+            for (int i = 0; i < size; i++)
+            {
+                updateMeanDegree(degrees[i]);
+                tmpNewShortcuts += insertShortcuts(shortcutsPerNode[i]);
+            }
+            return tmpNewShortcuts;
+        }
+
+        void close()
+        {
+            executorService.shutdown();
+            for (WitnessSearch search : searches)
+            {
+                prepareSearch.dijkstraCount += search.dijkstraCount;
+                search.close();
+            }
+        }
+    }
+
     static class IgnoreNodeFilter implements EdgeFilter
     {
         int avoidNode;
@@ -761,7 +1234,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         originalEdges.setInt(tmp, value);
     }
 
-    private int getOrigEdgeCount( int index )
+    int getOrigEdgeCount( int index )
     {
         // TODO possible memory usage improvement: avoid storing the value 1 for normal edges (does not change)!
         long tmp = (long) index * 4;
@@ -769,9 +1242,122 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return originalEdges.getInt(tmp);
     }
 
+    private void setShortcutOrigEdges( int shortcut, int from, int to, int origFirst, int origLast )
+    {
+        long tmp = (long) (shortcut - firstShortcut) * 16;
+        shortcutOrigEdges.ensureCapacity(tmp + 16);
+        shortcutOrigEdges.setInt(tmp, from);
+        shortcutOrigEdges.setInt(tmp + 4, to);
+        shortcutOrigEdges.setInt(tmp + 8, origFirst);
+        shortcutOrigEdges.setInt(tmp + 12, origLast);
+        shortcutEnd = Math.max(shortcutEnd, shortcut + 1);
+    }
+
+    /**
+     * @param incoming true if the edge ends at the specified node. This is only necessary for
+     * loops, which are always traversed from their first to their last original edge.
+     * @return the original edge at the specified node of an edge of the hierarchy. For original
+     * edges, virtual edges and EdgeIterator.NO_EDGE this is the edge itself.
+     */
+    int getOrigEdge( int edge, int node, boolean incoming )
+    {
+        if (edge < firstShortcut || edge >= shortcutEnd)
+            return edge;
+
+        long tmp = (long) (edge - firstShortcut) * 16;
+        int from = shortcutOrigEdges.getInt(tmp);
+        if (from == node && (!incoming || shortcutOrigEdges.getInt(tmp + 4) != node))
+            return shortcutOrigEdges.getInt(tmp + 8);
+        return shortcutOrigEdges.getInt(tmp + 12);
+    }
+
+    /**
+     * The original edges of the shortcuts are only kept in memory. For an already prepared graph
+     * they are calculated from the skipped edges, which should be done when the graph is loaded.
+     * Otherwise the first edge-based query does it.
+     */
+    public void initShortcutOrigEdges()
+    {
+        if (shortcutOrigEdgesInitialized || !traversalMode.isEdgeBased())
+            return;
+
+        synchronized (this)
+        {
+            if (!shortcutOrigEdgesInitialized)
+                calcShortcutOrigEdges();
+        }
+    }
+
+    private void calcShortcutOrigEdges()
+    {
+        AllEdgesSkipIterator iter = prepareGraph.getAllEdges();
+        int tmpFirstShortcut = iter.getCount();
+        while (iter.next())
+        {
+            if (iter.isShortcut())
+                tmpFirstShortcut = Math.min(tmpFirstShortcut, iter.getEdge());
+        }
+        firstShortcut = shortcutEnd = tmpFirstShortcut;
+        iter = prepareGraph.getAllEdges();
+        while (iter.next())
+        {
+            if (iter.isShortcut())
+                setShortcutOrigEdges(iter.getEdge(), iter.getBaseNode(), iter.getAdjNode(),
+                        unpackOrigEdge(iter.getEdge(), iter.getBaseNode(), false),
+                        unpackOrigEdge(iter.getEdge(), iter.getAdjNode(), true));
+        }
+        shortcutOrigEdgesInitialized = true;
+    }
+
+    private int unpackOrigEdge( int edge, int node, boolean incoming )
+    {
+        while (edge >= firstShortcut)
+        {
+            EdgeSkipIterState state = prepareGraph.getEdgeProps(edge, node);
+            int skippedEdge1 = state.getSkippedEdge1();
+            int skippedEdge2 = state.getSkippedEdge2();
+            if (state.getBaseNode() == node)
+            {
+                // a loop starts with the first skipped edge
+                edge = incoming ? skippedEdge2 : skippedEdge1;
+                continue;
+            }
+
+            // if both skipped edges are at the node one of them is a loop, which is then at the end
+            EdgeSkipIterState state1 = prepareGraph.getEdgeProps(skippedEdge1, node);
+            EdgeSkipIterState state2 = prepareGraph.getEdgeProps(skippedEdge2, node);
+            if (state1 != null && state2 != null)
+                edge = state1.getBaseNode() == node ? skippedEdge1 : skippedEdge2;
+            else
+                edge = state1 != null ? skippedEdge1 : skippedEdge2;
+        }
+        return edge;
+    }
+
     @Override
     public RoutingAlgorithm createAlgo( Graph graph, AlgorithmOptions opts )
     {
+        if (traversalMode.isEdgeBased())
+            return createEdgeBasedAlgo(graph, opts);
+
+        Map<String, AbstractBidirAlgo> algoMap = null;
+        if (reuseAlgorithms)
+        {
+            algoMap = reusableAlgos.get();
+            if (algoMap == null)
+            {
+                algoMap = new HashMap<String, AbstractBidirAlgo>(4);
+                reusableAlgos.set(algoMap);
+            }
+
+            AbstractBidirAlgo reusable = algoMap.get(opts.getAlgorithm());
+            if (reusable != null)
+            {
+                reusable.reset(graph);
+                return reusable;
+            }
+        }
+
         AbstractBidirAlgo algo;
         if (AlgorithmOptions.ASTAR_BI.equals(opts.getAlgorithm()))
         {
@@ -820,15 +1406,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             algo = astarBi;
         } else if (AlgorithmOptions.DIJKSTRA_BI.equals(opts.getAlgorithm()))
         {
-            algo = new DijkstraBidirectionRef(graph, prepareFlagEncoder, prepareWeighting, traversalMode)
+            algo = new DijkstraBidirection(graph, prepareFlagEncoder, prepareWeighting, traversalMode)
             {
-                @Override
-                protected void initCollections( int nodes )
-                {
-                    // algorithm with CH does not need that much memory pre allocated
-                    super.initCollections(Math.min(initialCollectionSize, nodes));
-                }
-
                 @Override
                 public boolean finished()
                 {
@@ -836,11 +1415,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                     if (finishedFrom && finishedTo)
                         return true;
 
-                    if (currFrom.weight + currTo.weight > weightLimit)
+                    if (getCurrFromWeight() + getCurrToWeight() > weightLimit)
                         return true;
 
-                    // changed also the final finish condition for CH                
-                    return currFrom.weight >= bestPath.getWeight() && currTo.weight >= bestPath.getWeight();
+                    // changed also the final finish condition for CH
+                    return getCurrFromWeight() >= getBestWeight() && getCurrToWeight() >= getBestWeight();
                 }
 
                 @Override
@@ -870,9 +1449,127 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (!removesHigher2LowerEdges)
             algo.setEdgeFilter(new LevelEdgeFilter(prepareGraph));
 
+        if (algoMap != null)
+            algoMap.put(opts.getAlgorithm(), algo);
+
+        return algo;
+    }
+
+    private RoutingAlgorithm createEdgeBasedAlgo( Graph graph, AlgorithmOptions opts )
+    {
+        if (!AlgorithmOptions.DIJKSTRA_BI.equals(opts.getAlgorithm()))
+            throw new UnsupportedOperationException("Algorithm " + opts.getAlgorithm()
+                    + " not supported for Contraction Hierarchies with " + traversalMode);
+
+        initShortcutOrigEdges();
+        // the turn costs of the query graph include its virtual edges
+        PreparationTurnWeighting weighting = prepareTurnWeighting;
+        if (opts.getWeighting() instanceof TurnWeighting)
+            weighting = new PreparationTurnWeighting(this, prepareWeighting, (TurnWeighting) opts.getWeighting(), traversalMode);
+
+        DijkstraBidirectionEdgeCH algo = new DijkstraBidirectionEdgeCH(graph, prepareFlagEncoder, weighting, traversalMode);
+        algo.setEdgeFilter(new LevelEdgeFilter(prepareGraph));
+        return algo;
+    }
+
+    /**
+     * Creates the bucket based many-to-many algorithm for the prepared graph.
+     * <p/>
+     * @param graph the prepared graph or a QueryGraph wrapping it
+     */
+    public ManyToManyCH createManyToMany( Graph graph )
+    {
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("Many-to-many with contraction hierarchies does not support " + traversalMode);
+
+        ManyToManyCH algo = new ManyToManyCH(graph, prepareFlagEncoder, prepareWeighting);
+        if (!removesHigher2LowerEdges)
+            algo.setLevelFilter(new LevelEdgeFilter(prepareGraph));
+
         return algo;
     }
 
+    /**
+     * Creates the one-to-all algorithm for the prepared graph. The instance is reused per thread if
+     * reuseAlgorithms is enabled.
+     * <p/>
+     * @param graph the prepared graph or a QueryGraph wrapping it
+     */
+    public PHAST createPHAST( Graph graph )
+    {
+        if (traversalMode.isEdgeBased())
+            throw new IllegalArgumentException("One-to-all with contraction hierarchies does not support " + traversalMode);
+
+        if (!reuseAlgorithms)
+            return new PHAST(this, prepareGraph, prepareFlagEncoder, prepareWeighting).reset(graph);
+
+        PHAST phast = reusablePHAST.get();
+        if (phast == null)
+        {
+            phast = new PHAST(this, prepareGraph, prepareFlagEncoder, prepareWeighting);
+            reusablePHAST.set(phast);
+        }
+        return phast.reset(graph);
+    }
+
+    /**
+     * The edges of the PHAST sweep are created on first use and shared by all threads.
+     */
+    synchronized PHAST.DownwardEdges getDownwardEdges( boolean reverse )
+    {
+        int index = reverse ? 1 : 0;
+        if (downwardEdges[index] == null)
+            downwardEdges[index] = PHAST.createDownwardEdges(prepareGraph, prepareFlagEncoder, prepareWeighting,
+                    getLevelSortedNodes(), reverse);
+
+        return downwardEdges[index];
+    }
+
+    /**
+     * Necessary if the weights of the shortcuts changed.
+     */
+    synchronized void clearDownwardEdges()
+    {
+        downwardEdges[0] = null;
+        downwardEdges[1] = null;
+    }
+
+    /**
+     * Sorts the nodes by their level via counting sort. The levels are stored in the graph, so this
+     * works for a loaded graph too. Call it only after the preparation.
+     * <p/>
+     * @return all nodes of the prepared graph ordered by increasing level
+     */
+    public synchronized int[] getLevelSortedNodes()
+    {
+        if (levelSortedNodes != null)
+            return levelSortedNodes;
+
+        int nodes = prepareGraph.getNodes();
+        int maxLevel = 0;
+        for (int node = 0; node < nodes; node++)
+        {
+            maxLevel = Math.max(maxLevel, prepareGraph.getLevel(node));
+        }
+
+        int[] offsets = new int[maxLevel + 2];
+        for (int node = 0; node < nodes; node++)
+        {
+            offsets[prepareGraph.getLevel(node) + 1]++;
+        }
+        for (int level = 1; level < offsets.length; level++)
+        {
+            offsets[level] += offsets[level - 1];
+        }
+        int[] tmp = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            tmp[offsets[prepareGraph.getLevel(node)]++] = node;
+        }
+        levelSortedNodes = tmp;
+        return levelSortedNodes;
+    }
+
     private static class PriorityNode implements Comparable<PriorityNode>
     {
         int node;
@@ -906,6 +1603,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         double dist;
         double weight;
         int originalEdges;
+        int origFirst = EdgeIterator.NO_EDGE;
+        int origLast = EdgeIterator.NO_EDGE;
+        // a new shortcut which is skipped instead of skippedEdge1, its edge is known after insertion
+        Shortcut skippedShortcut1;
+        int edge = EdgeIterator.NO_EDGE;
         long flags = PrepareEncoder.getScFwdDir();
 
         public Shortcut( int from, int to, double weight, double dist )
@@ -933,7 +1635,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
                 return false;
 
             final Shortcut other = (Shortcut) obj;
-            if (this.from != other.from || this.to != other.to)
+            if (this.from != other.from || this.to != other.to
+                    || this.origFirst != other.origFirst || this.origLast != other.origLast)
                 return false;
 
             return Double.doubleToLongBits(this.weight) == Double.doubleToLongBits(other.weight);
@@ -0,0 +1,202 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.WeightApproximator;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Approximates the remaining weight via the triangle inequality and the weights from and to the
+ * landmarks: weight(a, b) >= weight(L, b) - weight(L, a) and weight(a, b) >= weight(a, L) -
+ * weight(b, L). The approximation is a lower bound for every weighting which does not return
+ * smaller weights than the one of the LandmarkStorage.
+ * <p/>
+ * For a virtual node of a QueryGraph the bound of a real neighbor is used minus the weight of the
+ * virtual edge between them.
+ * <p/>
+ * @author Peter Karich
+ */
+public class LandmarkApproximator implements WeightApproximator
+{
+    private final Graph graph;
+    private final LandmarkStorage lms;
+    private final Weighting weighting;
+    // if true the weight from the goal to the node is approximated
+    private final boolean reverse;
+    private final int landmarks;
+    private final int baseNodes;
+    private final double factor;
+    private final EdgeExplorer inExplorer;
+    private final EdgeExplorer outExplorer;
+    // the goal or, if virtual, its real neighbors and the weight of the virtual edges to them
+    private final TIntArrayList goalNodes = new TIntArrayList(2);
+    private final TDoubleArrayList goalWeights = new TDoubleArrayList(2);
+    private int[] goalFromUnits = new int[0];
+    private int[] goalToUnits = new int[0];
+    private final TIntArrayList nodes = new TIntArrayList(2);
+    private final TDoubleArrayList nodeWeights = new TDoubleArrayList(2);
+    private final int[] fromUnits;
+    private final int[] toUnits;
+
+    /**
+     * @param graph the graph of the search, e.g. a QueryGraph of the base graph of the landmarks
+     * @param weighting the weighting of the search, it must not return smaller weights than the
+     * weighting of the landmarks
+     */
+    public LandmarkApproximator( Graph graph, LandmarkStorage lms, Weighting weighting )
+    {
+        this(graph, lms, weighting, false);
+    }
+
+    private LandmarkApproximator( Graph graph, LandmarkStorage lms, Weighting weighting, boolean reverse )
+    {
+        this.graph = graph;
+        this.lms = lms;
+        this.weighting = weighting;
+        this.reverse = reverse;
+        this.landmarks = lms.getLandmarkCount();
+        this.baseNodes = lms.getNodes();
+        this.factor = lms.getFactor();
+        this.inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(lms.getEncoder(), true, false));
+        this.outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(lms.getEncoder(), false, true));
+        this.fromUnits = new int[landmarks];
+        this.toUnits = new int[landmarks];
+    }
+
+    @Override
+    public void setGoalNode( int goal )
+    {
+        // in reverse mode the paths start at the goal
+        collectRealNodes(goal, reverse, goalNodes, goalWeights);
+        int size = goalNodes.size() * landmarks;
+        if (goalFromUnits.length < size)
+        {
+            goalFromUnits = new int[size];
+            goalToUnits = new int[size];
+        }
+        for (int i = 0; i < goalNodes.size(); i++)
+        {
+            int node = goalNodes.get(i);
+            for (int l = 0; l < landmarks; l++)
+            {
+                goalFromUnits[i * landmarks + l] = lms.getFromUnits(l, node);
+                goalToUnits[i * landmarks + l] = lms.getToUnits(l, node);
+            }
+        }
+    }
+
+    @Override
+    public double approximate( int fromNode )
+    {
+        if (goalNodes.isEmpty())
+            return 0;
+
+        collectRealNodes(fromNode, !reverse, nodes, nodeWeights);
+        double result = 0;
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            int node = nodes.get(i);
+            for (int l = 0; l < landmarks; l++)
+            {
+                fromUnits[l] = lms.getFromUnits(l, node);
+                toUnits[l] = lms.getToUnits(l, node);
+            }
+
+            for (int g = 0; g < goalNodes.size(); g++)
+            {
+                long units = reverse ? calcUnits(g * landmarks, goalFromUnits, goalToUnits, 0, fromUnits, toUnits)
+                        : calcUnits(0, fromUnits, toUnits, g * landmarks, goalFromUnits, goalToUnits);
+                // minus one unit as both stored weights are rounded down
+                if (units > 1)
+                    result = Math.max(result, (units - 1) * factor - nodeWeights.get(i) - goalWeights.get(g));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the largest lower bound of the weight from a to b in units of the factor
+     */
+    private long calcUnits( int aOffset, int[] aFrom, int[] aTo, int bOffset, int[] bFrom, int[] bTo )
+    {
+        long max = 0;
+        for (int l = 0; l < landmarks; l++)
+        {
+            int af = aFrom[aOffset + l];
+            int bf = bFrom[bOffset + l];
+            if (af != LandmarkStorage.INFINITY && bf != LandmarkStorage.INFINITY)
+                max = Math.max(max, (long) bf - af);
+
+            int at = aTo[aOffset + l];
+            int bt = bTo[bOffset + l];
+            if (at != LandmarkStorage.INFINITY && bt != LandmarkStorage.INFINITY)
+                max = Math.max(max, (long) at - bt);
+        }
+        return max;
+    }
+
+    /**
+     * Collects the node itself or, for a virtual node, its real neighbors. If start is true the
+     * node is the start of the approximated path and the weight from the neighbor to the node is
+     * used, otherwise the weight from the node to the neighbor.
+     */
+    private void collectRealNodes( int node, boolean start, TIntArrayList realNodes, TDoubleArrayList weights )
+    {
+        realNodes.resetQuick();
+        weights.resetQuick();
+        if (node < baseNodes)
+        {
+            realNodes.add(node);
+            weights.add(0);
+            return;
+        }
+
+        EdgeIterator iter = (start ? inExplorer : outExplorer).setBaseNode(node);
+        while (iter.next())
+        {
+            int adjNode = iter.getAdjNode();
+            if (adjNode >= baseNodes)
+                continue;
+
+            double w = weighting.calcWeight(iter, start, EdgeIterator.NO_EDGE);
+            if (!Double.isInfinite(w))
+            {
+                realNodes.add(adjNode);
+                weights.add(w);
+            }
+        }
+    }
+
+    @Override
+    public WeightApproximator duplicate()
+    {
+        return new LandmarkApproximator(graph, lms, weighting, reverse);
+    }
+
+    @Override
+    public WeightApproximator reverse()
+    {
+        return new LandmarkApproximator(graph, lms, weighting, !reverse);
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.Storable;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores the weights from and to a few landmarks for every node of the base graph. Via the
+ * triangle inequality they give a lower bound of the weight between any two nodes, see "Computing
+ * the Shortest Path: A* Search Meets Graph Theory" by Goldberg and Harrelson.
+ * <p/>
+ * The landmarks are selected like the 'planar' method of the paper: the nodes around the center
+ * are split into one sector per landmark and the node of a sector with the largest weight from the
+ * center is picked. So all searches of the selection are independent and run in parallel. Every
+ * weight is stored as int in units of a factor derived from the largest weight and is rounded
+ * down, Integer.MAX_VALUE marks a node which is not connected to the landmark.
+ * <p/>
+ * Life cycle: (1) object creation, (2) create or loadExisting, (3) createLandmarks after create,
+ * (4) usage, (5) flush, (6) close
+ * <p/>
+ * @author Peter Karich
+ */
+public class LandmarkStorage implements Storable<LandmarkStorage>
+{
+    static final int INFINITY = Integer.MAX_VALUE;
+    private final GraphStorage graph;
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private final String name;
+    private final DataAccess landmarkWeights;
+    private final int landmarks;
+    // node memory layout: the from and the to weight for every landmark
+    private final int rowBytes;
+    private int nodeCount;
+    private int[] landmarkNodes = new int[0];
+    private double factor = -1;
+    private int threads = 1;
+
+    /**
+     * @param name the unique name in the directory of the base graph, e.g. car_fastest
+     * @param landmarks the number of landmarks, more landmarks give better approximations but
+     * every landmark needs 8 bytes per node
+     */
+    public LandmarkStorage( GraphStorage graph, FlagEncoder encoder, Weighting weighting, String name, int landmarks )
+    {
+        if (Helper.isEmpty(name))
+            throw new IllegalArgumentException("name of the landmarks cannot be empty");
+        if (landmarks < 1)
+            throw new IllegalArgumentException("At least one landmark is necessary but was " + landmarks);
+
+        this.graph = graph;
+        this.encoder = encoder;
+        this.weighting = weighting;
+        this.name = name;
+        this.landmarks = landmarks;
+        this.rowBytes = landmarks * 8;
+        this.landmarkWeights = graph.getDirectory().find("landmarks_" + name);
+    }
+
+    /**
+     * Sets the number of threads for the searches of createLandmarks. Default is 1.
+     */
+    public LandmarkStorage setThreads( int threads )
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+
+        this.threads = threads;
+        return this;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public FlagEncoder getEncoder()
+    {
+        return encoder;
+    }
+
+    public Weighting getWeighting()
+    {
+        return weighting;
+    }
+
+    public int getLandmarkCount()
+    {
+        return landmarks;
+    }
+
+    /**
+     * @return the node ids of the landmarks
+     */
+    public int[] getLandmarkNodes()
+    {
+        return landmarkNodes;
+    }
+
+    /**
+     * @return the number of nodes of the base graph when the landmarks were created. Nodes with a
+     * higher id are virtual nodes of a QueryGraph.
+     */
+    public int getNodes()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * @return the weight of one unit of the stored ints
+     */
+    double getFactor()
+    {
+        return factor;
+    }
+
+    /**
+     * @return the weight from the landmark to the specified node rounded down to the units of the
+     * factor or INFINITY if not connected
+     */
+    final int getFromUnits( int landmarkIndex, int node )
+    {
+        return landmarkWeights.getInt((long) node * rowBytes + landmarkIndex * 8);
+    }
+
+    /**
+     * @return the weight from the specified node to the landmark, see getFromUnits
+     */
+    final int getToUnits( int landmarkIndex, int node )
+    {
+        return landmarkWeights.getInt((long) node * rowBytes + landmarkIndex * 8 + 4);
+    }
+
+    /**
+     * @return the weight from the landmark to the specified node or Double.POSITIVE_INFINITY if
+     * there is no path. The weight is rounded down to a multiple of the factor.
+     */
+    public double getFromWeight( int landmarkIndex, int node )
+    {
+        return toWeight(getFromUnits(landmarkIndex, node));
+    }
+
+    /**
+     * @return the weight from the specified node to the landmark, see getFromWeight
+     */
+    public double getToWeight( int landmarkIndex, int node )
+    {
+        return toWeight(getToUnits(landmarkIndex, node));
+    }
+
+    private double toWeight( int units )
+    {
+        return units == INFINITY ? Double.POSITIVE_INFINITY : units * factor;
+    }
+
+    /**
+     * Creates the storage for the current nodes of the base graph. Nodes cannot be added to the base
+     * graph afterwards.
+     */
+    @Override
+    public LandmarkStorage create( long byteCount )
+    {
+        nodeCount = graph.getNodes();
+        landmarkWeights.create(Math.max(byteCount, (long) nodeCount * rowBytes + landmarks * 4));
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!landmarkWeights.loadExisting())
+            return false;
+
+        nodeCount = landmarkWeights.getHeader(0);
+        int storedLandmarks = landmarkWeights.getHeader(4);
+        if (nodeCount != graph.getNodes() || storedLandmarks != landmarks)
+            throw new IllegalStateException("Landmarks " + name + " do not match the base graph. nodes:"
+                    + nodeCount + " vs. " + graph.getNodes() + ", landmarks:" + storedLandmarks + " vs. " + landmarks);
+
+        long bits = ((long) landmarkWeights.getHeader(8) << 32) | (landmarkWeights.getHeader(12) & 0xFFFFFFFFL);
+        factor = Double.longBitsToDouble(bits);
+        landmarkNodes = new int[landmarks];
+        for (int i = 0; i < landmarks; i++)
+        {
+            landmarkNodes[i] = landmarkWeights.getInt((long) nodeCount * rowBytes + i * 4);
+        }
+        return true;
+    }
+
+    @Override
+    public void flush()
+    {
+        long bits = Double.doubleToLongBits(factor);
+        landmarkWeights.setHeader(0, nodeCount);
+        landmarkWeights.setHeader(4, landmarks);
+        landmarkWeights.setHeader(8, (int) (bits >>> 32));
+        landmarkWeights.setHeader(12, (int) bits);
+        landmarkWeights.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        landmarkWeights.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return landmarkWeights.isClosed();
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return landmarkWeights.getCapacity();
+    }
+
+    /**
+     * Selects the landmarks and stores the weights from and to them for all nodes.
+     */
+    public void createLandmarks()
+    {
+        if (factor > 0)
+            throw new IllegalStateException("Landmarks " + name + " are already created");
+        if (nodeCount == 0)
+            throw new IllegalStateException("Call create before createLandmarks, graph has " + graph.getNodes() + " nodes");
+
+        int center = findCenterNode();
+        double[] centerWeights = calcWeights(center, false);
+        double maxWeight = 0;
+        for (double w : centerWeights)
+        {
+            if (w != Double.POSITIVE_INFINITY)
+                maxWeight = Math.max(maxWeight, w);
+        }
+        // a path between two landmarks is usually at most twice the weight to the center, the
+        // rare weights above the range are stored as not connected which is still a lower bound
+        factor = Math.max(maxWeight, 1) * 4 / INFINITY;
+        landmarkNodes = selectLandmarks(center, centerWeights);
+        for (int i = 0; i < landmarks; i++)
+        {
+            landmarkWeights.setInt((long) nodeCount * rowBytes + i * 4, landmarkNodes[i]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>(2 * landmarks);
+            for (int i = 0; i < landmarks; i++)
+            {
+                futures.add(executor.submit(createWeightsTask(i, false)));
+                futures.add(executor.submit(createWeightsTask(i, true)));
+            }
+
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Creating the landmarks " + name + " was interrupted", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new RuntimeException("Creating the landmarks " + name + " failed", ex.getCause());
+        } finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private Runnable createWeightsTask( final int landmarkIndex, final boolean reverse )
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                double[] weights = calcWeights(landmarkNodes[landmarkIndex], reverse);
+                int offset = landmarkIndex * 8 + (reverse ? 4 : 0);
+                synchronized (landmarkWeights)
+                {
+                    for (int node = 0; node < nodeCount; node++)
+                    {
+                        double units = weights[node] / factor;
+                        landmarkWeights.setInt((long) node * rowBytes + offset, units >= INFINITY ? INFINITY : (int) units);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the node closest to the center of the bounds
+     */
+    private int findCenterNode()
+    {
+        BBox bounds = graph.getBounds();
+        double centerLat = (bounds.minLat + bounds.maxLat) / 2;
+        double centerLon = (bounds.minLon + bounds.maxLon) / 2;
+        NodeAccess na = graph.getNodeAccess();
+        int center = 0;
+        double minDist = Double.MAX_VALUE;
+        for (int node = 0; node < nodeCount; node++)
+        {
+            double dist = Helper.DIST_PLANE.calcNormalizedDist(centerLat, centerLon, na.getLatitude(node), na.getLongitude(node));
+            if (dist < minDist)
+            {
+                minDist = dist;
+                center = node;
+            }
+        }
+        return center;
+    }
+
+    /**
+     * Picks for every sector around the center the node with the largest weight from the center.
+     * The landmark of an empty sector is the farthest node not yet picked.
+     */
+    private int[] selectLandmarks( int center, double[] centerWeights )
+    {
+        NodeAccess na = graph.getNodeAccess();
+        double centerLat = na.getLatitude(center);
+        double centerLon = na.getLongitude(center);
+        double lonFactor = Math.cos(Math.toRadians(centerLat));
+        int[] result = new int[landmarks];
+        Arrays.fill(result, -1);
+        double[] sectorWeights = new double[landmarks];
+        Arrays.fill(sectorWeights, -1);
+        for (int node = 0; node < nodeCount; node++)
+        {
+            double w = centerWeights[node];
+            if (w == Double.POSITIVE_INFINITY || node == center)
+                continue;
+
+            double angle = Math.atan2(na.getLatitude(node) - centerLat, (na.getLongitude(node) - centerLon) * lonFactor);
+            int sector = Math.min(landmarks - 1, (int) ((angle + Math.PI) / (2 * Math.PI) * landmarks));
+            if (w > sectorWeights[sector])
+            {
+                sectorWeights[sector] = w;
+                result[sector] = node;
+            }
+        }
+
+        for (int i = 0; i < landmarks; i++)
+        {
+            if (result[i] >= 0)
+                continue;
+
+            int farthest = center;
+            double farthestWeight = -1;
+            for (int node = 0; node < nodeCount; node++)
+            {
+                double w = centerWeights[node];
+                if (w != Double.POSITIVE_INFINITY && w > farthestWeight && !contains(result, node))
+                {
+                    farthestWeight = w;
+                    farthest = node;
+                }
+            }
+            // more landmarks than reachable nodes: duplicates do not harm the bounds
+            result[i] = farthest;
+        }
+        return result;
+    }
+
+    private static boolean contains( int[] array, int value )
+    {
+        for (int v : array)
+        {
+            if (v == value)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the weights from the specified node or, if reverse, to it. Not connected nodes get
+     * Double.POSITIVE_INFINITY.
+     */
+    double[] calcWeights( int from, boolean reverse )
+    {
+        double[] weights = new double[nodeCount];
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        // explorers are not thread safe
+        EdgeExplorer explorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, reverse, !reverse));
+        IntDoubleBinHeap heap = new IntDoubleBinHeap(1000);
+        weights[from] = 0;
+        heap.insert_(0, from);
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int currNode = heap.poll_element();
+            double currWeight = weights[currNode];
+            // skip the outdated entries left by the lazy re-insertion
+            if (key > (float) currWeight)
+                continue;
+
+            EdgeIterator iter = explorer.setBaseNode(currNode);
+            while (iter.next())
+            {
+                int adjNode = iter.getAdjNode();
+                double tmpWeight = weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE) + currWeight;
+                if (tmpWeight < weights[adjNode])
+                {
+                    weights[adjNode] = tmpWeight;
+                    heap.insert_(tmpWeight, adjNode);
+                }
+            }
+        }
+        return weights;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + "|landmarks:" + landmarks + "|" + weighting;
+    }
+}
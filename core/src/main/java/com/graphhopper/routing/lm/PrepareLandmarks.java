@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.routing.AStar;
+import com.graphhopper.routing.AStarBidirection;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.RoutingAlgorithmFactorySimple;
+import com.graphhopper.routing.util.AbstractAlgoPreparation;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares the landmarks of one vehicle and weighting and creates algorithms using them. In
+ * contrast to contraction hierarchies the base graph stays unchanged, so every algorithm works and
+ * the weighting of a query can differ from the prepared one as long as its weights are not
+ * smaller. The algorithms astar and astarbi use the LandmarkApproximator, the other algorithms
+ * are created like in RoutingAlgorithmFactorySimple.
+ * <p/>
+ * @author Peter Karich
+ */
+public class PrepareLandmarks extends AbstractAlgoPreparation implements RoutingAlgorithmFactory
+{
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final LandmarkStorage lms;
+    private final RoutingAlgorithmFactorySimple simpleFactory = new RoutingAlgorithmFactorySimple();
+    private boolean loaded;
+
+    public PrepareLandmarks( GraphStorage graph, FlagEncoder encoder, Weighting weighting, String name, int landmarks )
+    {
+        lms = new LandmarkStorage(graph, encoder, weighting, name, landmarks);
+    }
+
+    /**
+     * Sets the number of threads for the landmark searches of doWork
+     */
+    public PrepareLandmarks setThreads( int threads )
+    {
+        lms.setThreads(threads);
+        return this;
+    }
+
+    public LandmarkStorage getLandmarkStorage()
+    {
+        return lms;
+    }
+
+    /**
+     * @return true if the landmarks were loaded from the directory and doWork is not necessary
+     */
+    public boolean loadExisting()
+    {
+        loaded = lms.loadExisting();
+        return loaded;
+    }
+
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    @Override
+    public void doWork()
+    {
+        if (loaded)
+            throw new IllegalStateException("Landmarks " + lms.getName() + " are already loaded");
+
+        super.doWork();
+        long start = System.currentTimeMillis();
+        lms.create(1000);
+        lms.createLandmarks();
+        logger.info("created landmarks " + lms + " in " + (System.currentTimeMillis() - start) / 1000f
+                + "s, nodes:" + lms.getNodes());
+    }
+
+    @Override
+    public RoutingAlgorithm createAlgo( Graph graph, AlgorithmOptions opts )
+    {
+        if (!loaded && !isPrepared())
+            throw new IllegalStateException("Call doWork or loadExisting before creating algorithms");
+
+        String algoStr = opts.getAlgorithm();
+        if (AlgorithmOptions.ASTAR_BI.equalsIgnoreCase(algoStr))
+        {
+            AStarBidirection aStarBi = new AStarBidirection(graph, opts.getFlagEncoder(), opts.getWeighting(),
+                    opts.getTraversalMode());
+            aStarBi.setApproximation(createApproximator(graph, opts.getWeighting()));
+            return aStarBi;
+        } else if (AlgorithmOptions.ASTAR.equalsIgnoreCase(algoStr))
+        {
+            AStar aStar = new AStar(graph, opts.getFlagEncoder(), opts.getWeighting(), opts.getTraversalMode());
+            aStar.setApproximation(createApproximator(graph, opts.getWeighting()));
+            return aStar;
+        }
+        return simpleFactory.createAlgo(graph, opts);
+    }
+
+    /**
+     * @param graph the base graph of the landmarks or a QueryGraph of it
+     * @param weighting must not return smaller weights than the prepared weighting, otherwise the
+     * approximation overestimates and the paths are not the shortest
+     */
+    public LandmarkApproximator createApproximator( Graph graph, Weighting weighting )
+    {
+        return new LandmarkApproximator(graph, lms, weighting);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "landmarks|" + lms;
+    }
+}
@@ -32,6 +32,12 @@ public class BeelineWeightApproximator implements WeightApproximator {
         return new BeelineWeightApproximator(nodeAccess, weighting).setDistanceCalc(distanceCalc);
     }
 
+    @Override
+    public WeightApproximator reverse() {
+        // the beeline is symmetric
+        return duplicate();
+    }
+
 
     @Override
     public double approximate(int fromNode) {
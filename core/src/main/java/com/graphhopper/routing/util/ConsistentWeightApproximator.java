@@ -20,7 +20,7 @@ public class ConsistentWeightApproximator {
 
     public ConsistentWeightApproximator(WeightApproximator weightApprox){
         uniDirApproximatorForward = weightApprox;
-        uniDirApproximatorReverse = weightApprox.duplicate();
+        uniDirApproximatorReverse = weightApprox.reverse();
     }
 
     public void setSourceNode(int sourceNode){
@@ -0,0 +1,70 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.util;
+
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.storage.SpeedOverlay;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Calculates the fastest route but prefers the speeds of the SpeedOverlay, e.g. from live traffic,
+ * over the speeds encoded in the edge flags. Overlay speeds are limited to the maximum speed of
+ * the vehicle to keep getMinWeight valid for A*. Set the QueryGraph to use the overlay speeds also
+ * for the virtual edges at the start and end of a route.
+ * <p/>
+ * @author Peter Karich
+ */
+public class TrafficWeighting extends FastestWeighting
+{
+    private final SpeedOverlay overlay;
+    private final double maxSpeedKmh;
+    private QueryGraph queryGraph;
+
+    public TrafficWeighting( FlagEncoder encoder, SpeedOverlay overlay )
+    {
+        super(encoder);
+        this.overlay = overlay;
+        this.maxSpeedKmh = encoder.getMaxSpeed();
+    }
+
+    public TrafficWeighting setQueryGraph( QueryGraph queryGraph )
+    {
+        this.queryGraph = queryGraph;
+        return this;
+    }
+
+    @Override
+    public double calcWeight( EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId )
+    {
+        EdgeIteratorState overlayEdge = queryGraph == null ? edge : queryGraph.getOriginalEdge(edge);
+        double speed = overlay.getSpeed(overlayEdge, reverse);
+        if (speed < 0)
+            return super.calcWeight(edge, reverse, prevOrNextEdgeId);
+
+        if (speed == 0)
+            return Double.POSITIVE_INFINITY;
+
+        return edge.getDistance() / Math.min(speed, maxSpeedKmh) * SPEED_CONV;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TRAFFIC|" + encoder;
+    }
+}
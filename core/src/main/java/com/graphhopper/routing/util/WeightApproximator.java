@@ -19,4 +19,10 @@ public interface WeightApproximator
      * makes a deep copy of itself
      */
     WeightApproximator duplicate();
+
+    /**
+     * makes a deep copy which approximates the weight from the goal node to fromNode instead. This
+     * differs from duplicate only for approximations of directed weights like the landmarks.
+     */
+    WeightApproximator reverse();
 }
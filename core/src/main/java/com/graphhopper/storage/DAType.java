@@ -153,6 +153,8 @@ public class DAType
             str += "_INT";
         if (isStoring())
             str += "_STORE";
+        if (!isAllowWrites())
+            str += "_RO";
         if (isSynched())
             str += "_SYNC";
         return str;
@@ -163,7 +165,7 @@ public class DAType
         dataAccess = dataAccess.toUpperCase();
         DAType type;
         if (dataAccess.contains("MMAP"))
-            type = DAType.MMAP;
+            type = dataAccess.contains("_RO") ? DAType.MMAP_RO : DAType.MMAP;
         else if (dataAccess.contains("UNSAFE"))
             type = DAType.UNSAFE_STORE;
         else
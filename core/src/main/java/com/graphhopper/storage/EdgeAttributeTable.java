@@ -0,0 +1,226 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.BitUtil;
+import java.util.Arrays;
+
+/**
+ * Stores every distinct combination of flags, name reference and additional field only once. All
+ * edges of an OSM way typically share one entry so that the edge itself only needs the 4 byte id
+ * of the entry. Entries are never removed, so frequently changing flags (like shortcut weights or
+ * live traffic) let this table grow.
+ * <p>
+ * @author Peter Karich
+ */
+class EdgeAttributeTable implements Storable<EdgeAttributeTable>
+{
+    private final DataAccess attributes;
+    private final BitUtil bitUtil;
+    private boolean flagsSizeIsLong;
+    private boolean withAdditional;
+    private int A_FLAGS, A_NAME, A_ADDITIONAL;
+    private int entryBytes;
+    private int count;
+    // open addressing from the hash of an entry to its id + 1, built on demand after loading
+    private int[] slots;
+    private int slotCount;
+
+    EdgeAttributeTable( Directory dir )
+    {
+        this.attributes = dir.find("edge_attributes");
+        this.bitUtil = BitUtil.get(dir.getByteOrder());
+    }
+
+    /**
+     * Defines the entry layout, must be called before create or loadExisting.
+     */
+    void init( int bytesForFlags, boolean withAdditional )
+    {
+        this.flagsSizeIsLong = bytesForFlags == 8;
+        this.withAdditional = withAdditional;
+        A_FLAGS = 0;
+        A_NAME = bytesForFlags;
+        A_ADDITIONAL = withAdditional ? A_NAME + 4 : -1;
+        entryBytes = A_NAME + 4 + (withAdditional ? 4 : 0);
+    }
+
+    /**
+     * Creates the table with the entry 0 where all values are 0, which is what a new edge points
+     * to.
+     */
+    @Override
+    public EdgeAttributeTable create( long byteCount )
+    {
+        attributes.create(Math.max(byteCount, entryBytes));
+        count = 0;
+        slots = null;
+        getOrCreate(0, 0, 0);
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!attributes.loadExisting())
+            return false;
+
+        if (attributes.getHeader(0) != entryBytes)
+            throw new IllegalStateException("Entry size of edge attributes does not match: "
+                    + attributes.getHeader(0) + " vs " + entryBytes);
+
+        count = attributes.getHeader(1 * 4);
+        slots = null;
+        return true;
+    }
+
+    /**
+     * @return the id of the entry with the specified values, which is created if not yet existing
+     */
+    synchronized int getOrCreate( long flags, int nameRef, int additional )
+    {
+        if (!withAdditional)
+            additional = 0;
+
+        if (slots == null)
+            initSlots(Math.max(16, Integer.highestOneBit(count) * 4));
+
+        int mask = slots.length - 1;
+        int slot = hash(flags, nameRef, additional) & mask;
+        while (slots[slot] != 0)
+        {
+            int id = slots[slot] - 1;
+            if (getFlags(id) == flags && getNameRef(id) == nameRef && getAdditional(id) == additional)
+                return id;
+
+            slot = (slot + 1) & mask;
+        }
+
+        int id = count;
+        long pointer = (long) id * entryBytes;
+        attributes.ensureCapacity(pointer + entryBytes);
+        attributes.setInt(pointer + A_FLAGS, bitUtil.getIntLow(flags));
+        if (flagsSizeIsLong)
+            attributes.setInt(pointer + A_FLAGS + 4, bitUtil.getIntHigh(flags));
+        attributes.setInt(pointer + A_NAME, nameRef);
+        if (withAdditional)
+            attributes.setInt(pointer + A_ADDITIONAL, additional);
+
+        count++;
+        slots[slot] = id + 1;
+        slotCount++;
+        if (slotCount * 2 > slots.length)
+            initSlots(slots.length * 2);
+
+        return id;
+    }
+
+    private void initSlots( int size )
+    {
+        slots = new int[size];
+        slotCount = 0;
+        int mask = size - 1;
+        for (int id = 0; id < count; id++)
+        {
+            int slot = hash(getFlags(id), getNameRef(id), getAdditional(id)) & mask;
+            while (slots[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+            slotCount++;
+        }
+    }
+
+    private static int hash( long flags, int nameRef, int additional )
+    {
+        long h = flags * 0x9E3779B97F4A7C15L + nameRef;
+        h = h * 0x9E3779B97F4A7C15L + additional;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    long getFlags( int id )
+    {
+        long pointer = (long) id * entryBytes;
+        int low = attributes.getInt(pointer + A_FLAGS);
+        if (!flagsSizeIsLong)
+            return low;
+
+        return bitUtil.combineIntsToLong(low, attributes.getInt(pointer + A_FLAGS + 4));
+    }
+
+    int getNameRef( int id )
+    {
+        return attributes.getInt((long) id * entryBytes + A_NAME);
+    }
+
+    int getAdditional( int id )
+    {
+        if (!withAdditional)
+            return 0;
+
+        return attributes.getInt((long) id * entryBytes + A_ADDITIONAL);
+    }
+
+    /**
+     * @return the number of distinct entries
+     */
+    int getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public void flush()
+    {
+        attributes.setHeader(0, entryBytes);
+        attributes.setHeader(1 * 4, count);
+        attributes.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        attributes.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return attributes.isClosed();
+    }
+
+    void setSegmentSize( int bytes )
+    {
+        attributes.setSegmentSize(bytes);
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return attributes.getCapacity();
+    }
+
+    void copyTo( EdgeAttributeTable table )
+    {
+        attributes.copyTo(table.attributes);
+        table.count = count;
+        table.slots = slots == null ? null : Arrays.copyOf(slots, slots.length);
+        table.slotCount = slotCount;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A striped sequence lock for values which span more than one int or which are not written
+ * atomically by the underlying DataAccess. Writers of the same stripe are serialized and make the
+ * sequence odd while writing. Readers never block or write shared memory: they read the sequence,
+ * the values and the sequence again and retry if a writer interfered.
+ * <p>
+ * @author Peter Karich
+ */
+class EdgeSeqLock
+{
+    // every stripe gets its own cache line to avoid false sharing between writers of different stripes
+    private static final int PADDING = 16;
+    // Unsafe.loadFence exists since Java 8
+    private static final boolean LOAD_FENCE;
+
+    static
+    {
+        boolean tmp;
+        try
+        {
+            UnsafeDataAccess.UNSAFE.getClass().getMethod("loadFence");
+            tmp = true;
+        } catch (Throwable ex)
+        {
+            tmp = false;
+        }
+        LOAD_FENCE = tmp;
+    }
+    private final AtomicIntegerArray sequences;
+    private final int mask;
+
+    EdgeSeqLock( int stripes )
+    {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("Stripes must be a power of two but was " + stripes);
+
+        this.mask = stripes - 1;
+        this.sequences = new AtomicIntegerArray(stripes * PADDING);
+    }
+
+    private int index( int key )
+    {
+        return (key & mask) * PADDING;
+    }
+
+    /**
+     * @return the sequence which has to be passed to validate after reading the values of the
+     * specified key
+     */
+    int readBegin( int key )
+    {
+        int index = index(key);
+        while (true)
+        {
+            int seq = sequences.get(index);
+            if ((seq & 1) == 0)
+                return seq;
+
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return true if the values read since readBegin are consistent, false if they have to be
+     * read again
+     */
+    boolean validate( int key, int seq )
+    {
+        // the plain reads of the values must not be reordered after the second read of the
+        // sequence, like in StampedLock.validate. Without loadFence the volatile write of the CAS
+        // orders them
+        int index = index(key);
+        if (!LOAD_FENCE)
+            return sequences.compareAndSet(index, seq, seq);
+
+        UnsafeDataAccess.UNSAFE.loadFence();
+        return sequences.get(index) == seq;
+    }
+
+    void writeLock( int key )
+    {
+        int index = index(key);
+        while (true)
+        {
+            int seq = sequences.get(index);
+            if ((seq & 1) == 0 && sequences.compareAndSet(index, seq, seq + 1))
+                return;
+
+            Thread.yield();
+        }
+    }
+
+    void writeUnlock( int key )
+    {
+        sequences.incrementAndGet(index(key));
+    }
+}
@@ -20,6 +20,7 @@ package com.graphhopper.storage;
 import com.graphhopper.util.Helper;
 import java.io.File;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -196,6 +197,19 @@ public class GHDirectory implements Directory
             new File(location).mkdirs();
     }
 
+    /**
+     * Pages in the content of all memory mapped DataAccess objects of this directory. See
+     * MMapDataAccess.preload
+     */
+    public void preload()
+    {
+        for (DataAccess da : new ArrayList<DataAccess>(map.values()))
+        {
+            if (da instanceof MMapDataAccess)
+                ((MMapDataAccess) da).preload();
+        }
+    }
+
     Collection<DataAccess> getAll()
     {
         return map.values();
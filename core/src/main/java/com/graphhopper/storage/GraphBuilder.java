@@ -113,8 +113,12 @@ public class GraphBuilder
 
         GraphStorage graph;
         if (level)
-            graph = new LevelGraphStorage(dir, encodingManager, elevation);
-        else
+        {
+            if (encodingManager.needsTurnCostsSupport())
+                graph = new LevelGraphStorage(dir, encodingManager, elevation, new TurnCostExtension());
+            else
+                graph = new LevelGraphStorage(dir, encodingManager, elevation);
+        } else
         {
             if (encodingManager.needsTurnCostsSupport())
                 graph = new GraphHopperStorage(dir, encodingManager, elevation, new TurnCostExtension());
@@ -35,6 +35,7 @@ import com.graphhopper.util.shapes.BBox;
 
 import static com.graphhopper.util.Helper.nf;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 /**
  * The main implementation which handles nodes and edges file format. It can be used with different
@@ -61,7 +62,7 @@ public class GraphHopperStorage implements GraphStorage
     private static final double INT_DIST_FACTOR = 1000d;
     private final Directory dir;
     // edge memory layout:
-    protected int E_NODEA, E_NODEB, E_LINKA, E_LINKB, E_DIST, E_FLAGS, E_GEO, E_NAME, E_ADDITIONAL;
+    protected int E_NODEA, E_NODEB, E_LINKA, E_LINKB, E_DIST, E_FLAGS, E_GEO, E_NAME, E_ADDITIONAL, E_ATTRIBUTES;
     /**
      * Specifies how many entries (integers) are used per edge.
      */
@@ -90,14 +91,21 @@ public class GraphHopperStorage implements GraphStorage
     // as we use integer index in 'egdes' area => 'geometry' area is limited to 2GB (currently ~311M for world wide)
     private final DataAccess wayGeometry;
     private int maxGeoRef;
+    // pillar nodes are stored as zigzag encoded varint deltas instead of raw integers
+    private boolean compressedGeometry = false;
     private boolean initialized = false;
     private EncodingManager encodingManager;
     private final NameIndex nameIndex;
+    // if enabled flags, name and additional field are not stored per edge but only once per combination
+    private final EdgeAttributeTable attributeTable;
+    private boolean sharedEdgeAttributes = false;
     private final StorableProperties properties;
     private final BitUtil bitUtil;
     private boolean flagsSizeIsLong;
     final GraphExtension extStorage;
     private final NodeAccess nodeAccess;
+    // null if edges are not updated while other threads read them
+    private EdgeSeqLock edgeLock;
 
     public GraphHopperStorage( Directory dir, EncodingManager encodingManager, boolean withElevation )
     {
@@ -119,6 +127,7 @@ public class GraphHopperStorage implements GraphStorage
         this.edges = dir.find("edges");
         this.wayGeometry = dir.find("geometry");
         this.nameIndex = new NameIndex(dir);
+        this.attributeTable = new EdgeAttributeTable(dir);
         this.properties = new StorableProperties(dir);
         this.bounds = BBox.createInverse(withElevation);
         this.nodeAccess = new GHNodeAccess(this, withElevation);
@@ -169,9 +178,68 @@ public class GraphHopperStorage implements GraphStorage
         edges.setSegmentSize(bytes);
         wayGeometry.setSegmentSize(bytes);
         nameIndex.setSegmentSize(bytes);
+        attributeTable.setSegmentSize(bytes);
         extStorage.setSegmentSize(bytes);
     }
 
+    /**
+     * Allows changing flags, distance and the additional field of existing edges while other
+     * threads read the graph, e.g. for live traffic. Readers stay lock-free and only retry if they
+     * hit an edge in the moment it is written, so do not use a synchronized DAType in addition.
+     * Adding edges or nodes still requires exclusive access.
+     */
+    public GraphHopperStorage setConcurrentEdgeUpdates( boolean enable )
+    {
+        checkInit();
+        edgeLock = enable ? new EdgeSeqLock(1024) : null;
+        return this;
+    }
+
+    public boolean isConcurrentEdgeUpdates()
+    {
+        return edgeLock != null;
+    }
+
+    /**
+     * Stores the pillar nodes of new graphs delta encoded as variable length integers which needs
+     * considerably less space. The format of an existing graph is read from its header.
+     */
+    public GraphHopperStorage setCompressedGeometry( boolean compressedGeometry )
+    {
+        checkInit();
+        this.compressedGeometry = compressedGeometry;
+        return this;
+    }
+
+    public boolean isCompressedGeometry()
+    {
+        return compressedGeometry;
+    }
+
+    /**
+     * Stores flags, name and additional field of a new graph in a table where every distinct
+     * combination exists only once. An edge then only references its entry, which makes the edge
+     * entries smaller and denser in the cache. As entries are never removed avoid it for graphs
+     * where flags change often, like for contraction hierarchies or live traffic. The layout of an
+     * existing graph is read from its properties.
+     */
+    public GraphHopperStorage setSharedEdgeAttributes( boolean sharedEdgeAttributes )
+    {
+        checkInit();
+        this.sharedEdgeAttributes = sharedEdgeAttributes;
+        return this;
+    }
+
+    public boolean isSharedEdgeAttributes()
+    {
+        return sharedEdgeAttributes;
+    }
+
+    int getEdgeAttributeCount()
+    {
+        return attributeTable.getCount();
+    }
+
     /**
      * After configuring this storage you need to create it explicitly.
      */
@@ -195,8 +263,11 @@ public class GraphHopperStorage implements GraphStorage
 
         properties.put("graph.byteOrder", dir.getByteOrder());
         properties.put("graph.dimension", nodeAccess.getDimension());
+        properties.put("graph.sharedEdgeAttributes", sharedEdgeAttributes);
         properties.putCurrentVersions();
         initStorage();
+        if (sharedEdgeAttributes)
+            attributeTable.create(1000);
         // 0 stands for no separate geoRef
         maxGeoRef = 4;
 
@@ -240,7 +311,20 @@ public class GraphHopperStorage implements GraphStorage
      */
     private double getDist( long pointer )
     {
-        int val = edges.getInt(pointer + E_DIST);
+        int val;
+        if (edgeLock == null)
+        {
+            val = edges.getInt(pointer + E_DIST);
+        } else
+        {
+            int key = getEdgeLockKey(pointer);
+            int seq;
+            do
+            {
+                seq = edgeLock.readBegin(key);
+                val = edges.getInt(pointer + E_DIST);
+            } while (!edgeLock.validate(key, seq));
+        }
         if (val == Integer.MAX_VALUE)
             return Double.POSITIVE_INFINITY;
 
@@ -549,7 +633,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public EdgeIteratorState setDistance( double dist )
         {
-            edges.setInt(edgePointer + E_DIST, distToInt(dist));
+            setDist(edgePointer, dist);
             return this;
         }
 
@@ -562,7 +646,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public int getAdditionalField()
         {
-            return edges.getInt(edgePointer + E_ADDITIONAL);
+            return getAdditionalEdgeField(edgePointer);
         }
 
         @Override
@@ -608,7 +692,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public String getName()
         {
-            int nameIndexRef = edges.getInt(edgePointer + E_NAME);
+            int nameIndexRef = getNameRef(edgePointer);
             return nameIndex.get(nameIndexRef);
         }
 
@@ -619,7 +703,7 @@ public class GraphHopperStorage implements GraphStorage
             if (nameIndexRef < 0)
                 throw new IllegalStateException("Too many names are stored, currently limited to int pointer");
 
-            edges.setInt(edgePointer + E_NAME, (int) nameIndexRef);
+            setNameRef(edgePointer, (int) nameIndexRef);
             return this;
         }
 
@@ -688,18 +772,38 @@ public class GraphHopperStorage implements GraphStorage
 
     private long getFlags( long edgePointer, boolean reverse )
     {
-        int low = edges.getInt(edgePointer + E_FLAGS);
-        long res = low;
-        if (flagsSizeIsLong)
+        long res;
+        if (edgeLock == null)
         {
-            int high = edges.getInt(edgePointer + E_FLAGS + 4);
-            res = bitUtil.combineIntsToLong(low, high);
+            res = readFlags(edgePointer);
+        } else
+        {
+            int key = getEdgeLockKey(edgePointer);
+            int seq;
+            do
+            {
+                seq = edgeLock.readBegin(key);
+                res = readFlags(edgePointer);
+            } while (!edgeLock.validate(key, seq));
         }
         if (reverse)
             return reverseFlags(edgePointer, res);
         return res;
     }
 
+    private long readFlags( long edgePointer )
+    {
+        if (sharedEdgeAttributes)
+            return attributeTable.getFlags(edges.getInt(edgePointer + E_ATTRIBUTES));
+
+        int low = edges.getInt(edgePointer + E_FLAGS);
+        if (!flagsSizeIsLong)
+            return low;
+
+        int high = edges.getInt(edgePointer + E_FLAGS + 4);
+        return bitUtil.combineIntsToLong(low, high);
+    }
+
     long reverseFlags( long edgePointer, long flags )
     {
         return encodingManager.reverseFlags(flags);
@@ -710,12 +814,130 @@ public class GraphHopperStorage implements GraphStorage
         if (reverse)
             flags = reverseFlags(edgePointer, flags);
 
+        if (edgeLock == null)
+        {
+            writeFlags(edgePointer, flags);
+            return;
+        }
+
+        int key = getEdgeLockKey(edgePointer);
+        edgeLock.writeLock(key);
+        try
+        {
+            writeFlags(edgePointer, flags);
+        } finally
+        {
+            edgeLock.writeUnlock(key);
+        }
+    }
+
+    private void writeFlags( long edgePointer, long flags )
+    {
+        if (sharedEdgeAttributes)
+        {
+            int id = edges.getInt(edgePointer + E_ATTRIBUTES);
+            id = attributeTable.getOrCreate(flags, attributeTable.getNameRef(id), attributeTable.getAdditional(id));
+            edges.setInt(edgePointer + E_ATTRIBUTES, id);
+            return;
+        }
+
         edges.setInt(edgePointer + E_FLAGS, bitUtil.getIntLow(flags));
 
         if (flagsSizeIsLong)
             edges.setInt(edgePointer + E_FLAGS + 4, bitUtil.getIntHigh(flags));
     }
 
+    private void setDist( long edgePointer, double dist )
+    {
+        if (edgeLock == null)
+        {
+            edges.setInt(edgePointer + E_DIST, distToInt(dist));
+            return;
+        }
+
+        int key = getEdgeLockKey(edgePointer);
+        edgeLock.writeLock(key);
+        try
+        {
+            edges.setInt(edgePointer + E_DIST, distToInt(dist));
+        } finally
+        {
+            edgeLock.writeUnlock(key);
+        }
+    }
+
+    private int getAdditionalEdgeField( long edgePointer )
+    {
+        if (edgeLock == null)
+            return readAdditionalEdgeField(edgePointer);
+
+        int key = getEdgeLockKey(edgePointer);
+        int seq, val;
+        do
+        {
+            seq = edgeLock.readBegin(key);
+            val = readAdditionalEdgeField(edgePointer);
+        } while (!edgeLock.validate(key, seq));
+        return val;
+    }
+
+    private int readAdditionalEdgeField( long edgePointer )
+    {
+        if (sharedEdgeAttributes)
+            return attributeTable.getAdditional(edges.getInt(edgePointer + E_ATTRIBUTES));
+
+        return edges.getInt(edgePointer + E_ADDITIONAL);
+    }
+
+    private void writeAdditionalEdgeField( long edgePointer, int value )
+    {
+        if (sharedEdgeAttributes)
+        {
+            int id = edges.getInt(edgePointer + E_ATTRIBUTES);
+            id = attributeTable.getOrCreate(attributeTable.getFlags(id), attributeTable.getNameRef(id), value);
+            edges.setInt(edgePointer + E_ATTRIBUTES, id);
+            return;
+        }
+
+        edges.setInt(edgePointer + E_ADDITIONAL, value);
+    }
+
+    private int getNameRef( long edgePointer )
+    {
+        if (sharedEdgeAttributes)
+            return attributeTable.getNameRef(edges.getInt(edgePointer + E_ATTRIBUTES));
+
+        return edges.getInt(edgePointer + E_NAME);
+    }
+
+    private void setNameRef( long edgePointer, int nameRef )
+    {
+        if (!sharedEdgeAttributes)
+        {
+            edges.setInt(edgePointer + E_NAME, nameRef);
+            return;
+        }
+
+        int key = getEdgeLockKey(edgePointer);
+        if (edgeLock != null)
+            edgeLock.writeLock(key);
+        try
+        {
+            int id = edges.getInt(edgePointer + E_ATTRIBUTES);
+            id = attributeTable.getOrCreate(attributeTable.getFlags(id), nameRef, attributeTable.getAdditional(id));
+            edges.setInt(edgePointer + E_ATTRIBUTES, id);
+        } finally
+        {
+            if (edgeLock != null)
+                edgeLock.writeUnlock(key);
+        }
+    }
+
+    private int getEdgeLockKey( long edgePointer )
+    {
+        return (int) (edgePointer / edgeEntryBytes);
+    }
+
     protected class SingleEdge extends EdgeIterable
     {
         public SingleEdge( int edgeId, int nodeId )
@@ -830,7 +1052,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public final EdgeIteratorState setDistance( double dist )
         {
-            edges.setInt(edgePointer + E_DIST, distToInt(dist));
+            setDist(edgePointer, dist);
             return this;
         }
 
@@ -850,7 +1072,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public int getAdditionalField()
         {
-            return edges.getInt(edgePointer + E_ADDITIONAL);
+            return getAdditionalEdgeField(edgePointer);
         }
 
         @Override
@@ -882,7 +1104,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public String getName()
         {
-            int nameIndexRef = edges.getInt(edgePointer + E_NAME);
+            int nameIndexRef = getNameRef(edgePointer);
             return nameIndex.get(nameIndexRef);
         }
 
@@ -893,7 +1115,7 @@ public class GraphHopperStorage implements GraphStorage
             if (nameIndexRef < 0)
                 throw new IllegalStateException("Too many names are stored, currently limited to int pointer");
 
-            edges.setInt(edgePointer + E_NAME, (int) nameIndexRef);
+            setNameRef(edgePointer, (int) nameIndexRef);
             return this;
         }
 
@@ -939,17 +1161,31 @@ public class GraphHopperStorage implements GraphStorage
                 setFlags(from.getFlags()).
                 setWayGeometry(from.fetchWayGeometry(0));
 
-        if (E_ADDITIONAL >= 0)
+        if (extStorage.isRequireEdgeField())
             to.setAdditionalField(from.getAdditionalField());
         return to;
     }
 
     public void setAdditionalEdgeField( long edgePointer, int value )
     {
-        if (extStorage.isRequireEdgeField() && E_ADDITIONAL >= 0)
-            edges.setInt(edgePointer + E_ADDITIONAL, value);
-        else
+        if (!extStorage.isRequireEdgeField())
             throw new AssertionError("This graph does not support an additional edge field.");
+
+        if (edgeLock == null)
+        {
+            writeAdditionalEdgeField(edgePointer, value);
+            return;
+        }
+
+        int key = getEdgeLockKey(edgePointer);
+        edgeLock.writeLock(key);
+        try
+        {
+            writeAdditionalEdgeField(edgePointer, value);
+        } finally
+        {
+            edgeLock.writeUnlock(key);
+        }
     }
 
     private void setWayGeometry( PointList pillarNodes, long edgePointer, boolean reverse )
@@ -962,14 +1198,21 @@ public class GraphHopperStorage implements GraphStorage
 
             int len = pillarNodes.getSize();
             int dim = nodeAccess.getDimension();
+            if (reverse)
+                pillarNodes.reverse();
+
+            if (compressedGeometry)
+            {
+                setCompressedWayGeometry(pillarNodes, edgePointer, edges.getInt(edgePointer + E_NODEA));
+                return;
+            }
+
             int tmpRef = nextGeoRef(len * dim);
             edges.setInt(edgePointer + E_GEO, tmpRef);
             long geoRef = (long) tmpRef * 4;
             byte[] bytes = new byte[len * dim * 4 + 4];
             ensureGeometry(geoRef, bytes.length);
             bitUtil.fromInt(bytes, len, 0);
-            if (reverse)
-                pillarNodes.reverse();
 
             int tmpOffset = 4;
             boolean is3D = nodeAccess.is3D();
@@ -995,19 +1238,137 @@ public class GraphHopperStorage implements GraphStorage
         }
     }
 
+    /**
+     * Layout: the byte length of the following data, the number of points and then the difference
+     * of every lat, lon (and ele) to the previous point. The first point is stored relative to the
+     * tower node it is connected to, which is node A of the edge. Where node A and B of an edge are
+     * swapped the geometry has to be written again.
+     */
+    private void setCompressedWayGeometry( PointList pillarNodes, long edgePointer, int towerNode )
+    {
+        VLongStorage store = compressWayGeometry(pillarNodes, towerNode);
+        int byteLength = (int) store.getPosition();
+        int tmpRef = nextGeoRef((byteLength + 3) / 4);
+        edges.setInt(edgePointer + E_GEO, tmpRef);
+        long geoRef = (long) tmpRef * 4;
+        ensureGeometry(geoRef, byteLength + 4);
+        wayGeometry.setInt(geoRef, byteLength);
+        wayGeometry.setBytes(geoRef + 4, store.getBytes(), byteLength);
+    }
+
+    private VLongStorage compressWayGeometry( PointList pillarNodes, int towerNode )
+    {
+        int len = pillarNodes.getSize();
+        boolean is3D = nodeAccess.is3D();
+        VLongStorage store = new VLongStorage(len * nodeAccess.getDimension() * 3 + 2);
+        store.writeVLong(len);
+        long prevLat = Helper.degreeToInt(nodeAccess.getLatitude(towerNode));
+        long prevLon = Helper.degreeToInt(nodeAccess.getLongitude(towerNode));
+        long prevEle = is3D ? Helper.eleToInt(nodeAccess.getElevation(towerNode)) : 0;
+        for (int i = 0; i < len; i++)
+        {
+            long lat = Helper.degreeToInt(pillarNodes.getLatitude(i));
+            long lon = Helper.degreeToInt(pillarNodes.getLongitude(i));
+            store.writeVLong(zigZag(lat - prevLat));
+            store.writeVLong(zigZag(lon - prevLon));
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D)
+            {
+                long ele = Helper.eleToInt(pillarNodes.getElevation(i));
+                store.writeVLong(zigZag(ele - prevEle));
+                prevEle = ele;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Reverses the stored pillar nodes of the specified edge and avoids allocating new space if
+     * possible. Node A and B of the edge have to be swapped afterwards as a compressed geometry is
+     * then relative to node B.
+     */
+    private void reverseWayGeometry( long edgePointer )
+    {
+        long geoRef = (long) edges.getInt(edgePointer + E_GEO) * 4;
+        if (geoRef <= 0)
+            return;
+
+        if (compressedGeometry)
+        {
+            int oldInts = (wayGeometry.getInt(geoRef) + 3) / 4;
+            int nodeB = edges.getInt(edgePointer + E_NODEB);
+            PointList pillarNodes = fetchWayGeometry(edgePointer, true, 0, -1, -1);
+            VLongStorage store = compressWayGeometry(pillarNodes, nodeB);
+            int byteLength = (int) store.getPosition();
+            if ((byteLength + 3) / 4 > oldInts)
+            {
+                setCompressedWayGeometry(pillarNodes, edgePointer, nodeB);
+                return;
+            }
+            wayGeometry.setInt(geoRef, byteLength);
+            wayGeometry.setBytes(geoRef + 4, store.getBytes(), byteLength);
+            return;
+        }
+
+        int count = wayGeometry.getInt(geoRef);
+        int dim = nodeAccess.getDimension();
+        long first = geoRef + 4;
+        for (int i = 0, j = count - 1; i < j; i++, j--)
+        {
+            for (int d = 0; d < dim; d++)
+            {
+                long posI = first + ((long) i * dim + d) * 4;
+                long posJ = first + ((long) j * dim + d) * 4;
+                int tmp = wayGeometry.getInt(posI);
+                wayGeometry.setInt(posI, wayGeometry.getInt(posJ));
+                wayGeometry.setInt(posJ, tmp);
+            }
+        }
+    }
+
+    private static long zigZag( long value )
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag( long value )
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     private PointList fetchWayGeometry( long edgePointer, boolean reverse, int mode, int baseNode, int adjNode )
+    {
+        return fetchWayGeometry(edgePointer, reverse, mode, baseNode, adjNode, edges.getInt(edgePointer + E_NODEA));
+    }
+
+    /**
+     * @param towerNode the node to which a compressed geometry is relative, usually node A
+     */
+    private PointList fetchWayGeometry( long edgePointer, boolean reverse, int mode, int baseNode, int adjNode,
+            int towerNode )
     {
         long geoRef = edges.getInt(edgePointer + E_GEO);
         int count = 0;
         byte[] bytes = null;
+        VLongStorage store = null;
         if (geoRef > 0)
         {
             geoRef *= 4;
-            count = wayGeometry.getInt(geoRef);
+            if (compressedGeometry)
+            {
+                bytes = new byte[wayGeometry.getInt(geoRef)];
+                wayGeometry.getBytes(geoRef + 4, bytes, bytes.length);
+                store = new VLongStorage(bytes);
+                count = (int) store.readVLong();
+            } else
+            {
+                count = wayGeometry.getInt(geoRef);
 
-            geoRef += 4;
-            bytes = new byte[count * nodeAccess.getDimension() * 4];
-            wayGeometry.getBytes(geoRef, bytes, bytes.length);
+                geoRef += 4;
+                bytes = new byte[count * nodeAccess.getDimension() * 4];
+                wayGeometry.getBytes(geoRef, bytes, bytes.length);
+            }
         } else if (mode == 0)
             return PointList.EMPTY;
 
@@ -1022,20 +1383,41 @@ public class GraphHopperStorage implements GraphStorage
                 pillarNodes.add(nodeAccess, baseNode);
         }
 
-        int index = 0;
-        for (int i = 0; i < count; i++)
+        if (store != null)
         {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D())
+            long lat = Helper.degreeToInt(nodeAccess.getLatitude(towerNode));
+            long lon = Helper.degreeToInt(nodeAccess.getLongitude(towerNode));
+            long ele = nodeAccess.is3D() ? Helper.eleToInt(nodeAccess.getElevation(towerNode)) : 0;
+            for (int i = 0; i < count; i++)
             {
-                pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
-                index += 4;
-            } else
+                lat += unZigZag(store.readVLong());
+                lon += unZigZag(store.readVLong());
+                if (nodeAccess.is3D())
+                {
+                    ele += unZigZag(store.readVLong());
+                    pillarNodes.add(Helper.intToDegree((int) lat), Helper.intToDegree((int) lon), Helper.intToEle((int) ele));
+                } else
+                {
+                    pillarNodes.add(Helper.intToDegree((int) lat), Helper.intToDegree((int) lon));
+                }
+            }
+        } else
+        {
+            int index = 0;
+            for (int i = 0; i < count; i++)
             {
-                pillarNodes.add(lat, lon);
+                double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                if (nodeAccess.is3D())
+                {
+                    pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+                    index += 4;
+                } else
+                {
+                    pillarNodes.add(lat, lon);
+                }
             }
         }
 
@@ -1075,6 +1457,10 @@ public class GraphHopperStorage implements GraphStorage
             throw new IllegalStateException("nodeEntryBytes cannot be different for cloned graph. "
                     + "Cloned: " + clonedG.nodeEntryBytes + " vs " + nodeEntryBytes);
 
+        if (clonedG.sharedEdgeAttributes != sharedEdgeAttributes)
+            throw new IllegalStateException("sharedEdgeAttributes cannot be different for cloned graph. "
+                    + "Cloned: " + clonedG.sharedEdgeAttributes + " vs " + sharedEdgeAttributes);
+
         if (clonedG.nodeAccess.getDimension() != nodeAccess.getDimension())
             throw new IllegalStateException("dimension cannot be different for cloned graph. "
                     + "Cloned: " + clonedG.nodeAccess.getDimension() + " vs " + nodeAccess.getDimension());
@@ -1091,6 +1477,8 @@ public class GraphHopperStorage implements GraphStorage
 
         // name
         nameIndex.copyTo(clonedG.nameIndex);
+        if (sharedEdgeAttributes)
+            attributeTable.copyTo(clonedG.attributeTable);
 
         // geometry
         setWayGeometryHeader();
@@ -1147,6 +1535,171 @@ public class GraphHopperStorage implements GraphStorage
         trimToSize();
     }
 
+    /**
+     * Renumbers all nodes with the specified mapping and orders the edges by their new base node.
+     * If neighboring nodes get close ids this improves the memory locality of every graph
+     * exploration. Both areas are rewritten entry by entry via a temporary DataAccess of the same
+     * type. Only a graph without removed nodes and without node references in its extension (like
+     * turn costs) can be renumbered. Everything referring to the old ids, like the location index,
+     * has to be created afterwards.
+     * <p>
+     * @param oldToNew a permutation of the node ids
+     */
+    public void renumberNodes( int[] oldToNew )
+    {
+        if (oldToNew.length != nodeCount)
+            throw new IllegalArgumentException("Mapping needs an entry for every node " + nodeCount
+                    + " but was " + oldToNew.length);
+        if (removedNodes != null && removedNodes.getCardinality() > 0)
+            throw new IllegalStateException("Call optimize to remove nodes before renumbering");
+        if (extStorage.isRequireNodeField())
+            throw new IllegalStateException("Cannot renumber a graph with node references in " + extStorage);
+
+        int[] newToOld = new int[nodeCount];
+        Arrays.fill(newToOld, -1);
+        for (int node = 0; node < nodeCount; node++)
+        {
+            int newNode = oldToNew[node];
+            if (newNode < 0 || newNode >= nodeCount || newToOld[newNode] >= 0)
+                throw new IllegalArgumentException("Mapping is not a permutation, invalid entry for node " + node);
+            newToOld[newNode] = node;
+        }
+
+        int[] edgeNewToOld = new int[edgeCount];
+        int baseEdges = getRenumberedEdgeGroupEnd();
+        sortEdgesByBaseNode(oldToNew, 0, baseEdges, edgeNewToOld);
+        sortEdgesByBaseNode(oldToNew, baseEdges, edgeCount, edgeNewToOld);
+        int[] edgeOldToNew = new int[edgeCount];
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            edgeOldToNew[edgeNewToOld[edge]] = edge;
+        }
+
+        // the storage order of an edge is from the smaller to the bigger node id, so flip the
+        // direction dependent data of edges where this changes before moving them
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            long edgePointer = (long) edge * edgeEntryBytes;
+            int nodeA = edges.getInt(edgePointer + E_NODEA);
+            if (nodeA == NO_NODE || oldToNew[nodeA] <= oldToNew[edges.getInt(edgePointer + E_NODEB)])
+                continue;
+
+            setFlags(edgePointer, true, getFlags(edgePointer, false));
+            reverseWayGeometry(edgePointer);
+        }
+
+        DataAccess newEdges = dir.find("edges_renumbered");
+        newEdges.setSegmentSize(edges.getSegmentSize());
+        newEdges.create((long) edgeCount * edgeEntryBytes);
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            long newPointer = (long) edge * edgeEntryBytes;
+            long oldPointer = (long) edgeNewToOld[edge] * edgeEntryBytes;
+            for (int offset = 0; offset < edgeEntryBytes; offset += 4)
+            {
+                newEdges.setInt(newPointer + offset, edges.getInt(oldPointer + offset));
+            }
+
+            int nodeA = edges.getInt(oldPointer + E_NODEA);
+            if (nodeA == NO_NODE)
+                continue;
+
+            int newA = oldToNew[nodeA];
+            int newB = oldToNew[edges.getInt(oldPointer + E_NODEB)];
+            int linkA = renumberedEdge(edges.getInt(oldPointer + E_LINKA), edgeOldToNew);
+            int linkB = renumberedEdge(edges.getInt(oldPointer + E_LINKB), edgeOldToNew);
+            if (newA > newB)
+            {
+                int tmp = newA;
+                newA = newB;
+                newB = tmp;
+                tmp = linkA;
+                linkA = linkB;
+                linkB = tmp;
+            }
+            newEdges.setInt(newPointer + E_NODEA, newA);
+            newEdges.setInt(newPointer + E_NODEB, newB);
+            newEdges.setInt(newPointer + E_LINKA, linkA);
+            newEdges.setInt(newPointer + E_LINKB, linkB);
+            renumberEdgeEntry(newEdges, newPointer, edgeOldToNew);
+        }
+        copyInts(newEdges, edges, (long) edgeCount * edgeEntryBytes);
+        dir.remove(newEdges);
+
+        DataAccess newNodes = dir.find("nodes_renumbered");
+        newNodes.setSegmentSize(nodes.getSegmentSize());
+        newNodes.create((long) nodeCount * nodeEntryBytes);
+        for (int node = 0; node < nodeCount; node++)
+        {
+            long newPointer = (long) node * nodeEntryBytes;
+            long oldPointer = (long) newToOld[node] * nodeEntryBytes;
+            for (int offset = 0; offset < nodeEntryBytes; offset += 4)
+            {
+                newNodes.setInt(newPointer + offset, nodes.getInt(oldPointer + offset));
+            }
+            newNodes.setInt(newPointer + N_EDGE_REF,
+                    renumberedEdge(nodes.getInt(oldPointer + N_EDGE_REF), edgeOldToNew));
+        }
+        copyInts(newNodes, nodes, (long) nodeCount * nodeEntryBytes);
+        dir.remove(newNodes);
+    }
+
+    /**
+     * Edges in [0, end) and [end, edgeCount) are ordered separately, e.g. to keep shortcuts after
+     * the normal edges.
+     */
+    protected int getRenumberedEdgeGroupEnd()
+    {
+        return edgeCount;
+    }
+
+    /**
+     * Updates references to other edges stored in an additional field of the specified edge entry.
+     */
+    protected void renumberEdgeEntry( DataAccess da, long edgePointer, int[] edgeOldToNew )
+    {
+    }
+
+    protected static int renumberedEdge( int edge, int[] edgeOldToNew )
+    {
+        return edge < 0 ? edge : edgeOldToNew[edge];
+    }
+
+    /**
+     * Counting sort of the edges in [from, to) by their smaller new node, deleted edges go last.
+     */
+    private void sortEdgesByBaseNode( int[] oldToNew, int from, int to, int[] edgeNewToOld )
+    {
+        int[] starts = new int[nodeCount + 2];
+        int[] keys = new int[to - from];
+        for (int edge = from; edge < to; edge++)
+        {
+            long edgePointer = (long) edge * edgeEntryBytes;
+            int nodeA = edges.getInt(edgePointer + E_NODEA);
+            int key = nodeCount;
+            if (nodeA != NO_NODE)
+                key = Math.min(oldToNew[nodeA], oldToNew[edges.getInt(edgePointer + E_NODEB)]);
+            keys[edge - from] = key;
+            starts[key + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++)
+        {
+            starts[i] += starts[i - 1];
+        }
+        for (int edge = from; edge < to; edge++)
+        {
+            edgeNewToOld[from + starts[keys[edge - from]]++] = edge;
+        }
+    }
+
+    private static void copyInts( DataAccess from, DataAccess to, long bytes )
+    {
+        for (long pointer = 0; pointer < bytes; pointer += 4)
+        {
+            to.setInt(pointer, from.getInt(pointer));
+        }
+    }
+
     private void trimToSize()
     {
         long nodeCap = (long) nodeCount * nodeEntryBytes;
@@ -1314,10 +1867,15 @@ public class GraphHopperStorage implements GraphStorage
             int linkA = edges.getInt(getLinkPosInEdgeArea(nodeA, nodeB, edgePointer));
             int linkB = edges.getInt(getLinkPosInEdgeArea(nodeB, nodeA, edgePointer));
             long flags = getFlags(edgePointer, false);
+            // a compressed geometry is relative to node A, which is already moved to updatedA
+            PointList pillarNodes = null;
+            if (updatedA < updatedB != nodeA < nodeB)
+                pillarNodes = fetchWayGeometry(edgePointer, true, 0, -1, -1, updatedA);
+
             writeEdge(edge, updatedA, updatedB, linkA, linkB);
             setFlags(edgePointer, updatedA > updatedB, flags);
-            if (updatedA < updatedB != nodeA < nodeB)
-                setWayGeometry(fetchWayGeometry(edgePointer, true, 0, -1, -1), edgePointer, false);
+            if (pillarNodes != null)
+                setWayGeometry(pillarNodes, edgePointer, false);
         }
 
         // we do not remove the invalid edges => edgeCount stays the same!
@@ -1384,6 +1942,7 @@ public class GraphHopperStorage implements GraphStorage
                 properties.checkVersions(false);
                 // check encoding for compatiblity
                 acceptStr = properties.get("graph.flagEncoders");
+                sharedEdgeAttributes = "true".equals(properties.get("graph.sharedEdgeAttributes"));
 
             } else
                 throw new IllegalStateException("cannot load properties. corrupt file or directory? " + dir);
@@ -1427,6 +1986,9 @@ public class GraphHopperStorage implements GraphStorage
             // first define header indices of this storage
             initStorage();
 
+            if (sharedEdgeAttributes && !attributeTable.loadExisting())
+                throw new IllegalStateException("Cannot load edge attributes. corrupt file or directory? " + dir);
+
             // now load some properties from stored data
             loadNodesHeader();
             loadEdgesHeader();
@@ -1446,13 +2008,26 @@ public class GraphHopperStorage implements GraphStorage
         E_LINKB = nextEdgeEntryIndex(4);
         E_DIST = nextEdgeEntryIndex(4);
         this.flagsSizeIsLong = encodingManager.getBytesForFlags() == 8;
-        E_FLAGS = nextEdgeEntryIndex(encodingManager.getBytesForFlags());
-        E_GEO = nextEdgeEntryIndex(4);
-        E_NAME = nextEdgeEntryIndex(4);
-        if (extStorage.isRequireEdgeField())
-            E_ADDITIONAL = nextEdgeEntryIndex(4);
-        else
+        if (sharedEdgeAttributes)
+        {
+            E_FLAGS = -1;
+            E_GEO = nextEdgeEntryIndex(4);
+            E_NAME = -1;
             E_ADDITIONAL = -1;
+            E_ATTRIBUTES = nextEdgeEntryIndex(4);
+            attributeTable.init(encodingManager.getBytesForFlags(), extStorage.isRequireEdgeField());
+        } else
+        {
+            E_FLAGS = nextEdgeEntryIndex(encodingManager.getBytesForFlags());
+            E_GEO = nextEdgeEntryIndex(4);
+            E_NAME = nextEdgeEntryIndex(4);
+            if (extStorage.isRequireEdgeField())
+                E_ADDITIONAL = nextEdgeEntryIndex(4);
+            else
+                E_ADDITIONAL = -1;
+
+            E_ATTRIBUTES = -1;
+        }
 
         N_EDGE_REF = nextNodeEntryIndex(4);
         N_LAT = nextNodeEntryIndex(4);
@@ -1518,13 +2093,15 @@ public class GraphHopperStorage implements GraphStorage
     protected int loadWayGeometryHeader()
     {
         maxGeoRef = wayGeometry.getHeader(0);
-        return 1;
+        compressedGeometry = wayGeometry.getHeader(1 * 4) == 1;
+        return 2;
     }
 
     protected int setWayGeometryHeader()
     {
         wayGeometry.setHeader(0, maxGeoRef);
-        return 1;
+        wayGeometry.setHeader(1 * 4, compressedGeometry ? 1 : 0);
+        return 2;
     }
 
     @Override
@@ -1537,6 +2114,8 @@ public class GraphHopperStorage implements GraphStorage
         properties.flush();
         wayGeometry.flush();
         nameIndex.flush();
+        if (sharedEdgeAttributes)
+            attributeTable.flush();
         edges.flush();
         nodes.flush();
         extStorage.flush();
@@ -1548,6 +2127,8 @@ public class GraphHopperStorage implements GraphStorage
         properties.close();
         wayGeometry.close();
         nameIndex.close();
+        if (sharedEdgeAttributes)
+            attributeTable.close();
         edges.close();
         nodes.close();
         extStorage.close();
@@ -1568,8 +2149,11 @@ public class GraphHopperStorage implements GraphStorage
     @Override
     public long getCapacity()
     {
-        return edges.getCapacity() + nodes.getCapacity() + nameIndex.getCapacity() + wayGeometry.getCapacity()
+        long capacity = edges.getCapacity() + nodes.getCapacity() + nameIndex.getCapacity() + wayGeometry.getCapacity()
                 + properties.getCapacity() + extStorage.getCapacity();
+        if (sharedEdgeAttributes)
+            capacity += attributeTable.getCapacity();
+        return capacity;
     }
 
     @Override
@@ -1579,6 +2163,8 @@ public class GraphHopperStorage implements GraphStorage
                 + "nodes:" + nf(nodeCount) + "(" + nodes.getCapacity() / Helper.MB + "), "
                 + "name: /(" + nameIndex.getCapacity() / Helper.MB + "), "
                 + "geo:" + nf(maxGeoRef) + "(" + wayGeometry.getCapacity() / Helper.MB + "), "
+                + (sharedEdgeAttributes ? "attributes:" + nf(attributeTable.getCount())
+                        + "(" + attributeTable.getCapacity() / Helper.MB + "), " : "")
                 + "bounds:" + bounds;
     }
 
@@ -0,0 +1,182 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.geohash.SpatialKeyAlgo;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renumbers the nodes of a graph along a Hilbert curve and orders the edges by their base node.
+ * Nodes close on the map then get close ids and the data of one graph exploration is close in
+ * memory, which makes routing considerably faster for big graphs. Can be used before and after
+ * the contraction hierarchies preparation.
+ * <p>
+ * @author Peter Karich
+ */
+public class HilbertCurveRenumbering
+{
+    private static final Logger logger = LoggerFactory.getLogger(HilbertCurveRenumbering.class);
+    // bits per axis, the node id needs the remaining 31 bits of the sort key
+    private static final int BITS = 16;
+    private final GraphHopperStorage graph;
+
+    public HilbertCurveRenumbering( GraphHopperStorage graph )
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * @return the new id for every node
+     */
+    public int[] createOrder()
+    {
+        int nodes = graph.getNodes();
+        SpatialKeyAlgo algo = new SpatialKeyAlgo(2 * BITS).bounds(graph.getBounds());
+        NodeAccess na = graph.getNodeAccess();
+        long[] keys = new long[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            long spatialKey = algo.encode(na.getLatitude(node), na.getLongitude(node));
+            keys[node] = (toHilbertIndex(spatialKey) << 31) | node;
+        }
+        Arrays.sort(keys);
+        int[] oldToNew = new int[nodes];
+        for (int newNode = 0; newNode < nodes; newNode++)
+        {
+            oldToNew[(int) (keys[newNode] & Integer.MAX_VALUE)] = newNode;
+        }
+        return oldToNew;
+    }
+
+    /**
+     * Converts the interleaved lat and lon bits of a spatial key into the distance along the
+     * Hilbert curve which avoids the big jumps of the z-order.
+     */
+    static long toHilbertIndex( long spatialKey )
+    {
+        int y = 0, x = 0;
+        for (int i = 0; i < BITS; i++)
+        {
+            y = (y << 1) | (int) ((spatialKey >>> (2 * BITS - 1 - 2 * i)) & 1);
+            x = (x << 1) | (int) ((spatialKey >>> (2 * BITS - 2 - 2 * i)) & 1);
+        }
+
+        int n = 1 << BITS;
+        long index = 0;
+        for (int s = n / 2; s > 0; s /= 2)
+        {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0)
+            {
+                if (rx == 1)
+                {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Renumbers the graph and logs the locality before and after.
+     */
+    public void renumber()
+    {
+        if (graph.getNodes() == 0)
+            return;
+
+        Locality before = calcLocality(graph);
+        StopWatch sw = new StopWatch().start();
+        graph.renumberNodes(createOrder());
+        logger.info("renumbered " + Helper.nf(graph.getNodes()) + " nodes along a hilbert curve in "
+                + sw.stop().getSeconds() + "s, before: " + before + ", after: " + calcLocality(graph));
+    }
+
+    /**
+     * Measures how far apart the data of neighboring nodes and edges is stored.
+     */
+    public static Locality calcLocality( Graph graph )
+    {
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        int nodes = graph.getNodes();
+        long edges = 0, nodeGaps = 0, edgeGaps = 0;
+        for (int node = 0; node < nodes; node++)
+        {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            int prevEdge = -1;
+            while (iter.next())
+            {
+                edges++;
+                nodeGaps += Math.abs(iter.getAdjNode() - node);
+                if (prevEdge >= 0)
+                    edgeGaps += Math.abs(iter.getEdge() - prevEdge);
+                prevEdge = iter.getEdge();
+            }
+        }
+        if (edges == 0)
+            return new Locality(0, 0);
+
+        return new Locality((double) nodeGaps / edges, (double) edgeGaps / edges);
+    }
+
+    public static class Locality
+    {
+        private final double nodeGap;
+        private final double edgeGap;
+
+        Locality( double nodeGap, double edgeGap )
+        {
+            this.nodeGap = nodeGap;
+            this.edgeGap = edgeGap;
+        }
+
+        /**
+         * @return the mean difference of the ids of a node and its neighbors
+         */
+        public double getNodeGap()
+        {
+            return nodeGap;
+        }
+
+        /**
+         * @return the mean difference of the ids of consecutive edges of one node
+         */
+        public double getEdgeGap()
+        {
+            return edgeGap;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "node gap:" + Math.round(nodeGap) + ", edge gap:" + Math.round(edgeGap);
+        }
+    }
+}
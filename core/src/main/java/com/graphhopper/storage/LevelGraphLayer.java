@@ -0,0 +1,683 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.AllEdgesSkipIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.BBox;
+
+/**
+ * A LevelGraph which stores the node levels and shortcuts of one vehicle and weighting in separate
+ * DataAccess objects on top of a shared base graph. This makes it possible to prepare several
+ * profiles for contraction hierarchies without duplicating the base graph.
+ * <p/>
+ * In contrast to LevelGraphStorage the base graph cannot be modified, so the edges from a higher to
+ * a lower level cannot be disconnected and the query has to skip them via a LevelEdgeFilter. Also
+ * the direction of a shortcut is stored independent of the flags so that the access bits of the
+ * specified encoder are used, which makes it possible to use a vehicle which is not the first in
+ * the EncodingManager.
+ * <p/>
+ * Life cycle: (1) object creation, (2) create or loadExisting, (3) usage, (4) flush, (5) close
+ * <p/>
+ * @see LevelGraphStorage
+ * @author Peter Karich
+ */
+public class LevelGraphLayer implements LevelGraph, Storable<LevelGraphLayer>
+{
+    private static final int NO_SHORTCUT = -1;
+    private static final double WEIGHT_FACTOR = 1000d;
+    private static final double DIST_FACTOR = 1000d;
+    private static final int FWD = 1;
+    private static final int BWD = 2;
+    private final GraphStorage baseGraph;
+    private final FlagEncoder encoder;
+    private final String name;
+    // node memory layout:
+    private final int N_LEVEL, N_SC_REF;
+    private final int nodeEntryBytes;
+    private final DataAccess levels;
+    // shortcut memory layout:
+    private final int S_NODEA, S_NODEB, S_LINKA, S_LINKB, S_SKIP_EDGE1, S_SKIP_EDGE2, S_DIST, S_WEIGHT, S_DIR;
+    private final int shortcutEntryBytes;
+    private final DataAccess shortcuts;
+    private int shortcutCount;
+    // shortcut ids start after the edges of the base graph
+    private int baseEdges;
+    private int nodeCount;
+
+    /**
+     * @param name the unique name of this layer in the directory of the base graph, e.g.
+     * car_fastest
+     */
+    public LevelGraphLayer( GraphStorage baseGraph, FlagEncoder encoder, String name )
+    {
+        if (Helper.isEmpty(name))
+            throw new IllegalArgumentException("name of the layer cannot be empty");
+
+        this.baseGraph = baseGraph;
+        this.encoder = encoder;
+        this.name = name;
+        this.levels = baseGraph.getDirectory().find("levels_" + name);
+        this.shortcuts = baseGraph.getDirectory().find("shortcuts_" + name);
+
+        N_LEVEL = 0;
+        N_SC_REF = 4;
+        nodeEntryBytes = 8;
+
+        S_NODEA = 0;
+        S_NODEB = 4;
+        S_LINKA = 8;
+        S_LINKB = 12;
+        S_SKIP_EDGE1 = 16;
+        S_SKIP_EDGE2 = 20;
+        S_DIST = 24;
+        S_WEIGHT = 28;
+        S_DIR = 32;
+        shortcutEntryBytes = 36;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public FlagEncoder getEncoder()
+    {
+        return encoder;
+    }
+
+    public GraphStorage getBaseGraph()
+    {
+        return baseGraph;
+    }
+
+    /**
+     * Creates the storage for the current nodes and edges of the base graph. Edges cannot be added
+     * to the base graph afterwards.
+     */
+    @Override
+    public LevelGraphLayer create( long byteCount )
+    {
+        nodeCount = baseGraph.getNodes();
+        baseEdges = baseGraph.getAllEdges().getCount();
+        levels.create(Math.max(byteCount, (long) nodeCount * nodeEntryBytes));
+        shortcuts.create(Math.max(byteCount, 100));
+        for (long pointer = 0; pointer < (long) nodeCount * nodeEntryBytes; pointer += nodeEntryBytes)
+        {
+            levels.setInt(pointer + N_LEVEL, 0);
+            levels.setInt(pointer + N_SC_REF, NO_SHORTCUT);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!levels.loadExisting() || !shortcuts.loadExisting())
+            return false;
+
+        nodeCount = levels.getHeader(0);
+        baseEdges = shortcuts.getHeader(0);
+        shortcutCount = shortcuts.getHeader(4);
+        if (nodeCount != baseGraph.getNodes() || baseEdges != baseGraph.getAllEdges().getCount())
+            throw new IllegalStateException("Layer " + name + " does not match the base graph. nodes:"
+                    + nodeCount + " vs. " + baseGraph.getNodes() + ", edges:" + baseEdges
+                    + " vs. " + baseGraph.getAllEdges().getCount());
+        return true;
+    }
+
+    @Override
+    public void flush()
+    {
+        levels.setHeader(0, nodeCount);
+        levels.flush();
+        shortcuts.setHeader(0, baseEdges);
+        shortcuts.setHeader(4, shortcutCount);
+        shortcuts.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        levels.close();
+        shortcuts.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return levels.isClosed();
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return levels.getCapacity() + shortcuts.getCapacity();
+    }
+
+    /**
+     * @return the number of shortcuts stored in this layer
+     */
+    public int getShortcuts()
+    {
+        return shortcutCount;
+    }
+
+    @Override
+    public int getNodes()
+    {
+        return baseGraph.getNodes();
+    }
+
+    @Override
+    public NodeAccess getNodeAccess()
+    {
+        return baseGraph.getNodeAccess();
+    }
+
+    @Override
+    public BBox getBounds()
+    {
+        return baseGraph.getBounds();
+    }
+
+    @Override
+    public GraphExtension getExtension()
+    {
+        return baseGraph.getExtension();
+    }
+
+    @Override
+    public EdgeIteratorState edge( int a, int b )
+    {
+        throw new UnsupportedOperationException("Edges have to be added to the base graph before creating the layer " + name);
+    }
+
+    @Override
+    public EdgeIteratorState edge( int a, int b, double distance, boolean bothDirections )
+    {
+        return edge(a, b);
+    }
+
+    @Override
+    public Graph copyTo( Graph g )
+    {
+        throw new UnsupportedOperationException("Copying layer " + name + " is not supported");
+    }
+
+    @Override
+    public final void setLevel( int index, int level )
+    {
+        levels.setInt(getNodePointer(index) + N_LEVEL, level);
+    }
+
+    @Override
+    public final int getLevel( int index )
+    {
+        return levels.getInt(getNodePointer(index) + N_LEVEL);
+    }
+
+    private long getNodePointer( int index )
+    {
+        if (index < 0 || index >= nodeCount)
+            throw new IllegalArgumentException("node " + index + " out of bounds [0," + nodeCount + ")");
+
+        return (long) index * nodeEntryBytes;
+    }
+
+    @Override
+    public EdgeSkipIterState shortcut( int a, int b )
+    {
+        if (a == b)
+            throw new IllegalArgumentException("shortcut cannot be a loop " + a);
+
+        int scIndex = shortcutCount;
+        shortcutCount++;
+        if (shortcutCount < 0 || baseEdges + shortcutCount < 0)
+            throw new IllegalStateException("too many shortcuts in layer " + name);
+
+        shortcuts.ensureCapacity((long) shortcutCount * shortcutEntryBytes);
+        int nodeA = Math.min(a, b);
+        int nodeB = Math.max(a, b);
+        long pointer = (long) scIndex * shortcutEntryBytes;
+        shortcuts.setInt(pointer + S_NODEA, nodeA);
+        shortcuts.setInt(pointer + S_NODEB, nodeB);
+        shortcuts.setInt(pointer + S_LINKA, levels.getInt(getNodePointer(nodeA) + N_SC_REF));
+        shortcuts.setInt(pointer + S_LINKB, levels.getInt(getNodePointer(nodeB) + N_SC_REF));
+        shortcuts.setInt(pointer + S_SKIP_EDGE1, EdgeIterator.NO_EDGE);
+        shortcuts.setInt(pointer + S_SKIP_EDGE2, EdgeIterator.NO_EDGE);
+        shortcuts.setInt(pointer + S_DIST, 0);
+        shortcuts.setInt(pointer + S_WEIGHT, 0);
+        shortcuts.setInt(pointer + S_DIR, 0);
+        levels.setInt(getNodePointer(nodeA) + N_SC_REF, scIndex);
+        levels.setInt(getNodePointer(nodeB) + N_SC_REF, scIndex);
+
+        LayerEdgeState state = new LayerEdgeState();
+        state.setShortcut(scIndex, a);
+        return state;
+    }
+
+    @Override
+    public EdgeSkipIterState getEdgeProps( int edgeId, int adjNode )
+    {
+        if (edgeId < baseEdges)
+        {
+            EdgeIteratorState baseEdge = baseGraph.getEdgeProps(edgeId, adjNode);
+            if (baseEdge == null)
+                return null;
+
+            LayerEdgeState state = new LayerEdgeState();
+            state.baseEdge = baseEdge;
+            return state;
+        }
+
+        int scIndex = edgeId - baseEdges;
+        if (scIndex >= shortcutCount)
+            throw new IllegalStateException("edgeId " + edgeId + " out of bounds [0," + (baseEdges + shortcutCount) + "]");
+
+        long pointer = (long) scIndex * shortcutEntryBytes;
+        int nodeA = shortcuts.getInt(pointer + S_NODEA);
+        int nodeB = shortcuts.getInt(pointer + S_NODEB);
+        LayerEdgeState state = new LayerEdgeState();
+        if (adjNode == nodeB || adjNode == Integer.MIN_VALUE)
+            state.setShortcut(scIndex, nodeA);
+        else if (adjNode == nodeA)
+            state.setShortcut(scIndex, nodeB);
+        else
+            // if edgeId exists but adjacent nodes do not match
+            return null;
+
+        return state;
+    }
+
+    @Override
+    public EdgeSkipExplorer createEdgeExplorer()
+    {
+        return createEdgeExplorer(EdgeFilter.ALL_EDGES);
+    }
+
+    @Override
+    public EdgeSkipExplorer createEdgeExplorer( EdgeFilter filter )
+    {
+        return new LayerEdgeIterator(filter);
+    }
+
+    @Override
+    public AllEdgesSkipIterator getAllEdges()
+    {
+        return new AllLayerEdgeIterator();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "layer|" + name + "|shortcuts:" + Helper.nf(shortcutCount);
+    }
+
+    /**
+     * Points either to an edge of the base graph or to a shortcut of this layer.
+     */
+    class LayerEdgeState implements EdgeSkipIterState
+    {
+        // null if the current edge is a shortcut
+        EdgeIteratorState baseEdge;
+        int scIndex;
+        long scPointer;
+        int baseNode;
+        int adjNode;
+        boolean reverse;
+
+        final void setShortcut( int scIndex, int baseNode )
+        {
+            this.baseEdge = null;
+            this.scIndex = scIndex;
+            this.scPointer = (long) scIndex * shortcutEntryBytes;
+            this.baseNode = baseNode;
+            int nodeA = shortcuts.getInt(scPointer + S_NODEA);
+            if (nodeA == baseNode)
+            {
+                adjNode = shortcuts.getInt(scPointer + S_NODEB);
+                reverse = false;
+            } else
+            {
+                adjNode = nodeA;
+                reverse = true;
+            }
+        }
+
+        @Override
+        public final int getEdge()
+        {
+            return baseEdge == null ? baseEdges + scIndex : baseEdge.getEdge();
+        }
+
+        @Override
+        public final int getBaseNode()
+        {
+            return baseEdge == null ? baseNode : baseEdge.getBaseNode();
+        }
+
+        @Override
+        public final int getAdjNode()
+        {
+            return baseEdge == null ? adjNode : baseEdge.getAdjNode();
+        }
+
+        @Override
+        public final boolean isShortcut()
+        {
+            return baseEdge == null;
+        }
+
+        @Override
+        public final double getDistance()
+        {
+            if (baseEdge != null)
+                return baseEdge.getDistance();
+
+            return shortcuts.getInt(scPointer + S_DIST) / DIST_FACTOR;
+        }
+
+        @Override
+        public final EdgeIteratorState setDistance( double dist )
+        {
+            if (baseEdge != null)
+            {
+                baseEdge.setDistance(dist);
+                return this;
+            }
+
+            long distLong = (long) (dist * DIST_FACTOR);
+            if (distLong < 0 || distLong > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Distance of shortcut out of range: " + dist);
+
+            shortcuts.setInt(scPointer + S_DIST, (int) distLong);
+            return this;
+        }
+
+        /**
+         * For a shortcut this returns only the access flags of the encoder of this layer.
+         */
+        @Override
+        public final long getFlags()
+        {
+            if (baseEdge != null)
+                return baseEdge.getFlags();
+
+            int dir = shortcuts.getInt(scPointer + S_DIR);
+            boolean fwd = (dir & FWD) != 0;
+            boolean bwd = (dir & BWD) != 0;
+            return reverse ? encoder.setAccess(0, bwd, fwd) : encoder.setAccess(0, fwd, bwd);
+        }
+
+        /**
+         * For a shortcut only the access flags of the encoder of this layer are stored.
+         */
+        @Override
+        public final EdgeIteratorState setFlags( long flags )
+        {
+            if (baseEdge != null)
+            {
+                baseEdge.setFlags(flags);
+                return this;
+            }
+
+            boolean fwd = encoder.isBool(flags, FlagEncoder.K_FORWARD);
+            boolean bwd = encoder.isBool(flags, FlagEncoder.K_BACKWARD);
+            if (reverse)
+            {
+                boolean tmp = fwd;
+                fwd = bwd;
+                bwd = tmp;
+            }
+            shortcuts.setInt(scPointer + S_DIR, (fwd ? FWD : 0) | (bwd ? BWD : 0));
+            return this;
+        }
+
+        @Override
+        public final EdgeSkipIterState setWeight( double weight )
+        {
+            if (baseEdge != null)
+                throw new IllegalStateException("setWeight is only available for shortcuts");
+            if (weight < 0)
+                throw new IllegalArgumentException("weight cannot be negative! but was " + weight);
+
+            int weightInt;
+            if (weight * WEIGHT_FACTOR >= Integer.MAX_VALUE)
+                weightInt = Integer.MAX_VALUE;
+            else
+                weightInt = (int) (weight * WEIGHT_FACTOR);
+
+            shortcuts.setInt(scPointer + S_WEIGHT, weightInt);
+            return this;
+        }
+
+        @Override
+        public final double getWeight()
+        {
+            if (baseEdge != null)
+                throw new IllegalStateException("getWeight is only available for shortcuts");
+
+            int weightInt = shortcuts.getInt(scPointer + S_WEIGHT);
+            if (weightInt == Integer.MAX_VALUE)
+                return Double.POSITIVE_INFINITY;
+
+            return weightInt / WEIGHT_FACTOR;
+        }
+
+        @Override
+        public final void setSkippedEdges( int edge1, int edge2 )
+        {
+            if (baseEdge != null)
+                throw new IllegalStateException("Cannot set skipped edges for edge " + getEdge() + " of the base graph");
+
+            if (EdgeIterator.Edge.isValid(edge1) != EdgeIterator.Edge.isValid(edge2))
+            {
+                throw new IllegalStateException("Skipped edges of a shortcut needs "
+                        + "to be both valid or invalid but they were not " + edge1 + ", " + edge2);
+            }
+            shortcuts.setInt(scPointer + S_SKIP_EDGE1, edge1);
+            shortcuts.setInt(scPointer + S_SKIP_EDGE2, edge2);
+        }
+
+        @Override
+        public final int getSkippedEdge1()
+        {
+            if (baseEdge != null)
+                return EdgeIterator.NO_EDGE;
+
+            return shortcuts.getInt(scPointer + S_SKIP_EDGE1);
+        }
+
+        @Override
+        public final int getSkippedEdge2()
+        {
+            if (baseEdge != null)
+                return EdgeIterator.NO_EDGE;
+
+            return shortcuts.getInt(scPointer + S_SKIP_EDGE2);
+        }
+
+        @Override
+        public int getAdditionalField()
+        {
+            return getBaseEdge("getAdditionalField").getAdditionalField();
+        }
+
+        @Override
+        public EdgeIteratorState setAdditionalField( int value )
+        {
+            getBaseEdge("setAdditionalField").setAdditionalField(value);
+            return this;
+        }
+
+        @Override
+        public String getName()
+        {
+            return getBaseEdge("getName").getName();
+        }
+
+        @Override
+        public EdgeIteratorState setName( String name )
+        {
+            getBaseEdge("setName").setName(name);
+            return this;
+        }
+
+        @Override
+        public PointList fetchWayGeometry( int mode )
+        {
+            return getBaseEdge("fetchWayGeometry").fetchWayGeometry(mode);
+        }
+
+        @Override
+        public EdgeIteratorState setWayGeometry( PointList list )
+        {
+            getBaseEdge("setWayGeometry").setWayGeometry(list);
+            return this;
+        }
+
+        @Override
+        public EdgeIteratorState copyPropertiesTo( EdgeIteratorState e )
+        {
+            return getBaseEdge("copyPropertiesTo").copyPropertiesTo(e);
+        }
+
+        @Override
+        public EdgeIteratorState detach( boolean reverseArg )
+        {
+            LayerEdgeState state = new LayerEdgeState();
+            if (baseEdge != null)
+            {
+                state.baseEdge = baseEdge.detach(reverseArg);
+            } else
+            {
+                state.setShortcut(scIndex, reverseArg ? adjNode : baseNode);
+            }
+            return state;
+        }
+
+        private EdgeIteratorState getBaseEdge( String method )
+        {
+            if (baseEdge == null)
+                throw new IllegalStateException("Cannot call " + method + " on shortcut " + getEdge());
+
+            return baseEdge;
+        }
+
+        @Override
+        public final String toString()
+        {
+            return getEdge() + " " + getBaseNode() + "-" + getAdjNode();
+        }
+    }
+
+    /**
+     * Iterates first over the edges of the base graph and then over the shortcuts of the node.
+     */
+    class LayerEdgeIterator extends LayerEdgeState implements EdgeSkipExplorer, EdgeSkipIterator
+    {
+        private final EdgeFilter filter;
+        private final EdgeExplorer baseExplorer;
+        private EdgeIterator baseIter;
+        private int nextShortcut;
+
+        public LayerEdgeIterator( EdgeFilter filter )
+        {
+            if (filter == null)
+                throw new IllegalArgumentException("Instead null filter use EdgeFilter.ALL_EDGES");
+
+            this.filter = filter;
+            this.baseExplorer = baseGraph.createEdgeExplorer();
+        }
+
+        @Override
+        public final EdgeSkipIterator setBaseNode( int baseNode )
+        {
+            this.baseIter = baseExplorer.setBaseNode(baseNode);
+            this.baseNode = baseNode;
+            this.nextShortcut = levels.getInt(getNodePointer(baseNode) + N_SC_REF);
+            return this;
+        }
+
+        @Override
+        public final boolean next()
+        {
+            if (baseIter != null)
+            {
+                while (baseIter.next())
+                {
+                    baseEdge = baseIter;
+                    if (filter.accept(this))
+                        return true;
+                }
+                baseIter = null;
+                baseEdge = null;
+            }
+
+            int tmpBaseNode = baseNode;
+            while (nextShortcut != NO_SHORTCUT)
+            {
+                setShortcut(nextShortcut, tmpBaseNode);
+                nextShortcut = shortcuts.getInt(scPointer + (reverse ? S_LINKB : S_LINKA));
+                if (filter.accept(this))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Iterates over all edges of the base graph and then over all shortcuts.
+     */
+    class AllLayerEdgeIterator extends LayerEdgeState implements AllEdgesSkipIterator
+    {
+        private AllEdgesIterator baseIter = baseGraph.getAllEdges();
+        private int nextShortcut = 0;
+
+        @Override
+        public int getCount()
+        {
+            return baseEdges + shortcutCount;
+        }
+
+        @Override
+        public boolean next()
+        {
+            if (baseIter != null)
+            {
+                if (baseIter.next())
+                {
+                    baseEdge = baseIter;
+                    return true;
+                }
+                baseIter = null;
+            }
+
+            if (nextShortcut >= shortcutCount)
+                return false;
+
+            setShortcut(nextShortcut, shortcuts.getInt((long) nextShortcut * shortcutEntryBytes + S_NODEA));
+            nextShortcut++;
+            return true;
+        }
+    }
+}
@@ -48,6 +48,12 @@ public class LevelGraphStorage extends GraphHopperStorage implements LevelGraph
         super(dir, encodingManager, enabled3D);
     }
 
+    public LevelGraphStorage( Directory dir, EncodingManager encodingManager, boolean enabled3D,
+            GraphExtension extendedStorage )
+    {
+        super(dir, encodingManager, enabled3D, extendedStorage);
+    }
+
     @Override
     protected void initStorage()
     {
@@ -416,6 +422,19 @@ public class LevelGraphStorage extends GraphHopperStorage implements LevelGraph
         return weight;
     }
 
+    @Override
+    protected int getRenumberedEdgeGroupEnd()
+    {
+        return lastEdgeIndex + 1;
+    }
+
+    @Override
+    protected void renumberEdgeEntry( DataAccess da, long edgePointer, int[] edgeOldToNew )
+    {
+        da.setInt(edgePointer + I_SKIP_EDGE1, renumberedEdge(da.getInt(edgePointer + I_SKIP_EDGE1), edgeOldToNew));
+        da.setInt(edgePointer + I_SKIP_EDGE2, renumberedEdge(da.getInt(edgePointer + I_SKIP_EDGE2), edgeOldToNew));
+    }
+
     @Override
     protected int loadEdgesHeader()
     {
@@ -43,6 +43,11 @@ public class MMapDataAccess extends AbstractDataAccess
     private List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
     private boolean cleanAndRemap = false;
     private final boolean allowWrites;
+    /**
+     * Read-only files are mapped in chunks of this size, independent of the segment size they were
+     * created with. The largest power of two which fits into one ByteBuffer.
+     */
+    static final int READ_ONLY_SEGMENT_SIZE = 1 << 30;
 
     MMapDataAccess( String name, String location, ByteOrder order, boolean allowWrites )
     {
@@ -241,7 +246,10 @@ public class MMapDataAccess extends AbstractDataAccess
             if (byteCount < 0)
                 return false;
 
-            mapIt(HEADER_OFFSET, byteCount - HEADER_OFFSET, false);
+            if (allowWrites)
+                mapIt(HEADER_OFFSET, byteCount - HEADER_OFFSET, false);
+            else
+                mapReadOnly(Math.min(byteCount, raFile.length()) - HEADER_OFFSET);
             return true;
         } catch (IOException ex)
         {
@@ -249,6 +257,41 @@ public class MMapDataAccess extends AbstractDataAccess
         }
     }
 
+    /**
+     * Maps the file with as few and as large buffers as possible. The content is not read here, the
+     * operating system pages it in on first access. As the file cannot grow the last buffer only
+     * covers the remaining bytes instead of a full segment.
+     */
+    private void mapReadOnly( long byteCount ) throws IOException
+    {
+        setSegmentSize(Math.max(segmentSizeInBytes, READ_ONLY_SEGMENT_SIZE));
+        long bufferStart = HEADER_OFFSET;
+        long end = HEADER_OFFSET + byteCount;
+        while (bufferStart < end)
+        {
+            long len = Math.min(segmentSizeInBytes, end - bufferStart);
+            segments.add(newByteBuffer(bufferStart, len));
+            bufferStart += len;
+        }
+    }
+
+    /**
+     * Asks the operating system to page in the whole mapped content, similar to
+     * madvise(MADV_WILLNEED). Can be called from a background thread after loading so that the
+     * first queries do not need to hit the disc.
+     */
+    public void preload()
+    {
+        for (ByteBuffer bb : segments)
+        {
+            if (isClosed())
+                return;
+
+            if (bb instanceof MappedByteBuffer)
+                ((MappedByteBuffer) bb).load();
+        }
+    }
+
     @Override
     public void flush()
     {
@@ -471,6 +514,6 @@ public class MMapDataAccess extends AbstractDataAccess
     @Override
     public DAType getType()
     {
-        return DAType.MMAP;
+        return allowWrites ? DAType.MMAP : DAType.MMAP_RO;
     }
 }
@@ -0,0 +1,237 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.util.Arrays;
+
+/**
+ * Stores a shortest-path-tree in flat arrays instead of one EdgeEntry per traversal id. Every
+ * entry gets a compact visit id on its first visit under which the edge, the adjacent node, the
+ * weight and the visit id of the parent are stored. The traversal ids are mapped to the visit ids
+ * via an open addressing table which grows with the number of entries and not with the traversal
+ * ids, so a search near a virtual node or in the edge key space of a large graph stays small. A
+ * slot of the table is only used if it has the current version, which makes clear a constant time
+ * operation.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ShortestPathTree
+{
+    public static final int NO_PARENT = -1;
+    private static final int NOT_FOUND = -1;
+    // the visit id of a slot is only valid if the slot has the current version
+    private int[] slotVisitIds;
+    private int[] slotVersions;
+    private int version = 1;
+    private int mask;
+    private int slotsUsed;
+    private int[] traversalIds;
+    private int[] edges;
+    private int[] adjNodes;
+    private int[] parents;
+    private double[] weights;
+    private int size;
+
+    public ShortestPathTree( int initialCapacity )
+    {
+        initialCapacity = Math.max(10, initialCapacity);
+        traversalIds = new int[initialCapacity];
+        edges = new int[initialCapacity];
+        adjNodes = new int[initialCapacity];
+        parents = new int[initialCapacity];
+        weights = new double[initialCapacity];
+        initSlots(Integer.highestOneBit(initialCapacity) * 4);
+    }
+
+    private void initSlots( int slots )
+    {
+        slotVisitIds = new int[slots];
+        slotVersions = new int[slots];
+        version = 1;
+        mask = slots - 1;
+        slotsUsed = 0;
+    }
+
+    private int getSlot( int traversalId )
+    {
+        int hash = traversalId * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    /**
+     * @return the visit id of the specified traversal id or -1 if not yet visited
+     */
+    public int getVisitId( int traversalId )
+    {
+        if (traversalId < 0)
+            return NOT_FOUND;
+
+        int slot = getSlot(traversalId);
+        while (slotVersions[slot] == version)
+        {
+            int visitId = slotVisitIds[slot];
+            if (traversalIds[visitId] == traversalId)
+                return visitId;
+
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Adds a new entry, the traversal id must not be visited yet. A negative traversal id creates
+     * an entry which cannot be found via getVisitId, e.g. for the start of an edge based search.
+     * <p/>
+     * @return the visit id of the new entry
+     */
+    public int add( int traversalId, int edge, int adjNode, double weight, int parent )
+    {
+        if (size >= traversalIds.length)
+            ensureCapacity(size + size / 2 + 1);
+
+        int visitId = size;
+        if (traversalId >= 0)
+        {
+            // keep the load factor below 0.5
+            if (2 * (slotsUsed + 1) > slotVisitIds.length)
+                rehash(2 * slotVisitIds.length);
+
+            putSlot(traversalId, visitId);
+        }
+        size++;
+        traversalIds[visitId] = traversalId;
+        adjNodes[visitId] = adjNode;
+        set(visitId, edge, weight, parent);
+        return visitId;
+    }
+
+    public void set( int visitId, int edge, double weight, int parent )
+    {
+        edges[visitId] = edge;
+        weights[visitId] = weight;
+        parents[visitId] = parent;
+    }
+
+    public int getEdge( int visitId )
+    {
+        return edges[visitId];
+    }
+
+    public int getAdjNode( int visitId )
+    {
+        return adjNodes[visitId];
+    }
+
+    public double getWeight( int visitId )
+    {
+        return weights[visitId];
+    }
+
+    public int getParent( int visitId )
+    {
+        return parents[visitId];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries but keeps the allocated arrays.
+     */
+    public void clear()
+    {
+        size = 0;
+        slotsUsed = 0;
+        version++;
+        if (version == Integer.MAX_VALUE)
+        {
+            Arrays.fill(slotVersions, 0);
+            version = 1;
+        }
+    }
+
+    /**
+     * Creates the linked EdgeEntry objects from the specified entry up to the root of the tree, which
+     * is necessary only for the few entries of the path extraction.
+     */
+    public EdgeEntry createEdgeEntry( int visitId )
+    {
+        EdgeEntry first = new EdgeEntry(edges[visitId], adjNodes[visitId], weights[visitId]);
+        EdgeEntry curr = first;
+        int parent = parents[visitId];
+        while (parent != NO_PARENT)
+        {
+            curr.parent = new EdgeEntry(edges[parent], adjNodes[parent], weights[parent]);
+            curr = curr.parent;
+            parent = parents[parent];
+        }
+        return first;
+    }
+
+    private void putSlot( int traversalId, int visitId )
+    {
+        int slot = getSlot(traversalId);
+        while (slotVersions[slot] == version)
+        {
+            slot = (slot + 1) & mask;
+        }
+        slotVersions[slot] = version;
+        slotVisitIds[slot] = visitId;
+        slotsUsed++;
+    }
+
+    private void rehash( int slots )
+    {
+        initSlots(slots);
+        for (int visitId = 0; visitId < size; visitId++)
+        {
+            if (traversalIds[visitId] >= 0)
+                putSlot(traversalIds[visitId], visitId);
+        }
+    }
+
+    private void ensureCapacity( int capacity )
+    {
+        traversalIds = Arrays.copyOf(traversalIds, capacity);
+        edges = Arrays.copyOf(edges, capacity);
+        adjNodes = Arrays.copyOf(adjNodes, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+    }
+
+    /**
+     * @return the currently allocated bytes
+     */
+    public long getCapacity()
+    {
+        return 8L * slotVisitIds.length + (4L * 4 + 8) * traversalIds.length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "entries:" + size + ", capacity:" + traversalIds.length;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Holds speeds per edge and direction which override the speeds encoded in the edge flags, e.g.
+ * from live traffic data. The flags and therefor the graph are not modified. Every value is a
+ * single int in a RAM_INT DataAccess, so updates do not block readers and readers never see
+ * partial values. They might see an update slightly delayed.
+ * <p/>
+ * The capacity is fixed to the edges of the graph at creation time. Edges created later, like
+ * shortcuts or virtual edges, have no overlay speed.
+ * <p/>
+ * @author Peter Karich
+ */
+public class SpeedOverlay
+{
+    // speeds are stored in 1/100 km/h plus one to distinguish 'no speed' (0) from 'closed' (speed 0)
+    private static final double SPEED_FACTOR = 100;
+    private static final int E_BASE = 0, E_FORWARD = 4, E_BACKWARD = 8, ENTRY_BYTES = 12;
+    private final GraphStorage graph;
+    private final DataAccess speeds;
+    private int edgeCount;
+
+    public SpeedOverlay( GraphStorage graph )
+    {
+        this.graph = graph;
+        this.speeds = graph.getDirectory().find("speedOverlay", DAType.RAM_INT);
+    }
+
+    /**
+     * Reserves space for all edges of the graph. No edge has an overlay speed afterwards.
+     */
+    public SpeedOverlay create()
+    {
+        AllEdgesIterator iter = graph.getAllEdges();
+        edgeCount = iter.getCount();
+        speeds.create(Math.max(1, (long) edgeCount * ENTRY_BYTES));
+        while (iter.next())
+        {
+            // remember the stored direction of the edge as iterators could see it reversed
+            speeds.setInt((long) iter.getEdge() * ENTRY_BYTES + E_BASE, iter.getBaseNode());
+        }
+        return this;
+    }
+
+    public int getEdgeCount()
+    {
+        return edgeCount;
+    }
+
+    /**
+     * @param reverse false for the direction in which the edge is stored, i.e. from the base to the
+     * adjacent node of AllEdgesIterator
+     * @param speed in km/h. A negative value removes the overlay speed, 0 closes the edge
+     * @throws IllegalArgumentException if the edge is unknown
+     */
+    public void setSpeed( int edgeId, boolean reverse, double speed )
+    {
+        if (edgeId < 0 || edgeId >= edgeCount)
+            throw new IllegalArgumentException("Edge " + edgeId + " not in overlay with " + edgeCount + " edges");
+
+        int value = speed < 0 ? 0 : (int) Math.round(speed * SPEED_FACTOR) + 1;
+        speeds.setInt((long) edgeId * ENTRY_BYTES + (reverse ? E_BACKWARD : E_FORWARD), value);
+    }
+
+    /**
+     * @return the speed in km/h or a negative value if the edge has no overlay speed
+     */
+    public double getSpeed( int edgeId, boolean reverse )
+    {
+        if (edgeId < 0 || edgeId >= edgeCount)
+            return -1;
+
+        int value = speeds.getInt((long) edgeId * ENTRY_BYTES + (reverse ? E_BACKWARD : E_FORWARD));
+        return (value - 1) / SPEED_FACTOR;
+    }
+
+    /**
+     * @param reverse like in Weighting.calcWeight, relative to the direction of the specified edge
+     * state
+     * @return the speed in km/h or a negative value if the edge has no overlay speed
+     */
+    public double getSpeed( EdgeIteratorState edge, boolean reverse )
+    {
+        int edgeId = edge.getEdge();
+        if (edgeId < 0 || edgeId >= edgeCount)
+            return -1;
+
+        boolean storedDirection = speeds.getInt((long) edgeId * ENTRY_BYTES + E_BASE) == edge.getBaseNode();
+        return getSpeed(edgeId, storedDirection == reverse);
+    }
+
+    /**
+     * Removes all overlay speeds.
+     */
+    public void clear()
+    {
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++)
+        {
+            setSpeed(edgeId, false, -1);
+            setSpeed(edgeId, true, -1);
+        }
+    }
+
+    public void close()
+    {
+        graph.getDirectory().remove(speeds);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "speedOverlay, edges:" + edgeCount;
+    }
+}
@@ -22,6 +22,7 @@ import com.graphhopper.coll.GHTBitSet;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.Graph;
@@ -31,9 +32,16 @@ import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.procedure.TIntProcedure;
 import gnu.trove.set.hash.TIntHashSet;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,7 +62,9 @@ public class LocationIndexTree implements LocationIndex
     private DistanceCalc preciseDistCalc = Helper.DIST_EARTH;
     protected final Graph graph;
     private final NodeAccess nodeAccess;
+    private final Directory dir;
     final DataAccess dataAccess;
+    private int sortBufferSize = -1;
     private int[] entries;
     private byte[] shifts;
     // convert spatial key to index for subentry of current depth
@@ -79,6 +89,7 @@ public class LocationIndexTree implements LocationIndex
         MAGIC_INT = Integer.MAX_VALUE / 22316;
         this.graph = g;
         this.nodeAccess = g.getNodeAccess();
+        this.dir = dir;
         dataAccess = dir.find("locationIndex");
     }
 
@@ -115,6 +126,18 @@ public class LocationIndexTree implements LocationIndex
         return this;
     }
 
+    /**
+     * Builds the index via sorting instead of an in-memory tree which limits the memory usage of
+     * prepareIndex to the specified number of buffered entries (12 bytes each). The sorted runs are
+     * stored memory mapped if the directory is on disc. Use -1 (default) to build the tree in
+     * memory which is faster for small graphs.
+     */
+    public LocationIndexTree setSortBufferSize( int entries )
+    {
+        this.sortBufferSize = entries;
+        return this;
+    }
+
     void prepareAlgo()
     {
         // 0.1 meter should count as 'equal'
@@ -301,6 +324,27 @@ public class LocationIndexTree implements LocationIndex
 
         StopWatch sw = new StopWatch().start();
         prepareAlgo();
+        ConstructionIndex index;
+        if (sortBufferSize > 0)
+            index = prepareSorted();
+        else
+            index = prepareInMem();
+
+        float entriesPerLeaf = (float) index.size / index.leafs;
+        initialized = true;
+        logger.info("location index created in " + sw.stop().getSeconds()
+                + "s, size:" + Helper.nf(index.size)
+                + ", leafs:" + Helper.nf(index.leafs)
+                + ", precision:" + minResolutionInMeter
+                + ", depth:" + entries.length
+                + ", entries:" + Arrays.toString(entries)
+                + ", entriesPerLeaf:" + entriesPerLeaf);
+
+        return this;
+    }
+
+    private ConstructionIndex prepareInMem()
+    {
         // in-memory preparation
         InMemConstructionIndex inMem = getPrepareInMemIndex();
 
@@ -314,17 +358,29 @@ public class LocationIndexTree implements LocationIndex
         {
             throw new IllegalStateException("Problem while storing location index. " + Helper.getMemInfo(), ex);
         }
-        float entriesPerLeaf = (float) inMem.size / inMem.leafs;
-        initialized = true;
-        logger.info("location index created in " + sw.stop().getSeconds()
-                + "s, size:" + Helper.nf(inMem.size)
-                + ", leafs:" + Helper.nf(inMem.leafs)
-                + ", precision:" + minResolutionInMeter
-                + ", depth:" + entries.length
-                + ", entries:" + Arrays.toString(entries)
-                + ", entriesPerLeaf:" + entriesPerLeaf);
+        return inMem;
+    }
 
-        return this;
+    private ConstructionIndex prepareSorted()
+    {
+        DAType runsType = dir.getDefaultType().isStoring() ? DAType.MMAP : DAType.RAM;
+        DataAccess runs = dir.find("locationIndexRuns", runsType);
+        runs.create(64 * 1024);
+        dataAccess.create(64 * 1024);
+        try
+        {
+            SortedConstructionIndex sorted = new SortedConstructionIndex(sortBufferSize, runs);
+            sorted.prepare();
+            sorted.store();
+            flush();
+            return sorted;
+        } catch (Exception ex)
+        {
+            throw new IllegalStateException("Problem while storing location index. " + Helper.getMemInfo(), ex);
+        } finally
+        {
+            dir.remove(runs);
+        }
     }
 
     int calcChecksum()
@@ -358,16 +414,13 @@ public class LocationIndexTree implements LocationIndex
         dataAccess.setSegmentSize(bytes);
     }
 
-    class InMemConstructionIndex
+    /**
+     * Walks over all edges and feeds the tiles they cross into addNode.
+     */
+    abstract class ConstructionIndex
     {
         int size;
         int leafs;
-        InMemTreeEntry root;
-
-        public InMemConstructionIndex( int noOfSubEntries )
-        {
-            root = new InMemTreeEntry(noOfSubEntries);
-        }
 
         void prepare()
         {
@@ -415,7 +468,7 @@ public class LocationIndexTree implements LocationIndex
                     long key = keyAlgo.encode(lat, lon);
                     long keyPart = createReverseKey(key);
                     // no need to feed both nodes as we search neighbors in fillIDs
-                    addNode(root, pickBestNode(nodeA, nodeB), 0, keyPart, key);
+                    addNode(pickBestNode(nodeA, nodeB), keyPart, key);
                 }
             };
             BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, pointEmitter,
@@ -423,6 +476,24 @@ public class LocationIndexTree implements LocationIndex
                     deltaLat, deltaLon);
         }
 
+        abstract void addNode( int nodeId, long keyPart, long key );
+    }
+
+    class InMemConstructionIndex extends ConstructionIndex
+    {
+        InMemTreeEntry root;
+
+        public InMemConstructionIndex( int noOfSubEntries )
+        {
+            root = new InMemTreeEntry(noOfSubEntries);
+        }
+
+        @Override
+        void addNode( int nodeId, long keyPart, long key )
+        {
+            addNode(root, nodeId, 0, keyPart, key);
+        }
+
         void addNode( InMemEntry entry, int nodeId, int depth, long keyPart, long key )
         {
             if (entry.isLeaf())
@@ -566,6 +637,296 @@ public class LocationIndexTree implements LocationIndex
         }
     }
 
+    /**
+     * Builds the tree without holding it in memory. The tiles of all edges are buffered and written
+     * as sorted runs into a temporary DataAccess, then the runs are merged and as the merged order
+     * is the order of the tree layout the leafs and tree entries can be written bottom-up in one
+     * pass. Produces exactly the same data as InMemConstructionIndex.
+     */
+    class SortedConstructionIndex extends ConstructionIndex
+    {
+        // one entry is the sort key as two ints and the node
+        private static final int ENTRY_BYTES = 12;
+        private final long[] keys;
+        private final int[] nodes;
+        private int buffered;
+        private final DataAccess runs;
+        private long written;
+        private final TLongArrayList runStarts = new TLongArrayList();
+        // offsets of the entry index for every depth inside the reverse key
+        private final int[] keyOffsets;
+        private final int keyBits;
+        private final int[] treePointers;
+        private final TIntArrayList leafNodes = new TIntArrayList();
+        private int leafPointer;
+        private int nextIndex;
+
+        public SortedConstructionIndex( int bufferSize, DataAccess runs )
+        {
+            keys = new long[bufferSize];
+            nodes = new int[bufferSize];
+            this.runs = runs;
+            keyOffsets = new int[entries.length];
+            int offset = 0;
+            for (int depth = 0; depth < entries.length; depth++)
+            {
+                keyOffsets[depth] = offset;
+                offset += shifts[depth];
+            }
+            keyBits = offset;
+            treePointers = new int[entries.length];
+        }
+
+        /**
+         * Concatenates the entry indices of all depths, the index of the root is the most
+         * significant. Sorting by this key results in the order in which store() visits the tree.
+         */
+        long createSortKey( long keyPart )
+        {
+            long sortKey = 0;
+            for (int depth = 0; depth < entries.length; depth++)
+            {
+                sortKey = (sortKey << shifts[depth]) | (bitmasks[depth] & (keyPart >>> keyOffsets[depth]));
+            }
+            return sortKey;
+        }
+
+        int getIndex( long sortKey, int depth )
+        {
+            return (int) (bitmasks[depth] & (sortKey >>> (keyBits - keyOffsets[depth] - shifts[depth])));
+        }
+
+        @Override
+        void addNode( int nodeId, long keyPart, long key )
+        {
+            keys[buffered] = createSortKey(keyPart);
+            nodes[buffered] = nodeId;
+            buffered++;
+            if (buffered == keys.length)
+                writeRun();
+        }
+
+        void writeRun()
+        {
+            if (buffered == 0)
+                return;
+
+            sort(0, buffered - 1);
+            runStarts.add(written);
+            runs.ensureCapacity((written + buffered) * ENTRY_BYTES);
+            for (int i = 0; i < buffered; i++)
+            {
+                if (i > 0 && keys[i] == keys[i - 1] && nodes[i] == nodes[i - 1])
+                    continue;
+
+                long pointer = written * ENTRY_BYTES;
+                runs.setInt(pointer, (int) (keys[i] >>> 32));
+                runs.setInt(pointer + 4, (int) keys[i]);
+                runs.setInt(pointer + 8, nodes[i]);
+                written++;
+            }
+            buffered = 0;
+        }
+
+        private boolean less( long key1, int node1, long key2, int node2 )
+        {
+            // the sort key can use all 64 bits => compare unsigned
+            if (key1 != key2)
+                return (key1 ^ Long.MIN_VALUE) < (key2 ^ Long.MIN_VALUE);
+            return node1 < node2;
+        }
+
+        private void sort( int from, int to )
+        {
+            while (from < to)
+            {
+                int mid = (from + to) >>> 1;
+                long pivotKey = keys[mid];
+                int pivotNode = nodes[mid];
+                int i = from, j = to;
+                while (i <= j)
+                {
+                    while (less(keys[i], nodes[i], pivotKey, pivotNode))
+                    {
+                        i++;
+                    }
+                    while (less(pivotKey, pivotNode, keys[j], nodes[j]))
+                    {
+                        j--;
+                    }
+                    if (i <= j)
+                    {
+                        long tmpKey = keys[i];
+                        keys[i] = keys[j];
+                        keys[j] = tmpKey;
+                        int tmpNode = nodes[i];
+                        nodes[i] = nodes[j];
+                        nodes[j] = tmpNode;
+                        i++;
+                        j--;
+                    }
+                }
+                // recurse into the smaller part to limit the stack depth
+                if (j - from < to - i)
+                {
+                    sort(from, j);
+                    from = i;
+                } else
+                {
+                    sort(i, to);
+                    to = j;
+                }
+            }
+        }
+
+        private long getKey( long entry )
+        {
+            long pointer = entry * ENTRY_BYTES;
+            return ((long) runs.getInt(pointer) << 32) | (runs.getInt(pointer + 4) & 0xFFFFFFFFL);
+        }
+
+        private int getNode( long entry )
+        {
+            return runs.getInt(entry * ENTRY_BYTES + 8);
+        }
+
+        /**
+         * Merges all runs and writes the tree to the dataAccess.
+         */
+        void store()
+        {
+            writeRun();
+            int runCount = runStarts.size();
+            runStarts.add(written);
+            // the current entry of every run, the heap contains the runs which are not yet finished
+            long[] current = new long[runCount];
+            int[] heap = new int[runCount];
+            int heapSize = 0;
+            for (int run = 0; run < runCount; run++)
+            {
+                current[run] = runStarts.get(run);
+                if (current[run] < runStarts.get(run + 1))
+                    heap[heapSize++] = run;
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--)
+            {
+                siftDown(heap, heapSize, i, current);
+            }
+
+            nextIndex = START_POINTER + entries[0];
+            treePointers[0] = START_POINTER;
+            dataAccess.ensureCapacity((long) (nextIndex + 1) * 4);
+            boolean first = true;
+            long lastKey = 0;
+            while (heapSize > 0)
+            {
+                int run = heap[0];
+                long key = getKey(current[run]);
+                int node = getNode(current[run]);
+                current[run]++;
+                if (current[run] == runStarts.get(run + 1))
+                {
+                    heapSize--;
+                    heap[0] = heap[heapSize];
+                }
+                siftDown(heap, heapSize, 0, current);
+
+                if (first || key != lastKey)
+                {
+                    storeLeaf();
+                    startLeaf(key, first ? 0 : firstDifferentDepth(lastKey, key));
+                    lastKey = key;
+                    first = false;
+                }
+                if (leafNodes.isEmpty() || leafNodes.get(leafNodes.size() - 1) != node)
+                    leafNodes.add(node);
+            }
+            storeLeaf();
+        }
+
+        private void siftDown( int[] heap, int heapSize, int index, long[] current )
+        {
+            while (true)
+            {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < heapSize && lessEntry(current[heap[left]], current[heap[smallest]]))
+                    smallest = left;
+                if (right < heapSize && lessEntry(current[heap[right]], current[heap[smallest]]))
+                    smallest = right;
+                if (smallest == index)
+                    return;
+
+                int tmp = heap[index];
+                heap[index] = heap[smallest];
+                heap[smallest] = tmp;
+                index = smallest;
+            }
+        }
+
+        private boolean lessEntry( long entry1, long entry2 )
+        {
+            return less(getKey(entry1), getNode(entry1), getKey(entry2), getNode(entry2));
+        }
+
+        private int firstDifferentDepth( long key1, long key2 )
+        {
+            for (int depth = 0; depth < entries.length; depth++)
+            {
+                if (getIndex(key1, depth) != getIndex(key2, depth))
+                    return depth;
+            }
+            throw new IllegalStateException("keys are identical " + key1);
+        }
+
+        /**
+         * Creates the tree entries below the specified depth which are necessary for the new leaf.
+         * The tree entries of smaller depths are shared with the previous leaf.
+         */
+        private void startLeaf( long key, int fromDepth )
+        {
+            for (int depth = fromDepth; depth < entries.length; depth++)
+            {
+                long refPointer = (long) (treePointers[depth] + getIndex(key, depth)) * 4;
+                dataAccess.setInt(refPointer, nextIndex);
+                if (depth + 1 < entries.length)
+                {
+                    treePointers[depth + 1] = nextIndex;
+                    nextIndex += entries[depth + 1];
+                    dataAccess.ensureCapacity((long) (nextIndex + 1) * 4);
+                }
+            }
+            leafPointer = nextIndex;
+        }
+
+        private void storeLeaf()
+        {
+            int len = leafNodes.size();
+            if (len == 0)
+                return;
+
+            size += len;
+            leafs++;
+            long refPointer = (long) leafPointer * 4;
+            nextIndex = leafPointer + 1;
+            dataAccess.ensureCapacity((long) (nextIndex + len + 1) * 4);
+            if (len == 1)
+            {
+                // less disc space for single entries
+                dataAccess.setInt(refPointer, -leafNodes.get(0) - 1);
+            } else
+            {
+                for (int index = 0; index < len; index++, nextIndex++)
+                {
+                    dataAccess.setInt((long) nextIndex * 4, leafNodes.get(index));
+                }
+                dataAccess.setInt(refPointer, nextIndex);
+            }
+            leafNodes.resetQuick();
+        }
+    }
+
     TIntArrayList getEntries()
     {
         return new TIntArrayList(entries);
@@ -698,7 +1059,13 @@ public class LocationIndexTree implements LocationIndex
     public final TIntHashSet findNetworkEntries( double queryLat, double queryLon, int maxIteration )
     {
         TIntHashSet foundEntries = new TIntHashSet();
+        findNetworkEntries(foundEntries, queryLat, queryLon, maxIteration, null);
+        return foundEntries;
+    }
 
+    final void findNetworkEntries( TIntHashSet foundEntries, double queryLat, double queryLon, int maxIteration,
+            TileCache cache )
+    {
         for (int iteration = 0; iteration < maxIteration; iteration++)
         {
             // find entries in border of searchbox
@@ -707,12 +1074,12 @@ public class LocationIndexTree implements LocationIndex
                 double subqueryLat = queryLat + yreg * deltaLat;
                 double subqueryLonA = queryLon - iteration * deltaLon;
                 double subqueryLonB = queryLon + iteration * deltaLon;
-                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA);
+                findNetworkEntriesSingleRegion(foundEntries, cache, subqueryLat, subqueryLonA);
 
                 // minor optimization for iteration == 0
                 if (iteration > 0)
                 {
-                    findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB);
+                    findNetworkEntriesSingleRegion(foundEntries, cache, subqueryLat, subqueryLonB);
                 }
             }
 
@@ -721,8 +1088,8 @@ public class LocationIndexTree implements LocationIndex
                 double subqueryLon = queryLon + xreg * deltaLon;
                 double subqueryLatA = queryLat - iteration * deltaLat;
                 double subqueryLatB = queryLat + iteration * deltaLat;
-                findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon);
-                findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon);
+                findNetworkEntriesSingleRegion(foundEntries, cache, subqueryLatA, subqueryLon);
+                findNetworkEntriesSingleRegion(foundEntries, cache, subqueryLatB, subqueryLon);
             }
 
             // see #232
@@ -743,7 +1110,6 @@ public class LocationIndexTree implements LocationIndex
                 }
             }
         }
-        return foundEntries;
     }
 
     final double calcMinDistance( double queryLat, double queryLon, TIntHashSet pointset )
@@ -770,6 +1136,47 @@ public class LocationIndexTree implements LocationIndex
         fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
     }
 
+    private void findNetworkEntriesSingleRegion( TIntHashSet storedNetworkEntryIds, TileCache cache,
+            double queryLat, double queryLon )
+    {
+        if (cache == null)
+            findNetworkEntriesSingleRegion(storedNetworkEntryIds, queryLat, queryLon);
+        else
+            storedNetworkEntryIds.addAll(cache.getIDs(createReverseKey(queryLat, queryLon)));
+    }
+
+    /**
+     * Remembers the node ids of recently visited tiles. Neighbouring query points mostly look into
+     * the same tiles.
+     */
+    class TileCache
+    {
+        private final TLongObjectHashMap<int[]> tiles = new TLongObjectHashMap<int[]>();
+        private final TIntHashSet tmpSet = new TIntHashSet();
+        private final int maxTiles;
+
+        public TileCache( int maxTiles )
+        {
+            this.maxTiles = maxTiles;
+        }
+
+        int[] getIDs( long keyPart )
+        {
+            int[] ids = tiles.get(keyPart);
+            if (ids == null)
+            {
+                if (tiles.size() >= maxTiles)
+                    tiles.clear();
+
+                tmpSet.clear();
+                fillIDs(keyPart, START_POINTER, tmpSet, 0);
+                ids = tmpSet.toArray();
+                tiles.put(keyPart, ids);
+            }
+            return ids;
+        }
+    }
+
     @Override
     public QueryResult findClosest( final double queryLat, final double queryLon, final EdgeFilter edgeFilter )
     {
@@ -777,14 +1184,28 @@ public class LocationIndexTree implements LocationIndex
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
 
         final TIntHashSet storedNetworkEntryIds = findNetworkEntries(queryLat, queryLon, maxRegionSearch);
+        if (storedNetworkEntryIds.isEmpty())
+            return new QueryResult(queryLat, queryLon);
+
+        // clone storedIds to avoid interference with forEach
+        GHBitSet checkBitset = new GHTBitSet(new TIntHashSet(storedNetworkEntryIds));
+        return findClosest(queryLat, queryLon, edgeFilter, storedNetworkEntryIds, checkBitset,
+                graph.createEdgeExplorer(getEdgeFilter()));
+    }
+
+    /**
+     * Finds the closest edge starting from the specified network entries.
+     * <p/>
+     * @param checkBitset has to contain the network entries
+     */
+    final QueryResult findClosest( final double queryLat, final double queryLon, final EdgeFilter edgeFilter,
+            TIntHashSet storedNetworkEntryIds, final GHBitSet checkBitset, final EdgeExplorer explorer )
+    {
         final QueryResult closestMatch = new QueryResult(queryLat, queryLon);
         if (storedNetworkEntryIds.isEmpty())
             return closestMatch;
 
-        // clone storedIds to avoid interference with forEach
-        final GHBitSet checkBitset = new GHTBitSet(new TIntHashSet(storedNetworkEntryIds));
         // find nodes from the network entries which are close to 'point'
-        final EdgeExplorer explorer = graph.createEdgeExplorer(getEdgeFilter());
         storedNetworkEntryIds.forEach(new TIntProcedure()
         {
             @Override
@@ -827,6 +1248,136 @@ public class LocationIndexTree implements LocationIndex
         return closestMatch;
     }
 
+    /**
+     * Snaps many points at once. The points are processed in the order of their spatial key so that
+     * consecutive lookups hit the same tiles, which are then read only once. The search state is
+     * reused for all points of one thread.
+     * <p/>
+     * @param edgeFilter is used from all threads concurrently
+     * @param threads the number of threads, every thread gets a spatially connected part of the
+     * points
+     * @return the result for every point in the order of the specified arrays, not null but invalid
+     * if nothing was found
+     */
+    public QueryResult[] findClosest( final double[] lats, final double[] lons, final EdgeFilter edgeFilter,
+            int threads )
+    {
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length "
+                    + lats.length + " vs. " + lons.length);
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        final QueryResult[] results = new QueryResult[lats.length];
+        final int[] order = sortBySpatialKey(lats, lons);
+        threads = Math.max(1, Math.min(threads, order.length / 1000));
+        if (threads == 1)
+        {
+            new BulkLookup(edgeFilter).findClosest(lats, lons, order, 0, order.length, results);
+            return results;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(threads);
+        int chunk = (order.length + threads - 1) / threads;
+        for (int t = 0; t < threads; t++)
+        {
+            final int from = t * chunk;
+            final int to = Math.min(order.length, from + chunk);
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                {
+                    new BulkLookup(edgeFilter).findClosest(lats, lons, order, from, to, results);
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            for (Future<Object> future : executorService.invokeAll(tasks))
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bulk lookup was interrupted", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new RuntimeException("Bulk lookup failed", ex.getCause());
+        } finally
+        {
+            executorService.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * @return the indices of the specified points sorted by their spatial key
+     */
+    int[] sortBySpatialKey( double[] lats, double[] lons )
+    {
+        final long[] keys = new long[lats.length];
+        Integer[] tmpOrder = new Integer[lats.length];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = keyAlgo.encode(lats[i], lons[i]);
+            tmpOrder[i] = i;
+        }
+        Arrays.sort(tmpOrder, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer o1, Integer o2 )
+            {
+                // the key can use all 64 bits => compare unsigned
+                long key1 = keys[o1] ^ Long.MIN_VALUE;
+                long key2 = keys[o2] ^ Long.MIN_VALUE;
+                return key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+            }
+        });
+        int[] order = new int[tmpOrder.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = tmpOrder[i];
+        }
+        return order;
+    }
+
+    /**
+     * The state of findClosest which is reused for all points of one thread.
+     */
+    class BulkLookup
+    {
+        private final EdgeFilter edgeFilter;
+        private final EdgeExplorer explorer = graph.createEdgeExplorer(getEdgeFilter());
+        private final TileCache cache = new TileCache(10000);
+        private final TIntHashSet networkEntries = new TIntHashSet();
+        private final TIntHashSet visited = new TIntHashSet();
+        private final GHBitSet checkBitset = new GHTBitSet(visited);
+
+        public BulkLookup( EdgeFilter edgeFilter )
+        {
+            this.edgeFilter = edgeFilter;
+        }
+
+        void findClosest( double[] lats, double[] lons, int[] order, int from, int to, QueryResult[] results )
+        {
+            for (int i = from; i < to; i++)
+            {
+                int index = order[i];
+                networkEntries.clear();
+                findNetworkEntries(networkEntries, lats[index], lons[index], maxRegionSearch, cache);
+                visited.clear();
+                visited.addAll(networkEntries);
+                results[index] = LocationIndexTree.this.findClosest(lats[index], lons[index], edgeFilter,
+                        networkEntries, checkBitset, explorer);
+            }
+        }
+    }
+
     /**
      * Make it possible to collect nearby location also for other purposes.
      */
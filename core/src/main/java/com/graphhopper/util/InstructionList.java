@@ -72,10 +72,7 @@ public class InstructionList implements Iterable<Instruction>
             instrList.add(instrJson);
 
             InstructionAnnotation ia = instruction.getAnnotation();
-            String str = instruction.getTurnDescription(tr);
-            if (Helper.isEmpty(str))
-                str = ia.getMessage();
-            instrJson.put("text", Helper.firstBig(str));
+            instrJson.put("text", getText(instruction));
             if (!ia.isEmpty())
             {
                 instrJson.put("annotationText", ia.getMessage());
@@ -100,6 +97,18 @@ public class InstructionList implements Iterable<Instruction>
         return instrList;
     }
 
+    /**
+     * @return the translated turn description of the specified instruction or its annotation if
+     * there is no description
+     */
+    public String getText( Instruction instruction )
+    {
+        String str = instruction.getTurnDescription(tr);
+        if (Helper.isEmpty(str))
+            str = instruction.getAnnotation().getMessage();
+        return Helper.firstBig(str);
+    }
+
     public boolean isEmpty()
     {
         return instructions.isEmpty();
@@ -0,0 +1,85 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread local object which can be released for all threads at once, e.g. when the graph the
+ * reused objects point to is closed. The threads themselves then only keep a reference to an
+ * empty holder. The holders are registered with weak keys, so a terminated thread does not keep
+ * its object alive. The object must therefor not reference its thread.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ReleasableThreadLocal<T>
+{
+    private final ThreadLocal<AtomicReference<T>> local = new ThreadLocal<AtomicReference<T>>();
+    private final Map<Thread, AtomicReference<T>> holders = new WeakHashMap<Thread, AtomicReference<T>>();
+
+    /**
+     * @return the object of the current thread or null if not set or released
+     */
+    public T get()
+    {
+        AtomicReference<T> holder = local.get();
+        return holder == null ? null : holder.get();
+    }
+
+    public void set( T value )
+    {
+        AtomicReference<T> holder = local.get();
+        if (holder == null)
+        {
+            holder = new AtomicReference<T>();
+            local.set(holder);
+            synchronized (holders)
+            {
+                holders.put(Thread.currentThread(), holder);
+            }
+        }
+        holder.set(value);
+    }
+
+    /**
+     * Releases the objects of all threads.
+     */
+    public void clear()
+    {
+        synchronized (holders)
+        {
+            for (AtomicReference<T> holder : holders.values())
+            {
+                holder.set(null);
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads which hold an object or an empty holder
+     */
+    int getHolderCount()
+    {
+        synchronized (holders)
+        {
+            return holders.size();
+        }
+    }
+}
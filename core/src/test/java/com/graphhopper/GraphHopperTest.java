@@ -19,8 +19,17 @@ package com.graphhopper;
 
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Isochrone;
+import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FastestWeighting;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.ShortestWeighting;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.SpeedOverlay;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.Helper;
@@ -28,6 +37,9 @@ import com.graphhopper.util.Instruction;
 import com.graphhopper.util.shapes.GHPoint;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -126,6 +138,257 @@ public class GraphHopperTest
         gh.close();
     }
 
+    @Test
+    public void testLoadMemoryMappedReadOnly()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        gh.close();
+
+        gh = new GraphHopper().setMemoryMappedReadOnly().setPreload(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(gh.load(ghLoc));
+        assertFalse(gh.isAllowWrites());
+        DAType type = gh.getGraph().getDirectory().getDefaultType();
+        assertTrue(type.isMMap());
+        assertFalse(type.isAllowWrites());
+        assertEquals(type, DAType.fromString(type.toString()));
+        GHResponse rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+        gh.close();
+    }
+
+    @Test
+    public void testCustomizableCH()
+    {
+        GraphHopper noCH = new GraphHopper().setStoreOnFlush(false).
+                setCHEnable(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc + "_noch").
+                setOSMFile(testOsm);
+        noCH.importOrLoad();
+        GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+        GHResponse fastest = noCH.route(req);
+        GHResponse shortest = noCH.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setWeighting("shortest"));
+        noCH.close();
+        Helper.removeDir(new File(ghLoc + "_noch"));
+
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setCHCustomizable(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        // the shortcuts can contain the snapped edges and so the distance of the virtual edges can differ slightly
+        GHResponse rsp = gh.route(req);
+        assertFalse(rsp.hasErrors());
+        assertEquals(fastest.getDistance(), rsp.getDistance(), 1);
+
+        gh.customizeCH("CAR", "fastest", new ShortestWeighting());
+        rsp = gh.route(req);
+        assertFalse(rsp.hasErrors());
+        assertEquals(shortest.getDistance(), rsp.getDistance(), 1);
+        gh.close();
+
+        gh = new GraphHopper().setStoreOnFlush(true).
+                setCHCustomizable(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(gh.load(ghLoc));
+        gh.customizeCH("CAR", "fastest", new FastestWeighting(gh.getEncodingManager().getEncoder("CAR")));
+        assertEquals(fastest.getDistance(), gh.route(req).getDistance(), 1);
+        gh.close();
+
+        // without customizable CH the same shortcuts can be used but not changed
+        gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(gh.load(ghLoc));
+        assertFalse(gh.route(req).hasErrors());
+        try
+        {
+            gh.customizeCH("CAR", "fastest", new ShortestWeighting());
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+        gh.close();
+    }
+
+    @Test
+    public void testSpeedOverlay()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setCHEnable(false).
+                setSpeedOverlayEnabled(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setWeighting("traffic");
+        GHResponse rsp = gh.route(req);
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+
+        SpeedOverlay overlay = gh.getSpeedOverlay();
+        for (int edge = 0; edge < overlay.getEdgeCount(); edge++)
+        {
+            overlay.setSpeed(edge, false, 0);
+            overlay.setSpeed(edge, true, 0);
+        }
+        assertTrue(gh.route(req).hasErrors());
+
+        overlay.clear();
+        assertFalse(gh.route(req).hasErrors());
+        gh.close();
+    }
+
+    @Test
+    public void testCompressedGeometry()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setCompressedGeometry(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+        GHResponse rsp = gh.route(req);
+        assertFalse(rsp.hasErrors());
+        gh.close();
+
+        // the format is read from the stored graph
+        gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(gh.load(ghLoc));
+        assertTrue(((GraphHopperStorage) gh.getGraph()).isCompressedGeometry());
+        GHResponse loadedRsp = gh.route(req);
+        assertEquals(rsp.getPoints().toString(), loadedRsp.getPoints().toString());
+        assertEquals(rsp.getDistance(), loadedRsp.getDistance(), 1e-3);
+        gh.close();
+    }
+
+    @Test
+    public void testReuseQueryGraph()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setReuseQueryGraph(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+        GHResponse rsp = gh.route(req);
+        assertFalse(rsp.hasErrors());
+
+        // the second request on the same thread resets the QueryGraph of the first one
+        GHResponse otherRsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2493, 9.4318));
+        assertFalse(otherRsp.hasErrors());
+        GHResponse sameRsp = gh.route(req);
+        assertEquals(rsp.getPoints().toString(), sameRsp.getPoints().toString());
+        assertEquals(rsp.getDistance(), sameRsp.getDistance(), 1e-3);
+
+        // close releases the instance of every thread
+        QueryGraph queryGraph = gh.createQueryGraph(gh.getGraph(), 2);
+        assertSame(queryGraph, gh.createQueryGraph(gh.getGraph(), 2));
+        gh.close();
+        assertNotSame(queryGraph, gh.createQueryGraph(gh.getGraph(), 2));
+    }
+
+    @Test
+    public void testRouteCache()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setRouteCache(new RouteCache(Helper.MB, -1)).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        RouteCache cache = gh.getRouteCache();
+        GHResponse rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+
+        // slightly moved points snap to the same edges
+        GHResponse cachedRsp = gh.route(new GHRequest(51.2492153, 9.4317167, 51.2, 9.4));
+        assertSame(rsp, cachedRsp);
+        assertEquals(1, cache.getHits());
+
+        GHRequest otherReq = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+        otherReq.getHints().put("instructions", false);
+        assertNotSame(rsp, gh.route(otherReq));
+        assertEquals(2, cache.getSize());
+
+        gh.close();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testSharedEdgeAttributes()
+    {
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setCHEnable(false).
+                setSharedEdgeAttributes(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        GraphHopperStorage graph = (GraphHopperStorage) gh.getGraph();
+        assertTrue(graph.isSharedEdgeAttributes());
+        GHResponse rsp = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+        gh.close();
+    }
+
+    @Test
+    public void testHilbertRenumbering()
+    {
+        GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+        GraphHopper gh = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        GHResponse expected = gh.route(req);
+        gh.close();
+        Helper.removeDir(new File(ghLoc));
+
+        gh = new GraphHopper().setStoreOnFlush(true).
+                setHilbertRenumbering(true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        gh.importOrLoad();
+        GHResponse rsp = gh.route(req);
+        assertFalse(rsp.hasErrors());
+        assertEquals(expected.getDistance(), rsp.getDistance(), 1e-3);
+        assertEquals(expected.getPoints().getSize(), rsp.getPoints().getSize());
+        gh.close();
+        Helper.removeDir(new File(ghLoc));
+
+        // incompatible settings fail before the import
+        for (GraphHopper tmp : Arrays.asList(new GraphHopper().setCHEnable(false).setLMWeighting("fastest").
+                setEncodingManager(new EncodingManager("CAR")),
+                new GraphHopper().setEncodingManager(new EncodingManager("CAR|turnCosts=true")),
+                new GraphHopper().setEncodingManager(new EncodingManager("CAR,FOOT"))))
+        {
+            tmp.setHilbertRenumbering(true).setGraphHopperLocation(ghLoc).setOSMFile(testOsm);
+            try
+            {
+                tmp.importOrLoad();
+                assertTrue(false);
+            } catch (IllegalStateException ex)
+            {
+            }
+            assertFalse(new File(ghLoc).exists());
+        }
+    }
+
     @Test
     public void testAllowMultipleReadingInstances()
     {
@@ -307,6 +570,319 @@ public class GraphHopperTest
         assertEquals(3, rsp.getPoints().getSize());
     }
 
+    @Test
+    public void testFootAndCarWithCHLayers()
+    {
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("fastest,shortest").
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm3);
+        instance.importOrLoad();
+        assertFalse(instance.getGraph() instanceof LevelGraph);
+        assertEquals(5, instance.getGraph().getNodes());
+        checkFootAndCar(instance);
+
+        GHRequest req = new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.FOOT);
+        req.getHints().put("weighting", "shortest");
+        GHResponse rsp = instance.route(req);
+        assertFalse(rsp.hasErrors());
+        assertEquals(2, rsp.getPoints().getSize());
+
+        req.getHints().put("weighting", "unknown");
+        assertTrue(instance.route(req).hasErrors());
+        instance.close();
+
+        // load the prepared layers
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setCHWeighting("fastest,shortest");
+        assertTrue(instance.load(ghLoc));
+        checkFootAndCar(instance);
+    }
+
+    private void checkFootAndCar( GraphHopper hopper )
+    {
+        // A to D for car, for foot a point on edge A-B
+        GHResponse rsp = hopper.route(new GHRequest(11.1, 50, 11.3, 51).setVehicle(EncodingManager.CAR));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+        rsp = hopper.route(new GHRequest(11.1, 50, 11.3, 51).setVehicle(EncodingManager.FOOT));
+        assertFalse(rsp.hasErrors());
+        assertEquals(2, rsp.getPoints().getSize());
+        assertEquals(11.680, rsp.getPoints().getLatitude(1), 1e-3);
+
+        // A to E only for foot, A D E for car
+        rsp = hopper.route(new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.FOOT));
+        assertFalse(rsp.hasErrors());
+        assertEquals(2, rsp.getPoints().size());
+        rsp = hopper.route(new GHRequest(11.1, 50, 10, 51).setVehicle(EncodingManager.CAR));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+    }
+
+    @Test
+    public void testMatrix()
+    {
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.importOrLoad();
+        checkMatrix(instance);
+        instance.close();
+
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setCHEnable(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.importOrLoad();
+        checkMatrix(instance);
+    }
+
+    @Test
+    public void testTurnCostsWithCH()
+    {
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR|turnCosts=true")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile("files/moscow.osm.gz");
+        instance.importOrLoad();
+        checkTurnCosts(instance);
+        instance.close();
+
+        // the original edges of the shortcuts are recalculated for a loaded graph
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setEncodingManager(new EncodingManager("CAR|turnCosts=true"));
+        assertTrue(instance.load(ghLoc));
+        checkTurnCosts(instance);
+    }
+
+    private void checkTurnCosts( GraphHopper hopper )
+    {
+        // without the turn restrictions both routes would be less than 500m
+        GHResponse rsp = hopper.route(new GHRequest(55.813357, 37.5958585, 55.811042, 37.594689));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(1044, rsp.getDistance(), 1);
+
+        rsp = hopper.route(new GHRequest(55.813159, 37.593884, 55.811278, 37.594217));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(1048, rsp.getDistance(), 1);
+    }
+
+    @Test
+    public void testIsochrone()
+    {
+        String andorra = "files/andorra.osm.pbf";
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setCHEnable(false).
+                setReuseAlgorithms(true).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(andorra);
+        instance.importOrLoad();
+        GHIsochroneResponse rsp = checkIsochrone(instance);
+        // the reused search of the same thread
+        assertEquals(rsp.getCells().get(0).getSize(), checkIsochrone(instance).getCells().get(0).getSize());
+        assertTrue(instance.calcIsochrone(new GHIsochroneRequest(42.510071, 1.548128).setVehicle("car").setBuckets(0)).hasErrors());
+
+        // close releases the search of every thread
+        FlagEncoder car = instance.getEncodingManager().getEncoder("CAR");
+        Isochrone isochrone = instance.createIsochrone(instance.getGraph(), car, new FastestWeighting(car));
+        assertSame(isochrone, instance.createIsochrone(instance.getGraph(), car, new FastestWeighting(car)));
+        instance.close();
+        assertNotSame(isochrone, instance.createIsochrone(instance.getGraph(), car, new FastestWeighting(car)));
+
+        // CH layers keep the base graph
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR,FOOT")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(andorra);
+        instance.importOrLoad();
+        GHIsochroneResponse layerRsp = checkIsochrone(instance);
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals(rsp.getCells().get(i).getSize(), layerRsp.getCells().get(i).getSize());
+        }
+        instance.close();
+
+        // PHAST if the shortcuts are stored in the base graph
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(andorra);
+        instance.importOrLoad();
+        GHIsochroneResponse phastRsp = checkIsochrone(instance);
+        assertTrue(phastRsp.getDebugInfo(), phastRsp.getDebugInfo().contains("phast"));
+        rsp = instance.calcIsochrone(new GHIsochroneRequest(42.510071, 1.548128).setVehicle("car").setWeighting("shortest"));
+        assertTrue(rsp.getErrors().toString(), rsp.hasErrors());
+        instance.close();
+
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setCHEnable(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(andorra);
+        instance.importOrLoad();
+        rsp = checkIsochrone(instance);
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals(rsp.getCells().get(i).getSize(), phastRsp.getCells().get(i).getSize());
+        }
+    }
+
+    @Test
+    public void testAlternativeRoute()
+    {
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setCHEnable(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile("files/andorra.osm.pbf");
+        instance.importOrLoad();
+        GHRequest request = new GHRequest(42.56819, 1.603231, 42.571034, 1.520662).setAlgorithm(AlgorithmOptions.ALT_ROUTE);
+        GHResponse rsp = instance.route(request);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        GHResponse best = instance.route(new GHRequest(42.56819, 1.603231, 42.571034, 1.520662));
+        assertEquals(best.getDistance(), rsp.getDistance(), 1e-3);
+        assertEquals(1, rsp.getAlternatives().size());
+        GHResponse alternative = rsp.getAlternatives().get(0);
+        assertTrue(alternative.getMillis() > rsp.getMillis());
+        assertTrue(alternative.getMillis() < 1.4 * rsp.getMillis());
+        assertTrue(alternative.getPoints().getSize() > 2);
+        assertTrue(alternative.getInstructions().getSize() > 1);
+
+        request.getHints().put(AlgorithmOptions.ALT_ROUTE + ".max_paths", 1);
+        assertEquals(0, instance.route(request).getAlternatives().size());
+
+        rsp = instance.route(new GHRequest(Arrays.asList(new GHPoint(42.56819, 1.603231), new GHPoint(42.57, 1.55),
+                new GHPoint(42.571034, 1.520662))).setAlgorithm(AlgorithmOptions.ALT_ROUTE));
+        assertTrue(rsp.hasErrors());
+        instance.close();
+
+        // shortcuts in the base graph
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile("files/andorra.osm.pbf");
+        instance.importOrLoad();
+        rsp = instance.route(new GHRequest(42.56819, 1.603231, 42.571034, 1.520662).setAlgorithm(AlgorithmOptions.ALT_ROUTE));
+        assertTrue(rsp.getErrors().get(0) instanceof UnsupportedOperationException);
+    }
+
+    @Test
+    public void testLandmarks()
+    {
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setCHEnable(false).
+                setLMWeighting("fastest").
+                setLMThreads(2).
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile("files/andorra.osm.pbf");
+        instance.importOrLoad();
+        checkLandmarks(instance);
+        instance.close();
+
+        // load the stored landmarks
+        instance = new GraphHopper().setStoreOnFlush(true).
+                setCHEnable(false).
+                setLMWeighting("fastest").
+                setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(instance.load(ghLoc));
+        checkLandmarks(instance);
+        instance.close();
+
+        // the landmarks need the complete base graph
+        instance = new GraphHopper().setStoreOnFlush(false).
+                setLMWeighting("fastest").
+                setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc + "2").
+                setOSMFile("files/andorra.osm.pbf");
+        try
+        {
+            instance.importOrLoad();
+            fail();
+        } catch (IllegalStateException ex)
+        {
+        }
+        Helper.removeDir(new File(ghLoc + "2"));
+    }
+
+    private void checkLandmarks( GraphHopper hopper )
+    {
+        GHPoint[] points = new GHPoint[]
+        {
+            new GHPoint(42.56819, 1.603231), new GHPoint(42.571034, 1.520662), new GHPoint(42.510071, 1.548128),
+            new GHPoint(42.554851, 1.536198), new GHPoint(42.48, 1.48)
+        };
+        for (GHPoint from : points)
+        {
+            for (GHPoint to : points)
+            {
+                GHResponse expected = hopper.route(new GHRequest(from, to).setAlgorithm(AlgorithmOptions.DIJKSTRA_BI));
+                assertFalse(expected.getErrors().toString(), expected.hasErrors());
+                // astarbi with the beeline as the shortest weighting is not prepared
+                GHRequest beelineReq = new GHRequest(from, to).setAlgorithm(AlgorithmOptions.ASTAR_BI);
+                beelineReq.getHints().put("lm.weighting", "shortest");
+                GHResponse beeline = hopper.route(beelineReq);
+                long beelineVisited = hopper.getVisitedSum();
+
+                GHResponse rsp = hopper.route(new GHRequest(from, to));
+                assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                assertTrue(rsp.getDebugInfo(), rsp.getDebugInfo().contains(AlgorithmOptions.ASTAR_BI));
+                assertEquals(from + "->" + to, expected.getMillis(), rsp.getMillis(), 10);
+                assertEquals(from + "->" + to, expected.getDistance(), rsp.getDistance(), 1);
+                assertEquals(beeline.getMillis(), rsp.getMillis(), 10);
+                if (expected.getDistance() > 3000)
+                    assertTrue(from + "->" + to + " " + hopper.getVisitedSum() + " vs. " + beelineVisited,
+                            hopper.getVisitedSum() < beelineVisited);
+            }
+        }
+    }
+
+    private GHIsochroneResponse checkIsochrone( GraphHopper hopper )
+    {
+        GHIsochroneResponse rsp = hopper.calcIsochrone(new GHIsochroneRequest(42.510071, 1.548128).
+                setVehicle("car").setLimit(120).setBuckets(2).setCellSize(100));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(2, rsp.getCells().size());
+        assertEquals(2, rsp.getPolygons().size());
+        assertTrue(rsp.getCells().get(0).getSize() > 0);
+        assertTrue(rsp.getCells().get(1).getSize() > rsp.getCells().get(0).getSize());
+        // 100m are roughly 0.0009 degrees
+        assertEquals(0.0009, rsp.getCellSizeLat(), 1e-4);
+        assertTrue(rsp.getCellSizeLon() > rsp.getCellSizeLat());
+        assertTrue(rsp.getPolygons().get(0).getSize() >= 4);
+        return rsp;
+    }
+
+    private void checkMatrix( GraphHopper hopper )
+    {
+        List<GHPoint> points = Arrays.asList(new GHPoint(51.2492152, 9.4317166), new GHPoint(51.2, 9.4),
+                new GHPoint(51.2492152, 9.4317166), new GHPoint(51.25, 9.43));
+        GHMatrixResponse rsp = hopper.calcMatrix(new GHMatrixRequest(points));
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(4, rsp.getMatrix().getRows());
+        assertEquals(4, rsp.getMatrix().getColumns());
+        for (int from = 0; from < points.size(); from++)
+        {
+            for (int to = 0; to < points.size(); to++)
+            {
+                GHResponse routeRsp = hopper.route(new GHRequest(points.get(from), points.get(to)));
+                assertFalse(routeRsp.hasErrors());
+                assertTrue(rsp.isFound(from, to));
+                assertEquals(from + "->" + to, routeRsp.getDistance(), rsp.getDistance(from, to), 1e-3);
+                assertEquals(from + "->" + to, routeRsp.getMillis(), rsp.getMillis(from, to));
+            }
+        }
+        assertEquals(0, rsp.getDistance(0, 2), 1e-3);
+
+        rsp = hopper.calcMatrix(new GHMatrixRequest(points, new ArrayList<GHPoint>()));
+        assertTrue(rsp.hasErrors());
+    }
+
     @Test
     public void testFailsForWrongConfig() throws IOException
     {
@@ -0,0 +1,178 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class RouteCacheTest
+{
+    private GraphHopperStorage graph;
+    private EdgeIteratorState edge01, edge12;
+    private long time;
+
+    @Before
+    public void setUp()
+    {
+        graph = new GraphHopperStorage(new RAMDirectory(), new EncodingManager("CAR"), false);
+        graph.create(100);
+        edge01 = graph.edge(0, 1, 10, true);
+        edge12 = graph.edge(1, 2, 10, true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        graph.close();
+    }
+
+    QueryResult createResult( double lat, double lon, EdgeIteratorState edge, QueryResult.Position pos )
+    {
+        QueryResult res = new QueryResult(lat, lon);
+        res.setClosestEdge(edge);
+        res.setClosestNode(edge.getBaseNode());
+        res.setSnappedPosition(pos);
+        return res;
+    }
+
+    GHResponse createResponse( int points )
+    {
+        GHResponse rsp = new GHResponse();
+        rsp.setPoints(Helper.createPointList(new double[points * 2]));
+        return rsp.setDistance(points);
+    }
+
+    RouteCache createCache( long maxBytes, long ttl )
+    {
+        return new RouteCache(maxBytes, ttl)
+        {
+            @Override
+            protected long now()
+            {
+                return time;
+            }
+        };
+    }
+
+    @Test
+    public void testKey()
+    {
+        RouteCache cache = createCache(Helper.MB, -1);
+        GHRequest req = new GHRequest(1, 1, 2, 2).setWeighting("fastest");
+        List<QueryResult> list = Arrays.asList(createResult(1, 1, edge01, QueryResult.Position.EDGE),
+                createResult(2, 2, edge12, QueryResult.Position.EDGE));
+        String key = cache.createKey(req, "car", list);
+
+        // nearby coordinates snapped to the same edges share the key
+        GHRequest otherReq = new GHRequest(1.001, 1, 2, 2.001).setWeighting("fastest");
+        List<QueryResult> otherList = Arrays.asList(createResult(1.001, 1, edge01, QueryResult.Position.EDGE),
+                createResult(2, 2.001, edge12, QueryResult.Position.EDGE));
+        assertEquals(key, cache.createKey(otherReq, "car", otherList));
+
+        // output only hints are ignored, others not
+        otherReq.getHints().put("callback", "abc");
+        assertEquals(key, cache.createKey(otherReq, "car", otherList));
+        otherReq.getHints().put("instructions", false);
+        assertNotEquals(key, cache.createKey(otherReq, "car", otherList));
+        assertNotEquals(key, cache.createKey(req, "foot", list));
+        assertNotEquals(key, cache.createKey(req, "car", Arrays.asList(list.get(1), list.get(0))));
+        assertNotEquals(key, cache.createKey(new GHRequest(1, 1, 2, 2).setWeighting("shortest"), "car", list));
+
+        // the order on the same edge matters
+        assertNull(cache.createKey(req, "car", Arrays.asList(createResult(1, 1, edge01, QueryResult.Position.EDGE),
+                createResult(1, 1.1, edge01, QueryResult.Position.EDGE))));
+        // but not for tower nodes
+        assertNotNull(cache.createKey(req, "car", Arrays.asList(createResult(1, 1, edge01, QueryResult.Position.TOWER),
+                createResult(1, 1.1, edge01, QueryResult.Position.EDGE))));
+    }
+
+    @Test
+    public void testGetAndPut()
+    {
+        RouteCache cache = createCache(Helper.MB, -1);
+        assertNull(cache.get("a"));
+        GHResponse rsp = createResponse(10);
+        cache.put("a", rsp);
+        assertSame(rsp, cache.get("a"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.getBytes() > 0);
+
+        cache.put("b", new GHResponse().addError(new IllegalArgumentException("not found")));
+        assertNull(cache.get("b"));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get("a"));
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed()
+    {
+        RouteCache cache = createCache(10000, -1);
+        long bytes = cache.estimateBytes(createResponse(100));
+        assertTrue(3 * bytes > 10000);
+        assertTrue(2 * bytes <= 10000);
+
+        cache.put("a", createResponse(100));
+        cache.put("b", createResponse(100));
+        assertNotNull(cache.get("a"));
+        cache.put("c", createResponse(100));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * bytes, cache.getBytes());
+
+        // too big for the cache
+        cache.put("d", createResponse(10000));
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testTimeToLive()
+    {
+        RouteCache cache = createCache(Helper.MB, 1000);
+        time = 0;
+        cache.put("a", createResponse(10));
+        time = 1000;
+        assertNotNull(cache.get("a"));
+        time = 1001;
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+        assertEquals(1, cache.getEvictions());
+    }
+}
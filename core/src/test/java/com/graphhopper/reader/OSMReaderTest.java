@@ -577,6 +577,44 @@ public class OSMReaderTest
         assertTrue(bikeEncoder.isTurnRestricted(costsFlags));
     }
 
+    @Test
+    public void testParallelWayProcessing()
+    {
+        for (String file : Arrays.asList(file1, file2, fileBarriers, fileTurnRestrictions))
+        {
+            GraphStorage expected = new GraphHopperTest(file, true).importOrLoad().getGraph();
+            GraphStorage graph = new GraphHopperTest(file, true)
+            {
+                @Override
+                protected DataReader createReader( GraphStorage tmpGraph )
+                {
+                    return initOSMReader(new OSMReader(tmpGraph).setWayThreads(3).setWayBatchSize(2));
+                }
+            }.importOrLoad().getGraph();
+
+            // edges are still created in the original order
+            assertEquals(file, expected.getNodes(), graph.getNodes());
+            assertEquals(file, expected.getAllEdges().getCount(), graph.getAllEdges().getCount());
+            for (int node = 0; node < graph.getNodes(); node++)
+            {
+                assertEquals(expected.getNodeAccess().getLatitude(node), graph.getNodeAccess().getLatitude(node), 1e-6);
+                assertEquals(expected.getNodeAccess().getLongitude(node), graph.getNodeAccess().getLongitude(node), 1e-6);
+            }
+            AllEdgesIterator expectedIter = expected.getAllEdges();
+            AllEdgesIterator iter = graph.getAllEdges();
+            while (expectedIter.next())
+            {
+                assertTrue(iter.next());
+                assertEquals(expectedIter.getBaseNode(), iter.getBaseNode());
+                assertEquals(expectedIter.getAdjNode(), iter.getAdjNode());
+                assertEquals(expectedIter.getFlags(), iter.getFlags());
+                assertEquals(expectedIter.getDistance(), iter.getDistance(), 1e-6);
+                assertEquals(expectedIter.getName(), iter.getName());
+                assertEquals(expectedIter.fetchWayGeometry(3), iter.fetchWayGeometry(3));
+            }
+        }
+    }
+
     @Test
     public void testEstimatedCenter()
     {
@@ -0,0 +1,138 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.Helper;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class AlternativeRouteTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("CAR");
+    private final Weighting weighting = new ShortestWeighting();
+    private final TraversalMode tMode = TraversalMode.NODE_BASED;
+
+    //   5 -- 6 -- 7
+    //  /           \
+    // 0 -- 1 -- 2 -- 3 -- 4
+    //  \             \   /
+    //   8 --- 9 -\    10
+    //             \-------4
+    Graph createGraph()
+    {
+        Graph graph = new GraphBuilder(encodingManager).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < 11; i++)
+        {
+            // close to each other to keep the beeline approximation below the distances
+            na.setNode(i, 0.00001 * i, 0);
+        }
+        // the best path with 4000m
+        graph.edge(0, 1, 1000, true);
+        graph.edge(1, 2, 1000, true);
+        graph.edge(2, 3, 1000, true);
+        graph.edge(3, 4, 1000, true);
+        // an alternative with 4800m
+        graph.edge(0, 5, 1200, true);
+        graph.edge(5, 6, 1200, true);
+        graph.edge(6, 7, 1200, true);
+        graph.edge(7, 4, 1200, true);
+        // too long
+        graph.edge(0, 8, 3000, true);
+        graph.edge(8, 9, 3000, true);
+        graph.edge(9, 4, 3000, true);
+        // shares too much with the best path
+        graph.edge(3, 10, 600, true);
+        graph.edge(10, 4, 600, true);
+        return graph;
+    }
+
+    @Test
+    public void testCalcPaths()
+    {
+        for (String algo : new String[]
+        {
+            AlgorithmOptions.DIJKSTRA_BI, AlgorithmOptions.ASTAR_BI
+        })
+        {
+            List<Path> paths = new AlternativeRoute(createGraph(), carEncoder, weighting, tMode, algo).calcPaths(0, 4);
+            assertEquals(algo, 2, paths.size());
+            assertEquals(Helper.createTList(0, 1, 2, 3, 4), paths.get(0).calcNodes());
+            assertEquals(4000, paths.get(0).getDistance(), 1e-3);
+            assertEquals(Helper.createTList(0, 5, 6, 7, 4), paths.get(1).calcNodes());
+            assertEquals(4800, paths.get(1).getDistance(), 1e-3);
+            assertEquals(4800, paths.get(1).getWeight(), 1e-3);
+        }
+    }
+
+    @Test
+    public void testFactors()
+    {
+        // the detour at the end of the best path is not locally optimal, i.e. it has no plateau
+        List<Path> paths = new AlternativeRoute(createGraph(), carEncoder, weighting, tMode, AlgorithmOptions.DIJKSTRA_BI).
+                setMaxShareFactor(0.9).calcPaths(0, 4);
+        assertEquals(2, paths.size());
+
+        paths = new AlternativeRoute(createGraph(), carEncoder, weighting, tMode, AlgorithmOptions.DIJKSTRA_BI).
+                setMaxShareFactor(0.9).setMinPlateauFactor(0).calcPaths(0, 4);
+        assertEquals(3, paths.size());
+        assertEquals(Helper.createTList(0, 5, 6, 7, 4), paths.get(1).calcNodes());
+        assertEquals(Helper.createTList(0, 1, 2, 3, 10, 4), paths.get(2).calcNodes());
+
+        paths = new AlternativeRoute(createGraph(), carEncoder, weighting, tMode, AlgorithmOptions.DIJKSTRA_BI).
+                setMinPlateauFactor(0).calcPaths(0, 4);
+        assertEquals(2, paths.size());
+
+        paths = new AlternativeRoute(createGraph(), carEncoder, weighting, tMode, AlgorithmOptions.DIJKSTRA_BI).
+                setMaxWeightFactor(1.1).calcPaths(0, 4);
+        assertEquals(1, paths.size());
+
+        paths = new AlternativeRoute(createGraph(), carEncoder, weighting, tMode, AlgorithmOptions.DIJKSTRA_BI).
+                setMaxPaths(1).calcPaths(0, 4);
+        assertEquals(1, paths.size());
+        assertEquals(4000, paths.get(0).getDistance(), 1e-3);
+    }
+
+    @Test
+    public void testNotFound()
+    {
+        Graph graph = createGraph();
+        graph.edge(11, 12, 100, true);
+        List<Path> paths = new AlternativeRoute(graph, carEncoder, weighting, tMode, AlgorithmOptions.DIJKSTRA_BI).
+                calcPaths(0, 12);
+        assertEquals(1, paths.size());
+        assertFalse(paths.get(0).isFound());
+
+        try
+        {
+            new AlternativeRoute(graph, carEncoder, weighting, TraversalMode.EDGE_BASED_2DIR, AlgorithmOptions.DIJKSTRA_BI);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+}
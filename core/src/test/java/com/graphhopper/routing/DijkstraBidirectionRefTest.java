@@ -26,6 +26,9 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import com.graphhopper.storage.Graph;
+import com.graphhopper.util.Helper;
+import static org.junit.Assert.*;
+import org.junit.Test;
 
 /**
  *
@@ -68,4 +71,27 @@ public class DijkstraBidirectionRefTest extends AbstractRoutingAlgorithmTester
             }
         };    
     }
+
+    @Test
+    public void testReset()
+    {
+        DijkstraBidirectionRef algo = new DijkstraBidirectionRef(createTestGraph(), carEncoder, new ShortestWeighting(), traversalMode);
+        algo.setWeightLimit(10);
+        assertFalse(algo.calcPath(0, 7).isFound());
+
+        algo.reset(createTestGraph());
+        Path p = algo.calcPath(0, 7);
+        assertEquals(p.toString(), Helper.createTList(0, 4, 5, 7), p.calcNodes());
+        assertEquals(p.toString(), 62.1, p.getDistance(), .1);
+        int visited = algo.getVisitedNodes();
+
+        algo.reset(createWikipediaTestGraph());
+        p = algo.calcPath(0, 4);
+        assertEquals(p.toString(), 20, p.getDistance(), 1e-4);
+        assertEquals(p.toString(), 4, p.calcNodes().size());
+
+        algo.reset(createTestGraph());
+        assertEquals(p.toString(), 62.1, algo.calcPath(0, 7).getDistance(), .1);
+        assertEquals(visited, algo.getVisitedNodes());
+    }
 }
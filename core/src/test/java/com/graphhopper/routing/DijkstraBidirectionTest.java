@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.*;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.util.Helper;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Peter Karich
+ */
+@RunWith(Parameterized.class)
+public class DijkstraBidirectionTest extends AbstractRoutingAlgorithmTester
+{
+    /**
+     * Runs the same test with each of the supported traversal modes
+     */
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> configs()
+    {
+        return Arrays.asList(new Object[][]
+        {
+            { TraversalMode.NODE_BASED },
+            { TraversalMode.EDGE_BASED_1DIR },
+            { TraversalMode.EDGE_BASED_2DIR },
+            { TraversalMode.EDGE_BASED_2DIR_UTURN }
+        });
+    }
+
+    private final TraversalMode traversalMode;
+
+    public DijkstraBidirectionTest( TraversalMode tMode )
+    {
+        this.traversalMode = tMode;
+    }
+
+    @Override
+    public RoutingAlgorithmFactory createFactory( Graph prepareGraph, AlgorithmOptions prepareOpts )
+    {
+        return new RoutingAlgorithmFactory()
+        {
+            @Override
+            public RoutingAlgorithm createAlgo( Graph g, AlgorithmOptions opts )
+            {
+                return new DijkstraBidirection(g, opts.getFlagEncoder(), opts.getWeighting(), traversalMode);
+            }
+        };    
+    }
+
+    @Test
+    public void testReset()
+    {
+        DijkstraBidirection algo = new DijkstraBidirection(createTestGraph(), carEncoder, new ShortestWeighting(), traversalMode);
+        algo.setWeightLimit(10);
+        assertFalse(algo.calcPath(0, 7).isFound());
+
+        algo.reset(createTestGraph());
+        Path p = algo.calcPath(0, 7);
+        assertEquals(p.toString(), Helper.createTList(0, 4, 5, 7), p.calcNodes());
+        assertEquals(p.toString(), 62.1, p.getDistance(), .1);
+        int visited = algo.getVisitedNodes();
+
+        algo.reset(createWikipediaTestGraph());
+        p = algo.calcPath(0, 4);
+        assertEquals(p.toString(), 20, p.getDistance(), 1e-4);
+        assertEquals(p.toString(), 4, p.calcNodes().size());
+
+        algo.reset(createTestGraph());
+        assertEquals(p.toString(), 62.1, algo.calcPath(0, 7).getDistance(), .1);
+        assertEquals(visited, algo.getVisitedNodes());
+    }
+
+    @Test
+    public void testResetAfterLargeSearch()
+    {
+        int size = 110;
+        Graph grid = new GraphBuilder(encodingManager).create();
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int node = y * size + x;
+                if (x > 0)
+                    grid.edge(node - 1, node, 1, true);
+                if (y > 0)
+                    grid.edge(node - size, node, 1, true);
+            }
+        }
+
+        DijkstraBidirection algo = new DijkstraBidirection(grid, carEncoder, new ShortestWeighting(), traversalMode);
+        assertEquals(2 * (size - 1), algo.calcPath(0, size * size - 1).getDistance(), 1e-4);
+        assertTrue(algo.getVisitedNodes() > DijkstraBidirection.MAX_CLEAR_SIZE);
+
+        // the collections are allocated again, the next search must not notice it
+        algo.reset(createTestGraph());
+        Path p = algo.calcPath(0, 7);
+        assertEquals(p.toString(), Helper.createTList(0, 4, 5, 7), p.calcNodes());
+        DijkstraBidirection fresh = new DijkstraBidirection(createTestGraph(), carEncoder, new ShortestWeighting(), traversalMode);
+        fresh.calcPath(0, 7);
+        assertEquals(fresh.getVisitedNodes(), algo.getVisitedNodes());
+    }
+}
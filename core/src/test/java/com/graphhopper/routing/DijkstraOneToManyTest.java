@@ -155,6 +155,55 @@ public class DijkstraOneToManyTest extends AbstractRoutingAlgorithmTester
         assertEquals(Helper.createTList(0, 1, 2), p.calcNodes());
     }
 
+    @Test
+    public void testManyToManyAfterFullExploration()
+    {
+        Graph g = createGraph(false);
+        g.edge(0, 1, 1, true);
+        g.edge(0, 2, 1, true);
+        g.edge(3, 4, 1, true);
+
+        // the unreachable target leads to a full exploration
+        PathMatrix matrix = new ManyToManyDijkstra(g, carEncoder, defaultOpts.getWeighting(), traversalMode).
+                calcMatrix(new int[]
+                        {
+                            0
+                        }, new int[]
+                        {
+                            3, 1, 2
+                        });
+        assertFalse(matrix.isFound(0, 0));
+        assertEquals(1, matrix.getDistance(0, 1), 1e-5);
+        assertEquals(1, matrix.getDistance(0, 2), 1e-5);
+    }
+
+    @Test
+    public void testManyToMany()
+    {
+        Graph g = createTestGraph();
+        int[] sources = new int[]
+        {
+            0, 4, 7
+        };
+        int[] targets = new int[]
+        {
+            2, 7, 0, 4
+        };
+        PathMatrix matrix = new ManyToManyDijkstra(g, carEncoder, defaultOpts.getWeighting(), traversalMode).
+                calcMatrix(sources, targets);
+        for (int i = 0; i < sources.length; i++)
+        {
+            for (int j = 0; j < targets.length; j++)
+            {
+                Path expected = new Dijkstra(g, carEncoder, defaultOpts.getWeighting(), traversalMode).calcPath(sources[i], targets[j]);
+                assertEquals(i + "," + j, expected.isFound(), matrix.isFound(i, j));
+                assertEquals(i + "," + j, expected.getDistance(), matrix.getDistance(i, j), 1e-5);
+                assertEquals(i + "," + j, expected.getMillis(), matrix.getMillis(i, j));
+            }
+        }
+        assertEquals(0, matrix.getDistance(2, 1), 1e-5);
+    }
+
     @Test
     public void testDifferentEdgeFilter()
     {
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.PointList;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class IsochroneTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("CAR");
+
+    // 5 -> 0 - 1 - 2 - 3
+    //              |
+    //              v
+    //              4
+    Graph initGraph( Graph graph )
+    {
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < 4; i++)
+        {
+            na.setNode(i, 0.005, 0.005 + i * 0.01);
+        }
+        na.setNode(4, 0.015, 0.025);
+        na.setNode(5, 0.005, -0.005);
+        long both = carEncoder.setProperties(60, true, true);
+        graph.edge(0, 1).setDistance(1000).setFlags(both);
+        graph.edge(1, 2).setDistance(1000).setFlags(both);
+        graph.edge(2, 3).setDistance(1000).setFlags(both);
+        graph.edge(2, 4).setDistance(500).setFlags(carEncoder.setProperties(60, true, false));
+        graph.edge(5, 0).setDistance(300).setFlags(carEncoder.setProperties(60, true, false));
+        return graph;
+    }
+
+    Graph createGraph()
+    {
+        return initGraph(new GraphBuilder(encodingManager).create());
+    }
+
+    @Test
+    public void testSearch()
+    {
+        Isochrone isochrone = new Isochrone(createGraph(), carEncoder, new ShortestWeighting());
+        isochrone.setWeightLimit(2100).search(0);
+        assertEquals(set(0, 1, 2), set(isochrone.getReachedNodes()));
+        assertEquals(2000, isochrone.getWeight(2), 1e-6);
+        assertEquals(Double.MAX_VALUE, isochrone.getWeight(3), 1e-6);
+
+        isochrone.setWeightLimit(2600).search(0);
+        assertEquals(set(0, 1, 2, 4), set(isochrone.getReachedNodes()));
+        assertEquals(2500, isochrone.getWeight(4), 1e-6);
+        assertEquals(4, isochrone.getVisitedNodes());
+
+        // from where is 0 reachable
+        isochrone.setReverse(true).search(0);
+        assertEquals(set(0, 1, 2, 5), set(isochrone.getReachedNodes()));
+        assertEquals(300, isochrone.getWeight(5), 1e-6);
+        assertEquals(Double.MAX_VALUE, isochrone.getWeight(4), 1e-6);
+
+        isochrone.setReverse(false).setWeightLimit(Double.MAX_VALUE).search(4);
+        assertEquals(set(4), set(isochrone.getReachedNodes()));
+    }
+
+    @Test
+    public void testReset()
+    {
+        Isochrone isochrone = new Isochrone(new GraphBuilder(encodingManager).create(), carEncoder, new ShortestWeighting());
+        isochrone.reset(createGraph(), carEncoder, new FastestWeighting(carEncoder)).setWeightLimit(130).search(1);
+        // 60km/h are 60 seconds per km
+        assertEquals(set(0, 1, 2, 3, 4), set(isochrone.getReachedNodes()));
+        assertEquals(90, isochrone.getWeight(4), 1e-6);
+
+        isochrone.reset(createGraph(), carEncoder, new ShortestWeighting()).setWeightLimit(1000).search(1);
+        assertEquals(set(0, 1, 2), set(isochrone.getReachedNodes()));
+    }
+
+    @Test
+    public void testCells()
+    {
+        Isochrone isochrone = new Isochrone(createGraph(), carEncoder, new ShortestWeighting());
+        isochrone.setWeightLimit(2600).search(0);
+        List<PointList> cells = isochrone.calcCells(2, 0.01, 0.01);
+        assertEquals(2, cells.size());
+        // 0 and 1 are within 1300m
+        assertEquals(2, cells.get(0).getSize());
+        assertEquals(2, cells.get(1).getSize());
+        assertEquals(0.005, cells.get(0).getLatitude(0), 1e-6);
+        assertEquals(0.005, cells.get(1).getLatitude(0) + cells.get(1).getLatitude(1) - 0.015, 1e-6);
+
+        PointList hull = Isochrone.calcHull(cells.subList(0, 1), 0.01, 0.01);
+        assertEquals(5, hull.getSize());
+        assertEquals(hull.getLatitude(0), hull.getLatitude(4), 1e-6);
+        assertEquals(hull.getLongitude(0), hull.getLongitude(4), 1e-6);
+
+        hull = Isochrone.calcHull(cells, 0.01, 0.01);
+        assertEquals(6, hull.getSize());
+        assertEquals(0, hull.getLongitude(0), 1e-6);
+        assertEquals(0, hull.getLatitude(0), 1e-6);
+        double maxLat = 0, maxLon = 0;
+        for (int i = 0; i < hull.getSize(); i++)
+        {
+            maxLat = Math.max(maxLat, hull.getLatitude(i));
+            maxLon = Math.max(maxLon, hull.getLongitude(i));
+        }
+        assertEquals(0.02, maxLat, 1e-6);
+        assertEquals(0.03, maxLon, 1e-6);
+
+        assertTrue(Isochrone.calcHull(isochrone.calcCells(1, 0.01, 0.01).subList(0, 0), 0.01, 0.01).isEmpty());
+    }
+
+    private static TIntArrayList set( int... nodes )
+    {
+        TIntArrayList list = new TIntArrayList(nodes);
+        list.sort();
+        return list;
+    }
+
+    private static TIntArrayList set( TIntArrayList nodes )
+    {
+        TIntArrayList list = new TIntArrayList(nodes);
+        list.sort();
+        return list;
+    }
+}
@@ -220,6 +220,54 @@ public class QueryGraphTest
         assertNull(GHUtility.getEdge(queryGraph, 3, 1));
     }
 
+    @Test
+    public void testReset()
+    {
+        initGraph(g);
+        EdgeIterator iter = g.createEdgeExplorer().setBaseNode(1);
+        iter.next();
+        QueryResult res1 = createLocationResult(2, 1.7, iter, 1, PILLAR);
+        QueryResult res2 = createLocationResult(1.5, 2, iter, 0, EDGE);
+        QueryGraph queryGraph = new QueryGraph(g, 1);
+        queryGraph.lookup(Arrays.asList(res1, res2));
+        assertEquals(5, queryGraph.getNodes());
+        assertEquals(4, getPoints(queryGraph, 3, 0).getSize());
+
+        try
+        {
+            queryGraph.lookup(Arrays.asList(res1));
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+
+        // reuse the instance for a point on a different edge
+        assertEquals(3, queryGraph.reset().getNodes());
+        iter = g.createEdgeExplorer().setBaseNode(2);
+        iter.next();
+        QueryResult res3 = createLocationResult(0.5, 0.1, iter, 0, EDGE);
+        queryGraph.lookup(Arrays.asList(res3));
+        assertEquals(4, queryGraph.getNodes());
+        assertEquals(3, res3.getClosestNode());
+        assertEquals(new GHPoint(0.5, 0), res3.getSnappedPoint());
+        assertEquals(2, getPoints(queryGraph, 0, 3).getSize());
+        assertEquals(2, getPoints(queryGraph, 3, 2).getSize());
+        assertEquals(GHUtility.asSet(0, 2), GHUtility.getNeighbors(queryGraph.createEdgeExplorer().setBaseNode(3)));
+        assertEquals(GHUtility.asSet(1, 3), GHUtility.getNeighbors(queryGraph.createEdgeExplorer().setBaseNode(0)));
+        assertNull(GHUtility.getEdge(queryGraph, 0, 4));
+
+        // the pooled virtual edges are identical to the ones of a new instance
+        QueryResult res4 = createLocationResult(0.5, 0.1, iter, 0, EDGE);
+        QueryGraph newQueryGraph = new QueryGraph(g);
+        newQueryGraph.lookup(Arrays.asList(res4));
+        EdgeIteratorState reusedEdge = GHUtility.getEdge(queryGraph, 3, 0);
+        EdgeIteratorState newEdge = GHUtility.getEdge(newQueryGraph, 3, 0);
+        assertEquals(newEdge.getEdge(), reusedEdge.getEdge());
+        assertEquals(newEdge.getDistance(), reusedEdge.getDistance(), 1e-6);
+        assertEquals(newEdge.getFlags(), reusedEdge.getFlags());
+        assertEquals(newEdge.fetchWayGeometry(3), reusedEdge.fetchWayGeometry(3));
+    }
+
     @Test
     public void testOneWay()
     {
@@ -417,6 +465,34 @@ public class QueryGraphTest
         assertEquals(e1.getEdge(), e2.getEdge());
     }
 
+    @Test
+    public void testOriginalEdge()
+    {
+        initGraph(g);
+        EdgeIterator iter = g.createEdgeExplorer().setBaseNode(1);
+        iter.next();
+        QueryGraph queryGraph = new QueryGraph(g);
+        QueryResult res = createLocationResult(1.5, 2, iter, 0, EDGE);
+        queryGraph.lookup(Arrays.asList(res));
+        assertEquals(3, res.getClosestNode());
+
+        EdgeIteratorState original = queryGraph.getOriginalEdge(GHUtility.getEdge(queryGraph, 1, 3));
+        assertEquals(1, original.getEdge());
+        assertEquals(1, original.getBaseNode());
+        assertEquals(0, original.getAdjNode());
+
+        original = queryGraph.getOriginalEdge(GHUtility.getEdge(queryGraph, 3, 1));
+        assertEquals(1, original.getEdge());
+        assertEquals(0, original.getBaseNode());
+
+        original = queryGraph.getOriginalEdge(GHUtility.getEdge(queryGraph, 0, 3));
+        assertEquals(0, original.getBaseNode());
+        assertEquals(1, original.getAdjNode());
+
+        EdgeIteratorState edge = GHUtility.getEdge(queryGraph, 2, 0);
+        assertSame(edge, queryGraph.getOriginalEdge(edge));
+    }
+
     PointList getPoints( Graph g, int base, int adj )
     {
         EdgeIteratorState edge = GHUtility.getEdge(g, base, adj);
@@ -0,0 +1,176 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.Helper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the paths of a speed-up technique like CH or landmarks for random pairs of nodes with
+ * the paths of Dijkstra on the original graph and creates the random grids for these tests.
+ * <p/>
+ * @author Peter Karich
+ */
+public class RandomPathsTester
+{
+    private final Graph orig;
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private final TraversalMode tMode;
+    private int count = 100;
+    private double weightDelta = 1e-5;
+    private long visitedNodes;
+    private long expectedVisitedNodes;
+
+    /**
+     * @param orig the graph without shortcuts or other preparations on which Dijkstra calculates
+     * the expected paths
+     */
+    public RandomPathsTester( Graph orig, FlagEncoder encoder, Weighting weighting, TraversalMode tMode )
+    {
+        this.orig = orig;
+        this.encoder = encoder;
+        this.weighting = weighting;
+        this.tMode = tMode;
+    }
+
+    public RandomPathsTester setCount( int count )
+    {
+        this.count = count;
+        return this;
+    }
+
+    public RandomPathsTester setWeightDelta( double weightDelta )
+    {
+        this.weightDelta = weightDelta;
+        return this;
+    }
+
+    /**
+     * Calculates the paths between count random pairs of nodes with the algorithms of the
+     * specified factory and asserts that they have the same weight as the paths of Dijkstra.
+     * <p/>
+     * @return the found paths
+     */
+    public List<Path> assertPaths( RoutingAlgorithmFactory factory, Graph g, AlgorithmOptions opts, long seed )
+    {
+        Random rand = new Random(seed);
+        List<Path> paths = new ArrayList<Path>();
+        visitedNodes = 0;
+        expectedVisitedNodes = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int from = rand.nextInt(orig.getNodes());
+            int to = rand.nextInt(orig.getNodes());
+            String str = opts.getAlgorithm() + ", " + tMode + ", " + from + "->" + to;
+            Dijkstra dijkstra = new Dijkstra(orig, encoder, weighting, tMode);
+            Path expected = dijkstra.calcPath(from, to);
+            RoutingAlgorithm algo = factory.createAlgo(g, opts);
+            Path p = algo.calcPath(from, to);
+            visitedNodes += algo.getVisitedNodes();
+            expectedVisitedNodes += dijkstra.getVisitedNodes();
+            assertEquals(str, expected.isFound(), p.isFound());
+            if (!p.isFound())
+                continue;
+
+            assertEquals(str, expected.getWeight(), p.getWeight(), weightDelta);
+            paths.add(p);
+        }
+        return paths;
+    }
+
+    /**
+     * @return the visited nodes of all algorithms of the last assertPaths call
+     */
+    public long getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    /**
+     * @return the visited nodes of Dijkstra in the last assertPaths call
+     */
+    public long getExpectedVisitedNodes()
+    {
+        return expectedVisitedNodes;
+    }
+
+    /**
+     * Creates a grid of size x size nodes with random distances and some one-ways. The same seed
+     * creates the same grid, e.g. for the graph to prepare and for the original graph.
+     */
+    public static void initRandomGrid( Graph g, int size, long seed )
+    {
+        Random rand = new Random(seed);
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int node = y * size + x;
+                if (x + 1 < size)
+                    g.edge(node, node + 1, 1 + rand.nextInt(10), rand.nextInt(10) > 0);
+                if (y + 1 < size)
+                    g.edge(node, node + size, 1 + rand.nextInt(10), rand.nextInt(10) > 0);
+            }
+        }
+    }
+
+    /**
+     * Creates a grid of size x size nodes with random speeds where every 8th edge is a one-way.
+     * The distances match the coordinates like for the virtual edges of a QueryGraph.
+     */
+    public static void initRandomSpeedGrid( Graph g, FlagEncoder encoder, int size, long seed )
+    {
+        initGridCoordinates(g, size);
+        Random rand = new Random(seed);
+        for (int node = 0; node < size * size; node++)
+        {
+            if (node % size + 1 < size)
+                connect(g, encoder, rand, node, node + 1);
+            if (node / size + 1 < size)
+                connect(g, encoder, rand, node, node + size);
+        }
+    }
+
+    private static void connect( Graph g, FlagEncoder encoder, Random rand, int a, int b )
+    {
+        NodeAccess na = g.getNodeAccess();
+        double dist = Helper.DIST_EARTH.calcDist(na.getLatitude(a), na.getLongitude(a), na.getLatitude(b), na.getLongitude(b));
+        g.edge(a, b).setDistance(dist).setFlags(encoder.setProperties(10 + rand.nextInt(8) * 10, true, rand.nextInt(8) > 0));
+    }
+
+    /**
+     * Places the nodes of a grid with size x size nodes 0.001 degrees apart, starting at 50, 10.
+     */
+    public static void initGridCoordinates( Graph g, int size )
+    {
+        NodeAccess na = g.getNodeAccess();
+        for (int node = 0; node < size * size; node++)
+        {
+            na.setNode(node, 50 + node / size * 0.001, 10 + node % size * 0.001);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Isochrone;
+import com.graphhopper.routing.RandomPathsTester;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.LevelGraphLayer;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class CustomizableContractionHierarchiesTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final CarFlagEncoder carEncoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+    private final TraversalMode tMode = TraversalMode.NODE_BASED;
+
+    static void initGrid( Graph g, int size, long seed )
+    {
+        RandomPathsTester.initRandomGrid(g, size, seed);
+        RandomPathsTester.initGridCoordinates(g, size);
+    }
+
+    /**
+     * Depends on the edge and direction only, so the shortcuts of another weighting are wrong.
+     */
+    static Weighting createRandomWeighting( final int seed )
+    {
+        return new Weighting()
+        {
+            @Override
+            public double getMinWeight( double distance )
+            {
+                return distance;
+            }
+
+            @Override
+            public double calcWeight( EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId )
+            {
+                // the direction has to be independent of the orientation of the edge state
+                boolean storageDirection = edgeState.getBaseNode() < edgeState.getAdjNode() != reverse;
+                int factor = 1 + (edgeState.getEdge() * 31 + seed + (storageDirection ? 7 : 0)) % 5;
+                return edgeState.getDistance() * factor;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "RANDOM" + seed;
+            }
+        };
+    }
+
+    void assertQueries( Graph orig, LevelGraph g, RoutingAlgorithmFactory factory, Weighting weighting, long seed )
+    {
+        new RandomPathsTester(orig, carEncoder, weighting, tMode).setWeightDelta(0.05).
+                assertPaths(factory, g, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode), seed);
+    }
+
+    @Test
+    public void testCustomize()
+    {
+        LevelGraph g = new GraphBuilder(encodingManager).levelGraphCreate();
+        Graph orig = new GraphBuilder(encodingManager).create();
+        initGrid(g, 20, 123);
+        initGrid(orig, 20, 123);
+
+        Weighting shortest = new ShortestWeighting();
+        CustomizableContractionHierarchies cch = new CustomizableContractionHierarchies(g, carEncoder, shortest, tMode);
+        cch.doWork();
+        assertQueries(orig, g, cch, shortest, 1);
+
+        Weighting random = createRandomWeighting(3);
+        assertSame(cch, cch.customize(random));
+        assertSame(random, cch.getWeighting());
+        assertQueries(orig, g, cch, random, 2);
+        cch.createPHAST(g).calcWeights(0);
+
+        random = createRandomWeighting(4);
+        cch.customize(random);
+        assertQueries(orig, g, cch, random, 3);
+
+        // the cached edges of PHAST are replaced too
+        PHAST phast = cch.createPHAST(g).calcWeights(0);
+        Isochrone expected = new Isochrone(orig, carEncoder, random).search(0);
+        for (int node = 0; node < orig.getNodes(); node++)
+        {
+            assertEquals(expected.getWeight(node), phast.getWeight(node), 1e-5);
+        }
+
+        // the hierarchy is read from the graph if not built by the same instance
+        CustomizableContractionHierarchies loaded = new CustomizableContractionHierarchies(g, carEncoder, random, tMode);
+        loaded.customize(shortest);
+        assertQueries(orig, g, loaded, shortest, 4);
+    }
+
+    @Test
+    public void testParallelCustomization()
+    {
+        LevelGraph g = new GraphBuilder(encodingManager).levelGraphCreate();
+        Graph orig = new GraphBuilder(encodingManager).create();
+        initGrid(g, 40, 456);
+        initGrid(orig, 40, 456);
+
+        Weighting random = createRandomWeighting(5);
+        CustomizableContractionHierarchies cch = new CustomizableContractionHierarchies(g, carEncoder, random, tMode);
+        cch.setThreads(4);
+        cch.doWork();
+        assertQueries(orig, g, cch, random, 5);
+    }
+
+    @Test
+    public void testLayer()
+    {
+        GraphStorage base = new GraphBuilder(encodingManager).create();
+        initGrid(base, 15, 789);
+        LevelGraphLayer layer = new LevelGraphLayer(base, carEncoder, "car_cch").create(100);
+        Weighting fastest = new FastestWeighting(carEncoder);
+        CustomizableContractionHierarchies cch = new CustomizableContractionHierarchies(layer, carEncoder, fastest, tMode);
+        cch.doWork();
+        assertTrue(layer.getShortcuts() > 0);
+        assertQueries(base, layer, cch, fastest, 6);
+
+        Weighting random = createRandomWeighting(6);
+        cch.customize(random);
+        assertQueries(base, layer, cch, random, 7);
+    }
+
+    @Test
+    public void testNotPrepared()
+    {
+        LevelGraph g = new GraphBuilder(encodingManager).levelGraphCreate();
+        initGrid(g, 5, 1);
+        try
+        {
+            new CustomizableContractionHierarchies(g, carEncoder, new ShortestWeighting(), tMode).customize(new ShortestWeighting());
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+}
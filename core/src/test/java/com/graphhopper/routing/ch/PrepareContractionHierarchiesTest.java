@@ -21,12 +21,18 @@ import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies.Shortcut;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.LevelGraphLayer;
 import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.TurnCostExtension;
 import com.graphhopper.util.*;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -430,6 +436,323 @@ public class PrepareContractionHierarchiesTest
         assertEquals(2, prepare.getShortcuts());
     }
 
+    @Test
+    public void testParallelContraction()
+    {
+        LevelGraph g = createGraph();
+        Graph orig = new GraphBuilder(encodingManager).create();
+        RandomPathsTester.initRandomGrid(g, 20, 123);
+        RandomPathsTester.initRandomGrid(orig, 20, 123);
+
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode).
+                setThreads(4);
+        prepare.doWork();
+        assertTrue(prepare.getShortcuts() > 0);
+
+        new RandomPathsTester(orig, carEncoder, weighting, tMode).
+                assertPaths(prepare, g, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode), 42);
+    }
+
+    @Test
+    public void testLayersOnSharedBaseGraph()
+    {
+        EncodingManager em = new EncodingManager("CAR,FOOT");
+        FlagEncoder car = em.getEncoder("CAR");
+        FlagEncoder foot = em.getEncoder("FOOT");
+        GraphStorage base = new GraphBuilder(em).create();
+        RandomPathsTester.initRandomGrid(base, 15, 456);
+
+        LevelGraphLayer carLayer = new LevelGraphLayer(base, car, "car_fastest").create(100);
+        LevelGraphLayer footLayer = new LevelGraphLayer(base, foot, "foot_shortest").create(100);
+        Weighting carWeighting = new FastestWeighting(car);
+        Weighting footWeighting = new ShortestWeighting();
+        PrepareContractionHierarchies carPrepare = new PrepareContractionHierarchies(carLayer, car, carWeighting, tMode);
+        carPrepare.doWork();
+        PrepareContractionHierarchies footPrepare = new PrepareContractionHierarchies(footLayer, foot, footWeighting, tMode).
+                setThreads(2);
+        footPrepare.doWork();
+        assertEquals(carPrepare.getShortcuts(), carLayer.getShortcuts());
+        assertEquals(footPrepare.getShortcuts(), footLayer.getShortcuts());
+        assertEquals(15 * 14 * 2, base.getAllEdges().getCount());
+
+        new RandomPathsTester(base, car, carWeighting, tMode).setCount(50).setWeightDelta(1e-2).
+                assertPaths(carPrepare, carLayer, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, car, carWeighting, tMode), 42);
+        new RandomPathsTester(base, foot, footWeighting, tMode).setCount(50).
+                assertPaths(footPrepare, footLayer, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, foot, footWeighting, tMode), 42);
+    }
+
+    @Test
+    public void testManyToMany()
+    {
+        LevelGraph g = createGraph();
+        Graph orig = new GraphBuilder(encodingManager).create();
+        RandomPathsTester.initRandomGrid(g, 15, 789);
+        RandomPathsTester.initRandomGrid(orig, 15, 789);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode);
+        prepare.doWork();
+
+        int[] sources = new int[]
+        {
+            0, 17, 112, 224, 99
+        };
+        int[] targets = new int[]
+        {
+            3, 224, 150, 0, 17, 201
+        };
+        ManyToManyCH algo = prepare.createManyToMany(g);
+        PathMatrix matrix = algo.calcMatrix(sources, targets);
+        assertEquals(5, matrix.getRows());
+        assertEquals(6, matrix.getColumns());
+        assertMatrix(orig, sources, targets, matrix);
+        assertEquals(0, matrix.getDistance(0, 3), 1e-5);
+
+        // the same instance reuses its search state
+        matrix = algo.calcMatrix(targets, sources);
+        assertEquals(6, matrix.getRows());
+        assertMatrix(orig, targets, sources, matrix);
+    }
+
+    private void assertMatrix( Graph orig, int[] sources, int[] targets, PathMatrix matrix )
+    {
+        for (int i = 0; i < sources.length; i++)
+        {
+            for (int j = 0; j < targets.length; j++)
+            {
+                Path expected = new Dijkstra(orig, carEncoder, weighting, tMode).calcPath(sources[i], targets[j]);
+                assertEquals(i + "," + j, expected.isFound(), matrix.isFound(i, j));
+                assertEquals(i + "," + j, expected.getDistance(), matrix.getDistance(i, j), 1e-5);
+                assertEquals(i + "," + j, expected.getMillis(), matrix.getMillis(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testPHAST()
+    {
+        LevelGraph g = createGraph();
+        Graph orig = new GraphBuilder(encodingManager).create();
+        RandomPathsTester.initRandomGrid(g, 15, 789);
+        RandomPathsTester.initRandomGrid(orig, 15, 789);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode);
+        prepare.doWork();
+
+        int[] sorted = prepare.getLevelSortedNodes();
+        assertEquals(g.getNodes(), sorted.length);
+        for (int i = 1; i < sorted.length; i++)
+        {
+            assertTrue(g.getLevel(sorted[i - 1]) <= g.getLevel(sorted[i]));
+        }
+
+        Isochrone expected = new Isochrone(orig, carEncoder, weighting);
+        PHAST phast = prepare.createPHAST(g);
+        for (boolean reverse : new boolean[]
+        {
+            false, true
+        })
+        {
+            for (int from : new int[]
+            {
+                0, 17, 112, 224
+            })
+            {
+                expected.setReverse(reverse).search(from);
+                phast.setReverse(reverse).calcWeights(from);
+                for (int node = 0; node < orig.getNodes(); node++)
+                {
+                    assertEquals(from + "->" + node + " " + reverse, expected.getWeight(node), phast.getWeight(node), 1e-5);
+                }
+            }
+        }
+
+        expected.setReverse(false).setWeightLimit(20).search(112);
+        phast.setReverse(false).setWeightLimit(20).calcWeights(112);
+        for (int node = 0; node < orig.getNodes(); node++)
+        {
+            assertEquals("112->" + node, expected.getWeight(node), phast.getWeight(node), 1e-5);
+        }
+        assertTrue(expected.getReachedNodes().size() < orig.getNodes());
+    }
+
+    @Test
+    public void testPHASTOnLayer()
+    {
+        GraphStorage base = new GraphBuilder(encodingManager).create();
+        RandomPathsTester.initRandomGrid(base, 10, 123);
+        LevelGraphLayer layer = new LevelGraphLayer(base, carEncoder, "car_shortest").create(100);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(layer, carEncoder, weighting, tMode).
+                setReuseAlgorithms(true);
+        prepare.doWork();
+
+        PHAST phast = prepare.createPHAST(layer);
+        assertSame(phast, prepare.createPHAST(layer));
+        Isochrone expected = new Isochrone(base, carEncoder, weighting);
+        for (int from = 0; from < base.getNodes(); from += 11)
+        {
+            expected.search(from);
+            phast.calcWeights(from);
+            for (int node = 0; node < base.getNodes(); node++)
+            {
+                assertEquals(from + "->" + node, expected.getWeight(node), phast.getWeight(node), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void testReuseAlgorithms()
+    {
+        LevelGraph g = createGraph();
+        Graph orig = new GraphBuilder(encodingManager).create();
+        RandomPathsTester.initRandomGrid(g, 10, 456);
+        RandomPathsTester.initRandomGrid(orig, 10, 456);
+        final PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting, tMode).
+                setReuseAlgorithms(true);
+        prepare.doWork();
+
+        RandomPathsTester tester = new RandomPathsTester(orig, carEncoder, weighting, tMode).setCount(50);
+        for (String algoStr : Arrays.asList(AlgorithmOptions.DIJKSTRA_BI, AlgorithmOptions.ASTAR_BI))
+        {
+            AlgorithmOptions opts = new AlgorithmOptions(algoStr, carEncoder, weighting, tMode);
+            final RoutingAlgorithm first = prepare.createAlgo(g, opts);
+            // every query has to run on the same instance
+            tester.assertPaths(new RoutingAlgorithmFactory()
+            {
+                @Override
+                public RoutingAlgorithm createAlgo( Graph g, AlgorithmOptions opts )
+                {
+                    RoutingAlgorithm algo = prepare.createAlgo(g, opts);
+                    assertSame(first, algo);
+                    return algo;
+                }
+            }, g, opts, 12);
+        }
+        assertNotSame(prepare.createAlgo(g, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode)),
+                prepare.createAlgo(g, new AlgorithmOptions(AlgorithmOptions.ASTAR_BI, carEncoder, weighting, tMode)));
+
+        // after the release no thread keeps the old instances
+        AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode);
+        RoutingAlgorithm released = prepare.createAlgo(g, opts);
+        PHAST releasedPHAST = prepare.createPHAST(g);
+        prepare.releaseReusableAlgorithms();
+        assertNotSame(released, prepare.createAlgo(g, opts));
+        assertNotSame(releasedPHAST, prepare.createPHAST(g));
+        assertSame(prepare.createAlgo(g, opts), prepare.createAlgo(g, opts));
+    }
+
+    @Test
+    public void testEdgeBasedTurnRestrictions()
+    {
+        CarFlagEncoder encoder = new CarFlagEncoder(5, 5, 3);
+        LevelGraph g = new GraphBuilder(new EncodingManager(encoder)).levelGraphCreate();
+        EdgeBasedRoutingAlgorithmTest.initGraph(g);
+        TurnCostExtension tcs = (TurnCostExtension) g.getExtension();
+        long restricted = encoder.getTurnFlags(true, 0);
+        // only right from 5-2 to 2-3, only forward from 2-3 to 3-4 and no 4-3 to 3-1
+        tcs.addTurnInfo(GHUtility.getEdge(g, 5, 2).getEdge(), 2, GHUtility.getEdge(g, 2, 0).getEdge(), restricted);
+        tcs.addTurnInfo(GHUtility.getEdge(g, 2, 3).getEdge(), 3, GHUtility.getEdge(g, 3, 6).getEdge(), restricted);
+        tcs.addTurnInfo(GHUtility.getEdge(g, 2, 3).getEdge(), 3, GHUtility.getEdge(g, 3, 1).getEdge(), restricted);
+        tcs.addTurnInfo(GHUtility.getEdge(g, 4, 3).getEdge(), 3, GHUtility.getEdge(g, 3, 1).getEdge(), restricted);
+        // no 5-6 to 6-3 and no 7-6 to 6-5
+        tcs.addTurnInfo(GHUtility.getEdge(g, 5, 6).getEdge(), 6, GHUtility.getEdge(g, 6, 3).getEdge(), restricted);
+        tcs.addTurnInfo(GHUtility.getEdge(g, 7, 6).getEdge(), 6, GHUtility.getEdge(g, 6, 5).getEdge(), restricted);
+
+        Weighting turnWeighting = new TurnWeighting(new ShortestWeighting(), encoder, tcs);
+        TraversalMode edgeBased = TraversalMode.EDGE_BASED_2DIR;
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, encoder, turnWeighting, edgeBased);
+        prepare.doWork();
+        AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, encoder, turnWeighting, edgeBased);
+        Path p = prepare.createAlgo(g, opts).calcPath(5, 1);
+        assertEquals(Helper.createTList(5, 2, 3, 4, 7, 6, 3, 1), p.calcNodes());
+        assertEquals(6.5, p.getWeight(), 1e-5);
+        assertEquals(6.5, p.getDistance(), 1e-5);
+
+        p = prepare.createAlgo(g, opts).calcPath(5, 3);
+        assertEquals(Helper.createTList(5, 2, 3), p.calcNodes());
+        p = prepare.createAlgo(g, opts).calcPath(3, 3);
+        assertEquals(Helper.createTList(3), p.calcNodes());
+        assertEquals(0, p.getWeight(), 1e-5);
+
+        try
+        {
+            new PrepareContractionHierarchies(g, encoder, new ShortestWeighting(), edgeBased);
+            fail("edge-based preparation without turn costs");
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testEdgeBasedRandomTurnCosts()
+    {
+        CarFlagEncoder encoder = new CarFlagEncoder(5, 5, 3);
+        EncodingManager em = new EncodingManager(encoder);
+        for (TraversalMode edgeBased : Arrays.asList(TraversalMode.EDGE_BASED_2DIR, TraversalMode.EDGE_BASED_2DIR_UTURN))
+        {
+            for (int threads : new int[]
+            {
+                1, 2
+            })
+            {
+                LevelGraph g = new GraphBuilder(em).levelGraphCreate();
+                GraphStorage orig = new GraphBuilder(em).create();
+                RandomPathsTester.initRandomGrid(g, 8, 789);
+                RandomPathsTester.initRandomGrid(orig, 8, 789);
+                initRandomTurnCosts(g, encoder, 321);
+                initRandomTurnCosts(orig, encoder, 321);
+                TurnWeighting turnWeighting = new TurnWeighting(new ShortestWeighting(), encoder, (TurnCostExtension) g.getExtension());
+                TurnWeighting origTurnWeighting = new TurnWeighting(new ShortestWeighting(), encoder, (TurnCostExtension) orig.getExtension());
+                PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, encoder, turnWeighting, edgeBased).
+                        setThreads(threads);
+                prepare.doWork();
+                assertTrue(prepare.getShortcuts() > 0);
+
+                AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, encoder, turnWeighting, edgeBased);
+                List<Path> paths = new RandomPathsTester(orig, encoder, origTurnWeighting, edgeBased).
+                        assertPaths(prepare, g, opts, 42);
+                for (Path p : paths)
+                {
+                    String str = edgeBased + ", threads:" + threads + ", " + p.calcNodes();
+                    // the unpacked edges must result in the same weight
+                    double weight = 0;
+                    int prevEdge = EdgeIterator.NO_EDGE;
+                    for (EdgeIteratorState edge : p.calcEdges())
+                    {
+                        weight += origTurnWeighting.calcWeight(orig.getEdgeProps(edge.getEdge(), edge.getAdjNode()), false, prevEdge);
+                        prevEdge = edge.getEdge();
+                    }
+                    assertEquals(str, p.getWeight(), weight, 1e-5);
+                }
+            }
+        }
+    }
+
+    // restricts every tenth turn and adds costs to every fifth, u-turns are not restricted
+    static void initRandomTurnCosts( Graph g, TurnCostEncoder encoder, long seed )
+    {
+        Random rand = new Random(seed);
+        TurnCostExtension tcs = (TurnCostExtension) g.getExtension();
+        EdgeExplorer inExplorer = g.createEdgeExplorer();
+        EdgeExplorer outExplorer = g.createEdgeExplorer();
+        for (int node = 0; node < g.getNodes(); node++)
+        {
+            EdgeIterator inIter = inExplorer.setBaseNode(node);
+            while (inIter.next())
+            {
+                EdgeIterator outIter = outExplorer.setBaseNode(node);
+                while (outIter.next())
+                {
+                    if (inIter.getEdge() == outIter.getEdge())
+                        continue;
+
+                    int value = rand.nextInt(10);
+                    if (value == 0)
+                        tcs.addTurnInfo(inIter.getEdge(), node, outIter.getEdge(), encoder.getTurnFlags(true, 0));
+                    else if (value < 3)
+                        tcs.addTurnInfo(inIter.getEdge(), node, outIter.getEdge(), encoder.getTurnFlags(false, value));
+                }
+            }
+        }
+    }
+
     // 0-1-2-3-4
     // |     / |
     // |    8  |
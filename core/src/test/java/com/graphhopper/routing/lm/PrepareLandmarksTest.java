@@ -0,0 +1,253 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.routing.*;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import gnu.trove.set.hash.TIntHashSet;
+import java.io.File;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class PrepareLandmarksTest
+{
+    private final String location = "./target/graphstorage/landmarks";
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("CAR");
+    private final Weighting weighting = new FastestWeighting(carEncoder);
+    private final TraversalMode tMode = TraversalMode.NODE_BASED;
+    private GraphHopperStorage graph;
+
+    @Before
+    public void setUp()
+    {
+        Helper.removeDir(new File(location));
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (graph != null)
+            graph.close();
+        Helper.removeDir(new File(location));
+    }
+
+    GraphHopperStorage createGraph( Directory dir, int size, long seed )
+    {
+        graph = new GraphHopperStorage(dir, encodingManager, false);
+        graph.create(100);
+        RandomPathsTester.initRandomSpeedGrid(graph, carEncoder, size, seed);
+        return graph;
+    }
+
+    @Test
+    public void testLandmarkWeights()
+    {
+        createGraph(new RAMDirectory(), 20, 123);
+        LandmarkStorage lms = new LandmarkStorage(graph, carEncoder, weighting, "car_fastest", 8).setThreads(3).create(100);
+        lms.createLandmarks();
+        int[] landmarks = lms.getLandmarkNodes();
+        assertEquals(8, landmarks.length);
+        assertEquals(8, new TIntHashSet(landmarks).size());
+
+        Isochrone isochrone = new Isochrone(graph, carEncoder, weighting);
+        for (int i = 0; i < landmarks.length; i++)
+        {
+            for (boolean reverse : new boolean[]
+            {
+                false, true
+            })
+            {
+                isochrone.setReverse(reverse).search(landmarks[i]);
+                for (int node = 0; node < graph.getNodes(); node++)
+                {
+                    double expected = isochrone.getWeight(node);
+                    double stored = reverse ? lms.getToWeight(i, node) : lms.getFromWeight(i, node);
+                    if (expected == Double.MAX_VALUE)
+                    {
+                        assertTrue(Double.isInfinite(stored));
+                    } else
+                    {
+                        assertTrue(stored <= expected);
+                        assertEquals(expected, stored, lms.getFactor());
+                    }
+                }
+            }
+        }
+
+        try
+        {
+            lms.createLandmarks();
+            fail();
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testApproximationIsLowerBound()
+    {
+        createGraph(new RAMDirectory(), 15, 456);
+        PrepareLandmarks prepare = new PrepareLandmarks(graph, carEncoder, weighting, "car_fastest", 4);
+        prepare.doWork();
+
+        Isochrone isochrone = new Isochrone(graph, carEncoder, weighting);
+        Random rand = new Random(1);
+        int tight = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            int goal = rand.nextInt(graph.getNodes());
+            WeightApproximator forward = prepare.createApproximator(graph, weighting);
+            WeightApproximator reverse = forward.reverse();
+            forward.setGoalNode(goal);
+            reverse.setGoalNode(goal);
+            isochrone.setReverse(true).search(goal);
+            for (int node = 0; node < graph.getNodes(); node++)
+            {
+                double approx = forward.approximate(node);
+                assertTrue(node + "->" + goal, approx <= isochrone.getWeight(node) + 1e-6);
+                if (approx > 0.8 * isochrone.getWeight(node))
+                    tight++;
+            }
+
+            isochrone.setReverse(false).search(goal);
+            for (int node = 0; node < graph.getNodes(); node++)
+            {
+                assertTrue(goal + "->" + node, reverse.approximate(node) <= isochrone.getWeight(node) + 1e-6);
+            }
+        }
+        // the landmarks are a lot better than nothing
+        assertTrue("tight approximations " + tight, tight > graph.getNodes() * 10 / 4);
+    }
+
+    @Test
+    public void testQueries()
+    {
+        createGraph(new RAMDirectory(), 20, 789);
+        PrepareLandmarks prepare = new PrepareLandmarks(graph, carEncoder, weighting, "car_fastest", 8).setThreads(2);
+        prepare.doWork();
+
+        // the weights of a query can be larger than the prepared weights
+        Weighting slower = new FastestWeighting(carEncoder)
+        {
+            @Override
+            public double calcWeight( EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId )
+            {
+                return super.calcWeight(edgeState, reverse, prevOrNextEdgeId) * (1 + edgeState.getEdge() % 3);
+            }
+        };
+        int seed = 2;
+        for (Weighting w : new Weighting[]
+        {
+            weighting, slower
+        })
+        {
+            RandomPathsTester tester = new RandomPathsTester(graph, carEncoder, w, tMode).setCount(50).setWeightDelta(1e-3);
+            for (String algoStr : new String[]
+            {
+                AlgorithmOptions.ASTAR_BI, AlgorithmOptions.ASTAR
+            })
+            {
+                tester.assertPaths(prepare, graph, new AlgorithmOptions(algoStr, carEncoder, w, tMode), seed++);
+                assertTrue(algoStr + " " + tester.getVisitedNodes() + " vs. " + tester.getExpectedVisitedNodes(),
+                        tester.getVisitedNodes() < tester.getExpectedVisitedNodes());
+            }
+        }
+
+        // other algorithms do not use the landmarks
+        assertTrue(prepare.createAlgo(graph, new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting, tMode))
+                instanceof DijkstraBidirection);
+    }
+
+    @Test
+    public void testVirtualNodes()
+    {
+        createGraph(new RAMDirectory(), 15, 321);
+        PrepareLandmarks prepare = new PrepareLandmarks(graph, carEncoder, weighting, "car_fastest", 4);
+        prepare.doWork();
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+
+        Random rand = new Random(3);
+        AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.ASTAR_BI, carEncoder, weighting, tMode);
+        for (int i = 0; i < 50; i++)
+        {
+            QueryResult fromRes = index.findClosest(50 + rand.nextDouble() * 0.014, 10 + rand.nextDouble() * 0.014, EdgeFilter.ALL_EDGES);
+            QueryResult toRes = index.findClosest(50 + rand.nextDouble() * 0.014, 10 + rand.nextDouble() * 0.014, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = new QueryGraph(graph);
+            queryGraph.lookup(fromRes, toRes);
+            int from = fromRes.getClosestNode();
+            int to = toRes.getClosestNode();
+
+            Path expected = new Dijkstra(queryGraph, carEncoder, weighting, tMode).calcPath(from, to);
+            Path p = prepare.createAlgo(queryGraph, opts).calcPath(from, to);
+            assertEquals(from + "->" + to, expected.isFound(), p.isFound());
+            assertEquals(from + "->" + to, expected.getWeight(), p.getWeight(), 1e-3);
+
+            WeightApproximator approx = prepare.createApproximator(queryGraph, weighting);
+            approx.setGoalNode(to);
+            Isochrone isochrone = new Isochrone(queryGraph, carEncoder, weighting).setReverse(true).search(to);
+            for (int node = 0; node < queryGraph.getNodes(); node++)
+            {
+                assertTrue(node + "->" + to, approx.approximate(node) <= isochrone.getWeight(node) + 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testFlushAndLoad()
+    {
+        createGraph(new RAMDirectory(location, true), 10, 111);
+        LandmarkStorage lms = new LandmarkStorage(graph, carEncoder, weighting, "car_fastest", 4).create(100);
+        lms.createLandmarks();
+        int[] landmarks = lms.getLandmarkNodes().clone();
+        double weight = lms.getFromWeight(2, 17);
+        graph.flush();
+        lms.flush();
+        lms.close();
+        graph.close();
+
+        graph = new GraphHopperStorage(new RAMDirectory(location, true), encodingManager, false);
+        assertTrue(graph.loadExisting());
+        lms = new LandmarkStorage(graph, carEncoder, weighting, "car_fastest", 4);
+        assertTrue(lms.loadExisting());
+        assertArrayEquals(landmarks, lms.getLandmarkNodes());
+        assertEquals(weight, lms.getFromWeight(2, 17), 1e-9);
+
+        assertFalse(new LandmarkStorage(graph, carEncoder, weighting, "car_shortest", 4).loadExisting());
+        try
+        {
+            new LandmarkStorage(graph, carEncoder, weighting, "car_fastest", 8).loadExisting();
+            fail();
+        } catch (IllegalStateException ex)
+        {
+        }
+        lms.close();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.util;
+
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.SpeedOverlay;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class TrafficWeightingTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final FlagEncoder encoder = encodingManager.getEncoder("CAR");
+
+    @Test
+    public void testOverlaySpeedIsPreferred()
+    {
+        GraphStorage graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false).create(100);
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(1000).setFlags(encoder.setProperties(50, true, true));
+        SpeedOverlay overlay = new SpeedOverlay(graph).create();
+        TrafficWeighting weighting = new TrafficWeighting(encoder, overlay);
+        FastestWeighting fastest = new FastestWeighting(encoder);
+
+        assertEquals(fastest.calcWeight(edge, false, EdgeIterator.NO_EDGE),
+                weighting.calcWeight(edge, false, EdgeIterator.NO_EDGE), 1e-6);
+
+        overlay.setSpeed(edge.getEdge(), false, 20);
+        assertEquals(1000 / 20d * 3.6, weighting.calcWeight(edge, false, EdgeIterator.NO_EDGE), 1e-6);
+        assertEquals(fastest.calcWeight(edge, true, EdgeIterator.NO_EDGE),
+                weighting.calcWeight(edge, true, EdgeIterator.NO_EDGE), 1e-6);
+
+        overlay.setSpeed(edge.getEdge(), true, 0);
+        assertEquals(1.0 / 0, weighting.calcWeight(edge, true, EdgeIterator.NO_EDGE), 1e-6);
+
+        // faster than the vehicle could drive would break getMinWeight
+        overlay.setSpeed(edge.getEdge(), false, 500);
+        assertEquals(weighting.getMinWeight(1000), weighting.calcWeight(edge, false, EdgeIterator.NO_EDGE), 1e-6);
+        graph.close();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class EdgeSeqLockTest
+{
+    @Test
+    public void testStripesPowerOfTwo()
+    {
+        try
+        {
+            new EdgeSeqLock(3);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testNoHalfWrittenRecords() throws InterruptedException
+    {
+        // every record consists of several ints which are always written with the same value.
+        // RAMDataAccess writes an int byte by byte, so even a single int could be torn
+        final int records = 8, ints = 4;
+        final DataAccess da = new RAMDataAccess("seqlock", "", false, ByteOrder.LITTLE_ENDIAN).
+                create(records * ints * 4);
+        final EdgeSeqLock lock = new EdgeSeqLock(4);
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        Thread[] threads = new Thread[6];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final boolean writer = t < 2;
+            final int writerId = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    int round = 0;
+                    while (!stop.get() && error.get() == null)
+                    {
+                        round++;
+                        for (int r = 0; r < records; r++)
+                        {
+                            long pointer = (long) r * ints * 4;
+                            if (writer)
+                            {
+                                int value = round * 0x01010101 + writerId;
+                                lock.writeLock(r);
+                                try
+                                {
+                                    for (int i = 0; i < ints; i++)
+                                    {
+                                        da.setInt(pointer + i * 4, value);
+                                    }
+                                } finally
+                                {
+                                    lock.writeUnlock(r);
+                                }
+                                continue;
+                            }
+
+                            int[] values = new int[ints];
+                            int seq;
+                            do
+                            {
+                                seq = lock.readBegin(r);
+                                for (int i = 0; i < ints; i++)
+                                {
+                                    values[i] = da.getInt(pointer + i * 4);
+                                }
+                            } while (!lock.validate(r, seq));
+
+                            for (int i = 1; i < ints; i++)
+                            {
+                                if (values[i] != values[0])
+                                    error.set("half written record " + r + ": " + values[0] + " vs " + values[i]);
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        Thread.sleep(1000);
+        stop.set(true);
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertNull(error.get());
+    }
+}
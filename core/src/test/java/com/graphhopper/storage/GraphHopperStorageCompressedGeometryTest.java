@@ -0,0 +1,174 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PointList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all storage tests with delta encoded pillar nodes.
+ * <p>
+ * @author Peter Karich
+ */
+public class GraphHopperStorageCompressedGeometryTest extends GraphHopperStorageTest
+{
+    @Override
+    protected GraphStorage newGraph( Directory dir, boolean enabled3D )
+    {
+        return new GraphHopperStorage(dir, encodingManager, enabled3D).setCompressedGeometry(true);
+    }
+
+    @Test
+    public void testGeometryRoundTrip()
+    {
+        graph = newGraph(new RAMDirectory(defaultGraphLoc, true), true).create(defaultSize);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 51.0, 9.0, 100);
+        na.setNode(1, -33.9, 151.2, -20);
+        PointList pillars = new PointList(3, true);
+        pillars.add(51.0001, 9.0002, 101.5);
+        pillars.add(-33.8999, 151.1999, -12.25);
+        pillars.add(0, -179.9, 0);
+        EdgeIteratorState edge = graph.edge(0, 1).setWayGeometry(pillars);
+
+        PointList fetched = edge.fetchWayGeometry(0);
+        assertEquals(3, fetched.getSize());
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(pillars.getLatitude(i), fetched.getLatitude(i), 1e-6);
+            assertEquals(pillars.getLongitude(i), fetched.getLongitude(i), 1e-6);
+            assertEquals(pillars.getElevation(i), fetched.getElevation(i), 1e-2);
+        }
+
+        // reverse direction
+        fetched = graph.getEdgeProps(edge.getEdge(), 0).fetchWayGeometry(3);
+        assertEquals(5, fetched.getSize());
+        assertEquals(-33.9, fetched.getLatitude(0), 1e-6);
+        assertEquals(0, fetched.getLatitude(1), 1e-6);
+        assertEquals(51.0001, fetched.getLatitude(3), 1e-6);
+        assertEquals(51.0, fetched.getLatitude(4), 1e-6);
+
+        graph.flush();
+        graph.close();
+        graph = newGraph(new RAMDirectory(defaultGraphLoc, true), true);
+        assertTrue(graph.loadExisting());
+        assertTrue(((GraphHopperStorage) graph).isCompressedGeometry());
+        fetched = graph.getEdgeProps(edge.getEdge(), 1).fetchWayGeometry(0);
+        assertEquals(-179.9, fetched.getLongitude(2), 1e-6);
+    }
+
+    @Test
+    public void testSmallerThanUncompressed()
+    {
+        GraphHopperStorage compressed = (GraphHopperStorage) newGraph(new RAMDirectory(), false).create(defaultSize);
+        GraphHopperStorage raw = new GraphHopperStorage(new RAMDirectory(), encodingManager, false);
+        raw.create(defaultSize);
+        for (GraphHopperStorage g : new GraphHopperStorage[]
+        {
+            compressed, raw
+        })
+        {
+            for (int e = 0; e < 100; e++)
+            {
+                PointList pillars = new PointList(20, false);
+                for (int i = 0; i < 20; i++)
+                {
+                    pillars.add(48 + e * 0.01 + i * 0.0001, 11 + i * 0.00015);
+                }
+                g.edge(e, e + 1).setWayGeometry(pillars);
+            }
+        }
+        int rawRefs = getGeoRefs(raw), compressedRefs = getGeoRefs(compressed);
+        assertTrue(rawRefs + " vs. " + compressedRefs, compressedRefs * 3 < rawRefs * 2);
+        assertEquals(raw.getEdgeProps(55, 56).fetchWayGeometry(0).toString(),
+                compressed.getEdgeProps(55, 56).fetchWayGeometry(0).toString());
+        raw.close();
+        compressed.close();
+    }
+
+    @Test
+    public void testSwappedTowerNodes()
+    {
+        graph = newGraph(new RAMDirectory(), true).create(defaultSize);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50.0, 10.0, 10);
+        na.setNode(1, 50.1, 10.1, 20);
+        na.setNode(2, 50.2, 10.2, 30);
+        na.setNode(3, 50.3, 10.3, 40);
+        PointList pillars = new PointList(2, true);
+        pillars.add(50.11, 10.11, 21);
+        pillars.add(50.29, 10.29, 39);
+        graph.edge(1, 3).setWayGeometry(pillars);
+        graph.edge(1, 2);
+        String expected = GHUtility.getEdge(graph, 1, 3).fetchWayGeometry(3).toString();
+
+        // moves node 3 to 0 so that node A and B of the edge are swapped
+        graph.markNodeRemoved(0);
+        graph.optimize();
+        assertEquals(expected, GHUtility.getEdge(graph, 1, 0).fetchWayGeometry(3).toString());
+
+        ((GraphHopperStorage) graph).renumberNodes(new int[]
+        {
+            2, 1, 0
+        });
+        assertEquals(expected, GHUtility.getEdge(graph, 1, 2).fetchWayGeometry(3).toString());
+    }
+
+    @Test
+    public void testSmallerForRealExtract()
+    {
+        GraphHopperStorage[] graphs = new GraphHopperStorage[2];
+        for (int i = 0; i < graphs.length; i++)
+        {
+            GraphHopper hopper = new GraphHopper().setInMemory().
+                    setEncodingManager(new EncodingManager("CAR")).
+                    setCHEnable(false).
+                    setCompressedGeometry(i == 1).
+                    setGraphHopperLocation(defaultGraphLoc + "/" + i).
+                    setOSMFile("files/andorra.osm.pbf");
+            hopper.importOrLoad();
+            graphs[i] = (GraphHopperStorage) hopper.getGraph();
+        }
+
+        GraphHopperStorage raw = graphs[0], compressed = graphs[1];
+        int rawRefs = getGeoRefs(raw), compressedRefs = getGeoRefs(compressed);
+        // with the first point relative to zero instead of the tower node it was 62%
+        assertTrue(rawRefs + " vs. " + compressedRefs, compressedRefs * 16 < rawRefs * 9);
+        AllEdgesIterator iter = raw.getAllEdges();
+        while (iter.next())
+        {
+            assertEquals(iter.fetchWayGeometry(3).toString(),
+                    compressed.getEdgeProps(iter.getEdge(), iter.getAdjNode()).fetchWayGeometry(3).toString());
+        }
+        raw.close();
+        compressed.close();
+    }
+
+    static int getGeoRefs( GraphHopperStorage g )
+    {
+        String geo = g.toDetailsString().replaceAll(".*geo:([^(]+)\\(.*", "$1");
+        return Integer.parseInt(geo.replaceAll("[^0-9]", ""));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all storage tests with flags, name and additional field in a shared table.
+ * <p>
+ * @author Peter Karich
+ */
+public class GraphHopperStorageSharedAttributesTest extends GraphHopperStorageTest
+{
+    @Override
+    protected GraphStorage newGraph( Directory dir, boolean enabled3D )
+    {
+        return new GraphHopperStorage(dir, encodingManager, enabled3D).setSharedEdgeAttributes(true);
+    }
+
+    @Override
+    protected GraphStorage newRAMGraph()
+    {
+        return newGraph(new RAMDirectory(), false);
+    }
+
+    @Test
+    public void testEntriesAreShared()
+    {
+        GraphHopperStorage shared = (GraphHopperStorage) newGraph(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        GraphHopperStorage raw = new GraphHopperStorage(new RAMDirectory(), encodingManager, false);
+        raw.create(defaultSize);
+        assertTrue(shared.edgeEntryBytes < raw.edgeEntryBytes);
+
+        long flags = carEncoder.setProperties(60, true, false);
+        for (int i = 0; i < 10; i++)
+        {
+            shared.edge(i, i + 1).setDistance(10).setFlags(flags).setName("main street");
+        }
+        EdgeIteratorState edge = shared.edge(10, 11).setDistance(10).setFlags(flags).setName("side street");
+        // the default entry, main street and an intermediate entry while setting flags and name of each street
+        assertEquals(4, shared.getEdgeAttributeCount());
+
+        edge.setFlags(flags).setDistance(20);
+        assertEquals(4, shared.getEdgeAttributeCount());
+        assertEquals("side street", edge.getName());
+        assertEquals(flags, shared.getEdgeProps(edge.getEdge(), 11).getFlags());
+        assertEquals(encodingManager.reverseFlags(flags), shared.getEdgeProps(edge.getEdge(), 10).getFlags());
+
+        shared.flush();
+        shared.close();
+        raw.close();
+
+        // layout is read from the properties
+        GraphHopperStorage loaded = new GraphHopperStorage(new RAMDirectory(defaultGraphLoc, true), encodingManager, false);
+        assertTrue(loaded.loadExisting());
+        assertTrue(loaded.isSharedEdgeAttributes());
+        assertEquals(4, loaded.getEdgeAttributeCount());
+        assertEquals("side street", loaded.getEdgeProps(10, 11).getName());
+        loaded.getEdgeProps(10, 11).setFlags(flags);
+        assertEquals(4, loaded.getEdgeAttributeCount());
+        loaded.getEdgeProps(10, 11).setFlags(carEncoder.setProperties(30, true, false));
+        assertEquals(5, loaded.getEdgeAttributeCount());
+        assertEquals("side street", loaded.getEdgeProps(10, 11).getName());
+        loaded.close();
+    }
+
+    @Test
+    public void testAdditionalField()
+    {
+        GraphExtension ext = new GraphExtension.NoExtendedStorage()
+        {
+            @Override
+            public boolean isRequireEdgeField()
+            {
+                return true;
+            }
+
+            @Override
+            public int getDefaultEdgeFieldValue()
+            {
+                return 7;
+            }
+        };
+        GraphHopperStorage g = new GraphHopperStorage(new RAMDirectory(), encodingManager, false, ext).
+                setSharedEdgeAttributes(true);
+        g.create(defaultSize);
+        EdgeIteratorState edge1 = g.edge(0, 1).setDistance(10).setFlags(carEncoder.setProperties(60, true, true));
+        EdgeIteratorState edge2 = g.edge(1, 2).setDistance(10).setFlags(carEncoder.setProperties(60, true, true));
+        edge1.setAdditionalField(5);
+        assertEquals(5, edge1.getAdditionalField());
+        assertEquals(7, edge2.getAdditionalField());
+        assertEquals(edge2.getFlags(), edge1.getFlags());
+        g.close();
+    }
+}
@@ -17,9 +17,12 @@
  */
 package com.graphhopper.storage;
 
+import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -205,4 +208,72 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester
 
         }
     }
+
+    @Test
+    public void testConcurrentEdgeUpdates() throws InterruptedException
+    {
+        // long flags need two ints and RAMDataAccess writes an int byte by byte
+        final GraphHopperStorage gs = new GraphHopperStorage(new RAMDirectory(), new EncodingManager("CAR", 8), false);
+        gs.setConcurrentEdgeUpdates(true);
+        assertTrue(gs.isConcurrentEdgeUpdates());
+        gs.create(defaultSize);
+        final long flagsA = 0x5555555555555555L, flagsB = 0xAAAAAAAAAAAAAAAAL;
+        for (int i = 0; i < 10; i++)
+        {
+            gs.edge(i, i + 1).setDistance(100).setFlags(flagsA);
+        }
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++)
+        {
+            readers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    while (!stop.get() && error.get() == null)
+                    {
+                        for (int i = 0; i < 10; i++)
+                        {
+                            EdgeIteratorState edge = gs.getEdgeProps(i, i + 1);
+                            long flags = edge.getFlags();
+                            double dist = edge.getDistance();
+                            if (flags != flagsA && flags != flagsB)
+                                error.set("torn flags " + Long.toHexString(flags));
+                            if (dist != 100 && dist != 200000)
+                                error.set("torn distance " + dist);
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+
+        for (int round = 0; round < 20000 && error.get() == null; round++)
+        {
+            boolean even = round % 2 == 0;
+            for (int i = 0; i < 10; i++)
+            {
+                gs.getEdgeProps(i, i + 1).setFlags(even ? flagsB : flagsA).setDistance(even ? 200000 : 100);
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers)
+        {
+            reader.join();
+        }
+        assertNull(error.get());
+        assertEquals(flagsA, gs.getEdgeProps(3, 4).getFlags());
+        assertEquals(100, gs.getEdgeProps(3, 4).getDistance(), 1e-3);
+
+        try
+        {
+            gs.setConcurrentEdgeUpdates(false);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
 }
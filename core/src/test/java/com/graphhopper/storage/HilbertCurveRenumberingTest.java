@@ -0,0 +1,278 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PointList;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class HilbertCurveRenumberingTest
+{
+    private static final int SIZE = 12;
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final CarFlagEncoder carEncoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+    private final Weighting weighting = new FastestWeighting(carEncoder);
+
+    /**
+     * Creates a grid with randomly assigned node ids, some one-ways, names and pillar nodes.
+     * <p>
+     * @return the node id of every grid position
+     */
+    int[] initGrid( Graph g, long seed )
+    {
+        Random rand = new Random(seed);
+        int[] ids = new int[SIZE * SIZE];
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = i;
+        }
+        for (int i = ids.length - 1; i > 0; i--)
+        {
+            int j = rand.nextInt(i + 1);
+            int tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+
+        NodeAccess na = g.getNodeAccess();
+        for (int row = 0; row < SIZE; row++)
+        {
+            for (int col = 0; col < SIZE; col++)
+            {
+                na.setNode(ids[row * SIZE + col], 50 + row * 0.01, 10 + col * 0.01);
+            }
+        }
+        for (int row = 0; row < SIZE; row++)
+        {
+            for (int col = 0; col < SIZE; col++)
+            {
+                int node = ids[row * SIZE + col];
+                if (col + 1 < SIZE)
+                    addEdge(g, rand, node, ids[row * SIZE + col + 1], 50 + row * 0.01, 10 + col * 0.01);
+                if (row + 1 < SIZE)
+                    addEdge(g, rand, node, ids[(row + 1) * SIZE + col], 50 + row * 0.01, 10 + col * 0.01);
+            }
+        }
+        return ids;
+    }
+
+    private void addEdge( Graph g, Random rand, int from, int to, double lat, double lon )
+    {
+        boolean oneWay = rand.nextInt(5) == 0;
+        EdgeIteratorState edge = g.edge(from, to).setDistance(800 + rand.nextInt(400)).
+                setFlags(carEncoder.setProperties(20 + rand.nextInt(80), true, !oneWay)).
+                setName("street " + from + "-" + to);
+        PointList pillars = new PointList(2, false);
+        pillars.add(lat + 0.001, lon + 0.002);
+        pillars.add(lat + 0.003, lon + 0.004);
+        edge.setWayGeometry(pillars);
+    }
+
+    private Path calcPath( Graph g, int from, int to )
+    {
+        return new Dijkstra(g, carEncoder, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+    }
+
+    @Test
+    public void testRenumberKeepsRoutesAndProperties()
+    {
+        GraphHopperStorage g = (GraphHopperStorage) new GraphBuilder(encodingManager).create();
+        int[] ids = initGrid(g, 1);
+        int from = ids[3], to = ids[SIZE * SIZE - 5];
+        Path before = calcPath(g, from, to);
+        assertTrue(before.isFound());
+        PointList pointsBefore = before.calcPoints();
+        int edgeCount = g.getAllEdges().getCount();
+        HilbertCurveRenumbering.Locality localityBefore = HilbertCurveRenumbering.calcLocality(g);
+
+        HilbertCurveRenumbering renumbering = new HilbertCurveRenumbering(g);
+        int[] oldToNew = renumbering.createOrder();
+        g.renumberNodes(oldToNew);
+
+        assertEquals(edgeCount, g.getAllEdges().getCount());
+        Path after = calcPath(g, oldToNew[from], oldToNew[to]);
+        assertEquals(before.getDistance(), after.getDistance(), 1e-6);
+        assertEquals(before.getMillis(), after.getMillis());
+        assertEquals(pointsBefore.toString(), after.calcPoints().toString());
+
+        NodeAccess na = g.getNodeAccess();
+        assertEquals(50, na.getLatitude(oldToNew[ids[0]]), 1e-6);
+        assertEquals(10.01, na.getLongitude(oldToNew[ids[1]]), 1e-6);
+
+        // edges are ordered by their base node
+        AllEdgesIterator iter = g.getAllEdges();
+        int prevBase = -1;
+        while (iter.next())
+        {
+            assertTrue(iter.getBaseNode() <= iter.getAdjNode());
+            assertTrue(prevBase <= iter.getBaseNode());
+            prevBase = iter.getBaseNode();
+        }
+
+        HilbertCurveRenumbering.Locality localityAfter = HilbertCurveRenumbering.calcLocality(g);
+        assertTrue(localityBefore + " vs. " + localityAfter, localityAfter.getNodeGap() * 2 < localityBefore.getNodeGap());
+    }
+
+    @Test
+    public void testRenumberOneWayAndGeometry()
+    {
+        GraphHopperStorage g = (GraphHopperStorage) new GraphBuilder(encodingManager).create();
+        checkRenumberOneWayAndGeometry(g);
+        g = (GraphHopperStorage) new GraphBuilder(encodingManager).build();
+        g.setCompressedGeometry(true).create(100);
+        checkRenumberOneWayAndGeometry(g);
+    }
+
+    private void checkRenumberOneWayAndGeometry( GraphHopperStorage g )
+    {
+        g.getNodeAccess().setNode(0, 50, 10);
+        g.getNodeAccess().setNode(1, 50.1, 10.1);
+        PointList pillars = new PointList(2, false);
+        pillars.add(50.01, 10.02);
+        pillars.add(50.03, 10.04);
+        g.edge(0, 1).setDistance(100).setFlags(carEncoder.setProperties(50, true, false)).
+                setWayGeometry(pillars).setName("main");
+
+        g.renumberNodes(new int[]
+        {
+            1, 0
+        });
+        EdgeIteratorState edge = GHUtility.getEdge(g, 1, 0);
+        assertEquals(1, edge.getBaseNode());
+        assertTrue(carEncoder.isBool(edge.getFlags(), FlagEncoder.K_FORWARD));
+        assertFalse(carEncoder.isBool(edge.getFlags(), FlagEncoder.K_BACKWARD));
+        PointList fetched = edge.fetchWayGeometry(0);
+        assertEquals(2, fetched.getSize());
+        assertEquals(50.01, fetched.getLatitude(0), 1e-6);
+        assertEquals(10.04, fetched.getLongitude(1), 1e-6);
+        assertEquals("main", edge.getName());
+        assertEquals(50.1, g.getNodeAccess().getLatitude(0), 1e-6);
+
+        try
+        {
+            g.renumberNodes(new int[]
+            {
+                0, 0
+            });
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testRenumberAfterCH()
+    {
+        LevelGraphStorage g = new GraphBuilder(encodingManager).levelGraphCreate();
+        int[] ids = initGrid(g, 2);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(g, carEncoder, weighting,
+                TraversalMode.NODE_BASED);
+        prepare.doWork();
+        int shortcuts = g.getAllEdges().getCount();
+        AlgorithmOptions opts = new AlgorithmOptions(AlgorithmOptions.DIJKSTRA_BI, carEncoder, weighting);
+
+        Random rand = new Random(3);
+        int[] from = new int[20], to = new int[20];
+        double[] distances = new double[20];
+        for (int i = 0; i < from.length; i++)
+        {
+            from[i] = rand.nextInt(g.getNodes());
+            to[i] = rand.nextInt(g.getNodes());
+            RoutingAlgorithm algo = prepare.createAlgo(g, opts);
+            distances[i] = algo.calcPath(from[i], to[i]).getDistance();
+        }
+
+        int[] oldToNew = new HilbertCurveRenumbering(g).createOrder();
+        int[] levels = new int[g.getNodes()];
+        for (int node = 0; node < levels.length; node++)
+        {
+            levels[node] = g.getLevel(node);
+        }
+        g.renumberNodes(oldToNew);
+        assertEquals(shortcuts, g.getAllEdges().getCount());
+        for (int node = 0; node < levels.length; node++)
+        {
+            assertEquals(levels[node], g.getLevel(oldToNew[node]));
+        }
+
+        for (int i = 0; i < from.length; i++)
+        {
+            RoutingAlgorithm algo = prepare.createAlgo(g, opts);
+            Path path = algo.calcPath(oldToNew[from[i]], oldToNew[to[i]]);
+            assertEquals(distances[i], path.getDistance(), 1e-6);
+        }
+        assertEquals(50, g.getNodeAccess().getLatitude(oldToNew[ids[0]]), 1e-6);
+    }
+
+    @Test
+    public void testHilbertIndexIsContinuous()
+    {
+        // neighboring cells of the curve differ in exactly one coordinate by one
+        SpatialKeyAlgoHelper helper = new SpatialKeyAlgoHelper();
+        long prev = -1;
+        int[] prevXY = null;
+        int n = 8;
+        int[][] byIndex = new int[n * n][];
+        for (int x = 0; x < n; x++)
+        {
+            for (int y = 0; y < n; y++)
+            {
+                long index = HilbertCurveRenumbering.toHilbertIndex(helper.interleave(x << 13, y << 13)) >>> 26;
+                assertNull(byIndex[(int) index]);
+                byIndex[(int) index] = new int[]
+                {
+                    x, y
+                };
+            }
+        }
+        for (int[] xy : byIndex)
+        {
+            if (prevXY != null)
+                assertEquals(1, Math.abs(xy[0] - prevXY[0]) + Math.abs(xy[1] - prevXY[1]));
+            prevXY = xy;
+        }
+    }
+
+    private static class SpatialKeyAlgoHelper
+    {
+        // same bit layout as SpatialKeyAlgo: lat (y) before lon (x) for every bit
+        long interleave( int x, int y )
+        {
+            long key = 0;
+            for (int i = 15; i >= 0; i--)
+            {
+                key = (key << 1) | ((y >>> i) & 1);
+                key = (key << 1) | ((x >>> i) & 1);
+            }
+            return key;
+        }
+    }
+}
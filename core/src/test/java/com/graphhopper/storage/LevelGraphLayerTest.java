@@ -0,0 +1,181 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.*;
+import com.graphhopper.util.*;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class LevelGraphLayerTest
+{
+    private final String location = "./target/graphstorage/layer";
+    private final EncodingManager encodingManager = new EncodingManager("CAR,FOOT");
+    private final CarFlagEncoder carEncoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+    private final FootFlagEncoder footEncoder = (FootFlagEncoder) encodingManager.getEncoder("FOOT");
+    private GraphHopperStorage baseGraph;
+
+    @Before
+    public void setUp()
+    {
+        Helper.removeDir(new File(location));
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (baseGraph != null)
+            baseGraph.close();
+        Helper.removeDir(new File(location));
+    }
+
+    GraphHopperStorage createBaseGraph( Directory dir )
+    {
+        baseGraph = new GraphHopperStorage(dir, encodingManager, false);
+        baseGraph.create(100);
+        long flags = carEncoder.setProperties(60, true, true) | footEncoder.setProperties(5, true, true);
+        baseGraph.edge(0, 1).setDistance(10).setFlags(flags);
+        baseGraph.edge(1, 2).setDistance(20).setFlags(flags);
+        baseGraph.edge(2, 3).setDistance(30).setFlags(flags);
+        return baseGraph;
+    }
+
+    @Test
+    public void testShortcuts()
+    {
+        createBaseGraph(new RAMDirectory());
+        LevelGraphLayer layer = new LevelGraphLayer(baseGraph, footEncoder, "foot_fastest").create(100);
+        assertEquals(4, layer.getNodes());
+        assertEquals(3, layer.getAllEdges().getCount());
+
+        EdgeSkipIterState sc = layer.shortcut(2, 0);
+        sc.setFlags(footEncoder.setAccess(0, true, false));
+        sc.setWeight(12.5).setDistance(30);
+        sc.setSkippedEdges(0, 1);
+        assertEquals(3, sc.getEdge());
+        assertEquals(2, sc.getBaseNode());
+        assertEquals(0, sc.getAdjNode());
+        assertTrue(sc.isShortcut());
+        assertEquals(12.5, sc.getWeight(), 1e-3);
+        assertEquals(30, sc.getDistance(), 1e-3);
+        assertEquals(4, layer.getAllEdges().getCount());
+
+        // the shortcut is stored for the layer only
+        assertEquals(3, baseGraph.getAllEdges().getCount());
+        assertEquals(GHUtility.asSet(1), GHUtility.getNeighbors(baseGraph.createEdgeExplorer().setBaseNode(0)));
+        assertEquals(GHUtility.asSet(1, 2), GHUtility.getNeighbors(layer.createEdgeExplorer().setBaseNode(0)));
+
+        // direction is relative to the base node and stored via the access flags of the encoder
+        EdgeExplorer footOut = layer.createEdgeExplorer(new DefaultEdgeFilter(footEncoder, false, true));
+        assertEquals(GHUtility.asSet(0, 1, 3), GHUtility.getNeighbors(footOut.setBaseNode(2)));
+        assertEquals(GHUtility.asSet(1), GHUtility.getNeighbors(footOut.setBaseNode(0)));
+        EdgeExplorer footIn = layer.createEdgeExplorer(new DefaultEdgeFilter(footEncoder, true, false));
+        assertEquals(GHUtility.asSet(1, 2), GHUtility.getNeighbors(footIn.setBaseNode(0)));
+
+        EdgeSkipIterState state = layer.getEdgeProps(3, 2);
+        assertTrue(state.isShortcut());
+        assertEquals(0, state.getBaseNode());
+        assertEquals(0, state.getSkippedEdge1());
+        assertEquals(1, state.getSkippedEdge2());
+        assertFalse(footEncoder.isBool(state.getFlags(), FlagEncoder.K_FORWARD));
+        assertTrue(footEncoder.isBool(state.getFlags(), FlagEncoder.K_BACKWARD));
+        assertNull(layer.getEdgeProps(3, 1));
+
+        state = layer.getEdgeProps(1, 2);
+        assertFalse(state.isShortcut());
+        assertEquals(20, state.getDistance(), 1e-3);
+        assertEquals(EdgeIterator.NO_EDGE, state.getSkippedEdge1());
+
+        AllEdgesSkipIterator iter = layer.getAllEdges();
+        int shortcuts = 0;
+        int edges = 0;
+        while (iter.next())
+        {
+            if (iter.isShortcut())
+                shortcuts++;
+            edges++;
+        }
+        assertEquals(1, shortcuts);
+        assertEquals(4, edges);
+    }
+
+    @Test
+    public void testLevelEdgeFilter()
+    {
+        createBaseGraph(new RAMDirectory());
+        LevelGraphLayer layer = new LevelGraphLayer(baseGraph, carEncoder, "car_fastest").create(100);
+        layer.shortcut(0, 2).setWeight(10).setDistance(30).setFlags(carEncoder.setAccess(0, true, true));
+        layer.setLevel(1, 0);
+        layer.setLevel(0, 1);
+        layer.setLevel(2, 2);
+        assertEquals(2, layer.getLevel(2));
+
+        EdgeExplorer explorer = layer.createEdgeExplorer(new LevelEdgeFilter(layer));
+        assertEquals(GHUtility.asSet(2), GHUtility.getNeighbors(explorer.setBaseNode(0)));
+        assertEquals(GHUtility.asSet(0, 2), GHUtility.getNeighbors(explorer.setBaseNode(1)));
+    }
+
+    @Test
+    public void testLayersDoNotInterfere()
+    {
+        createBaseGraph(new RAMDirectory());
+        LevelGraphLayer carLayer = new LevelGraphLayer(baseGraph, carEncoder, "car_fastest").create(100);
+        LevelGraphLayer footLayer = new LevelGraphLayer(baseGraph, footEncoder, "foot_shortest").create(100);
+        carLayer.shortcut(0, 2).setFlags(carEncoder.setAccess(0, true, true));
+        footLayer.shortcut(1, 3).setFlags(footEncoder.setAccess(0, true, true));
+        carLayer.setLevel(3, 5);
+
+        assertEquals(GHUtility.asSet(0, 2), GHUtility.getNeighbors(carLayer.createEdgeExplorer().setBaseNode(1)));
+        assertEquals(GHUtility.asSet(0, 2, 3), GHUtility.getNeighbors(footLayer.createEdgeExplorer().setBaseNode(1)));
+        assertEquals(0, footLayer.getLevel(3));
+        assertEquals(1, carLayer.getShortcuts());
+        assertEquals(1, footLayer.getShortcuts());
+    }
+
+    @Test
+    public void testFlushAndLoad()
+    {
+        createBaseGraph(new RAMDirectory(location, true));
+        LevelGraphLayer layer = new LevelGraphLayer(baseGraph, carEncoder, "car_fastest").create(100);
+        layer.shortcut(0, 2).setWeight(10).setDistance(30).setFlags(carEncoder.setAccess(0, true, false));
+        layer.setLevel(1, 3);
+        baseGraph.flush();
+        layer.flush();
+        layer.close();
+        baseGraph.close();
+
+        baseGraph = new GraphHopperStorage(new RAMDirectory(location, true), encodingManager, false);
+        assertTrue(baseGraph.loadExisting());
+        layer = new LevelGraphLayer(baseGraph, carEncoder, "car_fastest");
+        assertTrue(layer.loadExisting());
+        assertEquals(1, layer.getShortcuts());
+        assertEquals(3, layer.getLevel(1));
+        EdgeSkipIterState sc = layer.getEdgeProps(3, 2);
+        assertEquals(10, sc.getWeight(), 1e-3);
+        assertTrue(carEncoder.isBool(sc.getFlags(), FlagEncoder.K_FORWARD));
+        assertFalse(carEncoder.isBool(sc.getFlags(), FlagEncoder.K_BACKWARD));
+
+        assertFalse(new LevelGraphLayer(baseGraph, carEncoder, "car_shortest").loadExisting());
+    }
+}
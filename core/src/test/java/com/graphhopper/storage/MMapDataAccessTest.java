@@ -17,6 +17,7 @@
  */
 package com.graphhopper.storage;
 
+import java.nio.ReadOnlyBufferException;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -62,4 +63,35 @@ public class MMapDataAccessTest extends DataAccessTest
         assertEquals(123, da.getInt(7 * 4));
         da.close();
     }
+
+    @Test
+    public void testLoadReadOnly()
+    {
+        DataAccess da = createDataAccess(name);
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        da.setInt(200, 456);
+        da.setHeader(0, 789);
+        da.flush();
+        assertEquals(3, da.getSegments());
+        da.close();
+
+        da = new MMapDataAccess(name, directory, defaultOrder, false);
+        assertTrue(da.loadExisting());
+        // the file is mapped as a whole and not per segment
+        assertEquals(1, da.getSegments());
+        assertEquals(3 * 128, da.getCapacity());
+        assertEquals(123, da.getInt(7 * 4));
+        assertEquals(456, da.getInt(200));
+        assertEquals(789, da.getHeader(0));
+        ((MMapDataAccess) da).preload();
+        try
+        {
+            da.setInt(7 * 4, 1);
+            assertTrue(false);
+        } catch (ReadOnlyBufferException ex)
+        {
+        }
+        da.close();
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class ShortestPathTreeTest
+{
+    @Test
+    public void testAddAndFind()
+    {
+        ShortestPathTree tree = new ShortestPathTree(2);
+        int root = tree.add(5, EdgeIterator.NO_EDGE, 5, 0, ShortestPathTree.NO_PARENT);
+        assertEquals(0, root);
+        assertEquals(-1, tree.getVisitId(3));
+        assertEquals(-1, tree.getVisitId(-1));
+        assertEquals(-1, tree.getVisitId(1000));
+        assertEquals(0, tree.getVisitId(5));
+
+        // grows beyond the initial capacity
+        for (int i = 0; i < 30; i++)
+        {
+            int id = tree.add(100 + i, i, 100 + i, i + 1, i);
+            assertEquals(i + 1, id);
+        }
+        assertEquals(31, tree.size());
+        assertEquals(11, tree.getVisitId(110));
+        assertEquals(10, tree.getParent(11));
+        assertEquals(110, tree.getAdjNode(11));
+        assertEquals(11, tree.getWeight(11), 1e-6);
+
+        tree.set(11, 7, 2.5, 0);
+        assertEquals(7, tree.getEdge(11));
+        assertEquals(2.5, tree.getWeight(11), 1e-6);
+        assertEquals(0, tree.getParent(11));
+    }
+
+    @Test
+    public void testClear()
+    {
+        ShortestPathTree tree = new ShortestPathTree(10);
+        tree.add(1, EdgeIterator.NO_EDGE, 1, 0, ShortestPathTree.NO_PARENT);
+        tree.add(2, 0, 2, 1, 0);
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(-1, tree.getVisitId(1));
+        assertEquals(-1, tree.getVisitId(2));
+
+        // a stale mapping must not be found although it points to a valid visit id again
+        tree.add(2, 0, 2, 1, ShortestPathTree.NO_PARENT);
+        assertEquals(-1, tree.getVisitId(1));
+        assertEquals(0, tree.getVisitId(2));
+
+        // entries without traversal id cannot be found
+        assertEquals(1, tree.add(-1, EdgeIterator.NO_EDGE, 1, 0, ShortestPathTree.NO_PARENT));
+        assertEquals(-1, tree.getVisitId(1));
+    }
+
+    @Test
+    public void testLargeTraversalIds()
+    {
+        ShortestPathTree tree = new ShortestPathTree(10);
+        long capacity = tree.getCapacity();
+        // e.g. a virtual node or an edge key must not allocate memory for all smaller ids
+        int first = tree.add(Integer.MAX_VALUE - 1, EdgeIterator.NO_EDGE, 1, 0, ShortestPathTree.NO_PARENT);
+        assertEquals(capacity, tree.getCapacity());
+        assertEquals(first, tree.getVisitId(Integer.MAX_VALUE - 1));
+
+        // many ids with the same lower bits need the rehashing and probing
+        for (int round = 0; round < 3; round++)
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                assertEquals(-1, tree.getVisitId(i << 16));
+                tree.add(i << 16, i, i, i, ShortestPathTree.NO_PARENT);
+            }
+            for (int i = 0; i < 1000; i++)
+            {
+                assertEquals(i + 1 - Math.min(round, 1), tree.getVisitId(i << 16));
+            }
+            assertEquals(-1, tree.getVisitId(1000 << 16));
+            tree.clear();
+            assertEquals(-1, tree.getVisitId(Integer.MAX_VALUE - 1));
+            assertEquals(-1, tree.getVisitId(5 << 16));
+        }
+    }
+
+    @Test
+    public void testCreateEdgeEntry()
+    {
+        ShortestPathTree tree = new ShortestPathTree(10);
+        int root = tree.add(-1, EdgeIterator.NO_EDGE, 3, 0, ShortestPathTree.NO_PARENT);
+        int a = tree.add(4, 10, 4, 1, root);
+        int b = tree.add(5, 11, 5, 3, a);
+        EdgeEntry ee = tree.createEdgeEntry(b);
+        assertEquals(11, ee.edge);
+        assertEquals(5, ee.adjNode);
+        assertEquals(3, ee.weight, 1e-6);
+        assertEquals(10, ee.parent.edge);
+        assertEquals(4, ee.parent.adjNode);
+        assertEquals(EdgeIterator.NO_EDGE, ee.parent.parent.edge);
+        assertEquals(3, ee.parent.parent.adjNode);
+        assertNull(ee.parent.parent.parent);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class SpeedOverlayTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final CarFlagEncoder encoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+    private GraphStorage graph;
+    private SpeedOverlay overlay;
+
+    @Before
+    public void setUp()
+    {
+        graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false).create(100);
+        long flags = encoder.setProperties(50, true, true);
+        graph.edge(0, 1).setDistance(100).setFlags(flags);
+        graph.edge(1, 2).setDistance(100).setFlags(flags);
+        graph.edge(3, 2).setDistance(100).setFlags(flags);
+        overlay = new SpeedOverlay(graph).create();
+    }
+
+    @After
+    public void tearDown()
+    {
+        overlay.close();
+        graph.close();
+    }
+
+    @Test
+    public void testSetAndRemove()
+    {
+        assertEquals(3, overlay.getEdgeCount());
+        assertTrue(overlay.getSpeed(1, false) < 0);
+        assertTrue(overlay.getSpeed(1, true) < 0);
+
+        overlay.setSpeed(1, false, 23.45);
+        overlay.setSpeed(1, true, 0);
+        assertEquals(23.45, overlay.getSpeed(1, false), 1e-6);
+        assertEquals(0, overlay.getSpeed(1, true), 1e-6);
+        assertTrue(overlay.getSpeed(0, false) < 0);
+
+        overlay.setSpeed(1, false, -1);
+        assertTrue(overlay.getSpeed(1, false) < 0);
+        assertEquals(0, overlay.getSpeed(1, true), 1e-6);
+
+        overlay.clear();
+        assertTrue(overlay.getSpeed(1, true) < 0);
+
+        // unknown edges like shortcuts or virtual edges have no speed
+        assertTrue(overlay.getSpeed(3, false) < 0);
+        assertTrue(overlay.getSpeed(-1, false) < 0);
+        try
+        {
+            overlay.setSpeed(3, false, 10);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testDirectionOfEdgeState()
+    {
+        overlay.setSpeed(2, false, 10);
+        overlay.setSpeed(2, true, 20);
+
+        // created from 3 to 2 but the storage and so AllEdgesIterator uses 2 to 3
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+        {
+            if (iter.getEdge() == 2)
+                assertEquals(2, iter.getBaseNode());
+        }
+
+        EdgeIteratorState state = graph.getEdgeProps(2, 3);
+        assertEquals(2, state.getBaseNode());
+        assertEquals(10, overlay.getSpeed(state, false), 1e-6);
+        assertEquals(20, overlay.getSpeed(state, true), 1e-6);
+
+        state = graph.getEdgeProps(2, 2);
+        assertEquals(3, state.getBaseNode());
+        assertEquals(20, overlay.getSpeed(state, false), 1e-6);
+        assertEquals(10, overlay.getSpeed(state, true), 1e-6);
+    }
+}
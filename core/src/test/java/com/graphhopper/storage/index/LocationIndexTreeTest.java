@@ -26,7 +26,9 @@ import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import gnu.trove.set.hash.TIntHashSet;
+import java.io.File;
 import java.util.Arrays;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -211,6 +213,88 @@ public class LocationIndexTreeTest extends AbstractLocationIndexTester
         assertEquals(str44 + "01010101111101111101", BitUtil.BIG.toBitString(index.createReverseKey(1.7, 0.099)));
     }
 
+    Graph createRandomGraph( Random rand, int nodes )
+    {
+        Graph graph = createGraph(new RAMDirectory(), encodingManager, false);
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < nodes; i++)
+        {
+            na.setNode(i, 50 + rand.nextDouble(), 10 + rand.nextDouble());
+        }
+        for (int i = 0; i < 2 * nodes; i++)
+        {
+            EdgeIteratorState edge = graph.edge(rand.nextInt(nodes), rand.nextInt(nodes), 1, true);
+            if (i % 3 == 0)
+                edge.setWayGeometry(Helper.createPointList(50 + rand.nextDouble(), 10 + rand.nextDouble()));
+        }
+        return graph;
+    }
+
+    @Test
+    public void testSortedConstruction()
+    {
+        Graph graph = createRandomGraph(new Random(1), 300);
+        LocationIndexTree inMem = new LocationIndexTree(graph, new RAMDirectory());
+        inMem.setMinResolutionInMeter(2000).prepareIndex();
+        for (int bufferSize : new int[]
+        {
+            3, 100000
+        })
+        {
+            Helper.removeDir(new File(location));
+            Directory dir = new RAMDirectory(location, true);
+            LocationIndexTree sorted = new LocationIndexTree(graph, dir);
+            sorted.setSortBufferSize(bufferSize).setMinResolutionInMeter(2000).prepareIndex();
+            assertFalse(new File(location, "locationIndexRuns").exists());
+
+            long len = Math.max(inMem.dataAccess.getCapacity(), sorted.dataAccess.getCapacity());
+            for (long pointer = 0; pointer < len; pointer += 4)
+            {
+                int expected = pointer < inMem.dataAccess.getCapacity() ? inMem.dataAccess.getInt(pointer) : 0;
+                int value = pointer < sorted.dataAccess.getCapacity() ? sorted.dataAccess.getInt(pointer) : 0;
+                assertEquals("buffer " + bufferSize + ", pointer " + pointer, expected, value);
+            }
+            assertEquals(inMem.findID(50.5, 10.5), sorted.findID(50.5, 10.5));
+            sorted.close();
+        }
+    }
+
+    @Test
+    public void testBulkFindClosest()
+    {
+        Random rand = new Random(2);
+        Graph graph = createRandomGraph(rand, 300);
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.setMinResolutionInMeter(2000).prepareIndex();
+
+        int points = 3000;
+        double[] lats = new double[points];
+        double[] lons = new double[points];
+        for (int i = 0; i < points; i++)
+        {
+            // some points are outside of the graph bounds
+            lats[i] = 49.9 + rand.nextDouble() * 1.2;
+            lons[i] = 9.9 + rand.nextDouble() * 1.2;
+        }
+
+        for (int threads : new int[]
+        {
+            1, 3
+        })
+        {
+            QueryResult[] results = index.findClosest(lats, lons, EdgeFilter.ALL_EDGES, threads);
+            assertEquals(points, results.length);
+            for (int i = 0; i < points; i++)
+            {
+                QueryResult expected = index.findClosest(lats[i], lons[i], EdgeFilter.ALL_EDGES);
+                assertEquals("point " + i, expected.isValid(), results[i].isValid());
+                assertEquals("point " + i, expected.getClosestNode(), results[i].getClosestNode());
+                assertEquals("point " + i, expected.getQueryDistance(), results[i].getQueryDistance(), 1e-6);
+                assertEquals(lats[i], results[i].getQueryPoint().lat, 1e-9);
+            }
+        }
+    }
+
     @Test
     public void testMoreReal()
     {
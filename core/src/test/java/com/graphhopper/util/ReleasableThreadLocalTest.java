@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class ReleasableThreadLocalTest
+{
+    @Test
+    public void testClearReleasesAllThreads() throws Exception
+    {
+        final ReleasableThreadLocal<Object> reusable = new ReleasableThreadLocal<Object>();
+        reusable.set("main");
+        final AtomicReference<Object> other = new AtomicReference<Object>();
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                other.set(reusable.get());
+                reusable.set("other");
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNull(other.get());
+        assertEquals("main", reusable.get());
+
+        reusable.clear();
+        assertNull(reusable.get());
+        reusable.set("again");
+        assertEquals("again", reusable.get());
+    }
+
+    @Test
+    public void testTerminatedThreadsAreRemoved() throws Exception
+    {
+        final ReleasableThreadLocal<Object> reusable = new ReleasableThreadLocal<Object>();
+        for (int i = 0; i < 10; i++)
+        {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    reusable.set(new byte[1000]);
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+
+        // the weak keys are only removed after a garbage collection
+        for (int i = 0; i < 50 && reusable.getHolderCount() > 0; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, reusable.getHolderCount());
+    }
+}
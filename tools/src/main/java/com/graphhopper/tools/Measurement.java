@@ -20,8 +20,11 @@ package com.graphhopper.tools;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.storage.NodeAccess;
@@ -36,8 +39,13 @@ import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.BBox;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
@@ -136,6 +144,16 @@ public class Measurement
             hopper.doPostProcessing();
             printTimeOfRouteQuery(hopper, count, "routingCH", vehicleStr, true);
             printTimeOfRouteQuery(hopper, count, "routingCH_no_instr", vehicleStr, false);
+
+            // compare the garbage per query if the algorithm instances are reused
+            ((PrepareContractionHierarchies) hopper.getAlgorithmFactory()).setReuseAlgorithms(true);
+            printTimeOfRouteQuery(hopper, count, "routingCH_reuse", vehicleStr, true);
+
+            // the same for the per request setup of the QueryGraph
+            printQueryGraphSetup(hopper, count, "queryGraph_new", false);
+            printQueryGraphSetup(hopper, count, "queryGraph_reuse", true);
+            hopper.setReuseQueryGraph(true);
+            printTimeOfRouteQuery(hopper, count, "routingCH_reuse_queryGraph", vehicleStr, true);
             logger.info("store into " + propLocation);
         } catch (Exception ex)
         {
@@ -195,6 +213,50 @@ public class Measurement
         print("location2id", miniPerf);
     }
 
+    /**
+     * Measures the time and garbage of the QueryGraph setup per request, i.e. adding the virtual
+     * nodes and edges for a from and a to point, without the location lookup and routing.
+     */
+    private void printQueryGraphSetup( GraphHopper hopper, int count, String prefix, final boolean reuse )
+    {
+        final Graph g = hopper.getGraph();
+        final BBox bbox = g.getBounds();
+        final double latDelta = bbox.maxLat - bbox.minLat;
+        final double lonDelta = bbox.maxLon - bbox.minLon;
+        final Random rand = new Random(seed);
+        final List<List<QueryResult>> requests = new ArrayList<List<QueryResult>>(1000);
+        while (requests.size() < 1000)
+        {
+            QueryResult from = hopper.getLocationIndex().findClosest(rand.nextDouble() * latDelta + bbox.minLat,
+                    rand.nextDouble() * lonDelta + bbox.minLon, EdgeFilter.ALL_EDGES);
+            QueryResult to = hopper.getLocationIndex().findClosest(rand.nextDouble() * latDelta + bbox.minLat,
+                    rand.nextDouble() * lonDelta + bbox.minLon, EdgeFilter.ALL_EDGES);
+            if (from.isValid() && to.isValid())
+                requests.add(Arrays.asList(from, to));
+        }
+
+        final AtomicLong allocatedSum = new AtomicLong(0);
+        final QueryGraph reusedQueryGraph = new QueryGraph(g);
+        MiniPerfTest miniPerf = new MiniPerfTest()
+        {
+            @Override
+            public int doCalc( boolean warmup, int run )
+            {
+                List<QueryResult> qResults = requests.get(run % requests.size());
+                long allocatedBefore = getAllocatedBytes();
+                QueryGraph queryGraph = reuse ? reusedQueryGraph.reset() : new QueryGraph(g);
+                queryGraph.lookup(qResults);
+                if (!warmup)
+                    allocatedSum.addAndGet(getAllocatedBytes() - allocatedBefore);
+
+                return queryGraph.getNodes();
+            }
+        }.setIterations(count).start();
+
+        put(prefix + ".allocatedKBPerQuery", (float) allocatedSum.get() / count / 1024);
+        print(prefix, miniPerf);
+    }
+
     private void printTimeOfRouteQuery( final GraphHopper hopper, int count, String prefix,
             final String vehicle, final boolean withInstructions )
     {
@@ -204,6 +266,7 @@ public class Measurement
         final AtomicLong distSum = new AtomicLong(0);
         final AtomicLong airDistSum = new AtomicLong(0);
         final AtomicInteger failedCount = new AtomicInteger(0);
+        final AtomicLong allocatedSum = new AtomicLong(0);
         final DistanceCalc distCalc = new DistanceCalcEarth();
 
 //        final AtomicLong extractTimeSum = new AtomicLong(0);
@@ -228,9 +291,12 @@ public class Measurement
                         setVehicle(vehicle);
                 req.getHints().put("instructions", withInstructions);
                 GHResponse res;
+                long allocatedBefore = getAllocatedBytes();
                 try
                 {
                     res = hopper.route(req);
+                    if (!warmup)
+                        allocatedSum.addAndGet(getAllocatedBytes() - allocatedBefore);
                 } catch (Exception ex)
                 {
                     // 'not found' can happen if import creates more than one subnetwork
@@ -278,6 +344,7 @@ public class Measurement
         put(prefix + ".distanceMean", (float) distSum.get() / count);
         put(prefix + ".airDistanceMean", (float) airDistSum.get() / count);
         put(prefix + ".distanceMax", maxDistance.get());
+        put(prefix + ".allocatedKBPerQuery", (float) allocatedSum.get() / (count + failedCount.get()) / 1024);
 
 //        put(prefix + ".extractTime", (float) extractTimeSum.get() / count / 1000000f);
 //        put(prefix + ".calcPointsTime", (float) calcPointsTimeSum.get() / count / 1000000f);
@@ -285,6 +352,18 @@ public class Measurement
         print(prefix, miniPerf);
     }
 
+    /**
+     * @return the bytes allocated by the current thread so far or 0 if not supported by the JVM
+     */
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
     void print( String prefix, MiniPerfTest perf )
     {
         logger.info(perf.getReport());
@@ -0,0 +1,390 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GHResponse;
+import com.graphhopper.routing.PathMatrix;
+import com.graphhopper.util.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary alternative to the JSON responses of the route and matrix APIs (type=binary).
+ * All numbers are big endian, integers are variable length encoded (7 bits per byte) and signed
+ * values zig-zag encoded. Points are delta encoded like the encoded polyline with a precision of
+ * 1e5 and elevation with 1e2, so points are identical to the encoded polyline.
+ * <pre>
+ * header:  'G' 'H' 'B' version kind
+ * errors:  count (className message)*
+ * route:   took distance weight time flags [points] [instructions]
+ * points:  count (lat lon [ele])*
+ * instr.:  count (sign text annotationImportance annotationMessage time distance toIndex
+ *          extraCount (key value)*)*
+ * matrix:  took rows columns (time+1 [distanceInMM])* where time+1 is 0 if not found
+ * </pre>
+ * <p/>
+ * @author Peter Karich
+ */
+public class BinaryFormat
+{
+    public static final String CONTENT_TYPE = "application/x-graphhopper";
+    static final int VERSION = 1;
+    static final int KIND_ERRORS = 0;
+    static final int KIND_ROUTE = 1;
+    static final int KIND_MATRIX = 2;
+    private static final int HAS_POINTS = 1;
+    private static final int HAS_ELEVATION = 2;
+    private static final int HAS_INSTRUCTIONS = 4;
+
+    public static void writeErrors( DataOutput out, List<Throwable> errors ) throws IOException
+    {
+        writeHeader(out, KIND_ERRORS);
+        writeVarLong(out, errors.size());
+        for (Throwable t : errors)
+        {
+            out.writeUTF(t.getClass().getName());
+            out.writeUTF(t.getMessage() == null ? "" : t.getMessage());
+        }
+    }
+
+    /**
+     * @param points the points to write or null to skip them and the instructions
+     * @param instructions the instructions to write or null
+     */
+    public static void writeRoute( DataOutput out, GHResponse rsp, long tookMillis, PointList points,
+            boolean includeElevation, InstructionList instructions ) throws IOException
+    {
+        if (rsp.hasErrors())
+        {
+            writeErrors(out, rsp.getErrors());
+            return;
+        }
+
+        writeHeader(out, KIND_ROUTE);
+        writeVarLong(out, tookMillis);
+        out.writeDouble(rsp.getDistance());
+        out.writeDouble(rsp.getRouteWeight());
+        writeVarLong(out, rsp.getMillis());
+        int flags = 0;
+        if (points != null)
+        {
+            flags |= HAS_POINTS;
+            if (includeElevation)
+                flags |= HAS_ELEVATION;
+            if (instructions != null)
+                flags |= HAS_INSTRUCTIONS;
+        }
+        out.writeByte(flags);
+        if (points == null)
+            return;
+
+        writePoints(out, points, includeElevation);
+        if (instructions != null)
+            writeInstructions(out, instructions);
+    }
+
+    static void writePoints( DataOutput out, PointList points, boolean includeElevation ) throws IOException
+    {
+        int size = points.getSize();
+        writeVarLong(out, size);
+        long prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < size; i++)
+        {
+            long lat = (long) Math.floor(points.getLatitude(i) * 1e5);
+            long lon = (long) Math.floor(points.getLongitude(i) * 1e5);
+            writeSignedVarLong(out, lat - prevLat);
+            writeSignedVarLong(out, lon - prevLon);
+            prevLat = lat;
+            prevLon = lon;
+            if (includeElevation)
+            {
+                long ele = (long) Math.floor(points.getElevation(i) * 100);
+                writeSignedVarLong(out, ele - prevEle);
+                prevEle = ele;
+            }
+        }
+    }
+
+    /**
+     * Writes the same content as InstructionList.createJson but the start of the interval is
+     * implicitly the end of the previous one.
+     */
+    static void writeInstructions( DataOutput out, InstructionList instructions ) throws IOException
+    {
+        writeVarLong(out, instructions.size());
+        int pointsIndex = 0;
+        int counter = 0;
+        for (Instruction instruction : instructions)
+        {
+            writeSignedVarLong(out, instruction.getSign());
+            out.writeUTF(instructions.getText(instruction));
+            InstructionAnnotation ia = instruction.getAnnotation();
+            writeSignedVarLong(out, ia.getImportance());
+            out.writeUTF(ia.getMessage());
+            writeVarLong(out, instruction.getTime());
+            out.writeDouble(instruction.getDistance());
+
+            pointsIndex += instruction.getPoints().size();
+            // the last instruction should not point to the next instruction
+            if (counter + 1 == instructions.size())
+                pointsIndex--;
+            writeVarLong(out, pointsIndex);
+
+            Map<String, Object> extras = instruction.getExtraInfoJSON();
+            writeVarLong(out, extras.size());
+            for (Map.Entry<String, Object> e : extras.entrySet())
+            {
+                out.writeUTF(e.getKey());
+                out.writeDouble(e.getValue() instanceof Number ? ((Number) e.getValue()).doubleValue() : Double.NaN);
+            }
+            counter++;
+        }
+    }
+
+    public static void writeMatrix( DataOutput out, GHMatrixResponse rsp, long tookMillis ) throws IOException
+    {
+        if (rsp.hasErrors())
+        {
+            writeErrors(out, rsp.getErrors());
+            return;
+        }
+
+        writeHeader(out, KIND_MATRIX);
+        writeVarLong(out, tookMillis);
+        PathMatrix matrix = rsp.getMatrix();
+        int rows = matrix.getRows();
+        int columns = matrix.getColumns();
+        writeVarLong(out, rows);
+        writeVarLong(out, columns);
+        for (int from = 0; from < rows; from++)
+        {
+            for (int to = 0; to < columns; to++)
+            {
+                if (matrix.isFound(from, to))
+                {
+                    writeVarLong(out, matrix.getMillis(from, to) + 1);
+                    writeVarLong(out, Math.round(matrix.getDistance(from, to) * 1000));
+                } else
+                {
+                    writeVarLong(out, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a response written via writeRoute or writeErrors. Instructions are only created if
+     * written and if tr is not null.
+     */
+    public static GHResponse readRoute( DataInput in, Translation tr ) throws IOException
+    {
+        GHResponse rsp = new GHResponse();
+        int kind = readHeader(in);
+        if (kind == KIND_ERRORS)
+        {
+            readErrors(in, rsp.getErrors());
+            return rsp;
+        }
+        if (kind != KIND_ROUTE)
+            throw new IllegalStateException("Expected a route but was " + kind);
+
+        readVarLong(in);
+        rsp.setDistance(in.readDouble());
+        rsp.setRouteWeight(in.readDouble());
+        rsp.setMillis(readVarLong(in));
+        int flags = in.readUnsignedByte();
+        if ((flags & HAS_POINTS) == 0)
+            return rsp;
+
+        PointList points = readPoints(in, (flags & HAS_ELEVATION) != 0);
+        rsp.setPoints(points);
+        if ((flags & HAS_INSTRUCTIONS) != 0)
+        {
+            InstructionList il = readInstructions(in, points, tr);
+            if (tr != null)
+                rsp.setInstructions(il);
+        }
+        return rsp;
+    }
+
+    static PointList readPoints( DataInput in, boolean is3D ) throws IOException
+    {
+        int size = (int) readVarLong(in);
+        PointList points = new PointList(size, is3D);
+        long lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i < size; i++)
+        {
+            lat += readSignedVarLong(in);
+            lon += readSignedVarLong(in);
+            if (is3D)
+            {
+                ele += readSignedVarLong(in);
+                points.add(lat / 1e5, lon / 1e5, ele / 100d);
+            } else
+            {
+                points.add(lat / 1e5, lon / 1e5);
+            }
+        }
+        return points;
+    }
+
+    static InstructionList readInstructions( DataInput in, PointList points, Translation tr ) throws IOException
+    {
+        int size = (int) readVarLong(in);
+        InstructionList il = tr == null ? null : new InstructionList(size, tr);
+        int from = 0;
+        for (int i = 0; i < size; i++)
+        {
+            int sign = (int) readSignedVarLong(in);
+            String text = in.readUTF();
+            int importance = (int) readSignedVarLong(in);
+            String annotationMessage = in.readUTF();
+            long time = readVarLong(in);
+            double distance = in.readDouble();
+            int to = (int) readVarLong(in);
+            int extras = (int) readVarLong(in);
+            for (int j = 0; j < extras; j++)
+            {
+                in.readUTF();
+                in.readDouble();
+            }
+
+            if (il != null)
+            {
+                PointList instPL = new PointList(to - from + 1, points.is3D());
+                for (int j = from; j <= to; j++)
+                {
+                    instPL.add(points, j);
+                }
+                InstructionAnnotation ia = new InstructionAnnotation(importance, annotationMessage);
+                il.add(new Instruction(sign, text, ia, instPL).setDistance(distance).setTime(time));
+            }
+            from = to;
+        }
+        return il;
+    }
+
+    public static GHMatrixResponse readMatrix( DataInput in ) throws IOException
+    {
+        GHMatrixResponse rsp = new GHMatrixResponse();
+        int kind = readHeader(in);
+        if (kind == KIND_ERRORS)
+        {
+            readErrors(in, rsp.getErrors());
+            return rsp;
+        }
+        if (kind != KIND_MATRIX)
+            throw new IllegalStateException("Expected a matrix but was " + kind);
+
+        readVarLong(in);
+        int rows = (int) readVarLong(in);
+        int columns = (int) readVarLong(in);
+        PathMatrix matrix = new PathMatrix(rows, columns);
+        for (int from = 0; from < rows; from++)
+        {
+            for (int to = 0; to < columns; to++)
+            {
+                long time = readVarLong(in) - 1;
+                if (time >= 0)
+                {
+                    double distance = readVarLong(in) / 1000d;
+                    // the weight is not transferred
+                    matrix.set(from, to, distance, distance, time);
+                }
+            }
+        }
+        return rsp.setMatrix(matrix);
+    }
+
+    static void readErrors( DataInput in, List<Throwable> errors ) throws IOException
+    {
+        int size = (int) readVarLong(in);
+        for (int i = 0; i < size; i++)
+        {
+            String exClass = in.readUTF();
+            errors.add(WebHelper.createError(exClass, in.readUTF()));
+        }
+    }
+
+    static void writeHeader( DataOutput out, int kind ) throws IOException
+    {
+        out.writeByte('G');
+        out.writeByte('H');
+        out.writeByte('B');
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+    }
+
+    static int readHeader( DataInput in ) throws IOException
+    {
+        if (in.readUnsignedByte() != 'G' || in.readUnsignedByte() != 'H' || in.readUnsignedByte() != 'B')
+            throw new IllegalStateException("Not a binary GraphHopper response");
+
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IllegalStateException("Unsupported version " + version + ", expected " + VERSION);
+
+        return in.readUnsignedByte();
+    }
+
+    static void writeVarLong( DataOutput out, long value ) throws IOException
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative values have to be written signed " + value);
+
+        writeUnsigned(out, value);
+    }
+
+    private static void writeUnsigned( DataOutput out, long value ) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong( DataInput in ) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed variable length number");
+    }
+
+    static void writeSignedVarLong( DataOutput out, long value ) throws IOException
+    {
+        writeUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong( DataInput in ) throws IOException
+    {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
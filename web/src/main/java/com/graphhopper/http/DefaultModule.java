@@ -32,7 +32,7 @@ public class DefaultModule extends AbstractModule
 {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     protected final CmdArgs args;
-    private GraphHopper graphHopper;
+    private GraphHopperHolder holder;
 
     public DefaultModule( CmdArgs args )
     {
@@ -41,10 +41,10 @@ public class DefaultModule extends AbstractModule
 
     public GraphHopper getGraphHopper()
     {
-        if (graphHopper == null)
+        if (holder == null)
             throw new IllegalStateException("createGraphHopper not called");
 
-        return graphHopper;
+        return holder.getGraphHopper();
     }
 
     /**
@@ -66,8 +66,21 @@ public class DefaultModule extends AbstractModule
     {
         try
         {
-            graphHopper = createGraphHopper(args);
-            bind(GraphHopper.class).toInstance(graphHopper);
+            GraphHopper graphHopper = createGraphHopper(args);
+            holder = new GraphHopperHolder(graphHopper)
+            {
+                @Override
+                protected GraphHopper load( String graphLocation )
+                {
+                    CmdArgs tmpArgs = new CmdArgs();
+                    tmpArgs.merge(args);
+                    tmpArgs.put("graph.location", graphLocation);
+                    return createGraphHopper(tmpArgs);
+                }
+            };
+            holder.setWarmUpQueries(args.getInt("web.reload.warmUpQueries", 50));
+            holder.setAllowedLocations(args.get("web.reload.locations", "").split(","));
+            bind(GraphHopperHolder.class).toInstance(holder);
             bind(TranslationMap.class).toInstance(graphHopper.getTranslationMap());
 
             long timeout = args.getLong("web.timeout", 3000);
@@ -77,6 +90,20 @@ public class DefaultModule extends AbstractModule
                 logger.info("jsonp disabled");
 
             bind(Boolean.class).annotatedWith(Names.named("jsonpAllowed")).toInstance(jsonpAllowed);
+
+            // limit the size of a matrix request, e.g. 300x300
+            int matrixMaxEntries = args.getInt("web.matrix.maxEntries", 100000);
+            bind(Integer.class).annotatedWith(Names.named("matrix.maxEntries")).toInstance(matrixMaxEntries);
+
+            // limit the search space of an isochrone request
+            long isochroneMaxTimeLimit = args.getLong("web.isochrone.maxTimeLimit", 3600);
+            bind(Long.class).annotatedWith(Names.named("isochrone.maxTimeLimit")).toInstance(isochroneMaxTimeLimit);
+            long isochroneMaxDistanceLimit = args.getLong("web.isochrone.maxDistanceLimit", 100000);
+            bind(Long.class).annotatedWith(Names.named("isochrone.maxDistanceLimit")).toInstance(isochroneMaxDistanceLimit);
+
+            // the speed updates are buffered completely before they are applied
+            int trafficMaxBodySize = args.getInt("web.traffic.maxBodySize", 12000000);
+            bind(Integer.class).annotatedWith(Names.named("traffic.maxBodySize")).toInstance(trafficMaxBodySize);
         } catch (Exception ex)
         {
             throw new IllegalStateException("Couldn't load graph", ex);
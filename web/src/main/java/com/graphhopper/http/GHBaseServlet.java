@@ -17,7 +17,15 @@
  */
 package com.graphhopper.http;
 
+import com.graphhopper.util.shapes.GHPoint;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import javax.inject.Named;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServlet;
@@ -80,6 +88,65 @@ public class GHBaseServlet extends HttpServlet
         }
     }
 
+    /**
+     * Prepares the response for JSON or JSONP like writeJson and returns a writer streaming to the
+     * response output, which is compressed by the GZIP filter if enabled. Call finishJson after
+     * writing the value.
+     * <p/>
+     * @return null if an error was sent instead
+     */
+    protected JsonStreamWriter startJson( HttpServletRequest req, HttpServletResponse res ) throws IOException
+    {
+        String type = getParam(req, "type", "json");
+        res.setCharacterEncoding("UTF-8");
+        boolean debug = getBooleanParam(req, "debug", false) || getBooleanParam(req, "pretty", false);
+        String callbackName = null;
+        if ("jsonp".equals(type))
+        {
+            res.setContentType("application/javascript");
+            if (!jsonpAllowed)
+            {
+                res.sendError(SC_BAD_REQUEST, "Server is not configured to allow jsonp!");
+                return null;
+            }
+
+            callbackName = getParam(req, "callback", null);
+            if (callbackName == null)
+            {
+                res.sendError(SC_BAD_REQUEST, "No callback provided, necessary if type=jsonp");
+                return null;
+            }
+        } else
+        {
+            res.setContentType("application/json");
+        }
+
+        res.setStatus(SC_OK);
+        Writer out = new BufferedWriter(new OutputStreamWriter(res.getOutputStream(), "UTF-8"), 8 * 1024);
+        JsonStreamWriter writer = new JsonStreamWriter(out).setIndent(debug ? 2 : 0);
+        if (callbackName != null)
+            writer.raw(callbackName + "(");
+        return writer;
+    }
+
+    protected void finishJson( HttpServletRequest req, JsonStreamWriter writer ) throws IOException
+    {
+        if ("jsonp".equals(getParam(req, "type", "json")))
+            writer.raw(")");
+        writer.flush();
+    }
+
+    /**
+     * Prepares the response for type=binary and returns a stream to write the BinaryFormat to.
+     * Flush it after writing.
+     */
+    protected DataOutputStream startBinary( HttpServletResponse res ) throws IOException
+    {
+        res.setContentType(BinaryFormat.CONTENT_TYPE);
+        res.setStatus(SC_OK);
+        return new DataOutputStream(new BufferedOutputStream(res.getOutputStream(), 8 * 1024));
+    }
+
     void returnError( HttpServletResponse res, String errorMessage ) throws IOException
     {
         res.sendError(SC_BAD_REQUEST, errorMessage);
@@ -104,6 +171,26 @@ public class GHBaseServlet extends HttpServlet
         return new String[0];
     }
 
+    protected List<GHPoint> getPoints( HttpServletRequest req, String key ) throws IOException
+    {
+        String[] pointsAsStr = getParams(req, key);
+        final List<GHPoint> infoPoints = new ArrayList<GHPoint>(pointsAsStr.length);
+        for (String str : pointsAsStr)
+        {
+            String[] fromStrs = str.split(",");
+            if (fromStrs.length == 2)
+            {
+                GHPoint point = GHPoint.parse(str);
+                if (point != null)
+                {
+                    infoPoints.add(point);
+                }
+            }
+        }
+
+        return infoPoints;
+    }
+
     protected long getLongParam( HttpServletRequest req, String string, long _default )
     {
         try
@@ -41,7 +41,8 @@ public class GHServletModule extends ServletModule
                 + "text/css,"
                 + "application/json,"
                 + "application/javascript,"
-                + "image/svg+xml");
+                + "image/svg+xml,"
+                + BinaryFormat.CONTENT_TYPE);
     }
 
     @Override
@@ -64,5 +65,23 @@ public class GHServletModule extends ServletModule
 
         serve("/route*").with(GraphHopperServlet.class);
         bind(GraphHopperServlet.class).in(Singleton.class);
+
+        serve("/matrix*").with(MatrixServlet.class);
+        bind(MatrixServlet.class).in(Singleton.class);
+
+        serve("/isochrone*").with(IsochroneServlet.class);
+        bind(IsochroneServlet.class).in(Singleton.class);
+
+        if (args.getBool("web.reload.enabled", false))
+        {
+            serve("/reload*").with(ReloadServlet.class);
+            bind(ReloadServlet.class).in(Singleton.class);
+        }
+
+        if (args.getBool("routing.speedOverlay", false))
+        {
+            serve("/traffic*").with(TrafficServlet.class);
+            bind(TrafficServlet.class).in(Singleton.class);
+        }
     }
 }
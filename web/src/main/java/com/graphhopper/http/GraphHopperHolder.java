@@ -0,0 +1,287 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the GraphHopper instance used by the servlets and makes it possible to replace it while
+ * the server is running. Requests acquire a lease, finish on the instance they got and the old
+ * instance is closed after its last lease was released.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GraphHopperHolder
+{
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final AtomicReference<Lease> current = new AtomicReference<Lease>();
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+    private final Set<String> allowedLocations = new HashSet<String>();
+    private int warmUpQueries = 50;
+
+    public GraphHopperHolder( GraphHopper hopper )
+    {
+        current.set(new Lease(hopper));
+    }
+
+    public GraphHopperHolder setWarmUpQueries( int warmUpQueries )
+    {
+        this.warmUpQueries = warmUpQueries;
+        return this;
+    }
+
+    /**
+     * Specifies the graph folders which can be reloaded in addition to the current one. A folder
+     * without a graph is imported, so only configured folders are accepted.
+     */
+    public GraphHopperHolder setAllowedLocations( String... locations )
+    {
+        allowedLocations.clear();
+        for (String location : locations)
+        {
+            if (!location.trim().isEmpty())
+                allowedLocations.add(toCanonicalPath(location.trim()));
+        }
+        return this;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified folder is not allowed or if it is the
+     * current folder which is memory mapped and must not be replaced or loaded twice
+     */
+    public void checkLocation( String graphLocation )
+    {
+        String location = toCanonicalPath(graphLocation);
+        GraphHopper hopper = getGraphHopper();
+        if (!location.equals(toCanonicalPath(hopper.getGraphHopperLocation())))
+        {
+            if (!allowedLocations.contains(location))
+                throw new IllegalArgumentException("Reloading " + graphLocation + " is not allowed, see web.reload.locations");
+
+            return;
+        }
+
+        if (hopper.getGraph().getDirectory().getDefaultType().isMMap())
+            throw new IllegalArgumentException("The current graph folder " + graphLocation
+                    + " is memory mapped, reload a different folder");
+    }
+
+    private static String toCanonicalPath( String location )
+    {
+        try
+        {
+            return new File(location).getCanonicalPath();
+        } catch (IOException ex)
+        {
+            throw new IllegalArgumentException("Invalid graph location " + location, ex);
+        }
+    }
+
+    /**
+     * @return the instance new requests are routed with. Use acquire if the instance is used for
+     * longer than a simple property lookup.
+     */
+    public GraphHopper getGraphHopper()
+    {
+        return current.get().hopper;
+    }
+
+    /**
+     * Marks the current instance as in use. The lease has to be released when the request is
+     * finished.
+     */
+    public Lease acquire()
+    {
+        while (true)
+        {
+            Lease lease = current.get();
+            lease.users.incrementAndGet();
+            // a swap happened in between, the retired instance could already be closed
+            if (lease == current.get())
+                return lease;
+
+            lease.release();
+        }
+    }
+
+    /**
+     * Makes the specified instance available for new requests. The old instance is closed as soon
+     * as all requests using it are finished.
+     */
+    public void swap( GraphHopper newHopper )
+    {
+        Lease old = current.getAndSet(new Lease(newHopper));
+        old.retire();
+    }
+
+    /**
+     * Loads the graph at the specified location, warms it up and swaps it with the current
+     * instance. The current instance stays in use until the new one is ready.
+     */
+    public void reload( String graphLocation )
+    {
+        checkLocation(graphLocation);
+        StopWatch sw = new StopWatch().start();
+        GraphHopper newHopper = load(graphLocation);
+        warmUp(newHopper);
+        swap(newHopper);
+        logger.info("reloaded graph from " + graphLocation + " in " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * Calls reload in a background thread.
+     * <p/>
+     * @return false if another reload is still running
+     * @throws IllegalArgumentException if the location cannot be reloaded
+     */
+    public boolean reloadAsync( final String graphLocation )
+    {
+        checkLocation(graphLocation);
+        if (!reloading.compareAndSet(false, true))
+            return false;
+
+        Thread thread = new Thread("reload " + graphLocation)
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    reload(graphLocation);
+                } catch (Exception ex)
+                {
+                    logger.error("Couldn't reload graph from " + graphLocation, ex);
+                } finally
+                {
+                    reloading.set(false);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public boolean isReloading()
+    {
+        return reloading.get();
+    }
+
+    /**
+     * Creates a new loaded GraphHopper instance for the specified location. Overwrite this to
+     * support reloading.
+     */
+    protected GraphHopper load( String graphLocation )
+    {
+        throw new UnsupportedOperationException("Reloading is not supported");
+    }
+
+    /**
+     * Touches the most important parts of the new graph with some random queries to avoid slow
+     * first requests after the swap.
+     */
+    protected void warmUp( GraphHopper hopper )
+    {
+        BBox bounds = hopper.getGraph().getBounds();
+        String vehicle = hopper.getEncodingManager().toString().split(",")[0];
+        Random rand = new Random(0);
+        for (int i = 0; i < warmUpQueries; i++)
+        {
+            GHRequest req = new GHRequest(randomLat(rand, bounds), randomLon(rand, bounds),
+                    randomLat(rand, bounds), randomLon(rand, bounds)).setVehicle(vehicle);
+            // errors like 'point not found' are expected for random points
+            hopper.route(req);
+        }
+    }
+
+    private static double randomLat( Random rand, BBox bounds )
+    {
+        return bounds.minLat + rand.nextDouble() * (bounds.maxLat - bounds.minLat);
+    }
+
+    private static double randomLon( Random rand, BBox bounds )
+    {
+        return bounds.minLon + rand.nextDouble() * (bounds.maxLon - bounds.minLon);
+    }
+
+    /**
+     * Releases the current instance immediately, e.g. on shutdown.
+     */
+    public void close()
+    {
+        current.get().retire();
+    }
+
+    /**
+     * A GraphHopper instance together with the number of requests using it.
+     */
+    public static class Lease
+    {
+        private final GraphHopper hopper;
+        private final AtomicInteger users = new AtomicInteger(0);
+        private volatile boolean retired = false;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        Lease( GraphHopper hopper )
+        {
+            this.hopper = hopper;
+        }
+
+        public GraphHopper getGraphHopper()
+        {
+            return hopper;
+        }
+
+        public void release()
+        {
+            if (users.decrementAndGet() == 0 && retired)
+                closeHopper();
+        }
+
+        void retire()
+        {
+            retired = true;
+            if (users.get() == 0)
+                closeHopper();
+        }
+
+        boolean isClosed()
+        {
+            return closed.get();
+        }
+
+        private void closeHopper()
+        {
+            if (closed.compareAndSet(false, true))
+                hopper.close();
+        }
+    }
+}
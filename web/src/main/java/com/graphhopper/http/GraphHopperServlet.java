@@ -24,7 +24,9 @@ import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.WeightingMap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.*;
@@ -40,7 +42,6 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import org.json.JSONObject;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -54,14 +55,15 @@ import org.w3c.dom.Element;
 public class GraphHopperServlet extends GHBaseServlet
 {
     @Inject
-    private GraphHopper hopper;
+    private GraphHopperHolder holder;
 
     @Override
     public void doGet( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
     {
+        GraphHopperHolder.Lease lease = holder.acquire();
         try
         {
-            writePath(req, res);
+            writePath(lease.getGraphHopper(), req, res);
         } catch (IllegalArgumentException ex)
         {
             writeError(res, SC_BAD_REQUEST, ex.getMessage());
@@ -69,16 +71,21 @@ public class GraphHopperServlet extends GHBaseServlet
         {
             logger.error("Error while executing request: " + req.getQueryString(), ex);
             writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        } finally
+        {
+            // the graph could be swapped in the meantime, it is closed after the last release
+            lease.release();
         }
     }
 
-    void writePath( HttpServletRequest httpReq, HttpServletResponse res ) throws Exception
+    void writePath( GraphHopper hopper, HttpServletRequest httpReq, HttpServletResponse res ) throws Exception
     {
         List<GHPoint> infoPoints = getPoints(httpReq, "point");
 
         // we can reduce the path length based on the maximum differences to the original coordinates
         double minPathPrecision = getDoubleParam(httpReq, "way_point_max_distance", 1d);
-        boolean writeGPX = "gpx".equalsIgnoreCase(getParam(httpReq, "type", "json"));
+        String type = getParam(httpReq, "type", "json");
+        boolean writeGPX = "gpx".equalsIgnoreCase(type);
         boolean enableInstructions = writeGPX || getBooleanParam(httpReq, "instructions", true);
         boolean calcPoints = getBooleanParam(httpReq, "calc_points", true);
         boolean elevation = getBooleanParam(httpReq, "elevation", false);
@@ -127,8 +134,10 @@ public class GraphHopperServlet extends GHBaseServlet
 
         if (writeGPX)
             writeResponse(res, createGPXString(httpReq, res, ghRsp));
+        else if ("binary".equalsIgnoreCase(type))
+            writeBinary(httpReq, res, ghRsp, took);
         else
-            writeJson(httpReq, res, new JSONObject(createJson(httpReq, ghRsp, took)));
+            writeJson(hopper, httpReq, res, ghRsp, took);
     }
 
     protected String createGPXString( HttpServletRequest req, HttpServletResponse res, GHResponse rsp )
@@ -177,86 +186,168 @@ public class GraphHopperServlet extends GHBaseServlet
         return writer.toString();
     }
 
-    protected Map<String, Object> createJson( HttpServletRequest req, GHResponse rsp, float took )
+    /**
+     * Streams the response as JSON directly to the output without building it in memory first.
+     */
+    protected void writeJson( GraphHopper hopper, HttpServletRequest req, HttpServletResponse res, GHResponse rsp,
+            float took ) throws IOException
     {
+        JsonStreamWriter writer = startJson(req, res);
+        if (writer == null)
+            return;
+
         boolean enableInstructions = getBooleanParam(req, "instructions", true);
         boolean pointsEncoded = getBooleanParam(req, "points_encoded", true);
         boolean calcPoints = getBooleanParam(req, "calc_points", true);
         boolean includeElevation = getBooleanParam(req, "elevation", false);
-        Map<String, Object> json = new HashMap<String, Object>();
-        Map<String, Object> jsonInfo = new HashMap<String, Object>();
-        json.put("info", jsonInfo);
-        jsonInfo.put("copyrights", Arrays.asList("GraphHopper", "OpenStreetMap contributors"));
-
+        writer.beginObject().name("info").beginObject();
+        writer.name("copyrights").beginArray().value("GraphHopper").value("OpenStreetMap contributors").endArray();
         if (rsp.hasErrors())
         {
-            List<Map<String, String>> list = new ArrayList<Map<String, String>>();
+            writer.name("errors").beginArray();
             for (Throwable t : rsp.getErrors())
             {
-                Map<String, String> map = new HashMap<String, String>();
-                map.put("message", t.getMessage());
-                map.put("details", t.getClass().getName());
-                list.add(map);
+                writer.beginObject().
+                        name("message").value(t.getMessage()).
+                        name("details").value(t.getClass().getName()).
+                        endObject();
             }
-            jsonInfo.put("errors", list);
+            writer.endArray().endObject();
         } else
         {
-            jsonInfo.put("took", Math.round(took * 1000));
-            Map<String, Object> jsonPath = new HashMap<String, Object>();
-            jsonPath.put("distance", Helper.round(rsp.getDistance(), 3));
-            jsonPath.put("weight", Helper.round6(rsp.getDistance()));
-            jsonPath.put("time", rsp.getMillis());
-
-            if (calcPoints)
+            writer.name("took").value(Math.round(took * 1000)).endObject();
+            writer.name("paths").beginArray();
+            writePath(writer, hopper, rsp, calcPoints, pointsEncoded, includeElevation, enableInstructions);
+            for (GHResponse alt : rsp.getAlternatives())
             {
-                jsonPath.put("points_encoded", pointsEncoded);
-
-                PointList points = rsp.getPoints();
-                if (points.getSize() >= 2)
-                    jsonPath.put("bbox", rsp.calcRouteBBox(hopper.getGraph().getBounds()).toGeoJson());
+                writePath(writer, hopper, alt, calcPoints, pointsEncoded, includeElevation, enableInstructions);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+        finishJson(req, writer);
+    }
 
-                jsonPath.put("points", createPoints(points, pointsEncoded, includeElevation));
+    /**
+     * Writes one entry of the paths array, the alternatives use the same format as the best path.
+     */
+    protected void writePath( JsonStreamWriter writer, GraphHopper hopper, GHResponse rsp, boolean calcPoints,
+            boolean pointsEncoded, boolean includeElevation, boolean enableInstructions ) throws IOException
+    {
+        writer.beginObject();
+        writer.name("distance").value(rsp.getDistance(), 3);
+        writer.name("weight").value(rsp.getDistance(), 6);
+        writer.name("time").value(rsp.getMillis());
+        if (calcPoints)
+        {
+            writer.name("points_encoded").value(pointsEncoded);
+            PointList points = rsp.getPoints();
+            if (points.getSize() >= 2)
+            {
+                writer.name("bbox");
+                writeBBox(writer, rsp.calcRouteBBox(hopper.getGraph().getBounds()));
+            }
 
-                if (enableInstructions)
-                {
-                    InstructionList instructions = rsp.getInstructions();
-                    jsonPath.put("instructions", instructions.createJson());
-                }
+            writer.name("points");
+            writePoints(writer, points, pointsEncoded, includeElevation);
+            if (enableInstructions)
+            {
+                writer.name("instructions");
+                writeInstructions(writer, rsp.getInstructions());
             }
-            json.put("paths", Collections.singletonList(jsonPath));
         }
-        return json;
+        writer.endObject();
     }
 
-    protected Object createPoints( PointList points, boolean pointsEncoded, boolean includeElevation )
+    /**
+     * Writes the response in the compact BinaryFormat, points are always encoded.
+     */
+    protected void writeBinary( HttpServletRequest req, HttpServletResponse res, GHResponse rsp, float took )
+            throws IOException
+    {
+        boolean enableInstructions = getBooleanParam(req, "instructions", true);
+        boolean calcPoints = getBooleanParam(req, "calc_points", true);
+        boolean includeElevation = getBooleanParam(req, "elevation", false);
+        DataOutputStream out = startBinary(res);
+        if (rsp.hasErrors() || !calcPoints)
+            BinaryFormat.writeRoute(out, rsp, Math.round(took * 1000), null, false, null);
+        else
+            BinaryFormat.writeRoute(out, rsp, Math.round(took * 1000), rsp.getPoints(), includeElevation,
+                    enableInstructions ? rsp.getInstructions() : null);
+        out.flush();
+    }
+
+    protected void writePoints( JsonStreamWriter writer, PointList points, boolean pointsEncoded,
+            boolean includeElevation ) throws IOException
     {
         if (pointsEncoded)
-            return WebHelper.encodePolyline(points, includeElevation);
+        {
+            WebHelper.encodePolyline(writer.beginString(), points, includeElevation);
+            writer.endString();
+            return;
+        }
+
+        writer.beginObject().name("type").value("LineString").name("coordinates").beginArray();
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            writer.beginArray().
+                    value(points.getLongitude(i), 6).
+                    value(points.getLatitude(i), 6);
+            if (includeElevation)
+                writer.value(Helper.round2(points.getElevation(i)), 2);
+            writer.endArray();
+        }
+        writer.endArray().endObject();
+    }
 
-        Map<String, Object> jsonPoints = new HashMap<String, Object>();
-        jsonPoints.put("type", "LineString");
-        jsonPoints.put("coordinates", points.toGeoJson(includeElevation));
-        return jsonPoints;
+    private void writeBBox( JsonStreamWriter writer, BBox bbox ) throws IOException
+    {
+        writer.beginArray().value(bbox.minLon, 6).value(bbox.minLat, 6);
+        if (bbox.hasElevation())
+            writer.value(Helper.round2(bbox.minEle), 2);
+        writer.value(bbox.maxLon, 6).value(bbox.maxLat, 6);
+        if (bbox.hasElevation())
+            writer.value(Helper.round2(bbox.maxEle), 2);
+        writer.endArray();
     }
 
-    protected List<GHPoint> getPoints( HttpServletRequest req, String key ) throws IOException
+    /**
+     * Writes the same content as InstructionList.createJson.
+     */
+    protected void writeInstructions( JsonStreamWriter writer, InstructionList instructions ) throws IOException
     {
-        String[] pointsAsStr = getParams(req, key);
-        final List<GHPoint> infoPoints = new ArrayList<GHPoint>(pointsAsStr.length);
-        for (String str : pointsAsStr)
+        writer.beginArray();
+        int pointsIndex = 0;
+        int counter = 0;
+        for (Instruction instruction : instructions)
         {
-            String[] fromStrs = str.split(",");
-            if (fromStrs.length == 2)
+            writer.beginObject().name("text").value(instructions.getText(instruction));
+            InstructionAnnotation ia = instruction.getAnnotation();
+            if (!ia.isEmpty())
             {
-                GHPoint point = GHPoint.parse(str);
-                if (point != null)
-                {
-                    infoPoints.add(point);
-                }
+                writer.name("annotationText").value(ia.getMessage());
+                writer.name("annotationImportance").value(ia.getImportance());
+            }
+
+            writer.name("time").value(instruction.getTime());
+            writer.name("distance").value(instruction.getDistance(), 3);
+            writer.name("sign").value(instruction.getSign());
+            for (Map.Entry<String, Object> e : instruction.getExtraInfoJSON().entrySet())
+            {
+                writer.name(e.getKey()).value(e.getValue());
             }
-        }
 
-        return infoPoints;
+            int tmpIndex = pointsIndex + instruction.getPoints().size();
+            // the last instruction should not point to the next instruction
+            if (counter + 1 == instructions.size())
+                tmpIndex--;
+
+            writer.name("interval").beginArray().value(pointsIndex).value(tmpIndex).endArray();
+            writer.endObject();
+            pointsIndex = tmpIndex;
+            counter++;
+        }
+        writer.endArray();
     }
 
     protected void initHints( GHRequest request, Map<String, String[]> parameterMap )
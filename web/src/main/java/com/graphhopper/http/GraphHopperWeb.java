@@ -20,9 +20,14 @@ package com.graphhopper.http;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopperAPI;
+import com.graphhopper.routing.AlgorithmOptions;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -54,6 +59,7 @@ public class GraphHopperWeb implements GraphHopperAPI
     private boolean instructions = true;
     private String key = "";
     private boolean withElevation = false;
+    private boolean binary = false;
     private final TranslationMap trMap = new TranslationMap().doImport();
 
     public GraphHopperWeb()
@@ -93,6 +99,15 @@ public class GraphHopperWeb implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Requests type=binary instead of JSON to avoid the JSON parsing of large responses.
+     */
+    public GraphHopperWeb setBinary( boolean binary )
+    {
+        this.binary = binary;
+        return this;
+    }
+
     public GraphHopperWeb setKey( String key )
     {
         this.key = key;
@@ -115,10 +130,11 @@ public class GraphHopperWeb implements GraphHopperAPI
             String url = serviceUrl
                     + "?"
                     + places
-                    + "&type=json"
+                    + "&type=" + (binary ? "binary" : "json")
                     + "&points_encoded=" + pointsEncoded
+                    + "&instructions=" + instructions
                     + "&way_point_max_distance=" + request.getHints().getDouble("wayPointMaxDistance", 1)
-                    + "&algo=" + request.getAlgorithm()
+                    + "&algorithm=" + request.getAlgorithm()
                     + "&locale=" + request.getLocale().toString()
                     + "&elevation=" + withElevation;
 
@@ -128,6 +144,16 @@ public class GraphHopperWeb implements GraphHopperAPI
             if (!key.isEmpty())
                 url += "&key=" + key;
 
+            String altPrefix = AlgorithmOptions.ALT_ROUTE + ".";
+            for (Map.Entry<String, String> e : request.getHints().toMap().entrySet())
+            {
+                if (e.getKey().startsWith(altPrefix))
+                    url += "&" + e.getKey() + "=" + e.getValue();
+            }
+
+            if (binary)
+                return readBinary(url, request);
+
             String str = downloader.downloadAsString(url);
             JSONObject json = new JSONObject(str);
             GHResponse res = new GHResponse();
@@ -141,23 +167,7 @@ public class GraphHopperWeb implements GraphHopperAPI
                     JSONObject error = errors.getJSONObject(i);
                     String exClass = error.getString("details");
                     String exMessage = error.getString("message");
-
-                    if (exClass.equals(UnsupportedOperationException.class.getName()))
-                    {
-                        res.addError(new UnsupportedOperationException(exMessage));
-                    } else if (exClass.equals(IllegalStateException.class.getName()))
-                    {
-                        res.addError(new IllegalStateException(exMessage));
-                    } else if (exClass.equals(RuntimeException.class.getName()))
-                    {
-                        res.addError(new RuntimeException(exMessage));
-                    } else if (exClass.equals(IllegalArgumentException.class.getName()))
-                    {
-                        res.addError(new IllegalArgumentException(exMessage));
-                    } else
-                    {
-                        res.addError(new Exception(exClass + " " + exMessage));
-                    }
+                    res.addError(WebHelper.createError(exClass, exMessage));
                 }
 
                 return res;
@@ -166,59 +176,13 @@ public class GraphHopperWeb implements GraphHopperAPI
             {
                 took = json.getJSONObject("info").getDouble("took");
                 JSONArray paths = json.getJSONArray("paths");
-                JSONObject firstPath = paths.getJSONObject(0);
-                double distance = firstPath.getDouble("distance");
-                int time = firstPath.getInt("time");
-                PointList pointList;
-                if (pointsEncoded)
+                readPath(paths.getJSONObject(0), res, request);
+                // the algorithm alternative_route appends the alternatives
+                for (int i = 1; i < paths.length(); i++)
                 {
-                    String pointStr = firstPath.getString("points");
-                    pointList = WebHelper.decodePolyline(pointStr, 100, withElevation);
-                } else
-                {
-                    JSONArray coords = firstPath.getJSONObject("points").getJSONArray("coordinates");
-                    pointList = new PointList(coords.length(), withElevation);
-                    for (int i = 0; i < coords.length(); i++)
-                    {
-                        JSONArray arr = coords.getJSONArray(i);
-                        double lon = arr.getDouble(0);
-                        double lat = arr.getDouble(1);
-                        if (withElevation)
-                            pointList.add(lat, lon, arr.getDouble(2));
-                        else
-                            pointList.add(lat, lon);
-                    }
+                    res.addAlternative(readPath(paths.getJSONObject(i), new GHResponse(), request));
                 }
-
-                if (instructions)
-                {
-                    JSONArray instrArr = firstPath.getJSONArray("instructions");
-
-                    InstructionList il = new InstructionList(trMap.getWithFallBack(request.getLocale()));
-                    for (int instrIndex = 0; instrIndex < instrArr.length(); instrIndex++)
-                    {
-                        JSONObject jsonObj = instrArr.getJSONObject(instrIndex);
-                        double instDist = jsonObj.getDouble("distance");
-                        String text = jsonObj.getString("text");
-                        long instTime = jsonObj.getLong("time");
-                        int sign = jsonObj.getInt("sign");
-                        JSONArray iv = jsonObj.getJSONArray("interval");
-                        int from = iv.getInt(0);
-                        int to = iv.getInt(1);
-                        PointList instPL = new PointList(to - from, withElevation);
-                        for (int j = from; j <= to; j++)
-                        {
-                            instPL.add(pointList, j);
-                        }
-
-                        // TODO way and payment type
-                        Instruction instr = new Instruction(sign, text, InstructionAnnotation.EMPTY, instPL).
-                                setDistance(instDist).setTime(instTime);
-                        il.add(instr);
-                    }
-                    res.setInstructions(il);
-                }
-                return res.setPoints(pointList).setDistance(distance).setMillis(time);
+                return res;
             }
         } catch (Exception ex)
         {
@@ -228,4 +192,72 @@ public class GraphHopperWeb implements GraphHopperAPI
             logger.debug("Full request took:" + sw.stop().getSeconds() + ", API took:" + took);
         }
     }
+
+    private GHResponse readPath( JSONObject path, GHResponse res, GHRequest request )
+    {
+        double distance = path.getDouble("distance");
+        int time = path.getInt("time");
+        PointList pointList;
+        if (pointsEncoded)
+        {
+            String pointStr = path.getString("points");
+            pointList = WebHelper.decodePolyline(pointStr, 100, withElevation);
+        } else
+        {
+            JSONArray coords = path.getJSONObject("points").getJSONArray("coordinates");
+            pointList = new PointList(coords.length(), withElevation);
+            for (int i = 0; i < coords.length(); i++)
+            {
+                JSONArray arr = coords.getJSONArray(i);
+                double lon = arr.getDouble(0);
+                double lat = arr.getDouble(1);
+                if (withElevation)
+                    pointList.add(lat, lon, arr.getDouble(2));
+                else
+                    pointList.add(lat, lon);
+            }
+        }
+
+        if (instructions)
+        {
+            JSONArray instrArr = path.getJSONArray("instructions");
+
+            InstructionList il = new InstructionList(trMap.getWithFallBack(request.getLocale()));
+            for (int instrIndex = 0; instrIndex < instrArr.length(); instrIndex++)
+            {
+                JSONObject jsonObj = instrArr.getJSONObject(instrIndex);
+                double instDist = jsonObj.getDouble("distance");
+                String text = jsonObj.getString("text");
+                long instTime = jsonObj.getLong("time");
+                int sign = jsonObj.getInt("sign");
+                JSONArray iv = jsonObj.getJSONArray("interval");
+                int from = iv.getInt(0);
+                int to = iv.getInt(1);
+                PointList instPL = new PointList(to - from, withElevation);
+                for (int j = from; j <= to; j++)
+                {
+                    instPL.add(pointList, j);
+                }
+
+                // TODO way and payment type
+                Instruction instr = new Instruction(sign, text, InstructionAnnotation.EMPTY, instPL).
+                        setDistance(instDist).setTime(instTime);
+                il.add(instr);
+            }
+            res.setInstructions(il);
+        }
+        return res.setPoints(pointList).setDistance(distance).setMillis(time);
+    }
+
+    private GHResponse readBinary( String url, GHRequest request ) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(downloader.fetch(url), 8 * 1024));
+        try
+        {
+            return BinaryFormat.readRoute(in, instructions ? trMap.getWithFallBack(request.getLocale()) : null);
+        } finally
+        {
+            in.close();
+        }
+    }
 }
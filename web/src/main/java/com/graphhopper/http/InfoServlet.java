@@ -18,6 +18,7 @@
 package com.graphhopper.http;
 
 import com.graphhopper.GraphHopper;
+import com.graphhopper.RouteCache;
 import com.graphhopper.storage.StorableProperties;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.Helper;
@@ -39,14 +40,15 @@ import org.json.JSONObject;
 public class InfoServlet extends GHBaseServlet
 {
     @Inject
-    private GraphHopper hopper;
+    private GraphHopperHolder holder;
 
     @Override
     public void doGet( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
     {
+        GraphHopperHolder.Lease lease = holder.acquire();
         try
         {
-            writeInfos(req, res);
+            writeInfos(lease.getGraphHopper(), req, res);
         } catch (IllegalArgumentException ex)
         {
             writeError(res, SC_BAD_REQUEST, ex.getMessage());
@@ -54,10 +56,13 @@ public class InfoServlet extends GHBaseServlet
         {
             logger.error("Error while executing request: " + req.getQueryString(), ex);
             writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        } finally
+        {
+            lease.release();
         }
     }
 
-    void writeInfos( HttpServletRequest req, HttpServletResponse res ) throws Exception
+    void writeInfos( GraphHopper hopper, HttpServletRequest req, HttpServletResponse res ) throws Exception
     {
         BBox bb = hopper.getGraph().getBounds();
         List<Double> list = new ArrayList<Double>(4);
@@ -89,6 +94,19 @@ public class InfoServlet extends GHBaseServlet
         if (!Helper.isEmpty(props.get("prepare.date")))
             json.put("prepare_date", props.get("prepare.date"));
 
+        RouteCache routeCache = hopper.getRouteCache();
+        if (routeCache != null)
+        {
+            JSONObject cacheJson = new JSONObject();
+            cacheJson.put("hits", routeCache.getHits());
+            cacheJson.put("misses", routeCache.getMisses());
+            cacheJson.put("evictions", routeCache.getEvictions());
+            cacheJson.put("entries", routeCache.getSize());
+            cacheJson.put("bytes", routeCache.getBytes());
+            cacheJson.put("max_bytes", routeCache.getMaxBytes());
+            json.put("route_cache", cacheJson);
+        }
+
         writeJson(req, res, json);
     }
 }
@@ -0,0 +1,181 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHIsochroneRequest;
+import com.graphhopper.GHIsochroneResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.GHPoint;
+import java.io.IOException;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.servlet.http.HttpServletResponse.*;
+
+/**
+ * Servlet to calculate the area reachable from one point within time_limit seconds or, with the
+ * shortest weighting, within distance_limit meters. The limit is split into the specified number of
+ * buckets and for every bucket the convex hull of all cells up to this bucket is returned. With
+ * cells=true the centers of the grid cells of every bucket are returned too.
+ * <p/>
+ * @author Peter Karich
+ */
+public class IsochroneServlet extends GHBaseServlet
+{
+    @Inject
+    private GraphHopperHolder holder;
+    @Inject
+    @Named("isochrone.maxTimeLimit")
+    private long maxTimeLimit;
+    @Inject
+    @Named("isochrone.maxDistanceLimit")
+    private long maxDistanceLimit;
+
+    @Override
+    public void doGet( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        GraphHopperHolder.Lease lease = holder.acquire();
+        try
+        {
+            writeIsochrone(lease.getGraphHopper(), req, res);
+        } catch (IllegalArgumentException ex)
+        {
+            writeError(res, SC_BAD_REQUEST, ex.getMessage());
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing request: " + req.getQueryString(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        } finally
+        {
+            lease.release();
+        }
+    }
+
+    void writeIsochrone( GraphHopper hopper, HttpServletRequest httpReq, HttpServletResponse res ) throws Exception
+    {
+        List<GHPoint> points = getPoints(httpReq, "point");
+        if (points.size() != 1)
+            throw new IllegalArgumentException("Specify exactly one point but was " + points.size());
+
+        String vehicleStr = getParam(httpReq, "vehicle", "CAR").toUpperCase();
+        double distanceLimit = getDoubleParam(httpReq, "distance_limit", -1);
+        String weighting = getParam(httpReq, "weighting", distanceLimit > 0 ? "shortest" : "fastest");
+        double limit = distanceLimit > 0 ? distanceLimit : getDoubleParam(httpReq, "time_limit", 600);
+        long maxLimit = distanceLimit > 0 ? maxDistanceLimit : maxTimeLimit;
+        int buckets = (int) getLongParam(httpReq, "buckets", 1);
+
+        StopWatch sw = new StopWatch().start();
+        GHIsochroneResponse ghRsp;
+        if (!hopper.getEncodingManager().supports(vehicleStr))
+        {
+            ghRsp = new GHIsochroneResponse().addError(new IllegalArgumentException("Vehicle not supported: " + vehicleStr));
+        } else if (limit > maxLimit)
+        {
+            ghRsp = new GHIsochroneResponse().addError(new IllegalArgumentException("Limit " + limit
+                    + " too big, maximum is " + maxLimit));
+        } else
+        {
+            GHIsochroneRequest request = new GHIsochroneRequest(points.get(0)).
+                    setLimit(limit).
+                    setBuckets(buckets).
+                    setCellSize(getDoubleParam(httpReq, "cell_size", 200)).
+                    setReverseFlow(getBooleanParam(httpReq, "reverse_flow", false)).
+                    setVehicle(hopper.getEncodingManager().getEncoder(vehicleStr).toString()).
+                    setWeighting(weighting);
+            ghRsp = hopper.calcIsochrone(request);
+        }
+
+        float took = sw.stop().getSeconds();
+        String logStr = httpReq.getQueryString() + " " + httpReq.getRemoteAddr() + " " + points
+                + ", took:" + took + ", " + weighting + ", " + vehicleStr;
+        if (ghRsp.hasErrors())
+            logger.error(logStr + ", errors:" + ghRsp.getErrors());
+        else
+            logger.info(logStr + ", debug - " + ghRsp.getDebugInfo());
+
+        writeJson(httpReq, res, ghRsp, limit, took);
+    }
+
+    protected void writeJson( HttpServletRequest req, HttpServletResponse res, GHIsochroneResponse rsp,
+            double limit, float took ) throws IOException
+    {
+        JsonStreamWriter writer = startJson(req, res);
+        if (writer == null)
+            return;
+
+        writer.beginObject().name("info").beginObject();
+        writer.name("copyrights").beginArray().value("GraphHopper").value("OpenStreetMap contributors").endArray();
+        if (rsp.hasErrors())
+        {
+            writer.name("errors").beginArray();
+            for (Throwable t : rsp.getErrors())
+            {
+                writer.beginObject().
+                        name("message").value(t.getMessage()).
+                        name("details").value(t.getClass().getName()).
+                        endObject();
+            }
+            writer.endArray().endObject();
+        } else
+        {
+            boolean writeCells = getBooleanParam(req, "cells", false);
+            writer.name("took").value(Math.round(took * 1000)).endObject();
+            writer.name("cell_size").beginArray().
+                    value(rsp.getCellSizeLon(), 8).
+                    value(rsp.getCellSizeLat(), 8).
+                    endArray();
+            writer.name("buckets").beginArray();
+            List<PointList> cells = rsp.getCells();
+            for (int i = 0; i < cells.size(); i++)
+            {
+                writer.beginObject().name("bucket").value(i);
+                writer.name("limit").value(limit * (i + 1) / cells.size(), 3);
+                writer.name("polygon").beginObject().name("type").value("Polygon").name("coordinates").beginArray();
+                writeCoordinates(writer, rsp.getPolygons().get(i));
+                writer.endArray().endObject();
+                if (writeCells)
+                {
+                    writer.name("cells");
+                    writeCoordinates(writer, cells.get(i));
+                }
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+        finishJson(req, writer);
+    }
+
+    private void writeCoordinates( JsonStreamWriter writer, PointList points ) throws IOException
+    {
+        writer.beginArray();
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            writer.beginArray().
+                    value(points.getLongitude(i), 6).
+                    value(points.getLatitude(i), 6).
+                    endArray();
+        }
+        writer.endArray();
+    }
+}
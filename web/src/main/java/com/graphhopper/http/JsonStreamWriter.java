@@ -0,0 +1,418 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Writes JSON directly to a Writer without building intermediate maps or strings. Numbers with a
+ * fixed number of decimals are formatted without allocations. The caller has to call the begin
+ * and end methods in a valid order, this is not checked.
+ * <p/>
+ * @author Peter Karich
+ */
+public class JsonStreamWriter
+{
+    private final Writer out;
+    private final char[] digits = new char[20];
+    private int indent;
+    private int depth;
+    // per nesting level: true if no value was written yet
+    private boolean[] first = new boolean[16];
+    private boolean afterName;
+    private char prevChar;
+    private final Appendable stringAppender = new Appendable()
+    {
+        @Override
+        public Appendable append( CharSequence csq ) throws IOException
+        {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append( CharSequence csq, int start, int end ) throws IOException
+        {
+            for (int i = start; i < end; i++)
+            {
+                writeEscaped(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append( char c ) throws IOException
+        {
+            writeEscaped(c);
+            return this;
+        }
+    };
+
+    public JsonStreamWriter( Writer out )
+    {
+        this.out = out;
+        first[0] = true;
+    }
+
+    /**
+     * @param indent the number of spaces per level, 0 writes everything in one line
+     */
+    public JsonStreamWriter setIndent( int indent )
+    {
+        this.indent = indent;
+        return this;
+    }
+
+    public JsonStreamWriter beginObject() throws IOException
+    {
+        beforeValue();
+        out.write('{');
+        push();
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException
+    {
+        pop();
+        out.write('}');
+        return this;
+    }
+
+    public JsonStreamWriter beginArray() throws IOException
+    {
+        beforeValue();
+        out.write('[');
+        push();
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException
+    {
+        pop();
+        out.write(']');
+        return this;
+    }
+
+    public JsonStreamWriter name( String name ) throws IOException
+    {
+        beforeValue();
+        writeString(name);
+        out.write(':');
+        if (indent > 0)
+            out.write(' ');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value( String str ) throws IOException
+    {
+        if (str == null)
+            return nullValue();
+
+        beforeValue();
+        writeString(str);
+        return this;
+    }
+
+    public JsonStreamWriter value( boolean bool ) throws IOException
+    {
+        beforeValue();
+        out.write(bool ? "true" : "false");
+        return this;
+    }
+
+    public JsonStreamWriter value( long val ) throws IOException
+    {
+        beforeValue();
+        writeLong(val);
+        return this;
+    }
+
+    /**
+     * Writes the value rounded to the specified decimals without trailing zeros.
+     */
+    public JsonStreamWriter value( double val, int decimals ) throws IOException
+    {
+        if (Double.isNaN(val) || Double.isInfinite(val))
+            return nullValue();
+
+        long factor = 1;
+        for (int i = 0; i < decimals; i++)
+        {
+            factor *= 10;
+        }
+
+        if (Math.abs(val * factor) >= Long.MAX_VALUE)
+            return value(val);
+
+        long scaled = Math.round(val * factor);
+
+        beforeValue();
+        if (scaled < 0)
+        {
+            out.write('-');
+            scaled = -scaled;
+        }
+        writeLong(scaled / factor);
+        long fraction = scaled % factor;
+        if (fraction == 0)
+            return this;
+
+        // strip trailing zeros
+        while (fraction % 10 == 0)
+        {
+            fraction /= 10;
+            decimals--;
+        }
+        out.write('.');
+        int pos = digits.length;
+        for (int i = 0; i < decimals; i++)
+        {
+            digits[--pos] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        out.write(digits, pos, digits.length - pos);
+        return this;
+    }
+
+    /**
+     * Writes the value like org.json does, i.e. integral values without fraction.
+     */
+    public JsonStreamWriter value( double val ) throws IOException
+    {
+        if (Double.isNaN(val) || Double.isInfinite(val))
+            return nullValue();
+
+        if (val == Math.rint(val) && Math.abs(val) < 1e15)
+            return value((long) val);
+
+        beforeValue();
+        out.write(Double.toString(val));
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException
+    {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    /**
+     * Writes strings, numbers, booleans, maps and collections. Other objects are written via
+     * toString.
+     */
+    public JsonStreamWriter value( Object obj ) throws IOException
+    {
+        if (obj == null || obj == JSONObject.NULL)
+            return nullValue();
+        if (obj instanceof String)
+            return value((String) obj);
+        if (obj instanceof Boolean)
+            return value(((Boolean) obj).booleanValue());
+        if (obj instanceof Double || obj instanceof Float)
+            return value(((Number) obj).doubleValue());
+        if (obj instanceof Number)
+            return value(((Number) obj).longValue());
+
+        if (obj instanceof Map)
+        {
+            beginObject();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) obj).entrySet())
+            {
+                name(String.valueOf(e.getKey())).value(e.getValue());
+            }
+            return endObject();
+        }
+
+        if (obj instanceof Collection)
+        {
+            beginArray();
+            for (Object o : (Collection<?>) obj)
+            {
+                value(o);
+            }
+            return endArray();
+        }
+        return value(obj.toString());
+    }
+
+    /**
+     * Starts a string value. The characters appended to the returned Appendable are escaped and
+     * written directly, call endString afterwards.
+     */
+    public Appendable beginString() throws IOException
+    {
+        beforeValue();
+        out.write('"');
+        prevChar = 0;
+        return stringAppender;
+    }
+
+    public JsonStreamWriter endString() throws IOException
+    {
+        out.write('"');
+        return this;
+    }
+
+    /**
+     * Writes a raw string, e.g. a JSONP callback. It is not escaped and does not count as value.
+     */
+    public JsonStreamWriter raw( String str ) throws IOException
+    {
+        out.write(str);
+        return this;
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    private void push()
+    {
+        depth++;
+        if (depth == first.length)
+        {
+            boolean[] tmp = new boolean[first.length * 2];
+            System.arraycopy(first, 0, tmp, 0, first.length);
+            first = tmp;
+        }
+        first[depth] = true;
+    }
+
+    private void pop() throws IOException
+    {
+        boolean empty = first[depth];
+        depth--;
+        if (!empty)
+            newLine();
+    }
+
+    private void beforeValue() throws IOException
+    {
+        if (afterName)
+        {
+            afterName = false;
+            return;
+        }
+
+        if (!first[depth])
+            out.write(',');
+        first[depth] = false;
+        if (depth > 0)
+            newLine();
+    }
+
+    private void newLine() throws IOException
+    {
+        if (indent <= 0)
+            return;
+
+        out.write('\n');
+        for (int i = 0; i < depth * indent; i++)
+        {
+            out.write(' ');
+        }
+    }
+
+    private void writeLong( long val ) throws IOException
+    {
+        if (val == Long.MIN_VALUE)
+        {
+            out.write(Long.toString(val));
+            return;
+        }
+
+        if (val < 0)
+        {
+            out.write('-');
+            val = -val;
+        }
+
+        int pos = digits.length;
+        do
+        {
+            digits[--pos] = (char) ('0' + val % 10);
+            val /= 10;
+        } while (val > 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    private void writeString( String str ) throws IOException
+    {
+        out.write('"');
+        prevChar = 0;
+        for (int i = 0; i < str.length(); i++)
+        {
+            writeEscaped(str.charAt(i));
+        }
+        out.write('"');
+    }
+
+    private void writeEscaped( char c ) throws IOException
+    {
+        switch (c)
+        {
+            case '"':
+            case '\\':
+                out.write('\\');
+                out.write(c);
+                break;
+            case '/':
+                // avoid </script> in JSONP
+                if (prevChar == '<')
+                    out.write('\\');
+                out.write(c);
+                break;
+            case '\b':
+                out.write("\\b");
+                break;
+            case '\f':
+                out.write("\\f");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            case '\r':
+                out.write("\\r");
+                break;
+            case '\t':
+                out.write("\\t");
+                break;
+            default:
+                if (c < ' ' || c == '\u2028' || c == '\u2029')
+                {
+                    out.write("\\u");
+                    String hex = Integer.toHexString(c);
+                    for (int i = hex.length(); i < 4; i++)
+                    {
+                        out.write('0');
+                    }
+                    out.write(hex);
+                } else
+                {
+                    out.write(c);
+                }
+        }
+        prevChar = c;
+    }
+}
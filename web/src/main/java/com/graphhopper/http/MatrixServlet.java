@@ -0,0 +1,170 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHMatrixRequest;
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.GHPoint;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.servlet.http.HttpServletResponse.*;
+import org.json.JSONObject;
+
+/**
+ * Servlet to calculate the distances and times between many points in one request. Specify the
+ * points via from_point and to_point or via point for a symmetric matrix. Unreachable entries are
+ * null.
+ * <p/>
+ * @author Peter Karich
+ */
+public class MatrixServlet extends GHBaseServlet
+{
+    @Inject
+    private GraphHopperHolder holder;
+    @Inject
+    @Named("matrix.maxEntries")
+    private int maxEntries;
+
+    @Override
+    public void doGet( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        GraphHopperHolder.Lease lease = holder.acquire();
+        try
+        {
+            writeMatrix(lease.getGraphHopper(), req, res);
+        } catch (IllegalArgumentException ex)
+        {
+            writeError(res, SC_BAD_REQUEST, ex.getMessage());
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing request: " + req.getQueryString(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        } finally
+        {
+            lease.release();
+        }
+    }
+
+    void writeMatrix( GraphHopper hopper, HttpServletRequest httpReq, HttpServletResponse res ) throws Exception
+    {
+        List<GHPoint> fromPoints = getPoints(httpReq, "from_point");
+        List<GHPoint> toPoints = getPoints(httpReq, "to_point");
+        if (fromPoints.isEmpty() && toPoints.isEmpty())
+        {
+            fromPoints = getPoints(httpReq, "point");
+            toPoints = fromPoints;
+        }
+
+        String vehicleStr = getParam(httpReq, "vehicle", "CAR").toUpperCase();
+        String weighting = getParam(httpReq, "weighting", "fastest");
+
+        StopWatch sw = new StopWatch().start();
+        GHMatrixResponse ghRsp;
+        if (!hopper.getEncodingManager().supports(vehicleStr))
+        {
+            ghRsp = new GHMatrixResponse().addError(new IllegalArgumentException("Vehicle not supported: " + vehicleStr));
+        } else if ((long) fromPoints.size() * toPoints.size() > maxEntries)
+        {
+            ghRsp = new GHMatrixResponse().addError(new IllegalArgumentException("Too many entries "
+                    + fromPoints.size() + "x" + toPoints.size() + ", maximum is " + maxEntries));
+        } else
+        {
+            GHMatrixRequest request = new GHMatrixRequest(fromPoints, toPoints);
+            request.setVehicle(hopper.getEncodingManager().getEncoder(vehicleStr).toString()).
+                    setWeighting(weighting);
+            ghRsp = hopper.calcMatrix(request);
+        }
+
+        float took = sw.stop().getSeconds();
+        String logStr = httpReq.getQueryString() + " " + httpReq.getRemoteAddr() + " " + fromPoints.size()
+                + "x" + toPoints.size() + ", took:" + took + ", " + weighting + ", " + vehicleStr;
+        if (ghRsp.hasErrors())
+            logger.error(logStr + ", errors:" + ghRsp.getErrors());
+        else
+            logger.info(logStr + ", debug - " + ghRsp.getDebugInfo());
+
+        if ("binary".equalsIgnoreCase(getParam(httpReq, "type", "json")))
+        {
+            DataOutputStream out = startBinary(res);
+            BinaryFormat.writeMatrix(out, ghRsp, Math.round(took * 1000));
+            out.flush();
+        } else
+        {
+            writeJson(httpReq, res, new JSONObject(createJson(ghRsp, took)));
+        }
+    }
+
+    protected Map<String, Object> createJson( GHMatrixResponse rsp, float took )
+    {
+        Map<String, Object> json = new HashMap<String, Object>();
+        Map<String, Object> jsonInfo = new HashMap<String, Object>();
+        json.put("info", jsonInfo);
+        jsonInfo.put("copyrights", Arrays.asList("GraphHopper", "OpenStreetMap contributors"));
+
+        if (rsp.hasErrors())
+        {
+            List<Map<String, String>> list = new ArrayList<Map<String, String>>();
+            for (Throwable t : rsp.getErrors())
+            {
+                Map<String, String> map = new HashMap<String, String>();
+                map.put("message", t.getMessage());
+                map.put("details", t.getClass().getName());
+                list.add(map);
+            }
+            jsonInfo.put("errors", list);
+        } else
+        {
+            jsonInfo.put("took", Math.round(took * 1000));
+            int rows = rsp.getMatrix().getRows();
+            int columns = rsp.getMatrix().getColumns();
+            List<List<Object>> distances = new ArrayList<List<Object>>(rows);
+            List<List<Object>> times = new ArrayList<List<Object>>(rows);
+            for (int from = 0; from < rows; from++)
+            {
+                List<Object> distanceRow = new ArrayList<Object>(columns);
+                List<Object> timeRow = new ArrayList<Object>(columns);
+                for (int to = 0; to < columns; to++)
+                {
+                    if (rsp.isFound(from, to))
+                    {
+                        distanceRow.add(Helper.round(rsp.getDistance(from, to), 3));
+                        timeRow.add(rsp.getMillis(from, to));
+                    } else
+                    {
+                        distanceRow.add(JSONObject.NULL);
+                        timeRow.add(JSONObject.NULL);
+                    }
+                }
+                distances.add(distanceRow);
+                times.add(timeRow);
+            }
+            json.put("distances", distances);
+            json.put("times", times);
+        }
+        return json;
+    }
+}
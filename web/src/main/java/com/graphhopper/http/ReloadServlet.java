@@ -0,0 +1,70 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import java.io.IOException;
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.servlet.http.HttpServletResponse.*;
+import org.json.JSONObject;
+
+/**
+ * Loads the graph at the specified location in the background and replaces the served graph
+ * afterwards. Without the location parameter the current graph folder is loaded again, e.g. after
+ * it was replaced on disc. Other folders have to be listed in web.reload.locations. Only POST
+ * requests are accepted and the servlet is only registered if web.reload.enabled is true, restrict
+ * it via jetty.whiteips.
+ * <p/>
+ * @author Peter Karich
+ */
+public class ReloadServlet extends GHBaseServlet
+{
+    @Inject
+    private GraphHopperHolder holder;
+
+    @Override
+    protected void doPost( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        try
+        {
+            String location = getParam(req, "location", holder.getGraphHopper().getGraphHopperLocation());
+            boolean started;
+            try
+            {
+                started = holder.reloadAsync(location);
+            } catch (IllegalArgumentException ex)
+            {
+                writeError(res, SC_BAD_REQUEST, ex.getMessage());
+                return;
+            }
+            if (started)
+                logger.info("reload of " + location + " started by " + req.getRemoteAddr());
+
+            JSONObject json = new JSONObject();
+            json.put("started", started);
+            json.put("reloading", holder.isReloading());
+            writeJson(req, res, json);
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing request: " + req.getQueryString(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.RouteCache;
+import com.graphhopper.storage.SpeedOverlay;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static javax.servlet.http.HttpServletResponse.*;
+import org.json.JSONObject;
+
+/**
+ * Updates the speeds of the SpeedOverlay in bulk. The POST body is a sequence of 12 byte records
+ * in big endian: int edgeId, float forward speed, float backward speed in km/h. NaN keeps the
+ * current value, a negative speed removes it. Unknown edges are skipped. A body with an incomplete
+ * record is rejected without applying any of its updates, so is a body larger than
+ * web.traffic.maxBodySize. Only registered if routing.speedOverlay is true. The speeds are not kept when the graph is reloaded. Updates clear
+ * the route cache.
+ * <p/>
+ * @author Peter Karich
+ */
+public class TrafficServlet extends GHBaseServlet
+{
+    static final int RECORD_BYTES = 12;
+    @Inject
+    private GraphHopperHolder holder;
+    @Inject
+    @Named("traffic.maxBodySize")
+    private int maxBodySize;
+
+    @Override
+    protected void doPost( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        GraphHopperHolder.Lease lease = holder.acquire();
+        try
+        {
+            SpeedOverlay overlay = lease.getGraphHopper().getSpeedOverlay();
+            if (overlay == null)
+            {
+                writeError(res, SC_BAD_REQUEST, "Speed overlay not enabled");
+                return;
+            }
+
+            if (req.getContentLength() > maxBodySize)
+            {
+                writeError(res, SC_REQUEST_ENTITY_TOO_LARGE, "The body must not be larger than " + maxBodySize + " bytes");
+                return;
+            }
+
+            ByteBuffer records;
+            try
+            {
+                records = readRecords(req.getInputStream(), req.getContentLength(), maxBodySize);
+            } catch (IllegalArgumentException ex)
+            {
+                writeError(res, SC_BAD_REQUEST, ex.getMessage());
+                return;
+            }
+
+            int updated = 0;
+            int skipped = 0;
+            while (records.hasRemaining())
+            {
+                int edgeId = records.getInt();
+                float forward = records.getFloat();
+                float backward = records.getFloat();
+                if (edgeId < 0 || edgeId >= overlay.getEdgeCount())
+                {
+                    skipped++;
+                    continue;
+                }
+
+                if (!Float.isNaN(forward))
+                    overlay.setSpeed(edgeId, false, forward);
+                if (!Float.isNaN(backward))
+                    overlay.setSpeed(edgeId, true, backward);
+                updated++;
+            }
+
+            // cached routes could use the old speeds
+            RouteCache routeCache = lease.getGraphHopper().getRouteCache();
+            if (routeCache != null && updated > 0)
+                routeCache.clear();
+
+            JSONObject json = new JSONObject();
+            json.put("updated", updated);
+            json.put("skipped", skipped);
+            writeJson(req, res, json);
+        } catch (Exception ex)
+        {
+            logger.error("Error while updating speeds from " + req.getRemoteAddr(), ex);
+            writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        } finally
+        {
+            lease.release();
+        }
+    }
+
+    /**
+     * Reads the complete body before any speed is changed. The buffer is allocated once if the
+     * content length is known and never grows beyond maxBytes.
+     * <p/>
+     * @param contentLength the announced length of the body or -1 if unknown
+     * @throws IllegalArgumentException if the body does not consist of complete records or is
+     * larger than maxBytes
+     */
+    static ByteBuffer readRecords( InputStream is, int contentLength, int maxBytes ) throws IOException
+    {
+        if (contentLength > maxBytes)
+            throw new IllegalArgumentException("The body must not be larger than " + maxBytes + " bytes");
+        if (contentLength >= 0 && contentLength % RECORD_BYTES != 0)
+            throw new IllegalArgumentException("The body has to consist of " + RECORD_BYTES
+                    + " byte records but had " + contentLength + " bytes");
+
+        byte[] bytes = new byte[contentLength >= 0 ? contentLength : Math.min(maxBytes, 64 * 1024)];
+        int size = 0;
+        while (true)
+        {
+            if (size == bytes.length)
+            {
+                // one more byte tells if the body is longer than announced or allowed
+                if (contentLength >= 0 || size >= maxBytes)
+                {
+                    if (is.read() < 0)
+                        break;
+
+                    throw new IllegalArgumentException("The body must not be larger than "
+                            + (contentLength >= 0 ? contentLength : maxBytes) + " bytes");
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(maxBytes, 2L * size));
+            }
+
+            int len = is.read(bytes, size, bytes.length - size);
+            if (len < 0)
+                break;
+
+            size += len;
+        }
+
+        if (size % RECORD_BYTES != 0)
+            throw new IllegalArgumentException("The body has to consist of " + RECORD_BYTES
+                    + " byte records but had " + size + " bytes");
+
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+}
@@ -108,6 +108,22 @@ public class WebHelper
     public static String encodePolyline( PointList poly, boolean includeElevation )
     {
         StringBuilder sb = new StringBuilder();
+        try
+        {
+            encodePolyline(sb, poly, includeElevation);
+        } catch (IOException ex)
+        {
+            // cannot happen for a StringBuilder
+            throw new RuntimeException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the encoded polyline to the specified output, e.g. directly to a response.
+     */
+    public static void encodePolyline( Appendable out, PointList poly, boolean includeElevation ) throws IOException
+    {
         int size = poly.getSize();
         int prevLat = 0;
         int prevLon = 0;
@@ -115,22 +131,21 @@ public class WebHelper
         for (int i = 0; i < size; i++)
         {
             int num = (int) Math.floor(poly.getLatitude(i) * 1e5);
-            encodeNumber(sb, num - prevLat);
+            encodeNumber(out, num - prevLat);
             prevLat = num;
             num = (int) Math.floor(poly.getLongitude(i) * 1e5);
-            encodeNumber(sb, num - prevLon);
+            encodeNumber(out, num - prevLon);
             prevLon = num;
             if (includeElevation)
             {
                 num = (int) Math.floor(poly.getElevation(i) * 100);
-                encodeNumber(sb, num - prevEle);
+                encodeNumber(out, num - prevEle);
                 prevEle = num;
             }
         }
-        return sb.toString();
     }
 
-    private static void encodeNumber( StringBuilder sb, int num )
+    private static void encodeNumber( Appendable out, int num ) throws IOException
     {
         num = num << 1;
         if (num < 0)
@@ -140,11 +155,11 @@ public class WebHelper
         while (num >= 0x20)
         {
             int nextValue = (0x20 | (num & 0x1f)) + 63;
-            sb.append((char) (nextValue));
+            out.append((char) (nextValue));
             num >>= 5;
         }
         num += 63;
-        sb.append((char) (num));
+        out.append((char) (num));
     }
 
     public static String readString( InputStream inputStream ) throws IOException
@@ -166,4 +181,21 @@ public class WebHelper
             in.close();
         }
     }
+
+    /**
+     * Recreates an error of a remote response from its class name and message.
+     */
+    public static Throwable createError( String exClass, String exMessage )
+    {
+        if (exClass.equals(UnsupportedOperationException.class.getName()))
+            return new UnsupportedOperationException(exMessage);
+        else if (exClass.equals(IllegalStateException.class.getName()))
+            return new IllegalStateException(exMessage);
+        else if (exClass.equals(RuntimeException.class.getName()))
+            return new RuntimeException(exMessage);
+        else if (exClass.equals(IllegalArgumentException.class.getName()))
+            return new IllegalArgumentException(exMessage);
+        else
+            return new Exception(exClass + " " + exMessage);
+    }
 }
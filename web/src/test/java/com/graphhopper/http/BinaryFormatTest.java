@@ -0,0 +1,218 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.GHResponse;
+import com.graphhopper.routing.PathMatrix;
+import com.graphhopper.util.*;
+import java.io.*;
+import java.util.Locale;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class BinaryFormatTest
+{
+    private final Translation tr = new TranslationMap().doImport().getWithFallBack(Locale.US);
+
+    @Test
+    public void testVarLong() throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        long[] values =
+        {
+            0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE
+        };
+        for (long v : values)
+        {
+            BinaryFormat.writeVarLong(out, v);
+            BinaryFormat.writeSignedVarLong(out, -v);
+        }
+        // small values need only one byte
+        assertEquals(3, sizeOf(1) + sizeOf(127) + sizeOf(0));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        for (long v : values)
+        {
+            assertEquals(v, BinaryFormat.readVarLong(in));
+            assertEquals(-v, BinaryFormat.readSignedVarLong(in));
+        }
+        assertEquals(-1, in.read());
+
+        try
+        {
+            BinaryFormat.writeVarLong(out, -1);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    private int sizeOf( long value ) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryFormat.writeVarLong(new DataOutputStream(bos), value);
+        return bos.size();
+    }
+
+    @Test
+    public void testRoute() throws IOException
+    {
+        PointList pl1 = new PointList(3, false);
+        pl1.add(52.514, 13.348);
+        pl1.add(52.5135, 13.35);
+        pl1.add(52.514, 13.351);
+        PointList pl2 = new PointList(1, false);
+        pl2.add(-0.000145, -179.99999);
+
+        InstructionList il = new InstructionList(tr);
+        il.add(new Instruction(Instruction.CONTINUE_ON_STREET, "Street 1", new InstructionAnnotation(1, "toll"), pl1).
+                setDistance(100.5).setTime(2000));
+        il.add(new FinishInstruction(-0.000145, -179.99999, 0));
+        PointList points = new PointList(4, false);
+        points.add(pl1);
+        points.add(pl2);
+        GHResponse rsp = new GHResponse().setPoints(points).setDistance(1234.5).setMillis(98765).setRouteWeight(3.5);
+        rsp.setInstructions(il);
+
+        GHResponse res = BinaryFormat.readRoute(read(write(rsp, points, il)), tr);
+        assertFalse(res.hasErrors());
+        assertEquals(1234.5, res.getDistance(), 1e-6);
+        assertEquals(3.5, res.getRouteWeight(), 1e-6);
+        assertEquals(98765, res.getMillis());
+        assertEquals(4, res.getPoints().getSize());
+        for (int i = 0; i < points.getSize(); i++)
+        {
+            assertEquals(points.getLatitude(i), res.getPoints().getLatitude(i), 1e-5);
+            assertEquals(points.getLongitude(i), res.getPoints().getLongitude(i), 1e-5);
+        }
+
+        InstructionList resIL = res.getInstructions();
+        assertEquals(2, resIL.size());
+        Instruction instr = resIL.get(0);
+        assertEquals(Instruction.CONTINUE_ON_STREET, instr.getSign());
+        assertEquals(il.getText(il.get(0)), instr.getName());
+        assertEquals("toll", instr.getAnnotation().getMessage());
+        assertEquals(100.5, instr.getDistance(), 1e-6);
+        assertEquals(2000, instr.getTime());
+        // like the JSON interval the instruction includes the first point of the next
+        assertEquals(4, instr.getPoints().size());
+        assertEquals(Instruction.FINISH, resIL.get(1).getSign());
+        assertTrue(resIL.get(1).getAnnotation().isEmpty());
+        assertEquals(1, resIL.get(1).getPoints().size());
+
+        // without points and without instructions
+        res = BinaryFormat.readRoute(read(write(rsp, null, null)), tr);
+        assertEquals(1234.5, res.getDistance(), 1e-6);
+        assertTrue(res.getPoints().isEmpty());
+        res = BinaryFormat.readRoute(read(write(rsp, points, il)), null);
+        assertEquals(4, res.getPoints().getSize());
+    }
+
+    @Test
+    public void testElevation() throws IOException
+    {
+        PointList points = new PointList(2, true);
+        points.add(42.5, 1.5, 1200.25);
+        points.add(42.51, 1.49, 980);
+        GHResponse rsp = new GHResponse().setPoints(points).setDistance(10).setMillis(1);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryFormat.writeRoute(new DataOutputStream(bos), rsp, 0, points, true, null);
+        GHResponse res = BinaryFormat.readRoute(read(bos.toByteArray()), tr);
+        assertTrue(res.getPoints().is3D());
+        assertEquals(1200.25, res.getPoints().getElevation(0), 1e-6);
+        assertEquals(980, res.getPoints().getElevation(1), 1e-6);
+        assertEquals(1.49, res.getPoints().getLongitude(1), 1e-6);
+    }
+
+    @Test
+    public void testErrors() throws IOException
+    {
+        GHResponse rsp = new GHResponse().addError(new IllegalArgumentException("Vehicle not supported: X")).
+                addError(new IllegalStateException("state"));
+        GHResponse res = BinaryFormat.readRoute(read(write(rsp, null, null)), tr);
+        assertEquals(2, res.getErrors().size());
+        assertTrue(res.getErrors().get(0) instanceof IllegalArgumentException);
+        assertEquals("Vehicle not supported: X", res.getErrors().get(0).getMessage());
+        assertTrue(res.getErrors().get(1) instanceof IllegalStateException);
+
+        GHMatrixResponse mRsp = new GHMatrixResponse().addError(new IllegalArgumentException("Too many entries"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryFormat.writeMatrix(new DataOutputStream(bos), mRsp, 0);
+        assertEquals("Too many entries", BinaryFormat.readMatrix(read(bos.toByteArray())).getErrors().get(0).getMessage());
+    }
+
+    @Test
+    public void testMatrix() throws IOException
+    {
+        PathMatrix matrix = new PathMatrix(2, 3);
+        matrix.set(0, 0, 0, 0, 0);
+        matrix.set(0, 1, 12, 1500.1234, 60000);
+        matrix.set(1, 2, 7, 800, 3000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryFormat.writeMatrix(new DataOutputStream(bos), new GHMatrixResponse().setMatrix(matrix), 5);
+
+        GHMatrixResponse res = BinaryFormat.readMatrix(read(bos.toByteArray()));
+        assertEquals(2, res.getMatrix().getRows());
+        assertEquals(3, res.getMatrix().getColumns());
+        assertTrue(res.isFound(0, 0));
+        assertEquals(0, res.getDistance(0, 0), 1e-6);
+        assertEquals(1500.123, res.getDistance(0, 1), 1e-6);
+        assertEquals(60000, res.getMillis(0, 1));
+        assertFalse(res.isFound(0, 2));
+        assertFalse(res.isFound(1, 0));
+        assertEquals(3000, res.getMillis(1, 2));
+
+        try
+        {
+            BinaryFormat.readRoute(read(bos.toByteArray()), tr);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testWrongHeader() throws IOException
+    {
+        try
+        {
+            BinaryFormat.readRoute(read("{\"info\":{}}".getBytes("UTF-8")), tr);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+            assertEquals("Not a binary GraphHopper response", ex.getMessage());
+        }
+    }
+
+    private byte[] write( GHResponse rsp, PointList points, InstructionList il ) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        BinaryFormat.writeRoute(new DataOutputStream(bos), rsp, 10, points, false, il);
+        return bos.toByteArray();
+    }
+
+    private DataInput read( byte[] bytes )
+    {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class GraphHopperHolderTest
+{
+    static class CountingGraphHopper extends GraphHopper
+    {
+        int closed = 0;
+
+        @Override
+        public void close()
+        {
+            closed++;
+        }
+    }
+
+    @Test
+    public void testSwapClosesAfterLastRelease()
+    {
+        CountingGraphHopper old = new CountingGraphHopper();
+        CountingGraphHopper next = new CountingGraphHopper();
+        GraphHopperHolder holder = new GraphHopperHolder(old);
+
+        GraphHopperHolder.Lease lease1 = holder.acquire();
+        GraphHopperHolder.Lease lease2 = holder.acquire();
+        assertSame(old, lease1.getGraphHopper());
+
+        holder.swap(next);
+        assertSame(next, holder.getGraphHopper());
+        GraphHopperHolder.Lease lease3 = holder.acquire();
+        assertSame(next, lease3.getGraphHopper());
+
+        // in-flight requests still use the old instance
+        lease1.release();
+        assertEquals(0, old.closed);
+        lease2.release();
+        assertEquals(1, old.closed);
+
+        lease3.release();
+        assertEquals(0, next.closed);
+    }
+
+    @Test
+    public void testSwapWithoutUsersClosesImmediately()
+    {
+        CountingGraphHopper old = new CountingGraphHopper();
+        GraphHopperHolder holder = new GraphHopperHolder(old);
+        holder.acquire().release();
+        holder.swap(new CountingGraphHopper());
+        assertEquals(1, old.closed);
+
+        holder.close();
+        assertEquals(1, ((CountingGraphHopper) holder.getGraphHopper()).closed);
+    }
+
+    @Test
+    public void testReload()
+    {
+        final CountingGraphHopper next = new CountingGraphHopper();
+        GraphHopperHolder holder = new GraphHopperHolder(new CountingGraphHopper())
+        {
+            @Override
+            protected GraphHopper load( String graphLocation )
+            {
+                assertEquals("new-gh", graphLocation);
+                return next;
+            }
+
+            @Override
+            protected void warmUp( GraphHopper hopper )
+            {
+                assertNotSame(hopper, getGraphHopper());
+            }
+        };
+        try
+        {
+            holder.reload("new-gh");
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+
+        holder.setAllowedLocations("other-gh", " new-gh");
+        holder.reload("new-gh");
+        assertSame(next, holder.getGraphHopper());
+
+        try
+        {
+            new GraphHopperHolder(next).setAllowedLocations("new-gh").reload("new-gh");
+            assertTrue(false);
+        } catch (UnsupportedOperationException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testCheckLocation()
+    {
+        GraphHopper hopper = new GraphHopper().setGraphHopperLocation("target/holder-gh");
+        hopper.setGraph(new GraphHopperStorage(new GHDirectory("target/holder-gh", DAType.RAM_STORE),
+                new EncodingManager("CAR"), false));
+        GraphHopperHolder holder = new GraphHopperHolder(hopper).setAllowedLocations("target/other-gh");
+        holder.checkLocation("target/holder-gh");
+        holder.checkLocation("target/../target/holder-gh");
+        holder.checkLocation("target/other-gh");
+        try
+        {
+            holder.checkLocation("target/../other-gh");
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+
+        // the current folder cannot be replaced while it is memory mapped
+        hopper.setGraph(new GraphHopperStorage(new GHDirectory("target/holder-gh", DAType.MMAP),
+                new EncodingManager("CAR"), false));
+        try
+        {
+            holder.checkLocation("target/holder-gh");
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+        holder.checkLocation("target/other-gh");
+    }
+}
@@ -93,6 +93,28 @@ public class GraphHopperServletIT extends BaseServletTester
         assertTrue("distance wasn't correct:" + rsp.getDistance(), rsp.getDistance() < 9500);
     }
 
+    @Test
+    public void testGraphHopperWebBinary() throws Exception
+    {
+        GraphHopperAPI jsonHopper = new GraphHopperWeb();
+        assertTrue(jsonHopper.load(getTestAPIUrl()));
+        GHResponse jsonRsp = jsonHopper.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128));
+
+        GraphHopperAPI hopper = new GraphHopperWeb().setBinary(true);
+        assertTrue(hopper.load(getTestAPIUrl()));
+        GHResponse rsp = hopper.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128));
+        assertTrue(rsp.getErrors().toString(), rsp.getErrors().isEmpty());
+        assertEquals(jsonRsp.getDistance(), rsp.getDistance(), 1e-3);
+        assertEquals(jsonRsp.getMillis(), rsp.getMillis());
+        assertEquals(jsonRsp.getPoints().getSize(), rsp.getPoints().getSize());
+        assertEquals(jsonRsp.getPoints().getLatitude(1), rsp.getPoints().getLatitude(1), 1e-6);
+        assertEquals(jsonRsp.getInstructions().size(), rsp.getInstructions().size());
+        assertEquals(jsonRsp.getInstructions().get(1).toString(), rsp.getInstructions().get(1).toString());
+
+        rsp = hopper.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128).setVehicle("SPACE-SHUTTLE"));
+        assertTrue(rsp.getErrors().get(0) instanceof IllegalArgumentException);
+    }
+
     @Test
     public void testGraphHopperWebRealExceptions()
     {
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class IsochroneServletIT extends BaseServletTester
+{
+    private static final String dir = "./target/andorra-isochrone-gh/";
+
+    @AfterClass
+    public static void cleanUp()
+    {
+        Helper.removeDir(new File(dir));
+        shutdownJetty(true);
+    }
+
+    @Before
+    public void setUp()
+    {
+        // the shortcut layers keep the base graph
+        CmdArgs args = new CmdArgs().
+                put("config", "../config-example.properties").
+                put("prepare.chWeighting", "fastest,shortest").
+                put("osmreader.osm", "../core/files/andorra.osm.pbf").
+                put("graph.location", dir);
+        setUpJetty(args);
+    }
+
+    @Override
+    protected String getTestAPIUrl()
+    {
+        return "http://localhost:" + port + "/isochrone";
+    }
+
+    @Test
+    public void testBuckets() throws Exception
+    {
+        JSONObject json = query("point=42.510071,1.548128&time_limit=300&buckets=3&cells=true");
+        assertFalse(json.getJSONObject("info").toString(), json.getJSONObject("info").has("errors"));
+        JSONArray buckets = json.getJSONArray("buckets");
+        assertEquals(3, buckets.length());
+        assertEquals(100, buckets.getJSONObject(0).getDouble("limit"), 1e-3);
+        assertEquals(300, buckets.getJSONObject(2).getDouble("limit"), 1e-3);
+        JSONObject polygon = buckets.getJSONObject(2).getJSONObject("polygon");
+        assertEquals("Polygon", polygon.getString("type"));
+        JSONArray ring = polygon.getJSONArray("coordinates").getJSONArray(0);
+        assertTrue(ring.length() >= 4);
+        // closed
+        assertEquals(ring.getJSONArray(0).getDouble(0), ring.getJSONArray(ring.length() - 1).getDouble(0), 1e-6);
+        assertTrue(buckets.getJSONObject(0).getJSONArray("cells").length() > 0);
+        assertEquals(2, json.getJSONArray("cell_size").length());
+
+        json = query("point=42.510071,1.548128&time_limit=300");
+        assertFalse(json.getJSONArray("buckets").getJSONObject(0).has("cells"));
+    }
+
+    @Test
+    public void testDistanceLimit() throws Exception
+    {
+        JSONObject json = query("point=42.510071,1.548128&distance_limit=2000&cell_size=100");
+        assertFalse(json.getJSONObject("info").has("errors"));
+        JSONArray ring = json.getJSONArray("buckets").getJSONObject(0).getJSONObject("polygon").
+                getJSONArray("coordinates").getJSONArray(0);
+        double minLat = 90, maxLat = -90;
+        for (int i = 0; i < ring.length(); i++)
+        {
+            minLat = Math.min(minLat, ring.getJSONArray(i).getDouble(1));
+            maxLat = Math.max(maxLat, ring.getJSONArray(i).getDouble(1));
+        }
+        // 2km are at most 0.018 degrees
+        assertTrue("extent " + (maxLat - minLat), maxLat - minLat < 2 * 0.0185);
+    }
+
+    @Test
+    public void testErrors() throws Exception
+    {
+        JSONObject json = query("point=42.510071,1.548128&time_limit=100000");
+        assertTrue(json.getJSONObject("info").has("errors"));
+
+        json = query("point=42.510071,1.548128&vehicle=SPACESHIP");
+        assertTrue(json.getJSONObject("info").has("errors"));
+    }
+}
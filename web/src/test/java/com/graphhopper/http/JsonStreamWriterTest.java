@@ -0,0 +1,152 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.util.*;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class JsonStreamWriterTest
+{
+    private final StringWriter sw = new StringWriter();
+    private final JsonStreamWriter writer = new JsonStreamWriter(sw);
+
+    @Test
+    public void testObjectsAndArrays() throws IOException
+    {
+        writer.beginObject().
+                name("a").beginArray().value(1).value(2.5).value("x").endArray().
+                name("b").beginObject().endObject().
+                name("c").nullValue().
+                name("d").value(true).
+                name("e").beginArray().beginArray().value(-3).endArray().beginArray().endArray().endArray().
+                endObject().flush();
+        assertEquals("{\"a\":[1,2.5,\"x\"],\"b\":{},\"c\":null,\"d\":true,\"e\":[[-3],[]]}", sw.toString());
+    }
+
+    @Test
+    public void testDecimals() throws IOException
+    {
+        writer.beginArray().
+                value(1.5361981234, 6).
+                value(3.0, 3).
+                value(-1.26, 1).
+                value(-0.0001, 3).
+                value(12.05, 6).
+                value(Double.NaN, 2).
+                value(1e30, 6).
+                value(7.0).
+                endArray().flush();
+        assertEquals("[1.536198,3,-1.3,0,12.05,null,1.0E30,7]", sw.toString());
+    }
+
+    @Test
+    public void testEscaping() throws IOException
+    {
+        String str = "a\"b\\c\n\t</x>\u0001";
+        writer.beginObject().name("k\"").value(str).endObject().flush();
+        assertTrue(sw.toString(), sw.toString().contains("<\\/x>"));
+        JSONObject json = new JSONObject(sw.toString());
+        assertEquals(str, json.getString("k\""));
+    }
+
+    @Test
+    public void testIndent() throws IOException
+    {
+        writer.setIndent(2).beginObject().name("a").beginArray().value(1).value(2).endArray().
+                name("b").value("c").endObject().flush();
+        assertEquals("{\n  \"a\": [\n    1,\n    2\n  ],\n  \"b\": \"c\"\n}", sw.toString());
+    }
+
+    @Test
+    public void testValueObject() throws IOException
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("list", Arrays.asList(1, 2.5f, "s"));
+        map.put("null", JSONObject.NULL);
+        writer.value(map).flush();
+        JSONObject json = new JSONObject(sw.toString());
+        assertEquals(3, json.getJSONArray("list").length());
+        assertEquals(2.5, json.getJSONArray("list").getDouble(1), 1e-6);
+        assertTrue(json.isNull("null"));
+    }
+
+    @Test
+    public void testPolylineString() throws IOException
+    {
+        PointList list = Helper.createPointList(-0.000145, 0, 38.5, -120.2, 40.7, -120.95);
+        String encoded = WebHelper.encodePolyline(list);
+        assertTrue(encoded.contains("\\"));
+
+        writer.beginArray();
+        WebHelper.encodePolyline(writer.beginString(), list, false);
+        writer.endString().endArray().flush();
+        assertEquals(encoded, new JSONArray(sw.toString()).getString(0));
+    }
+
+    @Test
+    public void testInstructionsLikeCreateJson() throws IOException
+    {
+        Translation tr = new TranslationMap().doImport().getWithFallBack(Locale.US);
+        InstructionList il = new InstructionList(tr);
+        il.add(new Instruction(Instruction.CONTINUE_ON_STREET, "main", InstructionAnnotation.EMPTY,
+                Helper.createPointList(1, 1, 1, 2)).setDistance(100.1234).setTime(1000));
+        RoundaboutInstruction roundabout = new RoundaboutInstruction(Instruction.USE_ROUNDABOUT, "round",
+                new InstructionAnnotation(1, "toll"), Helper.createPointList(1, 3));
+        roundabout.increaseExitNumber().setExited().setDirOfRotation(-1).setRadian(-1);
+        roundabout.setDistance(10).setTime(500);
+        il.add(roundabout);
+        il.add(new FinishInstruction(2, 3, 0));
+
+        new GraphHopperServlet().writeInstructions(writer, il);
+        writer.flush();
+        JSONArray streamed = new JSONArray(sw.toString());
+        List<Map<String, Object>> expected = il.createJson();
+        assertEquals(expected.size(), streamed.length());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            JSONObject json = streamed.getJSONObject(i);
+            JSONObject expectedJson = new JSONObject(expected.get(i));
+            String[] names = JSONObject.getNames(expectedJson);
+            Arrays.sort(names);
+            String[] streamedNames = JSONObject.getNames(json);
+            Arrays.sort(streamedNames);
+            assertArrayEquals(names, streamedNames);
+            for (String name : names)
+            {
+                Object val = expectedJson.get(name);
+                if (val instanceof Number)
+                    assertEquals(name, ((Number) val).doubleValue(), json.getDouble(name), 1e-6);
+                else
+                    assertEquals(name, String.valueOf(val), String.valueOf(json.get(name)));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHMatrixResponse;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
+import java.io.DataInputStream;
+import java.io.File;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class MatrixServletIT extends BaseServletTester
+{
+    private static final String dir = "./target/andorra-gh/";
+
+    @AfterClass
+    public static void cleanUp()
+    {
+        Helper.removeDir(new File(dir));
+        shutdownJetty(true);
+    }
+
+    @Before
+    public void setUp()
+    {
+        CmdArgs args = new CmdArgs().
+                put("config", "../config-example.properties").
+                put("osmreader.osm", "../core/files/andorra.osm.pbf").
+                put("graph.location", dir);
+        setUpJetty(args);
+    }
+
+    @Override
+    protected String getTestAPIUrl()
+    {
+        return "http://localhost:" + port + "/matrix";
+    }
+
+    @Test
+    public void testSymmetricMatrix() throws Exception
+    {
+        JSONObject json = query("point=42.554851,1.536198&point=42.510071,1.548128&point=42.531,1.533");
+        assertFalse(json.getJSONObject("info").has("errors"));
+        JSONArray distances = json.getJSONArray("distances");
+        assertEquals(3, distances.length());
+        assertEquals(3, distances.getJSONArray(0).length());
+        assertEquals(0, distances.getJSONArray(1).getDouble(1), 1e-3);
+        double distance = distances.getJSONArray(0).getDouble(1);
+        assertTrue("distance wasn't correct:" + distance, distance > 9000);
+        assertTrue("distance wasn't correct:" + distance, distance < 9500);
+        assertTrue(json.getJSONArray("times").getJSONArray(0).getLong(1) > 0);
+    }
+
+    @Test
+    public void testFromTo() throws Exception
+    {
+        JSONObject json = query("from_point=42.554851,1.536198&to_point=42.510071,1.548128&to_point=42.531,1.533");
+        JSONArray distances = json.getJSONArray("distances");
+        assertEquals(1, distances.length());
+        assertEquals(2, distances.getJSONArray(0).length());
+    }
+
+    @Test
+    public void testUnknownVehicle() throws Exception
+    {
+        JSONObject json = query("point=42.554851,1.536198&point=42.510071,1.548128&vehicle=SPACESHIP");
+        assertTrue(json.getJSONObject("info").has("errors"));
+    }
+
+    @Test
+    public void testBinary() throws Exception
+    {
+        String url = getTestAPIUrl() + "?point=42.554851,1.536198&point=42.510071,1.548128&point=42.531,1.533&type=binary";
+        DataInputStream in = new DataInputStream(new Downloader("web integration tester").fetch(url));
+        GHMatrixResponse rsp = BinaryFormat.readMatrix(in);
+        in.close();
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(3, rsp.getMatrix().getRows());
+
+        JSONObject json = query("point=42.554851,1.536198&point=42.510071,1.548128&point=42.531,1.533");
+        JSONArray distances = json.getJSONArray("distances");
+        assertEquals(distances.getJSONArray(0).getDouble(1), rsp.getDistance(0, 1), 1e-3);
+        assertEquals(distances.getJSONArray(2).getDouble(0), rsp.getDistance(2, 0), 1e-3);
+        assertEquals(json.getJSONArray("times").getJSONArray(0).getLong(1), rsp.getMillis(0, 1));
+    }
+}
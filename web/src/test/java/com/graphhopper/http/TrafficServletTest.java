@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class TrafficServletTest
+{
+    @Test
+    public void testReadRecords() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(5);
+        out.writeFloat(30);
+        out.writeFloat(Float.NaN);
+        out.writeInt(7);
+        out.writeFloat(-1);
+        out.writeFloat(50);
+        out.flush();
+
+        ByteBuffer records = TrafficServlet.readRecords(new ByteArrayInputStream(bytes.toByteArray()), -1, 1000);
+        assertEquals(2 * TrafficServlet.RECORD_BYTES, records.remaining());
+        assertEquals(5, records.getInt());
+        assertEquals(30, records.getFloat(), 1e-6);
+        assertTrue(Float.isNaN(records.getFloat()));
+        assertEquals(7, records.getInt());
+
+        // with the announced length
+        records = TrafficServlet.readRecords(new ByteArrayInputStream(bytes.toByteArray()), 24, 24);
+        assertEquals(2 * TrafficServlet.RECORD_BYTES, records.remaining());
+        assertEquals(5, records.getInt());
+
+        // the speeds of a cut off record are missing
+        out.writeInt(9);
+        out.flush();
+        assertRejected(bytes.toByteArray(), -1, 1000);
+        assertRejected(bytes.toByteArray(), 28, 1000);
+    }
+
+    @Test
+    public void testMaxBodySize() throws Exception
+    {
+        byte[] bytes = new byte[10 * TrafficServlet.RECORD_BYTES];
+        assertEquals(bytes.length, TrafficServlet.readRecords(new ByteArrayInputStream(bytes), -1, bytes.length).remaining());
+        assertEquals(bytes.length, TrafficServlet.readRecords(new ByteArrayInputStream(bytes), bytes.length, bytes.length).remaining());
+
+        assertRejected(bytes, -1, bytes.length - 1);
+        assertRejected(bytes, bytes.length, bytes.length - 1);
+        // more bytes than announced
+        assertRejected(bytes, TrafficServlet.RECORD_BYTES, bytes.length);
+
+        // an unknown length grows the buffer up to the maximum
+        bytes = new byte[10000 * TrafficServlet.RECORD_BYTES];
+        assertEquals(bytes.length, TrafficServlet.readRecords(new ByteArrayInputStream(bytes), -1, 2 * bytes.length).remaining());
+        assertRejected(bytes, -1, bytes.length / 2);
+    }
+
+    private void assertRejected( byte[] bytes, int contentLength, int maxBytes ) throws Exception
+    {
+        try
+        {
+            TrafficServlet.readRecords(new ByteArrayInputStream(bytes), contentLength, maxBytes);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+}